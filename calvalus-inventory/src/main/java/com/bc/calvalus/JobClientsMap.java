@@ -159,6 +159,7 @@ public class JobClientsMap {
             cacheEntry.jobClient.close();
         }
         jobClientsCache.clear();
+        closeHelpers();
         fileSystemMap.clear();
     }
 
@@ -170,8 +171,14 @@ public class JobClientsMap {
         long now = System.currentTimeMillis();
         long clearIfOlder = now - T_10_MINUTES;
         if (withExternalAccessControl) {
-            fileSystemMap.values().removeIf(fileSystem -> ((fileSystem instanceof CalvalusShFileSystem)
-                    && ((CalvalusShFileSystem) fileSystem).getCacheEntry().accessTime < clearIfOlder));
+            fileSystemMap.values().removeIf(fileSystem -> {
+                if ((fileSystem instanceof CalvalusShFileSystem)
+                        && ((CalvalusShFileSystem) fileSystem).getCacheEntry().accessTime < clearIfOlder) {
+                    ((CalvalusShFileSystem) fileSystem).closeHelper();
+                    return true;
+                }
+                return false;
+            });
         }
         jobClientsCache.values().removeIf(cacheEntry -> cacheEntry.accessTime < clearIfOlder);
     }
@@ -182,11 +189,20 @@ public class JobClientsMap {
      */
     public synchronized void removeAllEntries() {
         if (withExternalAccessControl) {
+            closeHelpers();
             fileSystemMap.clear();
         }
         jobClientsCache.clear();
     }
 
+    private void closeHelpers() {
+        for (FileSystem fileSystem : fileSystemMap.values()) {
+            if (fileSystem instanceof CalvalusShFileSystem) {
+                ((CalvalusShFileSystem) fileSystem).closeHelper();
+            }
+        }
+    }
+
     public static class CacheEntry  {
         private final JobClient jobClient;
         private long accessTime;
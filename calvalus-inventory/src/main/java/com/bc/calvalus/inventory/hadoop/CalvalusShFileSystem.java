@@ -41,6 +41,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -49,18 +50,28 @@ import java.util.logging.Logger;
 
 /**
  * A FileSystem that uses an external program to do ls and cat as user via setuid.
+ * <p>
+ * With {@link #CALVALUS_SH_PERSISTENT} set, the metadata operations ls, stat, glob, mkdirs, chmod, mv and rm
+ * are sent to one long-lived calvalus-sh process of the user, and batches of ls and stat are pipelined.
+ * Reading and writing of files starts a process per file. If the long-lived process is not available,
+ * all operations start a process per call.
  *
  * @author boe
  */
 public class CalvalusShFileSystem extends LocalFileSystem {
 
     public static final String CALVALUS_SH_COMMAND = "/usr/libexec/hadoop/calvalus-sh";
+    /** Configuration key or system property to use a long-lived calvalus-sh process per user */
+    public static final String CALVALUS_SH_PERSISTENT = "calvalus.sh.persistent";
+    /** System property to use another calvalus-sh, e.g. a stand-in for tests */
+    public static final String CALVALUS_SH_COMMAND_PROPERTY = "calvalus.sh.command";
     private static final Logger LOG = CalvalusLogger.getLogger();
 
     protected final String username;
     protected JobClientsMap.CacheEntry cacheEntry = null;
     protected FileSystem unixFileSystem;
     protected boolean isLoginUser;
+    private CalvalusShHelper helper = null;
 
     public CalvalusShFileSystem() throws IOException {
         this.username = UserGroupInformation.getCurrentUser().getShortUserName();
@@ -91,6 +102,23 @@ public class CalvalusShFileSystem extends LocalFileSystem {
         setConf(conf);
         unixFileSystem.initialize(name, conf);
         unixFileSystem.setConf(conf);
+        if (helper == null && !isLoginUser
+                && conf.getBoolean(CALVALUS_SH_PERSISTENT, Boolean.getBoolean(CALVALUS_SH_PERSISTENT))) {
+            helper = new CalvalusShHelper(getShCommand(), username);
+        }
+    }
+
+    /** Stops the long-lived calvalus-sh process of the user, if any. It is restarted with the next call. */
+    public void closeHelper() {
+        if (helper != null) {
+            helper.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeHelper();
+        super.close();
     }
 
     /** Maybe creates CalvalusShFileSystem and replaces user's file system in FileSystem registry, adds it to fileSystemMap */
@@ -156,10 +184,7 @@ public class CalvalusShFileSystem extends LocalFileSystem {
     public FileStatus[] listStatus(Path path) throws FileNotFoundException, IOException {
         setAccessTime();
         if (isLoginUser) { return unixFileSystem.listStatus(path); }
-        String p = path.toUri().getPath();
-        Process proc = callUnixCommand("ls", p);
-        List<FileStatus> files = collectPathsOutput(proc);
-        handleReturnCode(proc, files, path);
+        List<FileStatus> files = callListingCommand("ls", path);
         LOG.info("dir " + path + " externally listed, " + files.size() + " entries");
         return files.toArray(new FileStatus[files.size()]);
     }
@@ -168,10 +193,7 @@ public class CalvalusShFileSystem extends LocalFileSystem {
     public FileStatus[] listStatus(Path path, PathFilter filter) throws FileNotFoundException, IOException {
         setAccessTime();
         if (isLoginUser) { return unixFileSystem.listStatus(path, filter); }
-        String p = path.toUri().getPath();
-        Process proc = callUnixCommand("ls", p);
-        List<FileStatus> files = collectPathsOutput(proc);
-        handleReturnCode(proc, files, path);
+        List<FileStatus> files = callListingCommand("ls", path);
         for (int i = 0; i < files.size();) {
             if (! filter.accept(files.get(i).getPath())) {
                 files.remove(i);
@@ -183,6 +205,23 @@ public class CalvalusShFileSystem extends LocalFileSystem {
         return files.toArray(new FileStatus[files.size()]);
     }
 
+    /** Lists the directories with one batch of requests if the long-lived calvalus-sh process is used */
+    @Override
+    public FileStatus[] listStatus(Path[] paths, PathFilter filter) throws FileNotFoundException, IOException {
+        setAccessTime();
+        if (isLoginUser) { return unixFileSystem.listStatus(paths, filter); }
+        List<FileStatus> files = new ArrayList<>();
+        for (List<FileStatus> listing : callListingCommand("ls", paths)) {
+            for (FileStatus file : listing) {
+                if (filter.accept(file.getPath())) {
+                    files.add(file);
+                }
+            }
+        }
+        LOG.info(paths.length + " dirs externally listed and filtered, " + files.size() + " entries");
+        return files.toArray(new FileStatus[files.size()]);
+    }
+
     @Override
     public RemoteIterator<LocatedFileStatus> listLocatedStatus(Path f)
     throws IOException {
@@ -221,9 +260,7 @@ public class CalvalusShFileSystem extends LocalFileSystem {
             LOG.info("file " + p + " externally listed, return default");
             return new FileStatus(1, true, 1, 1, 0, 0, FsPermission.createImmutable(Short.parseShort("0755", 8)), "cvop", "cvop", path);
         }
-        Process proc = callUnixCommand("stat", p);
-        List<FileStatus> files = collectPathsOutput(proc);
-        handleReturnCode(proc, files, path);
+        List<FileStatus> files = callListingCommand("stat", path);
         if (files.size() < 1) {
             LOG.setLevel(Level.INFO);
             LOG.info("file " + p + " externally listed for user " + username + ", not found");
@@ -233,14 +270,46 @@ public class CalvalusShFileSystem extends LocalFileSystem {
         return files.get(0);
     }
 
+    /**
+     * Determines the status of several files with one batch of requests if the long-lived calvalus-sh process is used.
+     *
+     * @return the status of each path, null for paths not found
+     */
+    public FileStatus[] getFileStatuses(Path[] paths) throws IOException {
+        setAccessTime();
+        FileStatus[] statuses = new FileStatus[paths.length];
+        if (isLoginUser) {
+            for (int i = 0; i < paths.length; i++) {
+                try {
+                    statuses[i] = unixFileSystem.getFileStatus(paths[i]);
+                } catch (FileNotFoundException e) {
+                    statuses[i] = null;
+                }
+            }
+            return statuses;
+        }
+        List<List<FileStatus>> listings = callListingCommand("stat", paths);
+        int found = 0;
+        for (int i = 0; i < paths.length; i++) {
+            if ("/".equals(paths[i].toUri().getPath())) {
+                statuses[i] = getFileStatus(paths[i]);
+            } else if (listings.get(i).size() > 0) {
+                statuses[i] = listings.get(i).get(0);
+            }
+            if (statuses[i] != null) {
+                found++;
+            }
+        }
+        LOG.info(paths.length + " files externally listed, " + found + " found");
+        return statuses;
+    }
+
     @Override
     public FileStatus[] globStatus(Path path) throws IOException {
         setAccessTime();
         if (isLoginUser) { return unixFileSystem.globStatus(path); }
         String p = path.toUri().getPath();
-        Process proc = callUnixCommand("glob", p);
-        List<FileStatus> files = collectPathsOutput(proc);
-        handleReturnCode(proc, files, path);
+        List<FileStatus> files = callListingCommand("glob", path);
         LOG.info("paths " + p + " externally listed, " + files.size() + " entries");
         return files.toArray(new FileStatus[files.size()]);
     }
@@ -250,9 +319,7 @@ public class CalvalusShFileSystem extends LocalFileSystem {
         setAccessTime();
         if (isLoginUser) { return unixFileSystem.globStatus(path); }
         String p = path.toUri().getPath();
-        Process proc = callUnixCommand("glob", p);
-        List<FileStatus> files = collectPathsOutput(proc);
-        handleReturnCode(proc, files, path);
+        List<FileStatus> files = callListingCommand("glob", path);
         for (int i = 0; i < files.size();) {
             if (! filter.accept(files.get(i).getPath())) {
                 files.remove(i);
@@ -329,9 +396,9 @@ public class CalvalusShFileSystem extends LocalFileSystem {
         setAccessTime();
         if (isLoginUser) { return unixFileSystem.mkdirs(path, permission); }
         String p = path.toUri().getPath();
-        Process proc = callUnixCommand("mkdirs", p, String.format("%o", permission.toShort()));
+        int code = callCommand("mkdirs", path, String.format("%o", permission.toShort()));
         LOG.info("dirs " + p + " externally created");
-        return waitForReturnCode(proc, path) == 0;
+        return code == 0;
     }
 
     @Override
@@ -339,9 +406,8 @@ public class CalvalusShFileSystem extends LocalFileSystem {
         setAccessTime();
         if (isLoginUser) { unixFileSystem.setPermission(path, permission); return; }
         String p = path.toUri().getPath();
-        Process proc = callUnixCommand("chmod", p, String.format("%o", permission.toShort()));
+        callCommand("chmod", path, String.format("%o", permission.toShort()));
         LOG.info("permission of " + p + " externally set");
-        waitForReturnCode(proc, path);
     }
 
     @Override
@@ -350,9 +416,9 @@ public class CalvalusShFileSystem extends LocalFileSystem {
         if (isLoginUser) { return unixFileSystem.rename(src, dst); }
         String p1 = src.toUri().getPath();
         String p2 = dst.toUri().getPath();
-        Process proc = callUnixCommand("mv", p1, p2);
+        int code = callCommand("mv", src, p2);
         LOG.info("path " + p1 + " externally renamed to " + p2);
-        return waitForReturnCode(proc, src) == 0;
+        return code == 0;
     }
 
     @Override
@@ -360,9 +426,9 @@ public class CalvalusShFileSystem extends LocalFileSystem {
         setAccessTime();
         if (isLoginUser) { return unixFileSystem.delete(path, recursive); }
         String p = path.toUri().getPath();
-        Process proc = callUnixCommand(recursive ? "rm -r" : "rm", p);
+        int code = callCommand(recursive ? "rm -r" : "rm", path);
         LOG.info("path " + p + " deleted");
-        return waitForReturnCode(proc, path) == 0;
+        return code == 0;
     }
 
 
@@ -394,84 +460,191 @@ public class CalvalusShFileSystem extends LocalFileSystem {
     }
 
 
+    static String getShCommand() {
+        return System.getProperty(CALVALUS_SH_COMMAND_PROPERTY, CALVALUS_SH_COMMAND);
+    }
+
     Process callUnixCommand(String cmd, String... path) throws IOException {
+        String command = getShCommand();
         ProcessBuilder pb = path.length == 1
-                ? new ProcessBuilder(CALVALUS_SH_COMMAND, username, cmd, path[0])
-                : new ProcessBuilder(CALVALUS_SH_COMMAND, username, cmd, path[0], path[1]);
+                ? new ProcessBuilder(command, username, cmd, path[0])
+                : new ProcessBuilder(command, username, cmd, path[0], path[1]);
         pb.redirectErrorStream(true);
         Process proc = pb.start();
         if (path.length == 1) {
-            LOG.info("calling " + CALVALUS_SH_COMMAND + " " + username + " " + cmd + " " + path[0]);
+            LOG.info("calling " + command + " " + username + " " + cmd + " " + path[0]);
         } else {
-            LOG.info("calling " + CALVALUS_SH_COMMAND + " " + username + " " + cmd + " " + path[0] + " " + path[1]);
+            LOG.info("calling " + command + " " + username + " " + cmd + " " + path[0] + " " + path[1]);
         }
         return proc;
     }
 
+    private List<FileStatus> callListingCommand(String cmd, Path path) throws IOException {
+        return callListingCommand(cmd, new Path[]{path}).get(0);
+    }
+
+    /** Calls ls, stat or glob for each path, with one batch of requests to the long-lived process if available */
+    private List<List<FileStatus>> callListingCommand(String cmd, Path[] paths) throws IOException {
+        List<String[]> argsList = new ArrayList<>(paths.length);
+        for (Path path : paths) {
+            argsList.add(new String[]{path.toUri().getPath()});
+        }
+        List<List<FileStatus>> listings = new ArrayList<>(paths.length);
+        List<CalvalusShHelper.Response> responses;
+        try {
+            responses = callHelper(cmd, argsList);
+        } catch (IOException e) {
+            // listings do not modify anything, they are repeated per request
+            LOG.warning("calling " + cmd + " with calvalus-sh helper of " + username + " failed, calling per request: " + e.getMessage());
+            responses = null;
+        }
+        for (int i = 0; i < paths.length; i++) {
+            List<FileStatus> files;
+            if (responses != null) {
+                files = new ArrayList<>();
+                for (String line : responses.get(i).lines) {
+                    files.add(parseStatus(line));
+                }
+                handleReturnCode(responses.get(i).code, files, paths[i]);
+            } else {
+                Process proc = callUnixCommand(cmd, argsList.get(i));
+                files = collectPathsOutput(proc);
+                handleReturnCode(proc, files, paths[i]);
+            }
+            listings.add(files);
+        }
+        return listings;
+    }
+
+    /** Calls mkdirs, chmod, mv or rm with the long-lived process if available, returns the return code */
+    private int callCommand(String cmd, Path path, String... args) throws IOException {
+        String[] cmdArgs = new String[args.length + 1];
+        cmdArgs[0] = path.toUri().getPath();
+        System.arraycopy(args, 0, cmdArgs, 1, args.length);
+        List<CalvalusShHelper.Response> responses;
+        try {
+            responses = callHelper(cmd, Collections.singletonList(cmdArgs));
+        } catch (IOException e) {
+            LOG.warning("calling " + cmd + " " + cmdArgs[0] + " with calvalus-sh helper of " + username + " failed: " + e.getMessage());
+            return repeatCommand(cmd, path, cmdArgs);
+        }
+        if (responses != null) {
+            return checkAccess(responses.get(0).code, path);
+        }
+        return waitForReturnCode(callUnixCommand(cmd, cmdArgs), path);
+    }
+
+    /**
+     * Calls a command again that may have been executed before the helper failed. A repeated mv or rm
+     * would fail if the first one has completed, their outcome is determined from the state of the paths.
+     * mkdirs and chmod are simply repeated.
+     */
+    private int repeatCommand(String cmd, Path path, String[] cmdArgs) throws IOException {
+        if (cmd.startsWith("rm") && !exists(path)) {
+            LOG.info("path " + cmdArgs[0] + " has been deleted before the helper failed");
+            return 0;
+        }
+        if ("mv".equals(cmd) && !exists(path)) {
+            boolean moved = exists(new Path(cmdArgs[1]));
+            LOG.info("path " + cmdArgs[0] + (moved ? " has been" : " has not been") + " moved before the helper failed");
+            return moved ? 0 : 1;
+        }
+        return waitForReturnCode(callUnixCommand(cmd, cmdArgs), path);
+    }
+
+    private boolean exists(Path path) throws IOException {
+        return !callListingCommand("stat", path).isEmpty();
+    }
+
+    /**
+     * @return the responses of the long-lived process, or null if it is not available and the requests have not been sent
+     * @throws IOException if the helper failed after the requests may have been sent
+     */
+    private List<CalvalusShHelper.Response> callHelper(String cmd, List<String[]> argsList) throws IOException {
+        if (helper == null || !helper.isAvailable()) {
+            return null;
+        }
+        try {
+            return helper.callAll(cmd, argsList);
+        } catch (CalvalusShHelper.NotSentException e) {
+            LOG.warning("calling " + cmd + " with calvalus-sh helper of " + username + " failed, calling per request: " + e.getMessage());
+            return null;
+        }
+    }
+
     private List<FileStatus> collectPathsOutput(Process proc) throws IOException {
         List<FileStatus> files = new ArrayList<>();
         try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(proc.getInputStream()))) {
             String line;
             while ((line = bufferedReader.readLine()) != null) {
-                String[] token = line.split("\t");
-                boolean isDir = token[0].endsWith("/");
-                Path path = new Path("file://" + (isDir ? token[0].substring(0, token[0].length() - 1) : token[0]));
-                // /hd1/yarn/local/usercache/      4096    1507550699000   755     yarn    hadoop
-                if (token.length >= 6) {
-                    long length = Long.parseLong(token[1]);
-                    long mtime = Long.parseLong(token[2]);
-                    FsPermission perm = FsPermission.createImmutable(Short.parseShort(token[3], 8));
-                    files.add(new FileStatus(length, isDir, 1, length, mtime, mtime, perm, token[4], token[5], path));
-                } else if (token.length >= 3) {
-                    long length = Long.parseLong(token[1]);
-                    long mtime = Long.parseLong(token[2]);
-                    files.add(new FileStatus(length, isDir, 1, length, mtime, mtime, FsPermission.createImmutable(Short.parseShort("0777", 8)), "cvop", "cvop", path));
-                } else {
-                    files.add(new FileStatus(1, isDir, 1, 1, 0, path));
-                }
+                files.add(parseStatus(line));
             }
         }
         return files;
     }
 
+    private static FileStatus parseStatus(String line) {
+        String[] token = line.split("\t");
+        boolean isDir = token[0].endsWith("/");
+        Path path = new Path("file://" + (isDir ? token[0].substring(0, token[0].length() - 1) : token[0]));
+        // /hd1/yarn/local/usercache/      4096    1507550699000   755     yarn    hadoop
+        if (token.length >= 6) {
+            long length = Long.parseLong(token[1]);
+            long mtime = Long.parseLong(token[2]);
+            FsPermission perm = FsPermission.createImmutable(Short.parseShort(token[3], 8));
+            return new FileStatus(length, isDir, 1, length, mtime, mtime, perm, token[4], token[5], path);
+        } else if (token.length >= 3) {
+            long length = Long.parseLong(token[1]);
+            long mtime = Long.parseLong(token[2]);
+            return new FileStatus(length, isDir, 1, length, mtime, mtime, FsPermission.createImmutable(Short.parseShort("0777", 8)), "cvop", "cvop", path);
+        } else {
+            return new FileStatus(1, isDir, 1, 1, 0, path);
+        }
+    }
+
     private void handleReturnCode(Process proc, List<FileStatus> files, Path path) throws AccessControlException {
         try {
-            int code = proc.waitFor();
-            switch (code) {
-                case 0:
-                    LOG.fine("path " + path.toString() + " externally listed, " + files.size() + " entries");
-                    break;
-                case 2:
-                    LOG.fine("path " + path.toString() + " externally listed, access denied");
-                    throw new AccessControlException(path.toString());
-                case 3:
-                    LOG.fine("path " + path.toString() + " externally listed, not found");
-                    files.clear();
-                    break;
-                default:
-                    LOG.warning("path " + path.toString() + " externally listed, listing failed");
-                    files.clear();
-            }
+            handleReturnCode(proc.waitFor(), files, path);
         } catch (InterruptedException _e) {
             LOG.fine("path " + path.toString() + " externally listed, interrupted");
             files.clear();
         }
     }
 
+    private void handleReturnCode(int code, List<FileStatus> files, Path path) throws AccessControlException {
+        switch (code) {
+            case 0:
+                LOG.fine("path " + path.toString() + " externally listed, " + files.size() + " entries");
+                break;
+            case 2:
+                LOG.fine("path " + path.toString() + " externally listed, access denied");
+                throw new AccessControlException(path.toString());
+            case 3:
+                LOG.fine("path " + path.toString() + " externally listed, not found");
+                files.clear();
+                break;
+            default:
+                LOG.warning("path " + path.toString() + " externally listed, listing failed");
+                files.clear();
+        }
+    }
+
     private int waitForReturnCode(Process proc, Path path) throws AccessControlException {
         try {
-            int code = proc.waitFor();
-            switch (code) {
-                case 2:
-                    LOG.fine("path " + path.toString() + " access denied");
-                    throw new AccessControlException(path.toString());
-                default:
-                    return code;
-            }
+            return checkAccess(proc.waitFor(), path);
         } catch (InterruptedException _e) {
             LOG.fine("path " + path.toString() + " interrupted");
             return 1;
         }
+    }
 
+    private int checkAccess(int code, Path path) throws AccessControlException {
+        switch (code) {
+            case 2:
+                LOG.fine("path " + path.toString() + " access denied");
+                throw new AccessControlException(path.toString());
+            default:
+                return code;
+        }
     }
 }
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.inventory.hadoop;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/**
+ * A long-lived calvalus-sh process of a user that answers requests read from its stdin,
+ * instead of one process per request.
+ * <p>
+ * The helper is started as {@code calvalus-sh <user> serve}. A request is one line with the
+ * tab-separated request id, command and arguments. A response starts with a line with the tab-separated
+ * request id, return code and number of output lines, followed by the output lines. The commands,
+ * the return codes and the output lines are the same as for a call of calvalus-sh per request.
+ * Responses are returned in the order of the requests. Requests may be pipelined, a client sends
+ * the next request without waiting for the response to the previous one, and a batch of requests
+ * is sent with a single flush.
+ * <p>
+ * The helper is started with the first request and restarted if it has terminated. If it fails
+ * before it has answered a request after a start, e.g. because the installed calvalus-sh does not
+ * know the serve command, it is disabled and {@link #isAvailable()} returns false. The caller then
+ * falls back to a call of calvalus-sh per request. A {@link NotSentException} tells the caller that
+ * the requests have not been sent, any other failure may occur after a request has been executed.
+ */
+class CalvalusShHelper implements Closeable {
+
+    private static final Logger LOG = CalvalusLogger.getLogger();
+    private static final long RESPONSE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+    private final String command;
+    private final String username;
+    private final Queue<CompletableFuture<Response>> pending = new ArrayDeque<>();
+    private Process process;
+    private Writer requests;
+    private long requestCounter;
+    private boolean answered;
+    private volatile boolean disabled;
+
+    CalvalusShHelper(String command, String username) {
+        this.command = command;
+        this.username = username;
+    }
+
+    boolean isAvailable() {
+        return !disabled;
+    }
+
+    /**
+     * Sends a request and waits for its response.
+     *
+     * @throws NotSentException if the request has not been sent to the helper
+     * @throws IOException       if the helper failed, the request has not been answered
+     */
+    Response call(String cmd, String... args) throws IOException {
+        return callAll(cmd, Collections.singletonList(args)).get(0);
+    }
+
+    /**
+     * Sends a batch of requests of the same command with one flush and waits for their responses.
+     *
+     * @param argsList the arguments of each request
+     * @return the responses in the order of the requests
+     * @throws NotSentException if the requests have not been sent to the helper
+     * @throws IOException       if the helper failed, the requests have not been answered completely
+     */
+    List<Response> callAll(String cmd, List<String[]> argsList) throws IOException {
+        List<CompletableFuture<Response>> futures = new ArrayList<>(argsList.size());
+        synchronized (this) {
+            if (disabled) {
+                throw new NotSentException("calvalus-sh helper of " + username + " disabled", null);
+            }
+            for (String[] args : argsList) {
+                for (String arg : args) {
+                    if (arg.indexOf('\t') >= 0 || arg.indexOf('\n') >= 0) {
+                        throw new NotSentException("argument " + arg + " cannot be passed to calvalus-sh helper", null);
+                    }
+                }
+            }
+            if (process == null || !process.isAlive()) {
+                start();
+            }
+            try {
+                for (String[] args : argsList) {
+                    StringBuilder request = new StringBuilder().append(++requestCounter).append('\t').append(cmd);
+                    for (String arg : args) {
+                        request.append('\t').append(arg);
+                    }
+                    CompletableFuture<Response> future = new CompletableFuture<>();
+                    pending.add(future);
+                    futures.add(future);
+                    requests.write(request.append('\n').toString());
+                }
+                requests.flush();
+            } catch (IOException e) {
+                fail(process, e);
+                throw e;
+            }
+        }
+        List<Response> responses = new ArrayList<>(futures.size());
+        long deadline = System.currentTimeMillis() + RESPONSE_TIMEOUT_MILLIS;
+        for (CompletableFuture<Response> future : futures) {
+            try {
+                responses.add(future.get(Math.max(1L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            } catch (TimeoutException e) {
+                IOException failure = new IOException("calvalus-sh helper of " + username + " does not respond");
+                fail(null, failure);
+                throw failure;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted waiting for calvalus-sh helper of " + username, e);
+            }
+        }
+        return responses;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (process != null) {
+            LOG.info("closing calvalus-sh helper of " + username);
+            try {
+                requests.close();
+            } catch (IOException e) {
+                LOG.fine("closing calvalus-sh helper of " + username + " failed: " + e.getMessage());
+            }
+            process.destroy();
+            failPending(new IOException("calvalus-sh helper of " + username + " closed"));
+            process = null;
+        }
+    }
+
+    private void start() throws IOException {
+        ProcessBuilder pb = new ProcessBuilder(command, username, "serve");
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        try {
+            process = pb.start();
+        } catch (IOException e) {
+            disabled = true;
+            LOG.warning("starting " + command + " " + username + " serve failed, calling per request: " + e.getMessage());
+            throw new NotSentException("starting calvalus-sh helper of " + username + " failed", e);
+        }
+        answered = false;
+        requests = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        Process started = process;
+        Thread reader = new Thread(() -> readResponses(started), "calvalus-sh-" + username);
+        reader.setDaemon(true);
+        reader.start();
+        LOG.info("started " + command + " " + username + " serve");
+    }
+
+    private void readResponses(Process process) {
+        try (BufferedReader responses = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String header;
+            while ((header = responses.readLine()) != null) {
+                String[] token = header.split("\t");
+                if (token.length != 3) {
+                    throw new IOException("unexpected response header '" + header + "'");
+                }
+                int numLines = Integer.parseInt(token[2]);
+                List<String> lines = new ArrayList<>(numLines);
+                for (int i = 0; i < numLines; i++) {
+                    String line = responses.readLine();
+                    if (line == null) {
+                        throw new EOFException("response " + token[0] + " truncated");
+                    }
+                    lines.add(line);
+                }
+                CompletableFuture<Response> future;
+                synchronized (this) {
+                    future = pending.poll();
+                    answered = true;
+                }
+                if (future == null) {
+                    throw new IOException("unexpected response " + token[0]);
+                }
+                future.complete(new Response(Integer.parseInt(token[1]), lines));
+            }
+            throw new EOFException("calvalus-sh helper of " + username + " terminated");
+        } catch (IOException | RuntimeException e) {
+            fail(process, e instanceof IOException ? (IOException) e : new IOException(e));
+        }
+    }
+
+    /**
+     * Stops the helper and fails the pending requests. The helper is disabled if it has not answered
+     * since it has been started.
+     *
+     * @param failed the process that failed, or null for the current one
+     */
+    private synchronized void fail(Process failed, IOException e) {
+        if (failed != null && failed != process) {
+            return;
+        }
+        if (process != null) {
+            process.destroy();
+            process = null;
+        }
+        if (!answered) {
+            disabled = true;
+            LOG.warning("calvalus-sh helper of " + username + " failed, calling per request: " + e.getMessage());
+        } else {
+            LOG.warning("calvalus-sh helper of " + username + " failed, restarting with next request: " + e.getMessage());
+        }
+        failPending(e);
+    }
+
+    private void failPending(IOException e) {
+        CompletableFuture<Response> future;
+        while ((future = pending.poll()) != null) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * The requests have not been sent to the helper, they have not been executed.
+     */
+    static class NotSentException extends IOException {
+
+        NotSentException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    static class Response {
+
+        final int code;
+        final List<String> lines;
+
+        Response(int code, List<String> lines) {
+            this.code = code;
+            this.lines = lines;
+        }
+    }
+}
@@ -17,9 +17,13 @@
 package com.bc.calvalus.inventory.hadoop;
 
 import com.bc.calvalus.JobClientsMap;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.mapred.JobClient;
 import org.apache.hadoop.mapred.JobConf;
 import org.junit.Ignore;
@@ -28,8 +32,11 @@ import org.junit.Test;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.file.Files;
 
 import static org.junit.Assert.*;
 
@@ -99,4 +106,79 @@ public class CalvalusShFileSystemTest {
             }
         };
     }
+
+    @Test
+    public void testPersistentHelperWithStandIn() throws Exception {
+        File testDir = Files.createTempDirectory("CalvalusShFileSystemTest").toFile();
+        File script = CalvalusShHelperTest.installStandIn(testDir, "calvalus-sh");
+        String command = System.setProperty(CalvalusShFileSystem.CALVALUS_SH_COMMAND_PROPERTY, script.getPath());
+        try {
+            File dir1 = new File(testDir, "dir1");
+            File dir2 = new File(testDir, "dir2");
+            assertTrue(dir1.mkdir());
+            assertTrue(dir2.mkdir());
+            Files.write(new File(dir1, "a.txt").toPath(), new byte[3]);
+            Files.write(new File(dir2, "b.txt").toPath(), new byte[5]);
+            Files.write(new File(dir2, "c.txt").toPath(), new byte[7]);
+            Configuration conf = new Configuration();
+            conf.setBoolean(CalvalusShFileSystem.CALVALUS_SH_PERSISTENT, true);
+            CalvalusShFileSystem fileSystem = new CalvalusShFileSystem("calvalus-sh-test-user", new LocalFileSystem());
+            fileSystem.initialize(new URI("file:///"), conf);
+
+            assertEquals(1, fileSystem.listStatus(path(dir1)).length);
+            assertEquals(3, fileSystem.listStatus(new Path[]{path(dir1), path(dir2)}).length);
+            FileStatus[] statuses = fileSystem.getFileStatuses(new Path[]{path(new File(dir2, "c.txt")), path(new File(dir2, "missing"))});
+            assertEquals(7, statuses[0].getLen());
+            assertNull(statuses[1]);
+            assertTrue(fileSystem.getFileStatus(path(dir1)).isDirectory());
+            assertTrue(fileSystem.mkdirs(path(new File(dir1, "sub")), FsPermission.getDirDefault()));
+            assertTrue(fileSystem.rename(path(new File(dir1, "a.txt")), path(new File(dir1, "sub/a.txt"))));
+            assertTrue(fileSystem.delete(path(dir1), true));
+            assertFalse(dir1.exists());
+            assertEquals(1, CalvalusShHelperTest.countStarts(script));
+            fileSystem.closeHelper();
+        } finally {
+            if (command != null) {
+                System.setProperty(CalvalusShFileSystem.CALVALUS_SH_COMMAND_PROPERTY, command);
+            } else {
+                System.clearProperty(CalvalusShFileSystem.CALVALUS_SH_COMMAND_PROPERTY);
+            }
+            FileUtil.fullyDelete(testDir);
+        }
+    }
+
+    @Test
+    public void testHelperFailingAfterMoveAndDelete() throws Exception {
+        File testDir = Files.createTempDirectory("CalvalusShFileSystemTest").toFile();
+        File script = CalvalusShHelperTest.installStandIn(testDir, "calvalus-sh-crash");
+        String command = System.setProperty(CalvalusShFileSystem.CALVALUS_SH_COMMAND_PROPERTY, script.getPath());
+        try {
+            File dir1 = new File(testDir, "dir1");
+            assertTrue(dir1.mkdir());
+            Files.write(new File(dir1, "a.txt").toPath(), new byte[3]);
+            Configuration conf = new Configuration();
+            conf.setBoolean(CalvalusShFileSystem.CALVALUS_SH_PERSISTENT, true);
+            CalvalusShFileSystem fileSystem = new CalvalusShFileSystem("calvalus-sh-test-user", new LocalFileSystem());
+            fileSystem.initialize(new URI("file:///"), conf);
+
+            assertTrue(fileSystem.getFileStatus(path(dir1)).isDirectory());
+            assertTrue(fileSystem.rename(path(new File(dir1, "a.txt")), path(new File(dir1, "b.txt"))));
+            assertTrue(new File(dir1, "b.txt").exists());
+            assertFalse(fileSystem.rename(path(new File(dir1, "a.txt")), path(new File(dir1, "c.txt"))));
+            assertTrue(fileSystem.delete(path(dir1), true));
+            assertFalse(dir1.exists());
+            fileSystem.closeHelper();
+        } finally {
+            if (command != null) {
+                System.setProperty(CalvalusShFileSystem.CALVALUS_SH_COMMAND_PROPERTY, command);
+            } else {
+                System.clearProperty(CalvalusShFileSystem.CALVALUS_SH_COMMAND_PROPERTY);
+            }
+            FileUtil.fullyDelete(testDir);
+        }
+    }
+
+    private static Path path(File file) {
+        return new Path(file.getPath());
+    }
 }
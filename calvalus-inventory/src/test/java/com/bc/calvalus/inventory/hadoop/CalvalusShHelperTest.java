@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.inventory.hadoop;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class CalvalusShHelperTest {
+
+    private File testDir;
+    private File dataDir;
+
+    @Before
+    public void setUp() throws Exception {
+        testDir = Files.createTempDirectory("CalvalusShHelperTest").toFile();
+        dataDir = new File(testDir, "data");
+        assertTrue(dataDir.mkdir());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        deleteRecursively(testDir);
+    }
+
+    @Test
+    public void testCall() throws Exception {
+        File script = installStandIn(testDir, "calvalus-sh");
+        Files.write(new File(dataDir, "a.txt").toPath(), new byte[17]);
+        assertTrue(new File(dataDir, "d").mkdir());
+        try (CalvalusShHelper helper = new CalvalusShHelper(script.getPath(), "someone")) {
+            CalvalusShHelper.Response stat = helper.call("stat", dataDir.getPath() + "/a.txt");
+            assertEquals(0, stat.code);
+            assertEquals(1, stat.lines.size());
+            String[] token = stat.lines.get(0).split("\t");
+            assertEquals(dataDir.getPath() + "/a.txt", token[0]);
+            assertEquals("17", token[1]);
+
+            CalvalusShHelper.Response ls = helper.call("ls", dataDir.getPath());
+            assertEquals(0, ls.code);
+            assertEquals(Arrays.asList(dataDir.getPath() + "/a.txt", dataDir.getPath() + "/d/"),
+                         Arrays.asList(ls.lines.get(0).split("\t")[0], ls.lines.get(1).split("\t")[0]));
+
+            assertEquals(3, helper.call("stat", dataDir.getPath() + "/missing").code);
+            assertEquals(0, helper.call("ls", dataDir.getPath() + "/d").lines.size());
+            assertEquals(0, helper.call("mkdirs", dataDir.getPath() + "/e/f", "755").code);
+            assertEquals(0, helper.call("mv", dataDir.getPath() + "/a.txt", dataDir.getPath() + "/b.txt").code);
+            assertTrue(new File(dataDir, "b.txt").exists());
+            assertEquals(1, helper.call("rm", dataDir.getPath() + "/e").code);
+            assertEquals(0, helper.call("rm -r", dataDir.getPath() + "/e").code);
+            assertFalse(new File(dataDir, "e").exists());
+            assertTrue(helper.isAvailable());
+        }
+        assertEquals(1, countStarts(script));
+    }
+
+    @Test
+    public void testPipelinedRequests() throws Exception {
+        File script = installStandIn(testDir, "calvalus-sh");
+        List<String[]> argsList = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            File file = new File(dataDir, "file" + i);
+            Files.write(file.toPath(), new byte[i]);
+            argsList.add(new String[]{file.getPath()});
+        }
+        try (CalvalusShHelper helper = new CalvalusShHelper(script.getPath(), "someone")) {
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<List<CalvalusShHelper.Response>>> batches = new ArrayList<>();
+                for (int t = 0; t < 8; t++) {
+                    batches.add(executor.submit(() -> helper.callAll("stat", argsList)));
+                }
+                for (Future<List<CalvalusShHelper.Response>> batch : batches) {
+                    List<CalvalusShHelper.Response> responses = batch.get();
+                    assertEquals(argsList.size(), responses.size());
+                    for (int i = 0; i < responses.size(); i++) {
+                        String[] token = responses.get(i).lines.get(0).split("\t");
+                        assertEquals(argsList.get(i)[0], token[0]);
+                        assertEquals(String.valueOf(i), token[1]);
+                    }
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+        assertEquals(1, countStarts(script));
+    }
+
+    @Test
+    public void testRestartAfterClose() throws Exception {
+        File script = installStandIn(testDir, "calvalus-sh");
+        CalvalusShHelper helper = new CalvalusShHelper(script.getPath(), "someone");
+        assertEquals(0, helper.call("stat", dataDir.getPath()).code);
+        helper.close();
+        assertEquals(0, helper.call("stat", dataDir.getPath()).code);
+        helper.close();
+        assertEquals(2, countStarts(script));
+    }
+
+    @Test
+    public void testDisabledWithoutServe() throws Exception {
+        File script = installStandIn(testDir, "calvalus-sh-noserve");
+        CalvalusShHelper helper = new CalvalusShHelper(script.getPath(), "someone");
+        try {
+            helper.call("stat", dataDir.getPath());
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertFalse(helper.isAvailable());
+        } finally {
+            helper.close();
+        }
+    }
+
+    @Test
+    public void testDisabledWithoutCommand() throws Exception {
+        CalvalusShHelper helper = new CalvalusShHelper(new File(testDir, "missing").getPath(), "someone");
+        try {
+            helper.call("stat", dataDir.getPath());
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertFalse(helper.isAvailable());
+        }
+    }
+
+    /**
+     * Copies the stand-in of calvalus-sh into a directory. The starts of the long-lived process are counted in a file next to it.
+     */
+    static File installStandIn(File dir, String name) throws IOException {
+        File script = new File(dir, name);
+        try (InputStream in = CalvalusShHelperTest.class.getResourceAsStream("calvalus-sh-stand-in.sh")) {
+            assertNotNull(in);
+            Files.copy(in, script.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        assertTrue(script.setExecutable(true));
+        return script;
+    }
+
+    static int countStarts(File script) throws IOException {
+        File starts = new File(script.getPath() + ".serve");
+        return starts.exists() ? Files.readAllLines(starts.toPath()).size() : 0;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,69 @@
+#!/bin/bash
+# Stand-in of calvalus-sh for tests, runs the commands as the calling user on the local file system.
+#
+# calvalus-sh <user> <command> <path> [<arg>]   runs one command
+# calvalus-sh <user> serve                      answers framed requests from stdin, see CalvalusShHelper
+#
+# A copy named *noserve* rejects serve like an installation without the long-lived mode.
+# A copy named *crash* terminates in serve after it has executed a mv or rm, without answering it.
+# Each start of serve is recorded in <script>.serve.
+
+shopt -s nullglob
+
+entry() {
+    if [ -d "$1" ]; then
+        stat --printf "%n/\t%s\t%Y000\t%a\t%U\t%G\n" "$1"
+    else
+        stat --printf "%n\t%s\t%Y000\t%a\t%U\t%G\n" "$1"
+    fi
+}
+
+run() {
+    local cmd=$1 path=${2%/} arg=$3
+    case "$cmd" in
+        ls)      [ -e "$path" ] || return 3
+                 if [ -d "$path" ]; then
+                     for f in "$path"/*; do entry "$f"; done
+                 else
+                     entry "$path"
+                 fi ;;
+        stat)    [ -e "$path" ] || return 3
+                 entry "$path" ;;
+        glob)    for f in $path; do entry "$f"; done ;;
+        cat)     [ -e "$path" ] || return 3
+                 cat "$path" ;;
+        mkdirs)  mkdir -p -m "$arg" "$path" 2>/dev/null || return 1 ;;
+        chmod)   [ -e "$path" ] || return 3
+                 chmod "$arg" "$path" 2>/dev/null || return 1 ;;
+        mv)      [ -e "$path" ] || return 3
+                 mv "$path" "$arg" 2>/dev/null || return 1 ;;
+        rm)      [ -e "$path" ] || return 3
+                 if [ -d "$path" ]; then rmdir "$path" 2>/dev/null || return 1; else rm -f "$path" || return 1; fi ;;
+        "rm -r") [ -e "$path" ] || return 3
+                 rm -rf "$path" || return 1 ;;
+        *)       echo "unknown command $cmd" >&2
+                 return 1 ;;
+    esac
+}
+
+if [ "$2" = serve ]; then
+    case "$(basename "$0")" in
+        *noserve*) echo "unknown command serve" >&2
+                   exit 1 ;;
+    esac
+    echo $$ >> "$0.serve"
+    while IFS=$'\t' read -r id cmd path arg; do
+        out=$(run "$cmd" "$path" "$arg")
+        code=$?
+        case "$(basename "$0"):$cmd" in
+            *crash*:mv|*crash*:rm*) exit 1 ;;
+        esac
+        if [ -z "$out" ]; then n=0; else n=$(printf '%s\n' "$out" | wc -l); fi
+        printf '%s\t%s\t%s\n' "$id" "$code" "$n"
+        if [ "$n" -gt 0 ]; then printf '%s\n' "$out"; fi
+    done
+    exit 0
+fi
+
+shift
+run "$@"
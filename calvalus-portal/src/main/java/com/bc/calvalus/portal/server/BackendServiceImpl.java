@@ -46,6 +46,7 @@ import com.bc.calvalus.processing.AggregatorDescriptor;
 import com.bc.calvalus.processing.BundleDescriptor;
 import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.MaskDescriptor;
+import com.bc.calvalus.processing.ProcessingScheduler;
 import com.bc.calvalus.processing.ProcessorDescriptor;
 import com.bc.calvalus.processing.hadoop.HadoopJobHook;
 import com.bc.calvalus.processing.hadoop.HadoopWorkflowItem;
@@ -114,8 +115,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -155,7 +156,7 @@ public class BackendServiceImpl extends RemoteServiceServlet implements BackendS
 
     private ServiceContainer serviceContainer;
     private BackendConfig backendConfig;
-    private Timer statusObserver;
+    private ScheduledFuture<?> statusObserver;
     private static final DateFormat CCSDS_FORMAT = DateUtils.createDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
 
     /**
@@ -188,7 +189,9 @@ public class BackendServiceImpl extends RemoteServiceServlet implements BackendS
     public void init() throws ServletException {
         if (serviceContainer != null) {
             LOG.log(Level.WARNING, String.format("Found pre-existing service container %s, closing...", serviceContainer.toString()));
-            statusObserver.cancel();
+            if (statusObserver != null) {
+                statusObserver.cancel(false);
+            }
             try {
                 serviceContainer.close();
             } catch (ProductionException e) {
@@ -213,7 +216,9 @@ public class BackendServiceImpl extends RemoteServiceServlet implements BackendS
     @Override
     public void destroy() {
         if (serviceContainer != null) {
-            statusObserver.cancel();
+            if (statusObserver != null) {
+                statusObserver.cancel(false);
+            }
             try {
                 serviceContainer.close();
             } catch (Exception e) {
@@ -904,14 +909,10 @@ public class BackendServiceImpl extends RemoteServiceServlet implements BackendS
     }
 
     private void startObservingProductionService() {
-        //statusObserver = new Timer("StatusObserver", true);
-        Timer statusObserver2 = serviceContainer.getProductionService().getProcessingService().getTimer();
-        statusObserver2.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                updateProductionStatuses();
-            }
-        }, PRODUCTION_STATUS_OBSERVATION_PERIOD, PRODUCTION_STATUS_OBSERVATION_PERIOD);
+        ProcessingScheduler scheduler = serviceContainer.getProductionService().getProcessingService().getScheduler();
+        statusObserver = scheduler.scheduleAtFixedRate(ProcessingScheduler.TaskType.STATUS_POLLING, "updateProductionStatuses",
+                                                       this::updateProductionStatuses,
+                                                       PRODUCTION_STATUS_OBSERVATION_PERIOD, PRODUCTION_STATUS_OBSERVATION_PERIOD, TimeUnit.MILLISECONDS);
     }
 
     private void updateProductionStatuses() {
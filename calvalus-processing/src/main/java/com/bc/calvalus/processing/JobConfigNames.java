@@ -40,11 +40,17 @@ public interface JobConfigNames {
     String CALVALUS_INPUT_PRODUCT_IDENTIFIERS = "calvalus.input.productIdentifiers";
     String CALVALUS_INPUT_COLLECTION_NAME = "calvalus.input.collectionName";
     String CALVALUS_INPUT_PRODUCT_TYPE = "calvalus.input.productType";
+    String CALVALUS_INPUT_SPLIT_THREADS = "calvalus.input.splitThreads";
+    String CALVALUS_INPUT_ARCHIVE_EXCLUDE = "calvalus.input.archiveExclude";
+    String CALVALUS_LOCAL_CACHE_DIR = "calvalus.localCache.dir";
+    String CALVALUS_LOCAL_CACHE_MAX_SIZE = "calvalus.localCache.maxSize";
+    String CALVALUS_INPUT_DIRECT_READ = "calvalus.input.directRead";
 
     String CALVALUS_OUTPUT_DIR = "calvalus.output.dir";
     String CALVALUS_OUTPUT_FORMAT = "calvalus.output.format";
     String CALVALUS_OUTPUT_PRODUCT_TYPE = "calvalus.output.productType";
     String CALVALUS_OUTPUT_COMPRESSION = "calvalus.output.compression";
+    String CALVALUS_OUTPUT_STREAMING_VERSION = "calvalus.output.streamingVersion";
     String CALVALUS_OUTPUT_REPLACE_NAN_VALUE = "calvalus.output.replaceNanValue";
     String CALVALUS_OUTPUT_CRS = "calvalus.output.crs";
     String CALVALUS_OUTPUT_BANDLIST = "calvalus.output.bandList";
@@ -54,9 +60,11 @@ public interface JobConfigNames {
     String CALVALUS_OUTPUT_POSTFIX = "calvalus.output.postfix";
     String CALVALUS_OUTPUT_NAMEFORMAT = "calvalus.output.nameformat";
     String CALVALUS_OUTPUT_PRESERVE_DATE_TREE = "calvalus.output.preserveDateTree";
+    String CALVALUS_OUTPUT_DIRECT_TO_HDFS = "calvalus.output.directToHdfs";
 
     String CALVALUS_OUTPUT_QUICKLOOKS = "calvalus.output.quicklooks";
     String CALVALUS_QUICKLOOK_PARAMETERS = "calvalus.ql.parameters";
+    String CALVALUS_QUICKLOOK_THREADS = "calvalus.ql.threads";
 
     String CALVALUS_REQUEST_SIZE_LIMIT = "calvalus.requestSizeLimit";
 
@@ -80,9 +88,19 @@ public interface JobConfigNames {
     String CALVALUS_CELL_PARAMETERS = "calvalus.cell.parameters";
     String CALVALUS_L3_REDUCERS = "calvalus.l3.reducers";
     String CALVALUS_L3_COMPUTE_OUTPUTS = "calvalus.l3.computeOutputs";
+    String CALVALUS_L3_COMBINER = "calvalus.l3.combiner";
+    String CALVALUS_L3_HALF_PRECISION_FEATURES = "calvalus.l3.halfPrecisionFeatures";
+    String CALVALUS_L3_PARTITION_BALANCING = "calvalus.l3.partitionBalancing";
+    String CALVALUS_L3_PARTITION_HISTOGRAM_DIR = "calvalus.l3.partitionHistogramDir";
+    String CALVALUS_L3_PARTITION_START_ROWS = "calvalus.l3.partitionStartRows";
+    String CALVALUS_L3_BINNING_THREADS = "calvalus.l3.binningThreads";
+    String CALVALUS_L3_BIN_INDEX = "calvalus.l3.binIndex";
+    String CALVALUS_L3_BIN_INDEX_RANGE_SIZE = "calvalus.l3.binIndex.rangeSize";
+    String CALVALUS_L3_BIN_INDEX_REGION = "calvalus.l3.binIndex.region";
     String CALVALUS_MOSAIC_PARAMETERS = "calvalus.mosaic.parameters";
     String CALVALUS_MA_PARAMETERS = "calvalus.ma.parameters";
     String CALVALUS_MA_USE_INPUT_PIXEL_POS = "calvalus.ma.useInputPixelPos";
+    String CALVALUS_MA_REFERENCE_INDEX = "calvalus.ma.referenceIndex";
     String CALVALUS_RA_PARAMETERS = "calvalus.ra.parameters";
     String CALVALUS_TA_PARAMETERS = "calvalus.ta.parameters";
     String PROCESSING_HISTORY = "processing_history";
@@ -114,6 +132,9 @@ public interface JobConfigNames {
 
     String CALVALUS_DEBUG_TILECACHE = "calvalus.debug.tileCache";
     String CALVALUS_DEBUG_FIRE = "calvalus.debug.fire";
+    String CALVALUS_FIRE_GRID_THREADS = "calvalus.fire.gridThreads";
+    String CALVALUS_FIRE_GRID_BLOCK_READS = "calvalus.fire.gridBlockReads";
+    String CALVALUS_RASTER_CODEC = "calvalus.raster.codec";
     String CALVALUS_INPUT_SUBSETTING = "calvalus.input.subsetting";
     String CALVALUS_OUTPUT_SUBSETTING = "calvalus.output.subsetting";
     String CALVALUS_OUTPUT_DATE_ELEMENT = "calvalus.output.dateElement";
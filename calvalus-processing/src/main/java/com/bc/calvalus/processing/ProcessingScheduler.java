@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the background tasks of a processing service, with a separate pool of threads per type of task.
+ * <p>
+ * A slow status poll thereby does not delay a job submission, and vice versa. A task that fails is logged
+ * and its periodic executions continue. Tasks submitted for a single execution are rejected while too many
+ * of the same type are waiting. The lag and the duration of the executions are recorded per type of task.
+ */
+public class ProcessingScheduler {
+
+    private static final Logger LOG = CalvalusLogger.getLogger();
+
+    public enum TaskType {
+        /**
+         * Polling of job and production statuses.
+         */
+        STATUS_POLLING(2),
+        /**
+         * Job submission and cluster management. A single thread keeps the order of the tasks.
+         */
+        JOB_SUBMISSION(1),
+        /**
+         * Cleaning of caches.
+         */
+        CACHE_MAINTENANCE(1);
+
+        private final int defaultNumThreads;
+
+        TaskType(int defaultNumThreads) {
+            this.defaultNumThreads = defaultNumThreads;
+        }
+
+        public int getDefaultNumThreads() {
+            return defaultNumThreads;
+        }
+    }
+
+    public static final int DEFAULT_MAX_PENDING = 100;
+
+    private final Map<TaskType, ScheduledThreadPoolExecutor> executors;
+    private final Map<TaskType, AtomicInteger> pendingCounts;
+    private final Map<TaskType, TaskStatistics> statistics;
+    private final int maxPending;
+
+    public ProcessingScheduler() {
+        this(new EnumMap<>(TaskType.class), DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * @param numThreads the number of threads per type of task, the default of the type if missing
+     * @param maxPending the maximum number of tasks per type waiting for a single execution
+     */
+    public ProcessingScheduler(Map<TaskType, Integer> numThreads, int maxPending) {
+        this.executors = new EnumMap<>(TaskType.class);
+        this.pendingCounts = new EnumMap<>(TaskType.class);
+        this.statistics = new EnumMap<>(TaskType.class);
+        this.maxPending = maxPending;
+        for (TaskType type : TaskType.values()) {
+            int threads = numThreads.getOrDefault(type, type.getDefaultNumThreads());
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(Math.max(1, threads), createThreadFactory(type));
+            executor.setRemoveOnCancelPolicy(true);
+            executors.put(type, executor);
+            pendingCounts.put(type, new AtomicInteger());
+            statistics.put(type, new TaskStatistics());
+        }
+    }
+
+    /**
+     * Schedules a task for periodic execution. Executions of the same task do not overlap,
+     * an execution that takes longer than the period delays the next one.
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(TaskType type, String name, Runnable task, long initialDelay, long period, TimeUnit unit) {
+        long periodMillis = unit.toMillis(period);
+        long firstTime = System.currentTimeMillis() + unit.toMillis(initialDelay);
+        Runnable periodicTask = new Runnable() {
+            private long scheduledTime = firstTime;
+
+            @Override
+            public void run() {
+                execute(type, name, task, scheduledTime);
+                scheduledTime += periodMillis;
+            }
+        };
+        return executors.get(type).scheduleAtFixedRate(periodicTask, initialDelay, period, unit);
+    }
+
+    /**
+     * Submits a task for a single execution as soon as a thread of its type is free.
+     *
+     * @return false if the task has been rejected because too many tasks of its type are waiting
+     */
+    public boolean submit(TaskType type, String name, Runnable task) {
+        AtomicInteger pendingCount = pendingCounts.get(type);
+        if (pendingCount.incrementAndGet() > maxPending) {
+            pendingCount.decrementAndGet();
+            statistics.get(type).recordRejection();
+            LOG.warning(String.format("%s task %s rejected, %d tasks waiting", type, name, maxPending));
+            return false;
+        }
+        long submitTime = System.currentTimeMillis();
+        executors.get(type).execute(() -> {
+            pendingCount.decrementAndGet();
+            execute(type, name, task, submitTime);
+        });
+        return true;
+    }
+
+    public TaskStatistics getStatistics(TaskType type) {
+        return statistics.get(type);
+    }
+
+    public void shutdown() {
+        for (ScheduledThreadPoolExecutor executor : executors.values()) {
+            executor.shutdownNow();
+        }
+        for (TaskType type : TaskType.values()) {
+            LOG.info(type + " tasks: " + statistics.get(type));
+        }
+    }
+
+    private void execute(TaskType type, String name, Runnable task, long scheduledTime) {
+        long startTime = System.currentTimeMillis();
+        boolean failed = false;
+        try {
+            task.run();
+        } catch (Throwable t) {
+            // an exception would cancel the periodic executions of the task
+            failed = true;
+            LOG.log(Level.SEVERE, String.format("%s task %s failed: %s", type, name, t.getMessage()), t);
+        } finally {
+            long stopTime = System.currentTimeMillis();
+            statistics.get(type).record(Math.max(0L, startTime - scheduledTime), stopTime - startTime, failed);
+        }
+    }
+
+    private static ThreadFactory createThreadFactory(TaskType type) {
+        AtomicInteger threadCount = new AtomicInteger();
+        String prefix = "calvalus-" + type.name().toLowerCase(Locale.ROOT).replace('_', '-') + "-";
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Counts and times the executions of the tasks of one type. The lag is the time
+     * an execution started after it was due.
+     */
+    public static class TaskStatistics {
+
+        private long executionCount;
+        private long failureCount;
+        private long rejectionCount;
+        private long totalLagMillis;
+        private long maxLagMillis;
+        private long totalDurationMillis;
+        private long maxDurationMillis;
+
+        synchronized void record(long lagMillis, long durationMillis, boolean failed) {
+            executionCount++;
+            if (failed) {
+                failureCount++;
+            }
+            totalLagMillis += lagMillis;
+            maxLagMillis = Math.max(maxLagMillis, lagMillis);
+            totalDurationMillis += durationMillis;
+            maxDurationMillis = Math.max(maxDurationMillis, durationMillis);
+        }
+
+        synchronized void recordRejection() {
+            rejectionCount++;
+        }
+
+        public synchronized long getExecutionCount() {
+            return executionCount;
+        }
+
+        public synchronized long getFailureCount() {
+            return failureCount;
+        }
+
+        public synchronized long getRejectionCount() {
+            return rejectionCount;
+        }
+
+        public synchronized long getMeanLagMillis() {
+            return executionCount > 0 ? totalLagMillis / executionCount : 0L;
+        }
+
+        public synchronized long getMaxLagMillis() {
+            return maxLagMillis;
+        }
+
+        public synchronized long getMeanDurationMillis() {
+            return executionCount > 0 ? totalDurationMillis / executionCount : 0L;
+        }
+
+        public synchronized long getMaxDurationMillis() {
+            return maxDurationMillis;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%d executions, %d failed, %d rejected, lag mean %d ms max %d ms, duration mean %d ms max %d ms",
+                                 executionCount, failureCount, rejectionCount,
+                                 getMeanLagMillis(), maxLagMillis, getMeanDurationMillis(), maxDurationMillis);
+        }
+    }
+}
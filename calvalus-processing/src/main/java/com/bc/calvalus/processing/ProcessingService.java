@@ -6,7 +6,6 @@ import com.bc.calvalus.processing.hadoop.HadoopJobHook;
 import org.apache.hadoop.mapreduce.Job;
 
 import java.io.IOException;
-import java.util.Timer;
 
 /**
  * Service offered by some processing system. Includes processor information and job management.
@@ -85,5 +84,8 @@ public interface ProcessingService<JobId> {
 
     void invalidateBundleCache();
 
-    Timer getTimer();
+    /**
+     * @return the scheduler for the background tasks of the service and its clients
+     */
+    ProcessingScheduler getScheduler();
 }
@@ -19,6 +19,7 @@ package com.bc.calvalus.processing;
 import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.processing.beam.CalvalusProductIO;
 import com.bc.calvalus.processing.beam.GpfUtils;
+import com.bc.calvalus.processing.hadoop.NodeLocalCache;
 import com.bc.calvalus.processing.hadoop.ParameterizedSplit;
 import com.bc.calvalus.processing.hadoop.ProductSplit;
 import com.bc.calvalus.processing.utils.GeometryUtils;
@@ -452,6 +453,14 @@ public abstract class ProcessorAdapter {
                 FileSplit fileSplit = (FileSplit) inputSplit;
                 getMapContext().getCounter("Direct File System Counters", "FILE_SPLIT_BYTES_READ").setValue(fileSplit.getLength());
             }
+            CalvalusProductIO.ArchiveStatistics archiveStatistics = CalvalusProductIO.getArchiveStatistics();
+            if (archiveStatistics.getArchiveBytes() > 0) {
+                getMapContext().getCounter("Direct File System Counters", "ARCHIVE_BYTES").setValue(archiveStatistics.getArchiveBytes());
+                getMapContext().getCounter("Direct File System Counters", "ARCHIVE_BYTES_READ").setValue(archiveStatistics.getArchiveBytesRead());
+                getMapContext().getCounter("Direct File System Counters", "ARCHIVE_BYTES_EXTRACTED").setValue(archiveStatistics.getBytesExtracted());
+                getMapContext().getCounter("Direct File System Counters", "ARCHIVE_ENTRIES_SKIPPED").setValue(archiveStatistics.getEntriesSkipped());
+            }
+            NodeLocalCache.reportCounters(getMapContext());
             File fileLocation = product.getFileLocation();
             LOG.info(String.format("openInputProduct: fileLocation  = %s", fileLocation));
             if (fileLocation != null) {
@@ -24,7 +24,9 @@ import com.bc.calvalus.processing.hadoop.ProgressSplitProgressMonitor;
 import com.bc.calvalus.processing.l2.L2FormattingMapper;
 import com.bc.ceres.core.ProgressMonitor;
 import com.bc.ceres.core.SubProgressMonitor;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.Mapper;
@@ -37,10 +39,21 @@ import java.awt.image.RenderedImage;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 /**
  * A mapper for generating quick-looks of products.
+ * The quick-looks of a product can be rendered and encoded concurrently,
+ * the number of threads is given by {@link JobConfigNames#CALVALUS_QUICKLOOK_THREADS}, 1 by default,
+ * as each thread holds a full image in memory.
+ * A quick-look with a tile size is written as a pyramid of tiles in a directory
+ * {@code <name>/<zoom>/<x>/<y>.<type>}, described by {@code <name>/index.json}.
  */
 public class QLMapper extends Mapper<NullWritable, NullWritable, NullWritable, NullWritable> {
 
@@ -60,7 +73,9 @@ public class QLMapper extends Mapper<NullWritable, NullWritable, NullWritable, N
                 final String inputFileName = processorAdapter.getInputPath().getName();
                 final String productName = FileUtils.getFilenameWithoutExtension(inputFileName);
                 final Quicklooks.QLConfig[] configs = Quicklooks.get(context.getConfiguration());
-                for (Quicklooks.QLConfig config : configs) {
+                final String[] imageFileNames = new String[configs.length];
+                for (int i = 0; i < configs.length; i++) {
+                    Quicklooks.QLConfig config = configs[i];
                     final String imageFileName;
                     if (context.getConfiguration().get(JobConfigNames.CALVALUS_OUTPUT_REGEX) != null
                             && context.getConfiguration().get(JobConfigNames.CALVALUS_OUTPUT_REPLACEMENT) != null) {
@@ -72,8 +87,9 @@ public class QLMapper extends Mapper<NullWritable, NullWritable, NullWritable, N
                     } else {
                         imageFileName = productName + "_" + config.getBandName();
                     }
-                    createQuicklook(product, imageFileName, context, config);
+                    imageFileNames[i] = imageFileName;
                 }
+                createQuicklooks(product, imageFileNames, context, configs);
             }
         } finally {
             pm.done();
@@ -81,10 +97,63 @@ public class QLMapper extends Mapper<NullWritable, NullWritable, NullWritable, N
         }
     }
 
+    /**
+     * Creates the quick-looks of a product, on a pool of threads if configured. The quick-looks share the
+     * rasters of the product, a band used by several of them is read once.
+     */
+    public static void createQuicklooks(Product product, String[] imageFileNames, Mapper.Context context,
+                                        Quicklooks.QLConfig[] configs) throws IOException, InterruptedException {
+        QuicklookSources sources = new QuicklookSources(product);
+        int numThreads = Math.min(configs.length, context.getConfiguration().getInt(JobConfigNames.CALVALUS_QUICKLOOK_THREADS, 1));
+        if (numThreads <= 1) {
+            for (int i = 0; i < configs.length; i++) {
+                createQuicklook(sources, imageFileNames[i], context, configs[i]);
+            }
+            return;
+        }
+        LOGGER.info(String.format("creating %d quicklooks with %d threads", configs.length, numThreads));
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>(configs.length);
+            for (int i = 0; i < configs.length; i++) {
+                String imageFileName = imageFileNames[i];
+                Quicklooks.QLConfig config = configs[i];
+                futures.add(executorService.submit(() -> {
+                    createQuicklook(sources, imageFileName, context, config);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IOException(cause);
+                }
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
     public static void createQuicklook(Product product, String imageFileName, Mapper.Context context,
                                        Quicklooks.QLConfig config) throws IOException, InterruptedException {
+        createQuicklook(new QuicklookSources(product), imageFileName, context, config);
+    }
+
+    private static void createQuicklook(QuicklookSources sources, String imageFileName, Mapper.Context context,
+                                        Quicklooks.QLConfig config) throws IOException, InterruptedException {
+        if (config.getTileSize() > 0) {
+            createQuicklookPyramid(sources, imageFileName, context, config);
+            return;
+        }
 //        try {
-            RenderedImage quicklookImage = new QuicklookGenerator(context, product, config).createImage();
+            RenderedImage quicklookImage = new QuicklookGenerator(context, config, sources).createImage();
             if (quicklookImage != null) {
                 OutputStream outputStream = createOutputStream(context, imageFileName + "." + config.getImageType());
                 OutputStream pmOutputStream = new BytesCountingOutputStream(outputStream, context);
@@ -100,6 +169,27 @@ public class QLMapper extends Mapper<NullWritable, NullWritable, NullWritable, N
 //        }
     }
 
+    private static void createQuicklookPyramid(QuicklookSources sources, String imageFileName, Mapper.Context context,
+                                               Quicklooks.QLConfig config) throws IOException, InterruptedException {
+        QuicklookPyramid pyramid = new QuicklookGenerator(context, config, sources).createPyramid();
+        if (pyramid == null) {
+            return;
+        }
+        String imageType = config.getImageType();
+        Path pyramidDir = new Path(FileOutputFormat.getWorkOutputPath(context), imageFileName);
+        FileSystem fs = pyramidDir.getFileSystem(context.getConfiguration());
+        pyramid.write((zoom, x, y, tile) -> {
+            Path tilePath = new Path(pyramidDir, zoom + "/" + x + "/" + y + "." + imageType);
+            try (OutputStream outputStream = new BytesCountingOutputStream(new BufferedOutputStream(fs.create(tilePath)), context)) {
+                ImageIO.write(tile, imageType, outputStream);
+            }
+        });
+        try (OutputStream outputStream = fs.create(new Path(pyramidDir, "index.json"))) {
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(outputStream, pyramid.getIndex(imageType));
+        }
+        LOGGER.info(String.format("quicklook pyramid %s written with %d zoom levels", imageFileName, pyramid.getMaxZoom() + 1));
+    }
+
     private static OutputStream createOutputStream(Mapper.Context context, String fileName) throws IOException, InterruptedException {
         Path path = new Path(FileOutputFormat.getWorkOutputPath(context), fileName);
         final FSDataOutputStream fsDataOutputStream = path.getFileSystem(context.getConfiguration()).create(path);
@@ -34,7 +34,6 @@ import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.util.Progressable;
 import org.esa.snap.core.datamodel.*;
 import org.esa.snap.core.dataop.barithm.BandArithmetic;
-import org.esa.snap.core.gpf.GPF;
 import org.esa.snap.core.image.ColoredBandImageMultiLevelSource;
 import org.esa.snap.core.jexp.ParseException;
 import org.esa.snap.core.layer.MaskLayerType;
@@ -52,9 +51,7 @@ import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
 import java.io.*;
 import java.nio.file.Files;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -67,25 +64,76 @@ public class QuicklookGenerator {
     private static final Logger LOGGER = CalvalusLogger.getLogger();
     
     private final TaskAttemptContext context;
-    private final Product sourceProduct;
     private final Quicklooks.QLConfig qlConfig;
+    private final QuicklookSources sources;
 
     public QuicklookGenerator(TaskAttemptContext context, Product product, Quicklooks.QLConfig qlConfig) {
+        this(context, qlConfig, new QuicklookSources(product));
+    }
+
+    /**
+     * @param sources the rasters shared with the generators of the other quick-looks of the product
+     */
+    public QuicklookGenerator(TaskAttemptContext context, Quicklooks.QLConfig qlConfig, QuicklookSources sources) {
         this.context = context;
-        this.sourceProduct = product;
         this.qlConfig = qlConfig;
+        this.sources = sources;
     }
 
     public RenderedImage createImage() throws IOException {
-        Product product = sourceProduct;
-        if (qlConfig.getSubSamplingX() > 0 || qlConfig.getSubSamplingY() > 0) {
-            Map<String, Object> subsetParams = new HashMap<>();
-            subsetParams.put("subSamplingX", qlConfig.getSubSamplingX());
-            subsetParams.put("subSamplingY", qlConfig.getSubSamplingY());
-            product = GPF.createProduct("Subset", subsetParams, product);
+        final ImageLayer imageLayer;
+        final CollectionLayer collectionLayer = new CollectionLayer();
+        boolean canUseAlpha = canUseAlpha(qlConfig);
+        // the products and bands are shared, only the rendering runs concurrently
+        synchronized (sources) {
+            imageLayer = createLayers(collectionLayer, canUseAlpha, true);
+            if (imageLayer == null) {
+                return null;
+            }
         }
+
+        Rectangle2D modelBounds = collectionLayer.getModelBounds();
+        Rectangle2D imageBounds = imageLayer.getModelToImageTransform().createTransformedShape(modelBounds).getBounds2D();
+        int imageType = canUseAlpha ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR;
+        BufferedImage bufferedImage = new BufferedImage((int) imageBounds.getWidth(),
+                                                        (int) imageBounds.getHeight(), imageType);
+
+        final BufferedImageRendering rendering = new BufferedImageRendering(bufferedImage);
+        Viewport viewport = rendering.getViewport();
+        viewport.setModelYAxisDown(isModelYAxisDown(imageLayer));
+        viewport.zoom(modelBounds);
+
+        final Graphics2D graphics = rendering.getGraphics();
+        graphics.setColor(qlConfig.getBackgroundColor());
+        graphics.fill(imageBounds);
+
+        collectionLayer.render(new Rendering() {
+            @Override
+            public Graphics2D getGraphics() {
+                context.progress();
+                return rendering.getGraphics();
+            }
+
+            @Override
+            public Viewport getViewport() {
+                context.progress();
+                return rendering.getViewport();
+            }
+        });
+        return rendering.getImage();
+    }
+
+    /**
+     * Adds the layers of the quick-look to the collection layer.
+     *
+     * @param withOverlays whether to add the overlay, mask, shapefile and legend layers
+     * @return the layer of the product image, or null if the quick-look cannot be created
+     */
+    private ImageLayer createLayers(CollectionLayer collectionLayer, boolean canUseAlpha, boolean withOverlays) throws IOException {
+        Product product = sources.getProduct(qlConfig.getSubSamplingX(), qlConfig.getSubSamplingY());
         ColoredBandImageMultiLevelSource multiLevelSource;
         Band masterBand;
+        ImageInfo legendImageInfo;
         if (qlConfig.getRGBAExpressions() != null && qlConfig.getRGBAExpressions().length > 0) {
             String[] rgbaExpressions = qlConfig.getRGBAExpressions();
             if (rgbaExpressions.length != 3 && rgbaExpressions.length != 4) {
@@ -103,7 +151,10 @@ public class QuicklookGenerator {
                 String expression = rgbaExpressions[i];
                 Band rgbBand = product.getBand(expression);
                 if (rgbBand == null) {
-                    rgbBand = new VirtualBand(RGBImageProfile.RGB_BAND_NAMES[i],
+                    rgbBand = sources.getExpressionBand(product, expression);
+                }
+                if (rgbBand == null) {
+                    rgbBand = new VirtualBand(getUniqueBandName(product, RGBImageProfile.RGB_BAND_NAMES[i]),
                                               ProductData.TYPE_FLOAT32,
                                               determineWidth(expression, product),
                                               determineHeight(expression, product),
@@ -113,6 +164,7 @@ public class QuicklookGenerator {
                     product.addBand(rgbBand);
                     rgbBand.setNoDataValue(Float.NaN);
                     rgbBand.setNoDataValueUsed(true);
+                    sources.putExpressionBand(product, expression, rgbBand);
                 }
                 rgbBands[i] = rgbBand;
             }
@@ -132,6 +184,7 @@ public class QuicklookGenerator {
                     rgbChannelDef.setMaxDisplaySample(i, qlConfig.getRGBAMaxSamples()[i]);
                 }
             }
+            legendImageInfo = masterBand.getImageInfo();
         } else if (qlConfig.getBandName() != null) {
             masterBand = product.getBand(qlConfig.getBandName());
             String cpdURL = qlConfig.getCpdURL();
@@ -154,7 +207,8 @@ public class QuicklookGenerator {
 
             try (InputStream inputStream = HadoopProcessingService.openUrlAsStream(cpdURL, context.getConfiguration())) {
                 ColorPaletteDef colorPaletteDef = loadColorPaletteDef(inputStream);
-                ImageInfo imageInfo = multiLevelSource.getImageInfo();
+                // a copy, the image info of the band is shared with the other quick-looks of the band
+                ImageInfo imageInfo = multiLevelSource.getImageInfo().clone();
                 if (masterBand.getIndexCoding() != null) {
                     imageInfo.setColors(colorPaletteDef.getColors());
                 } else {
@@ -163,16 +217,19 @@ public class QuicklookGenerator {
                                                  stx.getMinimum(),
                                                  stx.getMaximum(), false);
                 }
+                multiLevelSource.setImageInfo(imageInfo);
+                legendImageInfo = imageInfo;
             }
         } else {
             throw new IllegalArgumentException("Neither RGB nor band information given");
         }
         final ImageLayer imageLayer = new ImageLayer(multiLevelSource);
-        boolean canUseAlpha = canUseAlpha(qlConfig);
-        CollectionLayer collectionLayer = new CollectionLayer();
         List<Layer> layerChildren = collectionLayer.getChildren();
 
         layerChildren.add(0, imageLayer);
+        if (!withOverlays) {
+            return imageLayer;
+        }
 
         if (qlConfig.getMaskOverlays() != null) {
             addMaskOverlays(product, qlConfig.getMaskOverlays(), masterBand, layerChildren);
@@ -184,46 +241,41 @@ public class QuicklookGenerator {
         // TODO generalize
         Configuration configuration = context.getConfiguration();
         if ("FRESHMON".equalsIgnoreCase(configuration.get(JobConfigNames.CALVALUS_PROJECT_NAME))) {
-            addFreshmonOverlay(qlConfig, masterBand, imageLayer, canUseAlpha, layerChildren);
+            addFreshmonOverlay(qlConfig, masterBand, legendImageInfo, imageLayer, canUseAlpha, layerChildren);
         } else {
             if (qlConfig.getOverlayURL() != null) {
                 addOverlay(imageLayer, layerChildren, qlConfig.getOverlayURL());
             }
             if (qlConfig.isLegendEnabled()) {
-                addLegend(masterBand, imageLayer, canUseAlpha, layerChildren);
+                addLegend(masterBand, legendImageInfo, imageLayer, canUseAlpha, layerChildren);
             }
         }
+        return imageLayer;
+    }
 
+    private static String getUniqueBandName(Product product, String name) {
+        String uniqueName = name;
+        for (int i = 2; product.containsRasterDataNode(uniqueName); i++) {
+            uniqueName = name + "_" + i;
+        }
+        return uniqueName;
+    }
 
-        Rectangle2D modelBounds = collectionLayer.getModelBounds();
-        Rectangle2D imageBounds = imageLayer.getModelToImageTransform().createTransformedShape(modelBounds).getBounds2D();
-        int imageType = canUseAlpha ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR;
-        BufferedImage bufferedImage = new BufferedImage((int) imageBounds.getWidth(),
-                                                        (int) imageBounds.getHeight(), imageType);
-
-        final BufferedImageRendering rendering = new BufferedImageRendering(bufferedImage);
-        Viewport viewport = rendering.getViewport();
-        viewport.setModelYAxisDown(isModelYAxisDown(imageLayer));
-        viewport.zoom(modelBounds);
-
-        final Graphics2D graphics = rendering.getGraphics();
-        graphics.setColor(qlConfig.getBackgroundColor());
-        graphics.fill(imageBounds);
-
-        collectionLayer.render(new Rendering() {
-            @Override
-            public Graphics2D getGraphics() {
-                context.progress();
-                return rendering.getGraphics();
-            }
-
-            @Override
-            public Viewport getViewport() {
-                context.progress();
-                return rendering.getViewport();
-            }
-        });
-        return rendering.getImage();
+    /**
+     * Creates a tile pyramid of the product image. Overlays, legends and masks are not part of the pyramid.
+     *
+     * @return the pyramid, or null if the quick-look cannot be created
+     */
+    public QuicklookPyramid createPyramid() throws IOException {
+        final ImageLayer imageLayer;
+        synchronized (sources) {
+            imageLayer = createLayers(new CollectionLayer(), canUseAlpha(qlConfig), false);
+        }
+        if (imageLayer == null) {
+            return null;
+        }
+        RenderedImage image = imageLayer.getMultiLevelSource().getImage(0);
+        return new QuicklookPyramid(image, qlConfig.getTileSize(), qlConfig.getBackgroundColor(), canUseAlpha(qlConfig));
     }
 
     private static int determineWidth(String expression, Product product) {
@@ -360,9 +412,9 @@ public class QuicklookGenerator {
         return shapefile;
     }
 
-    private void addFreshmonOverlay(Quicklooks.QLConfig qlConfig, Band masterBand, ImageLayer imageLayer,
+    private void addFreshmonOverlay(Quicklooks.QLConfig qlConfig, Band masterBand, ImageInfo imageInfo, ImageLayer imageLayer,
                                            boolean canUseAlpha, List<Layer> layerChildren) throws IOException {
-        BufferedImage legend = createImageLegend(masterBand, canUseAlpha, ImageLegend.VERTICAL);
+        BufferedImage legend = createImageLegend(masterBand, imageInfo, canUseAlpha, ImageLegend.VERTICAL);
         Configuration conf = context.getConfiguration();
         RenderedImage logo = ImageIO.read(HadoopProcessingService.openUrlAsStream(qlConfig.getOverlayURL(), conf));
         float scale = (float) legend.getWidth() / (float) logo.getWidth();
@@ -400,8 +452,8 @@ public class QuicklookGenerator {
         layerChildren.add(0, overlayLayer);
     }
 
-    private static void addLegend(Band masterBand, ImageLayer imageLayer, boolean useAlpha, List<Layer> layerChildren) {
-        BufferedImage legend = createImageLegend(masterBand, useAlpha, ImageLegend.VERTICAL);
+    private static void addLegend(Band masterBand, ImageInfo imageInfo, ImageLayer imageLayer, boolean useAlpha, List<Layer> layerChildren) {
+        BufferedImage legend = createImageLegend(masterBand, imageInfo, useAlpha, ImageLegend.VERTICAL);
 
         AffineTransform imageToModelTransform = imageLayer.getImageToModelTransform();
         imageToModelTransform.translate(masterBand.getRasterWidth() - legend.getWidth(),
@@ -410,8 +462,8 @@ public class QuicklookGenerator {
         layerChildren.add(0, overlayLayer);
     }
 
-    private static BufferedImage createImageLegend(Band masterBand, boolean useAlpha, int orientation) {
-        ImageLegend imageLegend = new ImageLegend(masterBand.getImageInfo(), masterBand);
+    private static BufferedImage createImageLegend(Band masterBand, ImageInfo imageInfo, boolean useAlpha, int orientation) {
+        ImageLegend imageLegend = new ImageLegend(imageInfo, masterBand);
         imageLegend.setHeaderText(masterBand.getName());
         imageLegend.setOrientation(orientation);
         imageLegend.setBackgroundTransparency(0.6f);
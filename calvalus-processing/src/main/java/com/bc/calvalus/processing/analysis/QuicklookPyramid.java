@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.analysis;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pyramid of quick-look tiles in the XYZ layout. Zoom level 0 is the coarsest, it shows the whole image in
+ * a single tile, each further level doubles the resolution up to the full resolution of the image.
+ * Tile x, y of a level covers the pixels from x * tileSize, y * tileSize of the level, tiles at the right and
+ * bottom border are filled up with the background colour.
+ * <p>
+ * Only the tiles of the finest level are read from the image. The pyramid is traversed depth first,
+ * each coarser tile is averaged from its four finer tiles, so at most four tiles per level are in memory.
+ */
+public class QuicklookPyramid {
+
+    public interface TileWriter {
+
+        void writeTile(int zoom, int x, int y, BufferedImage tile) throws IOException;
+    }
+
+    private final RenderedImage image;
+    private final int tileSize;
+    private final Color backgroundColor;
+    private final boolean useAlpha;
+    private final int maxZoom;
+
+    /**
+     * @param tileSize the width and height of the tiles, an even number
+     * @param useAlpha whether the tiles have an alpha channel
+     */
+    public QuicklookPyramid(RenderedImage image, int tileSize, Color backgroundColor, boolean useAlpha) {
+        if (tileSize < 2 || tileSize % 2 != 0) {
+            throw new IllegalArgumentException("tile size must be an even number, not " + tileSize);
+        }
+        this.image = image;
+        this.tileSize = tileSize;
+        this.backgroundColor = backgroundColor;
+        this.useAlpha = useAlpha;
+        int size = Math.max(image.getWidth(), image.getHeight());
+        int zoom = 0;
+        while (size > tileSize) {
+            size = (size + 1) / 2;
+            zoom++;
+        }
+        this.maxZoom = zoom;
+    }
+
+    public int getMaxZoom() {
+        return maxZoom;
+    }
+
+    public int getLevelWidth(int zoom) {
+        return scaleDown(image.getWidth(), maxZoom - zoom);
+    }
+
+    public int getLevelHeight(int zoom) {
+        return scaleDown(image.getHeight(), maxZoom - zoom);
+    }
+
+    public int getNumTilesX(int zoom) {
+        return (getLevelWidth(zoom) + tileSize - 1) / tileSize;
+    }
+
+    public int getNumTilesY(int zoom) {
+        return (getLevelHeight(zoom) + tileSize - 1) / tileSize;
+    }
+
+    /**
+     * Writes all tiles of all levels, each tile once.
+     */
+    public void write(TileWriter writer) throws IOException {
+        writeTile(0, 0, 0, writer);
+    }
+
+    /**
+     * @return the description of the pyramid, to be written next to the tiles
+     */
+    public Map<String, Object> getIndex(String imageType) {
+        Map<String, Object> index = new LinkedHashMap<>();
+        index.put("layout", "xyz");
+        index.put("imageType", imageType);
+        index.put("width", image.getWidth());
+        index.put("height", image.getHeight());
+        index.put("tileSize", tileSize);
+        index.put("minZoom", 0);
+        index.put("maxZoom", maxZoom);
+        List<Map<String, Object>> levels = new ArrayList<>();
+        for (int zoom = 0; zoom <= maxZoom; zoom++) {
+            Map<String, Object> level = new LinkedHashMap<>();
+            level.put("zoom", zoom);
+            level.put("width", getLevelWidth(zoom));
+            level.put("height", getLevelHeight(zoom));
+            level.put("numTilesX", getNumTilesX(zoom));
+            level.put("numTilesY", getNumTilesY(zoom));
+            levels.add(level);
+        }
+        index.put("levels", levels);
+        return index;
+    }
+
+    private BufferedImage writeTile(int zoom, int x, int y, TileWriter writer) throws IOException {
+        BufferedImage tile;
+        if (zoom == maxZoom) {
+            tile = readTile(x, y);
+        } else {
+            BufferedImage[] children = new BufferedImage[4];
+            for (int dy = 0; dy < 2; dy++) {
+                for (int dx = 0; dx < 2; dx++) {
+                    int childX = 2 * x + dx;
+                    int childY = 2 * y + dy;
+                    if (childX < getNumTilesX(zoom + 1) && childY < getNumTilesY(zoom + 1)) {
+                        children[2 * dy + dx] = writeTile(zoom + 1, childX, childY, writer);
+                    }
+                }
+            }
+            tile = downsample(children);
+        }
+        writer.writeTile(zoom, x, y, tile);
+        return tile;
+    }
+
+    private BufferedImage readTile(int x, int y) {
+        BufferedImage tile = createTile();
+        Graphics2D graphics = tile.createGraphics();
+        try {
+            graphics.drawRenderedImage(image, AffineTransform.getTranslateInstance(-image.getMinX() - x * tileSize,
+                                                                                  -image.getMinY() - y * tileSize));
+        } finally {
+            graphics.dispose();
+        }
+        return tile;
+    }
+
+    /**
+     * Averages the 2 x 2 pixels of the four finer tiles, weighted by their alpha. Missing tiles are background.
+     */
+    private BufferedImage downsample(BufferedImage[] children) {
+        BufferedImage tile = createTile();
+        int half = tileSize / 2;
+        int[] source = new int[2 * tileSize];
+        int[] target = new int[half];
+        for (int i = 0; i < children.length; i++) {
+            BufferedImage child = children[i];
+            if (child == null) {
+                continue;
+            }
+            int offsetX = (i % 2) * half;
+            int offsetY = (i / 2) * half;
+            for (int y = 0; y < half; y++) {
+                child.getRGB(0, 2 * y, tileSize, 2, source, 0, tileSize);
+                for (int x = 0; x < half; x++) {
+                    target[x] = average(source[2 * x], source[2 * x + 1],
+                                        source[tileSize + 2 * x], source[tileSize + 2 * x + 1]);
+                }
+                tile.setRGB(offsetX, offsetY + y, half, 1, target, 0, half);
+            }
+        }
+        return tile;
+    }
+
+    private BufferedImage createTile() {
+        BufferedImage tile = new BufferedImage(tileSize, tileSize,
+                                               useAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = tile.createGraphics();
+        try {
+            graphics.setColor(backgroundColor);
+            graphics.fillRect(0, 0, tileSize, tileSize);
+        } finally {
+            graphics.dispose();
+        }
+        return tile;
+    }
+
+    private static int average(int argb0, int argb1, int argb2, int argb3) {
+        int a0 = argb0 >>> 24;
+        int a1 = argb1 >>> 24;
+        int a2 = argb2 >>> 24;
+        int a3 = argb3 >>> 24;
+        int a = a0 + a1 + a2 + a3;
+        if (a == 0) {
+            return 0;
+        }
+        int r = channel(argb0, 16) * a0 + channel(argb1, 16) * a1 + channel(argb2, 16) * a2 + channel(argb3, 16) * a3;
+        int g = channel(argb0, 8) * a0 + channel(argb1, 8) * a1 + channel(argb2, 8) * a2 + channel(argb3, 8) * a3;
+        int b = channel(argb0, 0) * a0 + channel(argb1, 0) * a1 + channel(argb2, 0) * a2 + channel(argb3, 0) * a3;
+        return ((a + 2) / 4) << 24 | ((r + a / 2) / a) << 16 | ((g + a / 2) / a) << 8 | ((b + a / 2) / a);
+    }
+
+    private static int channel(int argb, int shift) {
+        return (argb >> shift) & 0xff;
+    }
+
+    private static int scaleDown(int size, int numHalvings) {
+        for (int i = 0; i < numHalvings; i++) {
+            size = (size + 1) / 2;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.analysis;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.gpf.GPF;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The rasters shared by the quick-looks of one product.
+ * <p>
+ * Quick-looks with the same sub-sampling use the same subset product, quick-looks with the same
+ * RGB expression use the same virtual band. They thereby render from the same source images, so
+ * the tiles of a band are read once and the statistics of a band are computed once for all of them.
+ * The generators set up their layers while holding the lock of this object, and render without it.
+ */
+public class QuicklookSources {
+
+    private final Product sourceProduct;
+    private final Map<String, Product> subsets;
+    private final Map<Product, Map<String, Band>> expressionBands;
+
+    public QuicklookSources(Product sourceProduct) {
+        this.sourceProduct = sourceProduct;
+        this.subsets = new HashMap<>();
+        this.expressionBands = new IdentityHashMap<>();
+    }
+
+    /**
+     * @return the source product, or a subset of it if a sub-sampling is given
+     */
+    public synchronized Product getProduct(int subSamplingX, int subSamplingY) {
+        if (subSamplingX <= 0 && subSamplingY <= 0) {
+            return sourceProduct;
+        }
+        return subsets.computeIfAbsent(subSamplingX + "x" + subSamplingY, key -> {
+            Map<String, Object> subsetParams = new HashMap<>();
+            subsetParams.put("subSamplingX", subSamplingX);
+            subsetParams.put("subSamplingY", subSamplingY);
+            return GPF.createProduct("Subset", subsetParams, sourceProduct);
+        });
+    }
+
+    /**
+     * @return the virtual band added to the product for the expression, or null if there is none yet
+     */
+    public synchronized Band getExpressionBand(Product product, String expression) {
+        Map<String, Band> bands = expressionBands.get(product);
+        return bands != null ? bands.get(expression) : null;
+    }
+
+    public synchronized void putExpressionBand(Product product, String expression, Band band) {
+        expressionBands.computeIfAbsent(product, p -> new HashMap<>()).put(expression, band);
+    }
+}
@@ -75,6 +75,11 @@ public class Quicklooks {
         private boolean legendEnabled;
         @Parameter
         private String shapefileURL;
+        /**
+         * If greater than 0, a pyramid of tiles of this size is written instead of a single image.
+         */
+        @Parameter(defaultValue = "0")
+        private int tileSize;
 
         public String getImageType() {
             return imageType;
@@ -128,6 +133,14 @@ public class Quicklooks {
             return shapefileURL;
         }
 
+        public int getTileSize() {
+            return tileSize;
+        }
+
+        public void setTileSize(int tileSize) {
+            this.tileSize = tileSize;
+        }
+
         public void setBandName(String bandName) {
             this.bandName = bandName;
         }
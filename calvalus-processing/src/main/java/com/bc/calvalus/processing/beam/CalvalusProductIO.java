@@ -17,7 +17,10 @@
 package com.bc.calvalus.processing.beam;
 
 import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.hadoop.FSImageInputStream;
+import com.bc.calvalus.processing.hadoop.NodeLocalCache;
+import com.bc.calvalus.processing.hadoop.ZipArchive;
 import com.bc.ceres.glevel.MultiLevelImage;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.*;
@@ -45,6 +48,7 @@ import java.awt.*;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -57,6 +61,8 @@ import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -68,6 +74,7 @@ import java.util.zip.ZipInputStream;
 public class CalvalusProductIO {
 
     private static final Logger LOG = CalvalusLogger.getLogger();
+    private static final ArchiveStatistics ARCHIVE_STATISTICS = new ArchiveStatistics();
 
     /**
      * Reads a product from the distributed file system.
@@ -197,9 +204,12 @@ public class CalvalusProductIO {
         if (localFile.exists()) {
             LOG.info("copyFileToLocal: File already exist");
         } else {
+            NodeLocalCache cache;
             if ("file".equals(path.toUri().getScheme())) {
                 LOG.info("copyFileToLocal: creating symlink");
                 FileUtil.symLink(path.toString(), localFile.getAbsolutePath());                
+            } else if ((cache = NodeLocalCache.getInstance(conf)) != null) {
+                cache.copyToLocal(path, localFile, conf);
             } else {
                 FileSystem fs = path.getFileSystem(conf);
                 FileUtil.copy(fs, path, localFile, false, conf);
@@ -208,44 +218,115 @@ public class CalvalusProductIO {
         return localFile;
     }
 
+    /**
+     * Extracts an input archive to the working directory. Entries matching the pattern
+     * {@link JobConfigNames#CALVALUS_INPUT_ARCHIVE_EXCLUDE}, if given, are not extracted.
+     */
     public static File[] uncompressArchiveToCWD(Path path, Configuration conf) throws IOException {
-        return uncompressArchiveToDir(path, new File("."), conf);
+        String exclude = conf.get(JobConfigNames.CALVALUS_INPUT_ARCHIVE_EXCLUDE);
+        return uncompressArchiveToDir(path, new File("."), conf, exclude != null ? Pattern.compile(exclude) : null);
     }
 
     public static File[] uncompressArchiveToDir(Path path, File localDir, Configuration conf) throws IOException {
+        return uncompressArchiveToDir(path, localDir, conf, null);
+    }
+
+    /**
+     * Extracts an archive to a local directory. Of zip archives, only the central directory
+     * and the extracted entries are read.
+     *
+     * @param exclude pattern of the names of entries not to extract, may be {@code null}
+     * @return the extracted files and directories
+     */
+    public static File[] uncompressArchiveToDir(Path path, File localDir, Configuration conf, Pattern exclude) throws IOException {
         long t1 = System.currentTimeMillis();
-        FileSystem fs = path.getFileSystem(conf);
-        InputStream inputStream = new BufferedInputStream(fs.open(path));
         List<File> extractedFiles = new ArrayList<>();
 
         String archiveName = path.getName().toLowerCase();
         long localSize = 0;
+        int skipped = 0;
         boolean isZippedSlstrWithoutExtension = path.getName().matches("S3._SL_1_RBT.*_NT_00.");
         if (archiveName.endsWith(".zip") || isZippedSlstrWithoutExtension) {
-            try (ZipInputStream zipIn = new ZipInputStream(inputStream)) {
-                ZipEntry entry;
-                while ((entry = zipIn.getNextEntry()) != null) {
-                    extractedFiles.add(handleEntry(localDir, entry.getName(), entry.isDirectory(), zipIn));
-                    localSize += entry.getSize();
+            ZipArchive archive = openZipArchive(path, conf);
+            if (archive != null) {
+                try {
+                    for (ZipArchive.Entry entry : archive.getEntries()) {
+                        if (exclude != null && exclude.matcher(entry.getName()).matches()) {
+                            skipped++;
+                        } else if (entry.isDirectory()) {
+                            extractedFiles.add(handleEntry(localDir, entry.getName(), true, null));
+                        } else {
+                            try (InputStream entryIn = archive.openEntry(entry)) {
+                                extractedFiles.add(handleEntry(localDir, entry.getName(), false, entryIn));
+                            }
+                            localSize += entry.getSize();
+                        }
+                    }
+                } finally {
+                    archive.close();
                 }
+                ARCHIVE_STATISTICS.record(archive.getLength(), archive.getBytesRead(), localSize, skipped);
+            } else {
+                FileSystem fs = path.getFileSystem(conf);
+                long archiveSize = fs.getFileStatus(path).getLen();
+                try (ZipInputStream zipIn = new ZipInputStream(new BufferedInputStream(fs.open(path)))) {
+                    ZipEntry entry;
+                    while ((entry = zipIn.getNextEntry()) != null) {
+                        if (exclude != null && exclude.matcher(entry.getName()).matches()) {
+                            skipped++;
+                            continue;
+                        }
+                        extractedFiles.add(handleEntry(localDir, entry.getName(), entry.isDirectory(), zipIn));
+                        localSize += entry.getSize();
+                    }
+                }
+                ARCHIVE_STATISTICS.record(archiveSize, archiveSize, localSize, skipped);
             }
         } else if (isTarCompressed(archiveName)) {
-            try (TarInputStream tarIn = getTarInputStream(archiveName, inputStream)) {
+            FileSystem fs = path.getFileSystem(conf);
+            long archiveSize = fs.getFileStatus(path).getLen();
+            try (TarInputStream tarIn = getTarInputStream(archiveName, new BufferedInputStream(fs.open(path)))) {
                 TarEntry entry;
                 while ((entry = tarIn.getNextEntry()) != null) {
+                    if (exclude != null && exclude.matcher(entry.getName()).matches()) {
+                        skipped++;
+                        continue;
+                    }
                     extractedFiles.add(handleEntry(localDir, entry.getName(), entry.isDirectory(), tarIn));
                     localSize += entry.getSize();
-                    
                 }
             }
+            ARCHIVE_STATISTICS.record(archiveSize, archiveSize, localSize, skipped);
         } else {
             throw new IOException("unsupported archive format: " + archiveName);
         }
         long t2 = System.currentTimeMillis();
-        LOG.info(String.format("uncompressArchiveToDir: size %,d bytes  took %,d ms  from %s", localSize, t2 - t1, path));
+        LOG.info(String.format("uncompressArchiveToDir: size %,d bytes  %d entries skipped  took %,d ms  from %s",
+                               localSize, skipped, t2 - t1, path));
         return extractedFiles.toArray(new File[0]);
     }
 
+    /**
+     * @return the archive with its central directory read, or null if the central directory cannot be read
+     */
+    private static ZipArchive openZipArchive(Path path, Configuration conf) throws IOException {
+        try {
+            return ZipArchive.open(path, conf);
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            LOG.warning("reading central directory of " + path + " failed, reading archive sequentially: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return the sizes of the input archives extracted by this process so far
+     */
+    public static ArchiveStatistics getArchiveStatistics() {
+        return ARCHIVE_STATISTICS;
+    }
+
     private static File handleEntry(File localDir, String name, boolean isDirectory, InputStream zipIn) throws IOException {
         File file = new File(localDir, name);
         if (isDirectory) {
@@ -262,6 +343,40 @@ public class CalvalusProductIO {
         return file;
     }
 
+    /**
+     * Sizes of the archives extracted, of the bytes read from them, and of the files extracted.
+     */
+    public static class ArchiveStatistics {
+
+        private final AtomicLong archiveBytes = new AtomicLong();
+        private final AtomicLong archiveBytesRead = new AtomicLong();
+        private final AtomicLong bytesExtracted = new AtomicLong();
+        private final AtomicLong entriesSkipped = new AtomicLong();
+
+        void record(long archiveSize, long bytesRead, long extracted, int skipped) {
+            archiveBytes.addAndGet(archiveSize);
+            archiveBytesRead.addAndGet(bytesRead);
+            bytesExtracted.addAndGet(extracted);
+            entriesSkipped.addAndGet(skipped);
+        }
+
+        public long getArchiveBytes() {
+            return archiveBytes.get();
+        }
+
+        public long getArchiveBytesRead() {
+            return archiveBytesRead.get();
+        }
+
+        public long getBytesExtracted() {
+            return bytesExtracted.get();
+        }
+
+        public long getEntriesSkipped() {
+            return entriesSkipped.get();
+        }
+    }
+
     private static TarInputStream getTarInputStream(String archiveName, InputStream inputStream) throws IOException {
         if (isTgz(archiveName)) {
             return new TarInputStream(new GZIPInputStream(inputStream));
@@ -17,6 +17,7 @@
 package com.bc.calvalus.processing.beam;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
@@ -25,6 +26,10 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.compress.DefaultCodec;
 import org.apache.hadoop.util.Progressable;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
@@ -33,6 +38,9 @@ import java.util.Set;
 
 /**
  * The index for the key/value base streaming product format.
+ * <p>
+ * Version 1 keeps the record positions in a separate index file. Version 2 appends the
+ * positions and lengths of the encoded slices as the last record of the product itself.
  *
  * @author MarcoZ
  */
@@ -132,4 +140,48 @@ public class StreamingProductIndex {
         }
         return Collections.emptyMap();
     }
+
+    /**
+     * @return the value of the last record of a version 2 product, the positions and lengths of the
+     * encoded slices followed by the length of this data
+     */
+    static byte[] toFooter(Map<String, long[]> sliceIndex) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(sliceIndex.size());
+        for (Map.Entry<String, long[]> entry : sliceIndex.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue()[0]);
+            out.writeInt((int) entry.getValue()[1]);
+        }
+        out.writeInt(out.size());
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the slice index from the end of a version 2 product.
+     *
+     * @return the position and length of the encoded slices by key
+     */
+    static Map<String, long[]> readFooter(FSDataInputStream in, long fileLength) throws IOException {
+        byte[] lengthBytes = new byte[4];
+        in.readFully(fileLength - 4, lengthBytes);
+        int footerLength = new DataInputStream(new ByteArrayInputStream(lengthBytes)).readInt();
+        if (footerLength < 4 || footerLength > fileLength - 4) {
+            throw new IOException("invalid slice index length " + footerLength);
+        }
+        byte[] footer = new byte[footerLength];
+        in.readFully(fileLength - 4 - footerLength, footer);
+        DataInputStream footerIn = new DataInputStream(new ByteArrayInputStream(footer));
+        int numEntries = footerIn.readInt();
+        Map<String, long[]> sliceIndex = new HashMap<>(2 * numEntries);
+        for (int i = 0; i < numEntries; i++) {
+            String key = footerIn.readUTF();
+            long position = footerIn.readLong();
+            int length = footerIn.readInt();
+            sliceIndex.put(key, new long[]{position, length});
+        }
+        return sliceIndex;
+    }
 }
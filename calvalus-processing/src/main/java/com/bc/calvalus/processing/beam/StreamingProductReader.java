@@ -19,6 +19,7 @@ package com.bc.calvalus.processing.beam;
 import com.bc.calvalus.processing.hadoop.ByteArrayWritable;
 import com.bc.ceres.core.ProgressMonitor;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.SequenceFile;
@@ -46,11 +47,20 @@ import java.io.InputStream;
 import java.util.Map;
 
 
+/**
+ * Reads products written by the {@link StreamingProductWriter}.
+ * <p>
+ * Slices of version 1 products are read through the sequence file reader, one at a time.
+ * Slices of version 2 products are read with positional reads of the encoded slice,
+ * concurrently and without a lock, and are decoded straight into the tile.
+ */
 public class StreamingProductReader extends AbstractProductReader {
 
     private Path path;
     private Configuration configuration;
     private Map<String, Long> keyIndex;
+    private Map<String, long[]> sliceIndex;
+    private FSDataInputStream sliceInputStream;
 
     private SequenceFile.Reader reader;
     private int sliceHeight;
@@ -95,7 +105,12 @@ public class StreamingProductReader extends AbstractProductReader {
 
     public void close() throws IOException {
         reader.close();
-        keyIndex.clear();
+        if (sliceInputStream != null) {
+            sliceInputStream.close();
+            sliceIndex.clear();
+        } else {
+            keyIndex.clear();
+        }
     }
 
     private Product readHeader() throws IOException {
@@ -106,8 +121,23 @@ public class StreamingProductReader extends AbstractProductReader {
 
         dom = createDOM(metadata.get(new Text("dim")));
         Product product = DimapProductHelpers.createProduct(dom);
-        readTiepoints(product);
 
+        Text formatVersionText = metadata.get(new Text(StreamingProductWriter.FORMAT_VERSION_KEY));
+        if (formatVersionText != null) {
+            int formatVersion = Integer.parseInt(formatVersionText.toString());
+            Text encodingText = metadata.get(new Text(StreamingProductWriter.SLICE_ENCODING_KEY));
+            if (formatVersion != 2 || encodingText == null || !StreamingSliceCodec.ENCODING.equals(encodingText.toString())) {
+                throw new IllegalFileFormatException("unsupported streaming format version " + formatVersion + " of " + path);
+            }
+            FileSystem fileSystem = path.getFileSystem(configuration);
+            long fileLength = fileSystem.getFileStatus(path).getLen();
+            sliceInputStream = fileSystem.open(path);
+            sliceIndex = StreamingProductIndex.readFooter(sliceInputStream, fileLength);
+            readTiepoints(product);
+            return product;
+        }
+
+        readTiepoints(product);
 
         Path indexPath = StreamingProductIndex.getIndexPath(path);
         StreamingProductIndex streamingProductIndex = new StreamingProductIndex(indexPath, configuration);
@@ -126,6 +156,14 @@ public class StreamingProductReader extends AbstractProductReader {
     }
 
     private void readTiepoints(Product product) throws IOException {
+        if (sliceInputStream != null) {
+            for (TiePointGrid tpg : product.getTiePointGrids()) {
+                ProductData productData = ProductData.createInstance(tpg.getDataType(), (int) tpg.getNumDataElems());
+                readSlice("tiepoint:" + tpg.getName(), productData);
+                tpg.setData(productData);
+            }
+            return;
+        }
         Text key = new Text();
         ByteArrayWritable value = new ByteArrayWritable();
         TiePointGrid[] tiePointGrids = product.getTiePointGrids();
@@ -146,6 +184,17 @@ public class StreamingProductReader extends AbstractProductReader {
         }
     }
 
+    // a positional read, safe to be called concurrently
+    private void readSlice(String key, ProductData productData) throws IOException {
+        long[] slice = sliceIndex.get(key);
+        if (slice == null) {
+            throw new IllegalStateException(String.format("key '%s' not found in slice index", key));
+        }
+        byte[] encoded = new byte[(int) slice[1]];
+        sliceInputStream.readFully(slice[0], encoded);
+        StreamingSliceCodec.decode(encoded, productData.getElems(), productData.getNumElems());
+    }
+
     private void initGeoCodings(Document dom, Product product) {
         final GeoCoding[] geoCodings = DimapProductHelpers.createGeoCoding(dom, product);
         if (geoCodings != null) {
@@ -205,6 +254,10 @@ public class StreamingProductReader extends AbstractProductReader {
         private void computeProductData(ProductData productData, int y) throws IOException {
             int sliceIndex = MathUtils.floorInt(y / sliceHeight);
             String expectedKey = rasterDataNode.getName() + ":" + sliceIndex;
+            if (sliceInputStream != null) {
+                readSlice(expectedKey, productData);
+                return;
+            }
 
             Text key = new Text();
             ByteArrayWritable value = new ByteArrayWritable();
@@ -24,6 +24,7 @@ import com.sun.media.jai.util.SunTileCache;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.util.Progressable;
@@ -63,14 +64,28 @@ import java.util.Map;
 import java.util.logging.Logger;
 
 
+/**
+ * Writes products as sequence files of slices, the rows of a tile height of each band.
+ * <p>
+ * In version 1 of the format the values are {@link ByteArrayWritable}s with the raw slice data and the
+ * record positions are kept in a separate index file. In version 2 the values are slices encoded by the
+ * {@link StreamingSliceCodec}, and the last record holds the positions of the encoded slices in the file,
+ * so that a reader can read any slice with a single positional read.
+ */
 public class StreamingProductWriter extends AbstractProductWriter {
 
+    static final String FORMAT_VERSION_KEY = "format.version";
+    static final String SLICE_ENCODING_KEY = "slice.encoding";
+    static final String SLICE_INDEX_KEY = "slice.index";
+
     private static final Logger LOG = CalvalusLogger.getLogger();
     private final Map<String, Long> indexMap;
+    private final Map<String, long[]> sliceIndex;
     private Path path;
     private Configuration configuration;
     private final Progressable progressable = null; // TODO no longer needed ??, progress through pm
     private SequenceFile.Writer sequenceFileWriter;
+    private int formatVersion;
     private int tileHeight;
     private static boolean tileCacheDebugging;
 
@@ -78,6 +93,7 @@ public class StreamingProductWriter extends AbstractProductWriter {
     public StreamingProductWriter(ProductWriterPlugIn productWriterPlugIn) {
         super(productWriterPlugIn);
         indexMap = new HashMap<>();
+        sliceIndex = new HashMap<>();
     }
 
     @Override
@@ -89,12 +105,16 @@ public class StreamingProductWriter extends AbstractProductWriter {
             path = pathConfiguration.getPath();
             configuration = pathConfiguration.getConfiguration();
             tileCacheDebugging = configuration.getBoolean(JobConfigNames.CALVALUS_DEBUG_TILECACHE, false);
+            formatVersion = configuration.getInt(JobConfigNames.CALVALUS_OUTPUT_STREAMING_VERSION, 1);
+            if (formatVersion != 1 && formatVersion != 2) {
+                throw new IllegalArgumentException("unsupported streaming format version " + formatVersion);
+            }
         } else {
             throw new IllegalFileFormatException("input is not of the correct type.");
         }
         tileHeight = product.getPreferredTileSize().height;
         sequenceFileWriter = writeHeader(product, path);
-        writeTiePointData(product, sequenceFileWriter, indexMap);
+        writeTiePointData(product);
         LOG.info(" written header");
     }
 
@@ -102,8 +122,7 @@ public class StreamingProductWriter extends AbstractProductWriter {
     public void writeBandRasterData(Band band, int sourceOffsetX, int sourceOffsetY, int sourceWidth, int sourceHeight, ProductData productData, ProgressMonitor pm) throws IOException {
         int sliceIndex = sourceOffsetY / tileHeight;
         String key = band.getName() + ":" + sliceIndex;
-        updateIndex(indexMap, key, sequenceFileWriter.getLength());
-        writeProductData(sequenceFileWriter, key, productData);
+        writeSlice(key, productData);
     }
 
     @Override
@@ -113,6 +132,11 @@ public class StreamingProductWriter extends AbstractProductWriter {
 
     @Override
     public void close() throws IOException {
+        if (formatVersion == 2) {
+            sequenceFileWriter.append(new Text(SLICE_INDEX_KEY), new BytesWritable(StreamingProductIndex.toFooter(sliceIndex)));
+            sequenceFileWriter.close();
+            return;
+        }
         sequenceFileWriter.close();
 
         Path indexPath = StreamingProductIndex.getIndexPath(path);
@@ -286,12 +310,16 @@ public class StreamingProductWriter extends AbstractProductWriter {
 
     private SequenceFile.Writer writeHeader(Product product, Path outputPath) throws IOException {
         SequenceFile.Metadata metadata = createMetadata(product, tileHeight);
+        if (formatVersion == 2) {
+            metadata.set(new Text(FORMAT_VERSION_KEY), new Text(Integer.toString(formatVersion)));
+            metadata.set(new Text(SLICE_ENCODING_KEY), new Text(StreamingSliceCodec.ENCODING));
+        }
         FileSystem fileSystem = outputPath.getFileSystem(configuration);
         return SequenceFile.createWriter(fileSystem,
                 configuration,
                 outputPath,
                 Text.class,
-                ByteArrayWritable.class,
+                formatVersion == 2 ? BytesWritable.class : ByteArrayWritable.class,
                 1024 * 1024, //buffersize,
                 fileSystem.getDefaultReplication(),
                 fileSystem.getDefaultBlockSize(),
@@ -301,13 +329,24 @@ public class StreamingProductWriter extends AbstractProductWriter {
                 metadata);
     }
 
-    private static void writeTiePointData(Product product, SequenceFile.Writer writer, Map<String, Long> indexMap) throws IOException {
+    private void writeTiePointData(Product product) throws IOException {
         TiePointGrid[] tiePointGrids = product.getTiePointGrids();
         for (TiePointGrid tiePointGrid : tiePointGrids) {
             String key = "tiepoint:" + tiePointGrid.getName();
-            ProductData productData = tiePointGrid.getData();
-            updateIndex(indexMap, key, writer.getLength());
-            writeProductData(writer, key, productData);
+            writeSlice(key, tiePointGrid.getData());
+        }
+    }
+
+    private void writeSlice(String key, ProductData productData) throws IOException {
+        if (formatVersion == 2) {
+            byte[] encoded = StreamingSliceCodec.encode(productData.getElems(), productData.getNumElems());
+            sequenceFileWriter.append(new Text(key), new BytesWritable(encoded));
+            // the encoded bytes end the record
+            long end = sequenceFileWriter.getLength();
+            sliceIndex.put(key, new long[]{end - encoded.length, encoded.length});
+        } else {
+            updateIndex(indexMap, key, sequenceFileWriter.getLength());
+            writeProductData(sequenceFileWriter, key, productData);
         }
     }
 
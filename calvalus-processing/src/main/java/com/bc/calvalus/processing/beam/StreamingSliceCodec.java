@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.beam;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes the slices of version 2 of the streaming product format.
+ * <p>
+ * The big-endian bytes of the elements are shuffled into planes, first the most significant byte
+ * of all elements, then the next one, and so on. The planes are deflated. For floating point data
+ * the planes of the sign, exponent and high mantissa bytes compress far better than the interleaved bytes.
+ * Decoding writes the elements straight into the primitive array of the target.
+ */
+class StreamingSliceCodec {
+
+    static final String ENCODING = "deflate-shuffle";
+
+    private StreamingSliceCodec() {
+    }
+
+    /**
+     * @param array     the elements, a byte, short, int, long, float or double array
+     * @param numElems  the number of elements to encode
+     */
+    static byte[] encode(Object array, int numElems) {
+        int elemSize = getElemSize(array);
+        byte[] shuffled = new byte[numElems * elemSize];
+        if (array instanceof byte[]) {
+            System.arraycopy(array, 0, shuffled, 0, numElems);
+        } else if (array instanceof short[]) {
+            short[] values = (short[]) array;
+            for (int i = 0; i < numElems; i++) {
+                shuffle(values[i], 2, numElems, i, shuffled);
+            }
+        } else if (array instanceof int[]) {
+            int[] values = (int[]) array;
+            for (int i = 0; i < numElems; i++) {
+                shuffle(values[i], 4, numElems, i, shuffled);
+            }
+        } else if (array instanceof float[]) {
+            float[] values = (float[]) array;
+            for (int i = 0; i < numElems; i++) {
+                shuffle(Float.floatToRawIntBits(values[i]), 4, numElems, i, shuffled);
+            }
+        } else if (array instanceof long[]) {
+            long[] values = (long[]) array;
+            for (int i = 0; i < numElems; i++) {
+                shuffle(values[i], 8, numElems, i, shuffled);
+            }
+        } else {
+            double[] values = (double[]) array;
+            for (int i = 0; i < numElems; i++) {
+                shuffle(Double.doubleToRawLongBits(values[i]), 8, numElems, i, shuffled);
+            }
+        }
+        return deflate(shuffled);
+    }
+
+    /**
+     * Decodes a slice into the first numElems elements of the array.
+     */
+    static void decode(byte[] encoded, Object array, int numElems) throws IOException {
+        int elemSize = getElemSize(array);
+        byte[] shuffled = inflate(encoded, numElems * elemSize);
+        if (array instanceof byte[]) {
+            System.arraycopy(shuffled, 0, array, 0, numElems);
+        } else if (array instanceof short[]) {
+            short[] values = (short[]) array;
+            for (int i = 0; i < numElems; i++) {
+                values[i] = (short) unshuffle(shuffled, 2, numElems, i);
+            }
+        } else if (array instanceof int[]) {
+            int[] values = (int[]) array;
+            for (int i = 0; i < numElems; i++) {
+                values[i] = (int) unshuffle(shuffled, 4, numElems, i);
+            }
+        } else if (array instanceof float[]) {
+            float[] values = (float[]) array;
+            for (int i = 0; i < numElems; i++) {
+                values[i] = Float.intBitsToFloat((int) unshuffle(shuffled, 4, numElems, i));
+            }
+        } else if (array instanceof long[]) {
+            long[] values = (long[]) array;
+            for (int i = 0; i < numElems; i++) {
+                values[i] = unshuffle(shuffled, 8, numElems, i);
+            }
+        } else {
+            double[] values = (double[]) array;
+            for (int i = 0; i < numElems; i++) {
+                values[i] = Double.longBitsToDouble(unshuffle(shuffled, 8, numElems, i));
+            }
+        }
+    }
+
+    private static int getElemSize(Object array) {
+        if (array instanceof byte[]) {
+            return 1;
+        } else if (array instanceof short[]) {
+            return 2;
+        } else if (array instanceof int[] || array instanceof float[]) {
+            return 4;
+        } else if (array instanceof long[] || array instanceof double[]) {
+            return 8;
+        }
+        throw new IllegalArgumentException("unsupported element type " + (array != null ? array.getClass() : null));
+    }
+
+    private static void shuffle(long value, int elemSize, int numElems, int index, byte[] shuffled) {
+        for (int b = 0; b < elemSize; b++) {
+            shuffled[b * numElems + index] = (byte) (value >>> (8 * (elemSize - 1 - b)));
+        }
+    }
+
+    private static long unshuffle(byte[] shuffled, int elemSize, int numElems, int index) {
+        long value = 0;
+        for (int b = 0; b < elemSize; b++) {
+            value = (value << 8) | (shuffled[b * numElems + index] & 0xffL);
+        }
+        // sign-extends narrower values when cast down by the caller
+        return value;
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        // the intermediate products are written once and read a few times, favour speed over size
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, bytes.length / 2)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] encoded, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(encoded);
+            byte[] bytes = new byte[length];
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                int inflated = inflater.inflate(bytes, n, length - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += inflated;
+            }
+            if (n == length && !inflater.finished()) {
+                // consumes the end of the stream, there must be no more data
+                n += inflater.inflate(new byte[1]);
+            }
+            if (n != length || !inflater.finished()) {
+                throw new IOException("corrupt slice, expected " + length + " bytes");
+            }
+            return bytes;
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt slice", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
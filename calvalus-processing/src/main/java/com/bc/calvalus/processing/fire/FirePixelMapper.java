@@ -19,6 +19,7 @@ package com.bc.calvalus.processing.fire;
 import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.beam.CalvalusProductIO;
+import com.bc.calvalus.processing.hadoop.RasterSerialization;
 import com.bc.calvalus.processing.hadoop.RasterStackWritable;
 import com.bc.calvalus.processing.l3.HadoopBinManager;
 import com.bc.calvalus.processing.utils.GeometryUtils;
@@ -60,6 +61,7 @@ public class FirePixelMapper extends Mapper<NullWritable, NullWritable, LongWrit
     @Override
     public void run(Context context) throws IOException, InterruptedException {
         Configuration conf = context.getConfiguration();
+        RasterSerialization.configure(conf);
         int numRowsGlobal = HadoopBinManager.getBinningConfig(conf).getNumRows();
         FileSplit fileSplit = (FileSplit) context.getInputSplit();
 
@@ -21,6 +21,10 @@ import java.time.Year;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import static com.bc.calvalus.processing.JobConfigNames.CALVALUS_DEBUG_FIRE;
@@ -31,6 +35,7 @@ public abstract class AbstractGridMapper extends Mapper<Text, FileSplit, Text, G
     protected final int targetRasterWidth;
     protected final int targetRasterHeight;
     private FireGridDataSource dataSource;
+    private int numThreads = 1;
 
     protected AbstractGridMapper(int targetRasterWidth, int targetRasterHeight) {
         this.targetRasterWidth = targetRasterWidth;
@@ -80,123 +85,96 @@ public abstract class AbstractGridMapper extends Mapper<Text, FileSplit, Text, G
         for (int c = 0; c < 1 + getLcClassesCount(); ++c) {
             lcFraction[c] = new float[5 * 5];
         }
-        int targetGridCellIndex = 0;
-        for (int y = 0; y < targetRasterHeight; y++) {
-            for (int x = 0; x < targetRasterWidth; x++) {
+        if (dataSource.isThreadSafe() && !(this instanceof AvhrrGridMapper) && numThreads > 1) {
+            computeGridCellsConcurrently(numThreads, pm, doyFirstOfMonth, doyLastOfMonth,
+                                         areas, ba, coverage, patchNumber, errors, burnableFraction, baInLc);
+        } else {
+            int targetGridCellIndex = 0;
+            for (int y = 0; y < targetRasterHeight; y++) {
+                for (int x = 0; x < targetRasterWidth; x++) {
 
-                SourceData data = dataSource.readPixels(x, y);
+                    SourceData data = dataSource.readPixels(x, y);
 
-                if (data == null) {
-                    targetGridCellIndex++;
-                    continue;
-                }
+                    if (data == null) {
+                        targetGridCellIndex++;
+                        continue;
+                    }
 
-//                writeDebugProduct(context, data);
+//                    writeDebugProduct(context, data);
 
-                if (this instanceof AvhrrGridMapper) {
-                    double avhrrBurnedPercentage = Double.NaN;
+                    if (this instanceof AvhrrGridMapper) {
+                        double avhrrBurnedPercentage = Double.NaN;
 
-                    ((AvhrrFireGridDataSource) dataSource).readLcFraction(x, y, lcFraction);
+                        ((AvhrrFireGridDataSource) dataSource).readLcFraction(x, y, lcFraction);
 
-                    double area025 = 0.0;
-                    double burnableArea025 = 0.0;
-                    double burnable20PercentArea025 = 0.0;
-                    double observedArea025 = 0.0;
-                    double burnedArea025 = 0.0;
-                    double[] burnedLcArea025 = new double[19];
-                    Arrays.fill(burnedLcArea025, 0.0);
-                    for (int i = 0; i < data.burnedPixels.length; i++) {
+                        double area025 = 0.0;
+                        double burnableArea025 = 0.0;
+                        double burnable20PercentArea025 = 0.0;
+                        double observedArea025 = 0.0;
+                        double burnedArea025 = 0.0;
+                        double[] burnedLcArea025 = new double[19];
+                        Arrays.fill(burnedLcArea025, 0.0);
+                        for (int i = 0; i < data.burnedPixels.length; i++) {
 
-                        if (Double.isNaN(avhrrBurnedPercentage) && data.burnedPixels[i] > 0) {
-                            avhrrBurnedPercentage = data.burnedPixels[i];
-                        }
+                            if (Double.isNaN(avhrrBurnedPercentage) && data.burnedPixels[i] > 0) {
+                                avhrrBurnedPercentage = data.burnedPixels[i];
+                            }
 
-                        double fractionOfBurnable = 1.0 - lcFraction[0][i];
-                        // sum up area
-                        area025 += data.areas[i];
-                        // sum up burnable area (and the rather doubtful burnable areas with fraction >= 0.2)
-                        burnableArea025 += data.areas[i] * fractionOfBurnable;
-                        if (data.statusPixels[i] != 2) {
-                            burnable20PercentArea025 += data.areas[i] * fractionOfBurnable;
-                        }
-                        // sum up observed burnable area
-                        if (data.statusPixels[i] == 1) {
-                            observedArea025 += data.areas[i] * fractionOfBurnable;
-                        }
-                        // sum up burned area
-                        if (data.burnedPixels[i] > 0.0) {
-                            burnedArea025 += data.areas[i] * data.burnedPixels[i];
-                            // sum up burned area per LC class
-                            for (int c = 1; c < 19; ++c) {
-                                burnedLcArea025[c] += data.areas[i] * data.burnedPixels[i] * lcFraction[c][i] / fractionOfBurnable;
+                            double fractionOfBurnable = 1.0 - lcFraction[0][i];
+                            // sum up area
+                            area025 += data.areas[i];
+                            // sum up burnable area (and the rather doubtful burnable areas with fraction >= 0.2)
+                            burnableArea025 += data.areas[i] * fractionOfBurnable;
+                            if (data.statusPixels[i] != 2) {
+                                burnable20PercentArea025 += data.areas[i] * fractionOfBurnable;
+                            }
+                            // sum up observed burnable area
+                            if (data.statusPixels[i] == 1) {
+                                observedArea025 += data.areas[i] * fractionOfBurnable;
+                            }
+                            // sum up burned area
+                            if (data.burnedPixels[i] > 0.0) {
+                                burnedArea025 += data.areas[i] * data.burnedPixels[i];
+                                // sum up burned area per LC class
+                                for (int c = 1; c < 19; ++c) {
+                                    burnedLcArea025[c] += data.areas[i] * data.burnedPixels[i] * lcFraction[c][i] / fractionOfBurnable;
+                                }
                             }
                         }
-                    }
 
-                    areas[targetGridCellIndex] = area025;
-                    ba[targetGridCellIndex] = burnedArea025;
-                    for (int c = 1; c < 19; ++c) {
-                        baInLc.get(c - 1)[targetGridCellIndex] = burnedLcArea025[c];
-                    }
-                    burnableFraction[targetGridCellIndex] = (float) (burnableArea025 / area025);
-                    // tough rather doubtful we map non-burnable to not observed as requested by UAH
-                    coverage[targetGridCellIndex] = burnable20PercentArea025 > 0.0 ? (float) (observedArea025 / burnable20PercentArea025) : 0.0f;
-                    patchNumber[targetGridCellIndex] = data.patchCount;
-
-                    if (burnedArea025 >= 0.00001) {
-                        errors[targetGridCellIndex] = getErrorPerPixel(data.probabilityOfBurn, area025, avhrrBurnedPercentage);
-                    } else {
-                        errors[targetGridCellIndex] = 0;
-                    }
-
-                } else {
-
-                    double baValue = 0.0F;
-                    double coverageValue = 0.0F;
-                    double burnableFractionValue = 0.0;
-
-                    for (int i = 0; i < data.burnedPixels.length; i++) {
-                        float burnedPixel = data.burnedPixels[i];
-                        boolean isBurnable = data.burnable[i];
-                        if (isActuallyBurnedPixel(doyFirstOfMonth, doyLastOfMonth, burnedPixel, isBurnable)) {
-                            double burnedArea = scale(burnedPixel, data.areas[i]);
-                            baValue += burnedArea;
-                            addBaInLandCover(baInLc, targetGridCellIndex, burnedArea, data.lcClasses[i]);
+                        areas[targetGridCellIndex] = area025;
+                        ba[targetGridCellIndex] = burnedArea025;
+                        for (int c = 1; c < 19; ++c) {
+                            baInLc.get(c - 1)[targetGridCellIndex] = burnedLcArea025[c];
+                        }
+                        burnableFraction[targetGridCellIndex] = (float) (burnableArea025 / area025);
+                        // tough rather doubtful we map non-burnable to not observed as requested by UAH
+                        coverage[targetGridCellIndex] = burnable20PercentArea025 > 0.0 ? (float) (observedArea025 / burnable20PercentArea025) : 0.0f;
+                        patchNumber[targetGridCellIndex] = data.patchCount;
+
+                        if (burnedArea025 >= 0.00001) {
+                            errors[targetGridCellIndex] = getErrorPerPixel(data.probabilityOfBurn, area025, avhrrBurnedPercentage);
+                        } else {
+                            errors[targetGridCellIndex] = 0;
                         }
 
-                        burnableFractionValue += isBurnable ? data.areas[i] : 0.0;
-                        boolean hasBeenObserved = data.statusPixels[i] == 1;
-                        coverageValue += (hasBeenObserved && isBurnable) ? data.areas[i] : 0.0;
-                        areas[targetGridCellIndex] += data.areas[i];
-                        validate(areas[targetGridCellIndex], targetGridCellIndex);
-                    }
-
-                    ba[targetGridCellIndex] = baValue;
-                    patchNumber[targetGridCellIndex] = data.patchCount;
-
-                    if (isInBrokenLCZone(x, y)) {
-                        coverage[targetGridCellIndex] = 0;
-                        burnableFraction[targetGridCellIndex] = 0;
                     } else {
-                        coverage[targetGridCellIndex] = getFraction(coverageValue, burnableFractionValue);
-                        burnableFraction[targetGridCellIndex] = getFraction(burnableFractionValue, areas[targetGridCellIndex]);
-                        validate(burnableFraction[targetGridCellIndex], baInLc, targetGridCellIndex, areas[targetGridCellIndex]);
+                        computeGridCell(x, y, targetGridCellIndex, data, doyFirstOfMonth, doyLastOfMonth,
+                                        areas, ba, coverage, patchNumber, errors, burnableFraction, baInLc);
                     }
 
-
-                    errors[targetGridCellIndex] = getErrorPerPixel(data.probabilityOfBurn, areas[targetGridCellIndex], Float.NaN);
-
-                    for (int i = 0; i < errors.length; i++) {
-                        if (ba[i] < 0.00001) {
-                            errors[i] = 0;
-                        }
-                    }
+                    targetGridCellIndex++;
+                    pm.worked(1);
 
                 }
+            }
+        }
 
-                targetGridCellIndex++;
-                pm.worked(1);
-
+        if (!(this instanceof AvhrrGridMapper)) {
+            for (int i = 0; i < errors.length; i++) {
+                if (ba[i] < 0.00001) {
+                    errors[i] = 0;
+                }
             }
         }
 
@@ -219,6 +197,92 @@ public abstract class AbstractGridMapper extends Mapper<Text, FileSplit, Text, G
         return gridCells;
     }
 
+    /**
+     * Computes the grid cells of each row concurrently, the data source reads the rows one after the other.
+     */
+    private void computeGridCellsConcurrently(int numThreads, ProgressMonitor pm, int doyFirstOfMonth, int doyLastOfMonth,
+                                              double[] areas, double[] ba, float[] coverage, float[] patchNumber,
+                                              float[] errors, float[] burnableFraction, List<double[]> baInLc) throws IOException {
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(numThreads, targetRasterWidth));
+        try {
+            List<Future<Void>> futures = new ArrayList<>(targetRasterWidth);
+            for (int y = 0; y < targetRasterHeight; y++) {
+                futures.clear();
+                for (int x = 0; x < targetRasterWidth; x++) {
+                    final int cellX = x;
+                    final int cellY = y;
+                    final int targetGridCellIndex = y * targetRasterWidth + x;
+                    futures.add(executorService.submit(() -> {
+                        SourceData data = dataSource.readPixels(cellX, cellY);
+                        if (data != null) {
+                            computeGridCell(cellX, cellY, targetGridCellIndex, data, doyFirstOfMonth, doyLastOfMonth,
+                                            areas, ba, coverage, patchNumber, errors, burnableFraction, baInLc);
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<Void> future : futures) {
+                    future.get();
+                    pm.worked(1);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while computing grid cells", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Computes a single grid cell from its source data. Only writes to the given target grid cell index.
+     */
+    private void computeGridCell(int x, int y, int targetGridCellIndex, SourceData data, int doyFirstOfMonth, int doyLastOfMonth,
+                                 double[] areas, double[] ba, float[] coverage, float[] patchNumber,
+                                 float[] errors, float[] burnableFraction, List<double[]> baInLc) {
+        double baValue = 0.0F;
+        double coverageValue = 0.0F;
+        double burnableFractionValue = 0.0;
+
+        for (int i = 0; i < data.burnedPixels.length; i++) {
+            float burnedPixel = data.burnedPixels[i];
+            boolean isBurnable = data.burnable[i];
+            if (isActuallyBurnedPixel(doyFirstOfMonth, doyLastOfMonth, burnedPixel, isBurnable)) {
+                double burnedArea = scale(burnedPixel, data.areas[i]);
+                baValue += burnedArea;
+                addBaInLandCover(baInLc, targetGridCellIndex, burnedArea, data.lcClasses[i]);
+            }
+
+            burnableFractionValue += isBurnable ? data.areas[i] : 0.0;
+            boolean hasBeenObserved = data.statusPixels[i] == 1;
+            coverageValue += (hasBeenObserved && isBurnable) ? data.areas[i] : 0.0;
+            areas[targetGridCellIndex] += data.areas[i];
+            validate(areas[targetGridCellIndex], targetGridCellIndex);
+        }
+
+        ba[targetGridCellIndex] = baValue;
+        patchNumber[targetGridCellIndex] = data.patchCount;
+
+        if (isInBrokenLCZone(x, y)) {
+            coverage[targetGridCellIndex] = 0;
+            burnableFraction[targetGridCellIndex] = 0;
+        } else {
+            coverage[targetGridCellIndex] = getFraction(coverageValue, burnableFractionValue);
+            burnableFraction[targetGridCellIndex] = getFraction(burnableFractionValue, areas[targetGridCellIndex]);
+            validate(burnableFraction[targetGridCellIndex], baInLc, targetGridCellIndex, areas[targetGridCellIndex]);
+        }
+
+        errors[targetGridCellIndex] = getErrorPerPixel(data.probabilityOfBurn, areas[targetGridCellIndex], Float.NaN);
+    }
+
     protected boolean isInBrokenLCZone(int x, int y) {
         return false;
     }
@@ -307,6 +371,13 @@ public abstract class AbstractGridMapper extends Mapper<Text, FileSplit, Text, G
         this.dataSource = dataSource;
     }
 
+    /**
+     * Sets the number of threads computing the grid cells of a row, used only if the data source is thread safe.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
     private static void writeDebugProduct(Context context, SourceData data) throws IOException {
         if (context.getConfiguration().getBoolean(CALVALUS_DEBUG_FIRE, false)) {
             return;
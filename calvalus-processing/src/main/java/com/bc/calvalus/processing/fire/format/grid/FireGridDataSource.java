@@ -18,4 +18,11 @@ interface FireGridDataSource {
 
     void setDoyLastOfMonth(int doyLastOfMonth);
 
+    /**
+     * @return true if {@link #readPixels(int, int)} may be called concurrently for different target pixels
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
+
 }
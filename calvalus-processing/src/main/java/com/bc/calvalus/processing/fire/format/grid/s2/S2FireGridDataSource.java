@@ -10,6 +10,7 @@ import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.io.ParseException;
 import com.vividsolutions.jts.io.WKTReader;
 import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.GeoCoding;
 import org.esa.snap.core.datamodel.GeoPos;
 import org.esa.snap.core.datamodel.PixelPos;
 import org.esa.snap.core.datamodel.Product;
@@ -17,6 +18,7 @@ import org.esa.snap.core.gpf.GPF;
 import org.esa.snap.core.gpf.common.SubsetOp;
 import org.esa.snap.core.gpf.common.reproject.ReprojectionOp;
 
+import java.awt.Rectangle;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -26,10 +28,17 @@ import java.util.logging.Logger;
 
 public class S2FireGridDataSource extends AbstractFireGridDataSource {
 
+    // the number of target cells per tile in either direction
+    private static final int CELLS_PER_TILE = 4;
+
     private final String tile;
     private final Product[] sourceProducts;
     private final Product[] clProducts;
     private final Product[] lcProducts;
+    private boolean blockReads;
+    // the pixels of all products for the target cells of one row, read once per row
+    private int blocksY = -1;
+    private RowBlock[] blocks;
 
     protected static final Logger LOG = CalvalusLogger.getLogger();
 
@@ -41,13 +50,40 @@ public class S2FireGridDataSource extends AbstractFireGridDataSource {
         this.lcProducts = lcProducts;
     }
 
+    /**
+     * In block read mode, the pixels of the source products are read once per row of target cells
+     * in large blocks, and the target cells are sliced from the blocks. The target cells may then
+     * be read concurrently. Reading the blocks and reading a target cell that exceeds the blocks
+     * use the operators on the shared source products, they are serialized.
+     */
+    public void setBlockReads(boolean blockReads) {
+        this.blockReads = blockReads;
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return blockReads;
+    }
+
     @Override
     public SourceData readPixels(int x, int y) throws IOException {
         CalvalusLogger.getLogger().warning("Reading data for pixel x=" + x + ", y=" + y);
-        GPF.getDefaultInstance().getOperatorSpiRegistry().loadOperatorSpis();
 
-        double lon0 = -180 + Integer.parseInt(tile.split("y")[0].replace("x", "")) + x * 0.25;
-        double lat0 = -90 + Integer.parseInt(tile.split("y")[1].replace("y", "")) + 1 - (y + 1) * 0.25;
+        double lon0 = getLon0(x);
+        double lat0 = getLat0(y);
+
+        if (blockReads) {
+            SourceData data = readPixelsFromBlocks(lon0, lat0, getBlocks(y));
+            if (data != null) {
+                return data;
+            }
+            LOG.warning("target pixel x=" + x + ", y=" + y + " exceeds the blocks read, reading it separately");
+        }
+        return readPixelsSeparately(lon0, lat0);
+    }
+
+    private synchronized SourceData readPixelsSeparately(double lon0, double lat0) throws IOException {
+        GPF.getDefaultInstance().getOperatorSpiRegistry().loadOperatorSpis();
 
         int totalWidth = 0;
         int totalHeight = 0;
@@ -130,6 +166,128 @@ public class S2FireGridDataSource extends AbstractFireGridDataSource {
         return data;
     }
 
+    private SourceData readPixelsFromBlocks(double lon0, double lat0, RowBlock[] blocks) {
+        Geometry cellGeometry = createGeometry(lon0, lat0, 0.25);
+        Rectangle[] jdRects = new Rectangle[sourceProducts.length];
+        Rectangle[] clRects = new Rectangle[sourceProducts.length];
+        int totalWidth = 0;
+        int totalHeight = 0;
+        for (int i = 0; i < sourceProducts.length; i++) {
+            // the same regions the subsets of the target cell would have
+            jdRects[i] = SubsetOp.computePixelRegion(sourceProducts[i], cellGeometry, 0);
+            clRects[i] = SubsetOp.computePixelRegion(clProducts[i], cellGeometry, 0);
+            if (!blocks[i].jdRect.contains(jdRects[i]) || !blocks[i].clRect.contains(clRects[i])) {
+                return null;
+            }
+            totalWidth += jdRects[i].width;
+            totalHeight += jdRects[i].height;
+        }
+
+        SourceData data = new SourceData(totalWidth, totalHeight);
+        data.reset();
+
+        int targetPixelIndex = 0;
+        for (int i = 0; i < sourceProducts.length; i++) {
+            RowBlock block = blocks[i];
+            Rectangle jdRect = jdRects[i];
+            Rectangle clRect = clRects[i];
+            int width = jdRect.width;
+            int height = jdRect.height;
+
+            PixelPos pixelPos = new PixelPos();
+            GeoPos geoPos = new GeoPos();
+            for (int lineIndex = 0; lineIndex < height; lineIndex++) {
+                pixelPos.x = jdRect.x;
+                pixelPos.y = jdRect.y + lineIndex;
+                block.geoCoding.getGeoPos(pixelPos, geoPos);
+                boolean isSouth = geoPos.lat < -34.84;
+                int jdOffset = (jdRect.y + lineIndex - block.jdRect.y) * block.jdRect.width + jdRect.x - block.jdRect.x;
+                int clOffset = (clRect.y + lineIndex - block.clRect.y) * block.clRect.width + clRect.x - block.clRect.x;
+
+                for (int x0 = 0; x0 < width; x0++) {
+                    int sourceJD = block.jdPixels[jdOffset + x0];
+                    float sourceCL = block.clPixels[clOffset + x0];
+                    int sourceLC = isSouth ? 10 : block.lcPixels[jdOffset + x0];
+                    data.burnable[targetPixelIndex] = LcRemappingS2.isInBurnableLcClass(sourceLC);
+                    boolean isValidPixel = isValidPixel(doyFirstOfMonth, doyLastOfMonth, sourceJD);
+                    if (isValidPixel) {
+                        // set burned pixel value consistently with CL value -- both if burned pixel is valid
+                        data.burnedPixels[targetPixelIndex] = sourceJD;
+                    }
+                    data.probabilityOfBurn[targetPixelIndex] = sourceCL;
+
+                    data.lcClasses[targetPixelIndex] = sourceLC;
+                    if (sourceJD >= 0) { // neither no-data, nor water, nor cloud -> observed pixel
+                        data.statusPixels[targetPixelIndex] = 1;
+                    } else {
+                        data.statusPixels[targetPixelIndex] = 0;
+                    }
+
+                    data.areas[targetPixelIndex] = block.areaCalculator.calculatePixelSize(jdRect.x + x0, jdRect.y + lineIndex,
+                                                                                           jdRect.x + width - 1, jdRect.y + height - 1);
+                    targetPixelIndex++;
+                }
+            }
+        }
+
+        data.patchCount = getPatchNumbers(GridFormatUtils.make2Dims(data.burnedPixels, totalWidth, totalHeight), GridFormatUtils.make2Dims(data.burnable, totalWidth, totalHeight));
+        return data;
+    }
+
+    private synchronized RowBlock[] getBlocks(int y) throws IOException {
+        if (blocksY != y) {
+            GPF.getDefaultInstance().getOperatorSpiRegistry().loadOperatorSpis();
+            // release the blocks of the previous row before reading the next one
+            blocks = null;
+            Geometry rowGeometry = createGeometry(getLon0(0), getLat0(y), CELLS_PER_TILE * 0.25, 0.25);
+            RowBlock[] rowBlocks = new RowBlock[sourceProducts.length];
+            for (int i = 0; i < sourceProducts.length; i++) {
+                rowBlocks[i] = new RowBlock(sourceProducts[i], clProducts[i], lcProducts[i], rowGeometry);
+            }
+            blocks = rowBlocks;
+            blocksY = y;
+        }
+        return blocks;
+    }
+
+    private double getLon0(int x) {
+        return -180 + Integer.parseInt(tile.split("y")[0].replace("x", "")) + x * 0.25;
+    }
+
+    private double getLat0(int y) {
+        return -90 + Integer.parseInt(tile.split("y")[1].replace("y", "")) + 1 - (y + 1) * 0.25;
+    }
+
+    private class RowBlock {
+
+        private final Rectangle jdRect;
+        private final Rectangle clRect;
+        private final int[] jdPixels;
+        private final float[] clPixels;
+        private final int[] lcPixels;
+        private final GeoCoding geoCoding;
+        private final AreaCalculator areaCalculator;
+
+        private RowBlock(Product sourceProduct, Product clProduct, Product lcProduct, Geometry rowGeometry) throws IOException {
+            jdRect = SubsetOp.computePixelRegion(sourceProduct, rowGeometry, 0);
+            clRect = SubsetOp.computePixelRegion(clProduct, rowGeometry, 0);
+            jdPixels = new int[jdRect.width * jdRect.height];
+            clPixels = new float[clRect.width * clRect.height];
+            lcPixels = new int[jdRect.width * jdRect.height];
+            sourceProduct.getBand("JD").readPixels(jdRect.x, jdRect.y, jdRect.width, jdRect.height, jdPixels);
+            clProduct.getBand("CL").readPixels(clRect.x, clRect.y, clRect.width, clRect.height, clPixels);
+
+            SubsetOp subsetOp = new SubsetOp();
+            subsetOp.setRegion(jdRect);
+            subsetOp.setSourceProduct(sourceProduct);
+            Product lcSubset = getLcSubset(subsetOp.getTargetProduct(), lcProduct);
+            lcSubset.getBand("band_1").readPixels(0, 0, jdRect.width, jdRect.height, lcPixels);
+
+            geoCoding = sourceProduct.getSceneGeoCoding();
+            areaCalculator = new AreaCalculator(geoCoding);
+        }
+    }
+
     private Product getLcSubset(Product sourceProduct, Product lcProduct) {
         ReprojectionOp reprojectionOp = new ReprojectionOp();
         reprojectionOp.setSourceProduct("collocationProduct", sourceProduct);
@@ -141,21 +299,26 @@ public class S2FireGridDataSource extends AbstractFireGridDataSource {
 
     private Product getSubset(double lon0, double lat0, Product sourceProduct) {
         SubsetOp subsetOp = new SubsetOp();
-        Geometry geometry;
+        subsetOp.setGeoRegion(createGeometry(lon0, lat0, 0.25));
+        subsetOp.setSourceProduct(sourceProduct);
+        return subsetOp.getTargetProduct();
+    }
+
+    private static Geometry createGeometry(double lon0, double lat0, double size) {
+        return createGeometry(lon0, lat0, size, size);
+    }
+
+    private static Geometry createGeometry(double lon0, double lat0, double width, double height) {
         try {
-            geometry = new WKTReader().read(String.format("POLYGON ((%s %s, %s %s, %s %s, %s %s, %s %s))",
+            return new WKTReader().read(String.format("POLYGON ((%s %s, %s %s, %s %s, %s %s, %s %s))",
                     lon0, lat0,
-                    lon0 + 0.25, lat0,
-                    lon0 + 0.25, lat0 + 0.25,
-                    lon0, lat0 + 0.25,
+                    lon0 + width, lat0,
+                    lon0 + width, lat0 + height,
+                    lon0, lat0 + height,
                     lon0, lat0));
         } catch (ParseException e) {
             throw new IllegalStateException(e);
         }
-
-        subsetOp.setGeoRegion(geometry);
-        subsetOp.setSourceProduct(sourceProduct);
-        return subsetOp.getTargetProduct();
     }
 
     static int getProductJD(Product product) {
@@ -3,6 +3,7 @@ package com.bc.calvalus.processing.fire.format.grid.s2;
 import com.bc.calvalus.JobClientsMap;
 import com.bc.calvalus.commons.InputPathResolver;
 import com.bc.calvalus.inventory.hadoop.HdfsFileSystemService;
+import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.beam.CalvalusProductIO;
 import com.bc.calvalus.processing.fire.format.LcRemappingS2;
 import com.bc.calvalus.processing.fire.format.grid.AbstractGridMapper;
@@ -126,6 +127,8 @@ public class S2GridMapper extends AbstractGridMapper {
         S2FireGridDataSource dataSource = new S2FireGridDataSource(oneDegTile, sourceProducts.toArray(new Product[0]), clProducts.toArray(new Product[0]), lcProducts.toArray(new Product[0]));
         dataSource.setDoyFirstOfMonth(doyFirstOfMonth);
         dataSource.setDoyLastOfMonth(doyLastOfMonth);
+        dataSource.setBlockReads(context.getConfiguration().getBoolean(JobConfigNames.CALVALUS_FIRE_GRID_BLOCK_READS, false));
+        setNumThreads(context.getConfiguration().getInt(JobConfigNames.CALVALUS_FIRE_GRID_THREADS, 1));
 
         setDataSource(dataSource);
         GridCells gridCells = computeGridCells(year, month, context);
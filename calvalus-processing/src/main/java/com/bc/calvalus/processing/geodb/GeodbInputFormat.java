@@ -34,7 +34,9 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.BlockLocation;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.InputFormat;
 import org.apache.hadoop.mapreduce.InputSplit;
@@ -50,9 +52,16 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 /**
@@ -65,46 +74,144 @@ import java.util.logging.Logger;
 public class GeodbInputFormat extends InputFormat {
 
     private static final Logger LOG = CalvalusLogger.getLogger();
+    public static final int DEFAULT_SPLIT_THREADS = 8;
+    // number of paths looked up before the splits are collected and the progress is reported
+    private static final int LOOKUP_CHUNK_SIZE = 4096;
+    // with fewer requested files in a directory the files are looked up one by one instead of listing the directory
+    private static final int MIN_FILES_PER_LISTING = 4;
 
     @Override
     public List<InputSplit> getSplits(JobContext context) throws IOException, InterruptedException {
         Configuration conf = context.getConfiguration();
         int requestSizeLimit = conf.getInt(JobConfigNames.CALVALUS_REQUEST_SIZE_LIMIT, 0);
+        long t0 = System.currentTimeMillis();
         Set<String> paths = queryGeoInventory(true, conf);
+        long t1 = System.currentTimeMillis();
         List<InputSplit> splits = createInputSplits(conf, paths, requestSizeLimit);
         String geoInventory = conf.get(JobConfigNames.CALVALUS_INPUT_GEO_INVENTORY);
         LOG.info(String.format("%d splits added (from %d returned from geo-inventory '%s').", splits.size(), paths.size(), geoInventory));
+        LOG.info(String.format("geo-inventory query took %d ms, split creation took %d ms", t1 - t0, System.currentTimeMillis() - t1));
         return splits;
     }
 
+    /**
+     * Creates a split for each existing path, in the order of the paths. The files are looked up
+     * concurrently, the files of a directory with several requested files by a single located listing.
+     */
     public static List<InputSplit> createInputSplits(Configuration conf, Collection<String> paths, int requestSizeLimit) throws IOException {
+        int numThreads = conf.getInt(JobConfigNames.CALVALUS_INPUT_SPLIT_THREADS, DEFAULT_SPLIT_THREADS);
+        List<String> pathList = new ArrayList<>(paths);
         List<InputSplit> splits = new ArrayList<>(requestSizeLimit);
-        for (String stringPath : paths) {
-            final Path path = new Path(stringPath);
-            FileSystem fileSystem = path.getFileSystem(conf);
-            try {
-                final FileStatus status = fileSystem.getFileStatus(path);
-                if (status != null) {
-                    final BlockLocation[] locations = fileSystem.getFileBlockLocations(status, 0, status.getLen());
-                    if (locations == null || locations.length == 0) {
-                        LOG.warning("cannot find hosts of input " + stringPath);
-                    } else {
-                        LOG.fine("adding input split for  " + path.toUri().getPath());
-                        splits.add(new ProductSplit(path, status.getLen(), locations[0].getHosts()));
+        long t0 = System.currentTimeMillis();
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        try {
+            chunks:
+            for (int start = 0; start < pathList.size(); start += LOOKUP_CHUNK_SIZE) {
+                List<String> chunk = pathList.subList(start, Math.min(start + LOOKUP_CHUNK_SIZE, pathList.size()));
+                for (InputSplit split : lookupSplits(conf, chunk, executorService)) {
+                    if (split != null) {
+                        splits.add(split);
+                        if (requestSizeLimit > 0 && splits.size() == requestSizeLimit) {
+                            break chunks;
+                        }
                     }
-                } else {
-                    LOG.warning("cannot find input " + stringPath);
                 }
-            } catch (FileNotFoundException e) {
-                LOG.warning("cannot find input " + stringPath);
+                LOG.info(String.format("looked up %d of %d inputs, %d splits, took %d ms",
+                                       start + chunk.size(), pathList.size(), splits.size(), System.currentTimeMillis() - t0));
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        return splits;
+    }
+
+    // the splits of the paths at the same index, null for missing paths
+    private static InputSplit[] lookupSplits(Configuration conf, List<String> paths, ExecutorService executorService) throws IOException {
+        Map<Path, List<Integer>> indexesByDir = new LinkedHashMap<>();
+        for (int i = 0; i < paths.size(); i++) {
+            Path parent = new Path(paths.get(i)).getParent();
+            indexesByDir.computeIfAbsent(parent, k -> new ArrayList<>()).add(i);
+        }
+        InputSplit[] splits = new InputSplit[paths.size()];
+        List<Future<?>> futures = new ArrayList<>();
+        for (Map.Entry<Path, List<Integer>> entry : indexesByDir.entrySet()) {
+            futures.add(executorService.submit(() -> {
+                lookupSplits(conf, entry.getKey(), entry.getValue(), paths, splits);
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
             }
-            if (requestSizeLimit > 0 && splits.size() == requestSizeLimit) {
-                break;
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted while looking up inputs", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
             }
+            throw new IOException("failed to look up inputs", e.getCause());
         }
         return splits;
     }
 
+    private static void lookupSplits(Configuration conf, Path dir, List<Integer> indexes, List<String> paths, InputSplit[] splits) throws IOException {
+        Map<String, LocatedFileStatus> listing = null;
+        if (dir != null && indexes.size() >= MIN_FILES_PER_LISTING) {
+            listing = listDirectory(dir, conf);
+        }
+        for (int index : indexes) {
+            String stringPath = paths.get(index);
+            Path path = new Path(stringPath);
+            LocatedFileStatus listed = listing != null ? listing.get(path.getName()) : null;
+            if (listed != null && !listed.isDirectory()) {
+                splits[index] = createSplit(path, stringPath, listed, listed.getBlockLocations());
+            } else if (listing != null && listed == null) {
+                LOG.warning("cannot find input " + stringPath);
+            } else {
+                splits[index] = lookupSplit(conf, path, stringPath);
+            }
+        }
+    }
+
+    private static Map<String, LocatedFileStatus> listDirectory(Path dir, Configuration conf) throws IOException {
+        Map<String, LocatedFileStatus> listing = new HashMap<>();
+        try {
+            RemoteIterator<LocatedFileStatus> iterator = dir.getFileSystem(conf).listLocatedStatus(dir);
+            while (iterator.hasNext()) {
+                LocatedFileStatus status = iterator.next();
+                listing.put(status.getPath().getName(), status);
+            }
+        } catch (FileNotFoundException e) {
+            // all files of the directory are reported missing
+        }
+        return listing;
+    }
+
+    private static InputSplit lookupSplit(Configuration conf, Path path, String stringPath) throws IOException {
+        FileSystem fileSystem = path.getFileSystem(conf);
+        try {
+            final FileStatus status = fileSystem.getFileStatus(path);
+            if (status != null) {
+                return createSplit(path, stringPath, status, fileSystem.getFileBlockLocations(status, 0, status.getLen()));
+            } else {
+                LOG.warning("cannot find input " + stringPath);
+            }
+        } catch (FileNotFoundException e) {
+            LOG.warning("cannot find input " + stringPath);
+        }
+        return null;
+    }
+
+    private static InputSplit createSplit(Path path, String stringPath, FileStatus status, BlockLocation[] locations) {
+        if (locations == null || locations.length == 0) {
+            LOG.warning("cannot find hosts of input " + stringPath);
+            return null;
+        }
+        LOG.fine("adding input split for  " + path.toUri().getPath());
+        return new ProductSplit(path, status.getLen(), locations[0].getHosts());
+    }
+
     public static Set<String> queryGeoInventory(boolean failOnMissingDB, Configuration conf) throws IOException {
         Constrain constrain = parseConstraint(conf);
         Set<String> paths = new HashSet<>();
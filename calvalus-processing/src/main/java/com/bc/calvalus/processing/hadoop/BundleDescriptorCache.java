@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.commons.shared.BundleFilter;
+import com.bc.calvalus.processing.BundleDescriptor;
+import com.bc.calvalus.processing.ProcessorDescriptor;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsAction;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.security.UserGroupInformation;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The parsed descriptors of all bundles of the system and of all users, shared by all queries of a process.
+ * <p>
+ * A refresh lists the software directories, takes the status of every descriptor and parses only the descriptors
+ * of new bundles or modified since the last refresh. Queries are answered from the cache, refreshing it first
+ * if it is older than the maximum age. The visibility of the bundles of other users and of the system bundles
+ * is checked against the permissions of their directories and descriptors as of the last refresh,
+ * the extended ACLs of HDFS are not considered.
+ */
+public class BundleDescriptorCache {
+
+    private static final Logger LOG = CalvalusLogger.getLogger();
+
+    public interface FileSystemProvider {
+        FileSystem getFileSystem(String userName, String path) throws IOException;
+    }
+
+    private final FileSystemProvider fileSystemProvider;
+    private final String serviceUser;
+    private final String systemSoftwareDir;
+    private final String homeDir;
+    private final long maxAgeMillis;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong refreshMillis = new AtomicLong();
+
+    private volatile Map<String, SoftwareDir> softwareDirs = Collections.emptyMap();
+    private volatile long refreshTime = 0L;
+
+    /**
+     * @param serviceUser       the user that lists the system software directory and the home directories
+     * @param systemSoftwareDir the directory of the system bundles
+     * @param homeDir           the directory of the home directories of the users, their bundles are in the
+     *                          <code>software</code> directory of their home directory
+     * @param maxAgeMillis      the age after which a query refreshes the cache before it is answered
+     */
+    public BundleDescriptorCache(FileSystemProvider fileSystemProvider, String serviceUser, String systemSoftwareDir,
+                                 String homeDir, long maxAgeMillis) {
+        this.fileSystemProvider = fileSystemProvider;
+        this.serviceUser = serviceUser;
+        this.systemSoftwareDir = systemSoftwareDir;
+        this.homeDir = homeDir;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Answers a bundle query in the order of the user's bundles, the bundles of other users, and the system bundles.
+     *
+     * @return the bundles, or null if the query cannot be answered from the cache
+     */
+    public BundleDescriptor[] getBundles(String username, BundleFilter filter) throws IOException {
+        String bundleDirName = null;
+        if (filter.getBundleName() != null) {
+            bundleDirName = filter.getBundleName() + "-" + filter.getBundleVersion();
+            if (bundleDirName.startsWith("/")) {
+                return null;
+            }
+        }
+        if (filter.getNumSupportedProvider() == 0) {
+            LOG.warning("No bundle provider set in filter. Using SYSTEM as provider.");
+            filter.withProvider(BundleFilter.PROVIDER_SYSTEM);
+        }
+        boolean refreshed = System.currentTimeMillis() - refreshTime > maxAgeMillis && refreshIfOlder(maxAgeMillis);
+        if (!refreshed) {
+            hitCount.incrementAndGet();
+        }
+        Map<String, SoftwareDir> dirs = softwareDirs;
+        String userSoftwareDir = getUserSoftwareDir(username);
+        Set<String> groups = getGroups(username);
+        List<BundleDescriptor> descriptors = new ArrayList<>();
+        if (filter.isProviderSupported(BundleFilter.PROVIDER_USER) && filter.getUserName() != null) {
+            SoftwareDir softwareDir = dirs.get(userSoftwareDir);
+            if (softwareDir != null) {
+                collect(softwareDir, bundleDirName, filter, username, null, descriptors);
+            }
+        }
+        if (filter.isProviderSupported(BundleFilter.PROVIDER_ALL_USERS)) {
+            for (SoftwareDir softwareDir : dirs.values()) {
+                if (softwareDir.owner != null && !softwareDir.path.equals(userSoftwareDir)
+                    && softwareDir.isAccessible(username, groups)) {
+                    collect(softwareDir, bundleDirName, filter, username, groups, descriptors);
+                }
+            }
+        }
+        if (filter.isProviderSupported(BundleFilter.PROVIDER_SYSTEM)) {
+            SoftwareDir softwareDir = dirs.get(systemSoftwareDir);
+            if (softwareDir != null && softwareDir.isAccessible(username, groups)) {
+                collect(softwareDir, bundleDirName, filter, username, groups, descriptors);
+            }
+        }
+        return descriptors.toArray(new BundleDescriptor[0]);
+    }
+
+    /**
+     * Refreshes the cache unless another thread has refreshed it while this one was waiting.
+     *
+     * @return true if the cache has been refreshed
+     */
+    public synchronized boolean refreshIfOlder(long ageMillis) throws IOException {
+        if (System.currentTimeMillis() - refreshTime <= ageMillis) {
+            return false;
+        }
+        refresh();
+        return true;
+    }
+
+    /**
+     * Lists the software directories and parses the descriptors of new and modified bundles.
+     */
+    public synchronized void refresh() throws IOException {
+        long t0 = System.currentTimeMillis();
+        Map<String, SoftwareDir> previousDirs = softwareDirs;
+        Map<String, SoftwareDir> dirs = new LinkedHashMap<>();
+        int parsedCount = 0;
+
+        FileSystem systemFileSystem = fileSystemProvider.getFileSystem(serviceUser, systemSoftwareDir);
+        FileStatus systemDirStatus = getFileStatus(systemFileSystem, new Path(systemSoftwareDir));
+        if (systemDirStatus != null) {
+            SoftwareDir softwareDir = new SoftwareDir(systemSoftwareDir, null, new FileStatus[]{systemDirStatus});
+            parsedCount += softwareDir.scan(systemFileSystem, previousDirs.get(systemSoftwareDir));
+            dirs.put(systemSoftwareDir, softwareDir);
+        }
+
+        FileSystem homeFileSystem = fileSystemProvider.getFileSystem(serviceUser, homeDir);
+        FileStatus[] userDirStatuses = listStatus(homeFileSystem, new Path(homeDir));
+        for (FileStatus userDirStatus : userDirStatuses) {
+            if (!userDirStatus.isDirectory()) {
+                continue;
+            }
+            String owner = userDirStatus.getPath().getName();
+            String path = getUserSoftwareDir(owner);
+            try {
+                FileSystem userFileSystem = fileSystemProvider.getFileSystem(owner, path);
+                FileStatus softwareDirStatus = getFileStatus(userFileSystem, new Path(path));
+                if (softwareDirStatus != null && softwareDirStatus.isDirectory()) {
+                    SoftwareDir softwareDir = new SoftwareDir(path, owner, new FileStatus[]{userDirStatus, softwareDirStatus});
+                    parsedCount += softwareDir.scan(userFileSystem, previousDirs.get(path));
+                    dirs.put(path, softwareDir);
+                }
+            } catch (IOException e) {
+                LOG.warning("failed to list bundles of user " + owner + ": " + e.getMessage());
+            }
+        }
+
+        softwareDirs = dirs;
+        refreshTime = System.currentTimeMillis();
+        missCount.addAndGet(parsedCount);
+        refreshCount.incrementAndGet();
+        refreshMillis.addAndGet(refreshTime - t0);
+        Level level = parsedCount > 0 ? Level.INFO : Level.FINE;
+        if (LOG.isLoggable(level)) {
+            LOG.log(level, String.format("bundle cache refreshed in %d ms, %d descriptors parsed, %s",
+                                         refreshTime - t0, parsedCount, this));
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of descriptors parsed because they were new or modified
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    public long getMeanRefreshMillis() {
+        long count = refreshCount.get();
+        return count > 0 ? refreshMillis.get() / count : 0L;
+    }
+
+    public int getBundleCount() {
+        int count = 0;
+        for (SoftwareDir softwareDir : softwareDirs.values()) {
+            count += softwareDir.bundles.size();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d bundles, %d hits, %d misses, %d refreshes of mean %d ms",
+                             getBundleCount(), getHitCount(), getMissCount(), getRefreshCount(), getMeanRefreshMillis());
+    }
+
+    private String getUserSoftwareDir(String username) {
+        return new Path(new Path(homeDir, username), "software").toString();
+    }
+
+    /**
+     * @param groups the groups of the user if the access is to be checked, null for the user's own bundles
+     */
+    private static void collect(SoftwareDir softwareDir, String bundleDirName, BundleFilter filter,
+                                String username, Set<String> groups, List<BundleDescriptor> descriptors) {
+        for (Bundle bundle : softwareDir.bundles.values()) {
+            if (bundleDirName != null && !bundleDirName.equals(bundle.name)) {
+                continue;
+            }
+            if (groups != null && !bundle.isAccessible(username, groups)) {
+                continue;
+            }
+            if (filter.getProcessorName() == null || hasProcessor(bundle.descriptor, filter)) {
+                descriptors.add(bundle.descriptor);
+            }
+        }
+    }
+
+    private static boolean hasProcessor(BundleDescriptor bundleDescriptor, BundleFilter filter) {
+        ProcessorDescriptor[] processorDescriptors = bundleDescriptor.getProcessorDescriptors();
+        if (processorDescriptors != null) {
+            for (ProcessorDescriptor processorDescriptor : processorDescriptors) {
+                if (processorDescriptor.getProcessorName().equals(filter.getProcessorName()) &&
+                    processorDescriptor.getProcessorVersion().equals(filter.getProcessorVersion())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> getGroups(String username) {
+        return new HashSet<>(Arrays.asList(UserGroupInformation.createRemoteUser(username).getGroupNames()));
+    }
+
+    private static boolean isPermitted(FileStatus status, FsAction action, String username, Set<String> groups) {
+        FsPermission permission = status.getPermission();
+        if (username.equals(status.getOwner())) {
+            return permission.getUserAction().implies(action);
+        } else if (groups.contains(status.getGroup())) {
+            return permission.getGroupAction().implies(action);
+        }
+        return permission.getOtherAction().implies(action);
+    }
+
+    private static FileStatus getFileStatus(FileSystem fileSystem, Path path) throws IOException {
+        try {
+            return fileSystem.getFileStatus(path);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static FileStatus[] listStatus(FileSystem fileSystem, Path path) throws IOException {
+        try {
+            return fileSystem.listStatus(path);
+        } catch (FileNotFoundException e) {
+            return new FileStatus[0];
+        }
+    }
+
+    /**
+     * The bundles of a software directory, with the status of the directory and its parents
+     * up to the home directory of the owner.
+     */
+    private static class SoftwareDir {
+
+        private final String path;
+        private final String owner;
+        private final FileStatus[] dirStatuses;
+        private final Map<String, Bundle> bundles = new LinkedHashMap<>();
+
+        private SoftwareDir(String path, String owner, FileStatus[] dirStatuses) {
+            this.path = path;
+            this.owner = owner;
+            this.dirStatuses = dirStatuses;
+        }
+
+        /**
+         * @return the number of descriptors parsed
+         */
+        private int scan(FileSystem fileSystem, SoftwareDir previous) throws IOException {
+            int parsedCount = 0;
+            for (FileStatus bundleDirStatus : listStatus(fileSystem, new Path(path))) {
+                if (!bundleDirStatus.isDirectory()) {
+                    continue;
+                }
+                String name = bundleDirStatus.getPath().getName();
+                Bundle previousBundle = previous != null ? previous.bundles.get(name) : null;
+                // the descriptor is taken again even if the directory is unchanged, chmod and chown do not modify it
+                Path descriptorPath = new Path(bundleDirStatus.getPath(), HadoopProcessingService.BUNDLE_DESCRIPTOR_XML_FILENAME);
+                try {
+                    FileStatus descriptorStatus = getFileStatus(fileSystem, descriptorPath);
+                    if (descriptorStatus == null) {
+                        continue;
+                    }
+                    BundleDescriptor descriptor;
+                    if (previousBundle != null && previousBundle.descriptorStatus.getModificationTime() == descriptorStatus.getModificationTime()) {
+                        descriptor = previousBundle.descriptor;
+                    } else {
+                        descriptor = HadoopProcessingService.readBundleDescriptor(fileSystem, descriptorPath);
+                        descriptor.setBundleLocation(bundleDirStatus.getPath().toString());
+                        if (owner != null) {
+                            descriptor.setOwner(owner);
+                        }
+                        parsedCount++;
+                    }
+                    bundles.put(name, new Bundle(name, bundleDirStatus, descriptorStatus, descriptor));
+                } catch (Exception e) {
+                    LOG.warning("error reading bundle-descriptor (" + descriptorPath + ") : " + e.getMessage());
+                }
+            }
+            return parsedCount;
+        }
+
+        private boolean isAccessible(String username, Set<String> groups) {
+            for (int i = 0; i < dirStatuses.length; i++) {
+                // the software directory is listed, its parents are traversed
+                FsAction action = i == dirStatuses.length - 1 ? FsAction.READ_EXECUTE : FsAction.EXECUTE;
+                if (!isPermitted(dirStatuses[i], action, username, groups)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Bundle {
+
+        private final String name;
+        private final FileStatus dirStatus;
+        private final FileStatus descriptorStatus;
+        private final BundleDescriptor descriptor;
+
+        private Bundle(String name, FileStatus dirStatus, FileStatus descriptorStatus, BundleDescriptor descriptor) {
+            this.name = name;
+            this.dirStatus = dirStatus;
+            this.descriptorStatus = descriptorStatus;
+            this.descriptor = descriptor;
+        }
+
+        private boolean isAccessible(String username, Set<String> groups) {
+            return isPermitted(dirStatus, FsAction.EXECUTE, username, groups)
+                   && isPermitted(descriptorStatus, FsAction.READ, username, groups);
+        }
+    }
+}
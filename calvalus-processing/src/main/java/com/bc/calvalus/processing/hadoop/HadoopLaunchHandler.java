@@ -3,6 +3,7 @@ package com.bc.calvalus.processing.hadoop;
 import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.commons.DateUtils;
 import com.bc.calvalus.commons.WorkflowException;
+import com.bc.calvalus.processing.ProcessingScheduler;
 import com.bc.calvalus.processing.executable.KeywordHandler;
 import com.bc.ceres.core.ProcessObserver;
 import com.bc.ceres.core.ProgressMonitor;
@@ -30,7 +31,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -69,28 +70,54 @@ public class HadoopLaunchHandler {
     public HadoopLaunchHandler(HadoopProcessingService hadoopProcessingService, Configuration configuration) {
         this.hadoopProcessingService = hadoopProcessingService;
         this.configuration = configuration;
-        hadoopProcessingService.getTimer().scheduleAtFixedRate(new ClusterSupervisorTask(), 10000, configuration.getInt("calvalus.launcher.supervisor-period", SUPERVISOR_PERIOD) * 1000);
+        hadoopProcessingService.getScheduler().scheduleAtFixedRate(ProcessingScheduler.TaskType.STATUS_POLLING, "ClusterSupervisorTask", new ClusterSupervisorTask(),
+                                                                   10000, configuration.getInt("calvalus.launcher.supervisor-period", SUPERVISOR_PERIOD) * 1000, TimeUnit.MILLISECONDS);
     }
 
-    public void queueWorkflowItem(HadoopWorkflowItem workflowItem) {
+    /**
+     * Queues the workflow item for submission, the cluster is started if necessary.
+     *
+     * @throws WorkflowException if the scheduler rejects the task that would submit the workflow item
+     */
+    public void queueWorkflowItem(HadoopWorkflowItem workflowItem) throws WorkflowException {
         LOG.info("queueWorkflowItem while cluster " + clusterState);
         workflowItemQueue.add(workflowItem);
         synchronized (this) {
+            boolean submitted = true;
             switch (clusterState) {
                 case DOWN:
-                    hadoopProcessingService.getTimer().schedule(new ClusterStartTask(), 0);
+                    submitted = trySubmit(new ClusterStartTask());
                     break;
                 case IDLE:
                     clusterState = ClusterState.UP;
                     // fall through
                 case UP:
-                    hadoopProcessingService.getTimer().schedule(new SubmitTask(), 0);
+                    submitted = trySubmit(new SubmitTask());
                     break;
             }
+            if (!submitted) {
+                workflowItemQueue.remove(workflowItem);
+                throw new WorkflowException("Failed to queue Hadoop job " + workflowItem.getJobName() + ", too many tasks waiting for submission");
+            }
         }
     }
 
-    class SubmitTask extends TimerTask {
+    private boolean trySubmit(Runnable task) {
+        return hadoopProcessingService.getScheduler().submit(ProcessingScheduler.TaskType.JOB_SUBMISSION, task.getClass().getSimpleName(), task);
+    }
+
+    /**
+     * Submits a follow-up task from a task of the job submission thread. A rejected task is run
+     * in the current thread instead, it would not be retried otherwise.
+     */
+    private void submit(Runnable task) {
+        if (!trySubmit(task)) {
+            LOG.warning(task.getClass().getSimpleName() + " rejected, running it in the current thread");
+            task.run();
+        }
+    }
+
+    class SubmitTask implements Runnable {
         @Override
         public void run() {
             LOG.info("SubmitTask started " + clusterState);
@@ -122,7 +149,7 @@ public class HadoopLaunchHandler {
                 LOG.warning("SubmitTask error: " + e);
                 synchronized (HadoopLaunchHandler.this) {
                     clusterState = ClusterState.UNKNOWN;
-                    hadoopProcessingService.getTimer().schedule(new ClusterStopTask(), 0);
+                    submit(new ClusterStopTask());
                 }
             } finally {
                 LOG.info("SubmitTask finished " + clusterState);
@@ -130,7 +157,7 @@ public class HadoopLaunchHandler {
         }
     }
 
-    class ClusterStartTask extends TimerTask {
+    class ClusterStartTask implements Runnable {
         @Override
         public void run() {
             LOG.info("StartTask started " + clusterState);
@@ -144,13 +171,13 @@ public class HadoopLaunchHandler {
                 startCluster();
                 synchronized (HadoopLaunchHandler.this) {
                     clusterState = ClusterState.UP;
-                    hadoopProcessingService.getTimer().schedule(new SubmitTask(), 0);
+                    submit(new SubmitTask());
                 }
             } catch (Exception e) {
                 e.printStackTrace();
                 synchronized (HadoopLaunchHandler.this) {
                     clusterState = ClusterState.UNKNOWN;
-                    hadoopProcessingService.getTimer().schedule(new ClusterStopTask(), 0);
+                    submit(new ClusterStopTask());
                 }
             } finally {
                 LOG.info("StartTask finished " + clusterState);
@@ -158,7 +185,7 @@ public class HadoopLaunchHandler {
         }
     }
 
-    class ClusterStopTask extends TimerTask {
+    class ClusterStopTask implements Runnable {
         @Override
         public void run() {
             try {
@@ -181,29 +208,31 @@ public class HadoopLaunchHandler {
         }
     }
 
-    class ClusterSupervisorTask extends TimerTask {
+    class ClusterSupervisorTask implements Runnable {
 
         @Override
         public void run() {
             try {
                 LOG.info("ClusterSupervisorTask started " + clusterState);
+                // a rejected task is submitted again in the next period, the state is kept for that
                 synchronized (HadoopLaunchHandler.this) {
                     switch (clusterState) {
                         case UNKNOWN:
-                            hadoopProcessingService.getTimer().schedule(new ClusterStopTask(), 0);
+                            trySubmit(new ClusterStopTask());
                             break;
                         case DOWN:
                             if (!workflowItemQueue.isEmpty()) {
-                                hadoopProcessingService.getTimer().schedule(new ClusterStartTask(), 0);
+                                trySubmit(new ClusterStartTask());
                             }
                             break;
                         case IDLE:
                             if (! workflowItemQueue.isEmpty()) {
                                 // should never happen ...
-                                clusterState = ClusterState.UP;
-                                hadoopProcessingService.getTimer().schedule(new SubmitTask(), 0);
+                                if (trySubmit(new SubmitTask())) {
+                                    clusterState = ClusterState.UP;
+                                }
                             } else if (System.currentTimeMillis() > idleSince + configuration.getInt("calvalus.launcher.shutdown-delay", SHUTDOWN_DELAY) * 1000) {
-                                hadoopProcessingService.getTimer().schedule(new ClusterStopTask(), 0);
+                                trySubmit(new ClusterStopTask());
                             }
                             break;
                         case UP:
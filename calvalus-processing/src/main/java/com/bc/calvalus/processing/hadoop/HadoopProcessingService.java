@@ -25,6 +25,7 @@ import com.bc.calvalus.processing.BundleDescriptor;
 import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.JobIdFormat;
 import com.bc.calvalus.processing.MaskDescriptor;
+import com.bc.calvalus.processing.ProcessingScheduler;
 import com.bc.calvalus.processing.ProcessingService;
 import com.bc.calvalus.processing.ProcessorDescriptor;
 import com.bc.calvalus.processing.ra.RARegions;
@@ -58,16 +59,17 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 public class HadoopProcessingService implements ProcessingService<JobID> {
@@ -82,8 +84,9 @@ public class HadoopProcessingService implements ProcessingService<JobID> {
     private final String softwareDir;
     private final Map<JobID, ProcessStatus> jobStatusMap;
     private final List<BundleQueryCacheEntry> bundleQueryCache;
-    private final Timer bundlesQueryCleaner;
+    private final ProcessingScheduler scheduler;
     private final Map<String, BundleCacheEntry> bundleCache;
+    private final BundleDescriptorCache bundleDescriptorCache;
     private final Map<String, ShapefileCacheEntry> shapeAttributeCache;
     private final Logger logger;
     private final ExecutorService executorService = Executors.newFixedThreadPool(3);
@@ -103,21 +106,16 @@ public class HadoopProcessingService implements ProcessingService<JobID> {
         this.jobStatusMap = new WeakHashMap<>();
         this.withExternalAccessControl = Boolean.getBoolean("calvalus.accesscontrol.external");
         this.bundleQueryCache = new ArrayList<>();
-        // TODO there should be one Timer for a process that is used for all timer tasks
-        this.bundlesQueryCleaner = new Timer("bundlesQueryCleaner", true);
-        TimerTask bundlesQueryCleanTask = new TimerTask() {
-            @Override
-            public void run() {
-                synchronized (bundleQueryCache) {
-                    long now = System.currentTimeMillis();
-                    long clearIfOlder = now - CACHE_RETENTION;
-                    bundleQueryCache.removeIf(cacheEntry -> cacheEntry.time < clearIfOlder);
-                }
-
+        this.scheduler = createScheduler(jobClientsMap.getConfiguration());
+        this.scheduler.scheduleAtFixedRate(ProcessingScheduler.TaskType.CACHE_MAINTENANCE, "bundlesQueryCleaner", () -> {
+            synchronized (bundleQueryCache) {
+                long now = System.currentTimeMillis();
+                long clearIfOlder = now - CACHE_RETENTION;
+                bundleQueryCache.removeIf(cacheEntry -> cacheEntry.time < clearIfOlder);
             }
-        };
-        this.bundlesQueryCleaner.scheduleAtFixedRate(bundlesQueryCleanTask, CACHE_RETENTION, CACHE_RETENTION);
-        this.bundleCache = new HashMap<>();
+        }, CACHE_RETENTION, CACHE_RETENTION, TimeUnit.MILLISECONDS);
+        this.bundleCache = new ConcurrentHashMap<>();
+        this.bundleDescriptorCache = createBundleDescriptorCache(jobClientsMap, softwareDir, withExternalAccessControl, scheduler);
         this.shapeAttributeCache = new HashMap<>();
         this.logger = Logger.getLogger("com.bc.calvalus");
         if (jobClientsMap.getConfiguration().get("calvalus.openstack.startcmd") != null) {
@@ -130,13 +128,60 @@ public class HadoopProcessingService implements ProcessingService<JobID> {
     }
 
     @Override
-    public Timer getTimer() { return bundlesQueryCleaner; }
+    public ProcessingScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return the cache of the bundle descriptors shared by all bundle queries, null if access is controlled externally
+     */
+    public BundleDescriptorCache getBundleDescriptorCache() {
+        return bundleDescriptorCache;
+    }
+
+    private static BundleDescriptorCache createBundleDescriptorCache(JobClientsMap jobClientsMap, String softwareDir,
+                                                                     boolean withExternalAccessControl,
+                                                                     ProcessingScheduler scheduler) throws IOException {
+        Configuration configuration = jobClientsMap.getConfiguration();
+        if (withExternalAccessControl || !configuration.getBoolean("calvalus.bundles.cache", true)) {
+            return null;
+        }
+        long refreshPeriod = configuration.getLong("calvalus.bundles.cache.refreshPeriod", CACHE_RETENTION);
+        BundleDescriptorCache cache = new BundleDescriptorCache(jobClientsMap::getFileSystem,
+                                                                UserGroupInformation.getCurrentUser().getShortUserName(),
+                                                                softwareDir, "/calvalus/home", 2 * refreshPeriod);
+        // refreshed in the background, queries only refresh it if the background refresh is late
+        scheduler.scheduleAtFixedRate(ProcessingScheduler.TaskType.CACHE_MAINTENANCE, "bundleDescriptorCacheRefresh", () -> {
+            try {
+                cache.refreshIfOlder(refreshPeriod / 2);
+            } catch (IOException e) {
+                Logger.getLogger("com.bc.calvalus").warning("bundle cache refresh failed: " + e.getMessage());
+            }
+        }, 0, refreshPeriod, TimeUnit.MILLISECONDS);
+        return cache;
+    }
+
+    private static ProcessingScheduler createScheduler(Configuration configuration) {
+        Map<ProcessingScheduler.TaskType, Integer> numThreads = new HashMap<>();
+        for (ProcessingScheduler.TaskType type : ProcessingScheduler.TaskType.values()) {
+            String key = "calvalus.scheduler." + type.name().toLowerCase(Locale.ROOT) + ".threads";
+            numThreads.put(type, configuration.getInt(key, type.getDefaultNumThreads()));
+        }
+        int maxPending = configuration.getInt("calvalus.scheduler.max-pending", ProcessingScheduler.DEFAULT_MAX_PENDING);
+        return new ProcessingScheduler(numThreads, maxPending);
+    }
 
     @Override
     public BundleDescriptor[] getBundles(final String username, final BundleFilter filter) throws IOException {
         logger.fine("HadoopProcessingService.getBundles.start username = [" + username + "], filter = [" + filter + "]");
         long t1 = System.currentTimeMillis();
         try {
+            if (bundleDescriptorCache != null) {
+                BundleDescriptor[] bundles = bundleDescriptorCache.getBundles(username, filter);
+                if (bundles != null) {
+                    return bundles;
+                }
+            }
             String bundleFilterString = filter.toString();
             Future<BundleDescriptor[]> bundleFuture = null;
             synchronized (bundleQueryCache) {
@@ -506,7 +551,7 @@ public class HadoopProcessingService implements ProcessingService<JobID> {
     @Override
     public void close() throws IOException {
         jobClientsMap.close();
-        bundlesQueryCleaner.cancel();
+        scheduler.shutdown();
         executorService.shutdown();
     }
 
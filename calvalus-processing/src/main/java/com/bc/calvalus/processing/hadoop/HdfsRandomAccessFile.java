@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A read-only NetCDF random access file on a Hadoop file system.
+ * <p>
+ * The file is read with positional reads in aligned blocks. The most recently used blocks are cached,
+ * so repeated reads of headers and neighbouring variables do not fetch the same bytes again. Only the
+ * blocks actually read are transferred, not the whole file.
+ */
+public class HdfsRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
+
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+    public static final int DEFAULT_NUM_BLOCKS = 64;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FSDataInputStream in;
+    private final long fileLength;
+    private final int blockSize;
+    private final Map<Long, byte[]> blocks;
+    private long bytesRead;
+
+    public static HdfsRandomAccessFile open(Path path, Configuration conf) throws IOException {
+        FileSystem fs = path.getFileSystem(conf);
+        long length = fs.getFileStatus(path).getLen();
+        return new HdfsRandomAccessFile(fs.open(path), length, path.toString(), DEFAULT_BLOCK_SIZE, DEFAULT_NUM_BLOCKS);
+    }
+
+    /**
+     * @param blockSize the size of the blocks read
+     * @param numBlocks the number of blocks cached
+     */
+    public HdfsRandomAccessFile(FSDataInputStream in, long length, String location, int blockSize, int numBlocks) {
+        super(BUFFER_SIZE);
+        this.in = in;
+        this.fileLength = length;
+        this.location = location;
+        this.blockSize = blockSize;
+        this.blocks = new LinkedHashMap<Long, byte[]>(numBlocks + 1, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > numBlocks;
+            }
+        };
+    }
+
+    /**
+     * @return the number of bytes read from the file system so far
+     */
+    public synchronized long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public long length() {
+        return fileLength;
+    }
+
+    @Override
+    protected synchronized int read_(long pos, byte[] b, int offset, int len) throws IOException {
+        if (pos >= fileLength) {
+            return -1;
+        }
+        len = (int) Math.min(len, fileLength - pos);
+        int done = 0;
+        while (done < len) {
+            long blockIndex = (pos + done) / blockSize;
+            byte[] block = getBlock(blockIndex);
+            int blockOffset = (int) (pos + done - blockIndex * blockSize);
+            int n = Math.min(len - done, block.length - blockOffset);
+            System.arraycopy(block, blockOffset, b, offset + done, n);
+            done += n;
+        }
+        return len;
+    }
+
+    @Override
+    public long readToByteChannel(WritableByteChannel dest, long offset, long nbytes) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(nbytes, BUFFER_SIZE)];
+        long done = 0;
+        while (done < nbytes) {
+            int n = read_(offset + done, buffer, 0, (int) Math.min(buffer.length, nbytes - done));
+            if (n <= 0) {
+                throw new EOFException("read beyond end of " + location);
+            }
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, n);
+            while (byteBuffer.hasRemaining()) {
+                dest.write(byteBuffer);
+            }
+            done += n;
+        }
+        return done;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        super.close();
+        blocks.clear();
+        in.close();
+    }
+
+    private byte[] getBlock(long blockIndex) throws IOException {
+        byte[] block = blocks.get(blockIndex);
+        if (block == null) {
+            long blockStart = blockIndex * blockSize;
+            block = new byte[(int) Math.min(blockSize, fileLength - blockStart)];
+            in.readFully(blockStart, block, 0, block.length);
+            bytesRead += block.length;
+            blocks.put(blockIndex, block);
+        }
+        return block;
+    }
+}
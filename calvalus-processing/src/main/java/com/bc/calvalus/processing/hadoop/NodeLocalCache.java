@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.processing.JobConfigNames;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsAction;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A cache of input files in a directory of the node, shared by the tasks on the node.
+ * <p>
+ * An entry is keyed by the path, length and modification time of the file and holds one copy of it.
+ * Directories are not cached, they are copied to the local file directly.
+ * The local file of a task is a symbolic link to the copy. A task holds a shared lock on each entry it uses
+ * until it terminates, the first task that needs an entry copies it while holding an exclusive lock,
+ * and other tasks needing the same entry wait for the copy. When the size of the cache would exceed its
+ * maximum, entries not in use are evicted, least recently used first. If there is no room or the cache
+ * fails, the file is copied to the local file directly.
+ * <p>
+ * The cache is used if {@link JobConfigNames#CALVALUS_LOCAL_CACHE_DIR} is set, its maximum size in MB is
+ * {@link JobConfigNames#CALVALUS_LOCAL_CACHE_MAX_SIZE}, 20 GB by default, per user. The directory is shared by
+ * the users of the node, it must be writable by all of them. The entries of a user are kept in a subdirectory
+ * accessible by this user only, and read access to the file is checked before a cached copy is used.
+ */
+public class NodeLocalCache {
+
+    private static final Logger LOG = CalvalusLogger.getLogger();
+    private static final String COUNTER_GROUP = "Node Local Cache";
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final long DEFAULT_MAX_SIZE_MB = 20 * 1024;
+    private static final long MB = 1024L * 1024L;
+
+    private static final Map<File, NodeLocalCache> INSTANCES = new HashMap<>();
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+    private static final AtomicLong BYTES_SAVED = new AtomicLong();
+    private static final AtomicLong BYTES_COPIED = new AtomicLong();
+
+    private final File cacheDir;
+    private final long maxSize;
+    private final Map<String, Object> keyMonitors = new ConcurrentHashMap<>();
+    private final Map<String, FileLock> usedEntries = new ConcurrentHashMap<>();
+
+    /**
+     * @return the cache configured by {@link JobConfigNames#CALVALUS_LOCAL_CACHE_DIR}, or null if none is configured
+     */
+    public static synchronized NodeLocalCache getInstance(Configuration conf) {
+        String dir = conf.get(JobConfigNames.CALVALUS_LOCAL_CACHE_DIR);
+        if (dir == null || dir.trim().isEmpty()) {
+            return null;
+        }
+        File cacheDir = new File(dir.trim(), System.getProperty("user.name"));
+        NodeLocalCache cache = INSTANCES.get(cacheDir);
+        if (cache == null) {
+            long maxSize = conf.getLong(JobConfigNames.CALVALUS_LOCAL_CACHE_MAX_SIZE, DEFAULT_MAX_SIZE_MB) * MB;
+            cache = new NodeLocalCache(cacheDir, maxSize);
+            INSTANCES.put(cacheDir, cache);
+        }
+        return cache;
+    }
+
+    NodeLocalCache(File cacheDir, long maxSize) {
+        this.cacheDir = cacheDir;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Provides a file as local file, as link to the cached copy or as a copy of its own.
+     * An existing local file is kept.
+     */
+    public File copyToLocal(Path path, File localFile, Configuration conf) throws IOException {
+        if (localFile.exists()) {
+            LOG.info("copyToLocal: File already exist");
+            return localFile;
+        }
+        File parentDir = localFile.getAbsoluteFile().getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+        FileSystem fs = path.getFileSystem(conf);
+        FileStatus status = fs.getFileStatus(path);
+        if (status.isDirectory()) {
+            // neither the size nor the modification time of a directory tells whether its content has changed
+            FileUtil.copy(fs, path, localFile, false, conf);
+            return localFile;
+        }
+        // getFileStatus does not require read permission, a cached copy must not be used by a user not allowed to read
+        fs.access(path, FsAction.READ);
+        File cachedFile = null;
+        try {
+            cachedFile = getCachedFile(fs, status);
+        } catch (IOException e) {
+            LOG.warning("node local cache " + cacheDir + " failed for " + path + ", copying directly: " + e.getMessage());
+        }
+        if (cachedFile == null) {
+            FileUtil.copy(fs, path, localFile, false, conf);
+            MISSES.incrementAndGet();
+            BYTES_COPIED.addAndGet(status.getLen());
+            return localFile;
+        }
+        Files.createSymbolicLink(localFile.toPath(), cachedFile.getAbsoluteFile().toPath());
+        LOG.info("copyToLocal: " + path + " linked from " + cachedFile);
+        return localFile;
+    }
+
+    /**
+     * Sets the counters of the cache in the job. The counters are totals of the process.
+     */
+    public static void reportCounters(TaskAttemptContext context) {
+        if (HITS.get() + MISSES.get() > 0) {
+            context.getCounter(COUNTER_GROUP, "HITS").setValue(HITS.get());
+            context.getCounter(COUNTER_GROUP, "MISSES").setValue(MISSES.get());
+            context.getCounter(COUNTER_GROUP, "BYTES_SAVED").setValue(BYTES_SAVED.get());
+            context.getCounter(COUNTER_GROUP, "BYTES_COPIED").setValue(BYTES_COPIED.get());
+        }
+    }
+
+    static long getHits() {
+        return HITS.get();
+    }
+
+    static long getMisses() {
+        return MISSES.get();
+    }
+
+    /**
+     * @return the cached copy, locked for use by this process, or null if there is no room for it
+     */
+    private File getCachedFile(FileSystem fs, FileStatus status) throws IOException {
+        String key = getKey(status);
+        File entryDir = new File(cacheDir, key);
+        File cachedFile = new File(entryDir, status.getPath().getName());
+        synchronized (keyMonitors.computeIfAbsent(key, k -> new Object())) {
+            if (usedEntries.containsKey(key) && cachedFile.exists()) {
+                recordHit(status);
+                entryDir.setLastModified(System.currentTimeMillis());
+                return cachedFile;
+            }
+            if (!cacheDir.exists()) {
+                createCacheDir();
+            }
+            File lockFile = new File(cacheDir, key + LOCK_SUFFIX);
+            FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            boolean copied = false;
+            try {
+                while (true) {
+                    FileLock sharedLock = channel.lock(0L, Long.MAX_VALUE, true);
+                    if (cachedFile.exists()) {
+                        usedEntries.put(key, sharedLock);
+                        if (!copied) {
+                            recordHit(status);
+                        }
+                        entryDir.setLastModified(System.currentTimeMillis());
+                        return cachedFile;
+                    }
+                    sharedLock.release();
+                    boolean fits = true;
+                    try (FileLock ignored = channel.lock()) {
+                        if (!cachedFile.exists()) {
+                            fits = makeRoom(status.getLen(), key);
+                            if (fits) {
+                                copy(fs, status, entryDir, cachedFile);
+                                copied = true;
+                            }
+                        }
+                    }
+                    if (!fits) {
+                        LOG.info("no room for " + status.getPath() + " in node local cache " + cacheDir);
+                        channel.close();
+                        return null;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+    }
+
+    private void copy(FileSystem fs, FileStatus status, File entryDir, File cachedFile) throws IOException {
+        if (!entryDir.exists() && !entryDir.mkdirs()) {
+            throw new IOException("cannot create " + entryDir);
+        }
+        File tmpFile = new File(entryDir, cachedFile.getName() + TMP_SUFFIX);
+        long t0 = System.currentTimeMillis();
+        FileUtil.copy(fs, status.getPath(), tmpFile, false, fs.getConf());
+        Files.move(tmpFile.toPath(), cachedFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        MISSES.incrementAndGet();
+        BYTES_COPIED.addAndGet(status.getLen());
+        LOG.info(String.format("copied %s of %,d bytes to node local cache in %,d ms",
+                               status.getPath(), status.getLen(), System.currentTimeMillis() - t0));
+    }
+
+    /**
+     * Evicts entries not in use, least recently used first, until an entry of the given size fits.
+     *
+     * @return false if the entry does not fit
+     */
+    private boolean makeRoom(long size, String ownKey) throws IOException {
+        if (size > maxSize) {
+            return false;
+        }
+        File[] entryDirs = cacheDir.listFiles(file -> file.isDirectory() && !file.getName().equals(ownKey));
+        if (entryDirs == null) {
+            return false;
+        }
+        List<File> entries = new ArrayList<>(Arrays.asList(entryDirs));
+        Map<File, Long> entrySizes = new HashMap<>();
+        long totalSize = 0;
+        for (File entryDir : entries) {
+            long entrySize = getSize(entryDir);
+            entrySizes.put(entryDir, entrySize);
+            totalSize += entrySize;
+        }
+        entries.sort(Comparator.comparingLong(File::lastModified));
+        for (File entryDir : entries) {
+            if (totalSize + size <= maxSize) {
+                break;
+            }
+            if (usedEntries.containsKey(entryDir.getName())) {
+                continue;
+            }
+            File lockFile = new File(cacheDir, entryDir.getName() + LOCK_SUFFIX);
+            try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                 FileLock lock = channel.tryLock()) {
+                if (lock != null) {
+                    FileUtil.fullyDelete(entryDir);
+                    totalSize -= entrySizes.get(entryDir);
+                    LOG.info("evicted " + entryDir + " from node local cache");
+                }
+            } catch (OverlappingFileLockException e) {
+                // in use by another thread of this process
+            }
+        }
+        return totalSize + size <= maxSize;
+    }
+
+    private static long getSize(File entryDir) {
+        long size = 0;
+        File[] files = entryDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    private void recordHit(FileStatus status) {
+        HITS.incrementAndGet();
+        BYTES_SAVED.addAndGet(status.getLen());
+    }
+
+    /**
+     * Creates the directory of the entries of this user, accessible by the user only,
+     * in the directory shared by all users.
+     */
+    private void createCacheDir() throws IOException {
+        File sharedDir = cacheDir.getAbsoluteFile().getParentFile();
+        if (sharedDir != null && !sharedDir.exists() && sharedDir.mkdirs()) {
+            sharedDir.setReadable(true, false);
+            sharedDir.setWritable(true, false);
+            sharedDir.setExecutable(true, false);
+        }
+        if (!cacheDir.mkdir() && !cacheDir.isDirectory()) {
+            throw new IOException("cannot create " + cacheDir);
+        }
+        Files.setPosixFilePermissions(cacheDir.toPath(), PosixFilePermissions.fromString("rwx------"));
+    }
+
+    static String getKey(FileStatus status) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            String id = status.getPath().toUri().toString() + '\n' + status.getLen() + '\n' + status.getModificationTime();
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest(id.getBytes(StandardCharsets.UTF_8))) {
+                key.append(String.format("%02x", b & 0xff));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
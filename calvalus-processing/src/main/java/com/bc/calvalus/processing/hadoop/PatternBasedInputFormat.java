@@ -58,6 +58,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -173,21 +177,8 @@ public class PatternBasedInputFormat extends InputFormat {
             splits = new ArrayList<>(1000);
             if (InputPathResolver.containsDateVariables(inputPathPatterns)) {
                 List<DateRange> dateRanges = createDateRangeList(dateRangesString);
-                for (DateRange dateRange : dateRanges) {
-                    List<String> inputPatterns = getInputPatterns(inputPathPatterns, dateRange.getStartDate(),
-                                                                  dateRange.getStopDate(), regionName);
-                    RemoteIterator<LocatedFileStatus> fileStatusIt = getFileStatuses(hdfsFileSystemService,
-                                                                                     inputPatterns, conf, null, true);
-                    LOG.info("query for " + dateRange + " done");
-                    if (!productIdentifiers.isEmpty()) {
-                        fileStatusIt = filterUsingProductIdentifiers(fileStatusIt, productIdentifiers);
-                    }
-                    createSplits(productInventory, fileStatusIt, splits, conf, requestSizeLimit, true);
-                    if (requestSizeLimit > 0 && splits.size() >= requestSizeLimit) {
-                        splits = splits.subList(0, requestSizeLimit);
-                        break;
-                    }
-                }
+                splits = createSplitsOfDateRanges(hdfsFileSystemService, productInventory, dateRanges, inputPathPatterns,
+                                                  regionName, productIdentifiers, null, conf, requestSizeLimit, true);
             } else {
                 List<String> inputPatterns = getInputPatterns(inputPathPatterns, null, null, regionName);
                 RemoteIterator<LocatedFileStatus> fileStatusIt = getFileStatuses(hdfsFileSystemService, inputPatterns,
@@ -211,20 +202,8 @@ public class PatternBasedInputFormat extends InputFormat {
             splits = new ArrayList<>(1000);
             if (InputPathResolver.containsDateVariables(inputPathPatterns)) {
                 List<DateRange> dateRanges = createDateRangeList(dateRangesString);
-                for (DateRange dateRange : dateRanges) {
-                    List<String> inputPatterns = getInputPatterns(inputPathPatterns, dateRange.getStartDate(),
-                                                                  dateRange.getStopDate(), regionName);
-                    RemoteIterator<LocatedFileStatus> fileStatusIt = getFileStatuses(hdfsFileSystemService,
-                                                                                     inputPatterns, conf, pathInDB, false);
-                    if (!productIdentifiers.isEmpty()) {
-                        fileStatusIt = filterUsingProductIdentifiers(fileStatusIt, productIdentifiers);
-                    }
-                    createSplits(productInventory, fileStatusIt, splits, conf, requestSizeLimit, false);
-                    if (requestSizeLimit > 0 && splits.size() >= requestSizeLimit) {
-                        splits = splits.subList(0, requestSizeLimit);
-                        break;
-                    }
-                }
+                splits = createSplitsOfDateRanges(hdfsFileSystemService, productInventory, dateRanges, inputPathPatterns,
+                                                  regionName, productIdentifiers, pathInDB, conf, requestSizeLimit, false);
             } else {
                 List<String> inputPatterns = getInputPatterns(inputPathPatterns, null, null, regionName);
                 RemoteIterator<LocatedFileStatus> fileStatusIt = getFileStatuses(hdfsFileSystemService, inputPatterns,
@@ -428,6 +407,101 @@ public class PatternBasedInputFormat extends InputFormat {
         return productArchivePath;
     }
 
+    /**
+     * Creates the splits of the files of all date ranges, in the order of the date ranges.
+     * The file system is queried for several date ranges concurrently, ahead of the split creation.
+     */
+    private List<InputSplit> createSplitsOfDateRanges(HdfsFileSystemService hdfsFileSystemService,
+                                                      ProductInventory productInventory,
+                                                      List<DateRange> dateRanges,
+                                                      String inputPathPatterns,
+                                                      String regionName,
+                                                      Set<String> productIdentifiers,
+                                                      Set<String> existingPathes,
+                                                      Configuration conf, int requestSizeLimit, boolean withDirs) throws IOException {
+        int numThreads = conf.getInt(JobConfigNames.CALVALUS_INPUT_SPLIT_THREADS, GeodbInputFormat.DEFAULT_SPLIT_THREADS);
+        int maxQueriesAhead = 2 * numThreads;
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        List<InputSplit> splits = new ArrayList<>(1000);
+        try {
+            List<Future<List<LocatedFileStatus>>> queries = new ArrayList<>(dateRanges.size());
+            for (int i = 0; i < dateRanges.size(); i++) {
+                while (queries.size() < dateRanges.size() && queries.size() <= i + maxQueriesAhead) {
+                    DateRange dateRange = dateRanges.get(queries.size());
+                    queries.add(executorService.submit(() -> queryFileStatuses(hdfsFileSystemService, dateRange, inputPathPatterns,
+                                                                               regionName, productIdentifiers, existingPathes,
+                                                                               conf, withDirs)));
+                }
+                List<LocatedFileStatus> fileStatuses = getQueryResult(queries.get(i));
+                queries.set(i, null);
+                createSplits(productInventory, new ListRemoteIterator(fileStatuses), splits, conf, requestSizeLimit, withDirs);
+                if (requestSizeLimit > 0 && splits.size() >= requestSizeLimit) {
+                    splits = splits.subList(0, requestSizeLimit);
+                    break;
+                }
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        return splits;
+    }
+
+    private List<LocatedFileStatus> queryFileStatuses(HdfsFileSystemService hdfsFileSystemService,
+                                                      DateRange dateRange,
+                                                      String inputPathPatterns,
+                                                      String regionName,
+                                                      Set<String> productIdentifiers,
+                                                      Set<String> existingPathes,
+                                                      Configuration conf, boolean withDirs) throws IOException {
+        long t0 = System.currentTimeMillis();
+        List<String> inputPatterns = getInputPatterns(inputPathPatterns, dateRange.getStartDate(),
+                                                      dateRange.getStopDate(), regionName);
+        RemoteIterator<LocatedFileStatus> fileStatusIt = getFileStatuses(hdfsFileSystemService,
+                                                                         inputPatterns, conf, existingPathes, withDirs);
+        if (!productIdentifiers.isEmpty()) {
+            fileStatusIt = filterUsingProductIdentifiers(fileStatusIt, productIdentifiers);
+        }
+        List<LocatedFileStatus> fileStatuses = new ArrayList<>();
+        while (fileStatusIt.hasNext()) {
+            fileStatuses.add(fileStatusIt.next());
+        }
+        LOG.info(String.format("query for %s done, %d files, took %d ms",
+                               dateRange, fileStatuses.size(), System.currentTimeMillis() - t0));
+        return fileStatuses;
+    }
+
+    private static List<LocatedFileStatus> getQueryResult(Future<List<LocatedFileStatus>> query) throws IOException {
+        try {
+            return query.get();
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted while querying the file system", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("failed to query the file system", e.getCause());
+        }
+    }
+
+    private static class ListRemoteIterator implements RemoteIterator<LocatedFileStatus> {
+
+        private final Iterator<LocatedFileStatus> iterator;
+
+        private ListRemoteIterator(List<LocatedFileStatus> fileStatuses) {
+            this.iterator = fileStatuses.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public LocatedFileStatus next() {
+            return iterator.next();
+        }
+    }
+
     private RemoteIterator<LocatedFileStatus> filterUsingProductIdentifiers(
                 RemoteIterator<LocatedFileStatus> fileStatusIt,
                 Set<String> productIdentifiers) throws IOException {
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import org.apache.hadoop.util.Progressable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An output stream that passes the bytes written to another stream in a separate thread.
+ * <p>
+ * The bytes are collected in chunks, at most a fixed number of chunks is waiting for the target stream.
+ * A writer thereby is not slowed down by the latency of the target stream, e.g. an HDFS pipeline,
+ * while the memory used stays bounded. Chunks are reused. An error of the target stream is thrown
+ * by the next write or by {@link #close()}, which waits until all chunks have been written and closes the target.
+ */
+public class PipelinedOutputStream extends OutputStream {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    public static final int DEFAULT_NUM_CHUNKS = 16;
+
+    private static final Chunk END = new Chunk(new byte[0]);
+
+    private final OutputStream target;
+    private final Progressable progressable;
+    private final int chunkSize;
+    private final BlockingQueue<Chunk> filledChunks;
+    private final BlockingQueue<Chunk> freeChunks;
+    private final Thread writerThread;
+    private volatile Throwable error;
+    private Chunk current;
+    private long bytesWritten;
+    private boolean closed;
+
+    public PipelinedOutputStream(OutputStream target, Progressable progressable) {
+        this(target, progressable, DEFAULT_CHUNK_SIZE, DEFAULT_NUM_CHUNKS);
+    }
+
+    public PipelinedOutputStream(OutputStream target, Progressable progressable, int chunkSize, int numChunks) {
+        this.target = target;
+        this.progressable = progressable;
+        this.chunkSize = chunkSize;
+        this.filledChunks = new ArrayBlockingQueue<>(numChunks);
+        this.freeChunks = new ArrayBlockingQueue<>(numChunks + 2);
+        this.writerThread = new Thread(this::writeChunks, "pipelined-output");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * @return the number of bytes written to this stream
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (current == null || current.length == chunkSize) {
+            nextChunk();
+        }
+        current.data[current.length++] = (byte) b;
+        bytesWritten++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        bytesWritten += len;
+        while (len > 0) {
+            if (current == null || current.length == chunkSize) {
+                nextChunk();
+            }
+            int n = Math.min(len, chunkSize - current.length);
+            System.arraycopy(b, off, current.data, current.length, n);
+            current.length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Passes the bytes written so far to the target stream, without waiting until they are written.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (current != null && current.length > 0) {
+            put(current);
+            current = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+            put(END);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            writerThread.interrupt();
+            throw new InterruptedIOException("interrupted while writing pipelined output");
+        } finally {
+            closed = true;
+            if (writerThread.isAlive()) {
+                writerThread.interrupt();
+            }
+            target.close();
+        }
+        checkError();
+    }
+
+    private void nextChunk() throws IOException {
+        if (current != null) {
+            put(current);
+        }
+        current = freeChunks.poll();
+        if (current == null) {
+            current = new Chunk(new byte[chunkSize]);
+        }
+        current.length = 0;
+    }
+
+    private void put(Chunk chunk) throws IOException {
+        try {
+            while (!filledChunks.offer(chunk, 1, TimeUnit.SECONDS)) {
+                checkError();
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("interrupted while writing pipelined output");
+        }
+        checkError();
+    }
+
+    private void writeChunks() {
+        try {
+            while (true) {
+                Chunk chunk = filledChunks.take();
+                if (chunk == END) {
+                    break;
+                }
+                target.write(chunk.data, 0, chunk.length);
+                progressable.progress();
+                freeChunks.offer(chunk);
+            }
+            target.flush();
+        } catch (Throwable t) {
+            error = t;
+            // unblock the writer, the chunks are not needed anymore
+            filledChunks.clear();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+        checkError();
+    }
+
+    private void checkError() throws IOException {
+        Throwable t = error;
+        if (t != null) {
+            if (t instanceof IOException) {
+                throw new IOException("pipelined output failed: " + t.getMessage(), t);
+            }
+            throw new IOException("pipelined output failed: " + t, t);
+        }
+    }
+
+    private static class Chunk {
+
+        private final byte[] data;
+        private int length;
+
+        private Chunk(byte[] data) {
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import com.bc.calvalus.processing.JobConfigNames;
+import org.apache.hadoop.conf.Configuration;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Serialization of the primitive arrays of raster writables.
+ * <p>
+ * An array is transferred as a whole through a byte buffer view instead of value by value,
+ * and optionally compressed. The byte, compressed and shuffled buffers, the deflater and the inflater
+ * are kept per thread and reused for all records. The codec is written with each array, so reading
+ * does not depend on the configuration of the writer. The length of the array is not written,
+ * the reader must know it.
+ */
+public class RasterSerialization {
+
+    public enum Codec {
+        /**
+         * The bytes of the values in big endian order.
+         */
+        RAW(0),
+        /**
+         * The bytes of the values, deflated.
+         */
+        DEFLATE(1),
+        /**
+         * The bytes of the values grouped by their position in the value, deflated. The high order bytes
+         * of neighbouring samples are often equal, grouping them makes the data compress better and faster.
+         */
+        SHUFFLE_DEFLATE(2);
+
+        private final int id;
+
+        Codec(int id) {
+            this.id = id;
+        }
+
+        static Codec ofId(int id) throws IOException {
+            for (Codec codec : values()) {
+                if (codec.id == id) {
+                    return codec;
+                }
+            }
+            throw new IOException("unknown raster codec " + id);
+        }
+
+        /**
+         * @param name the name of the codec, case-insensitive, with '-' or '_' as separator
+         */
+        public static Codec of(String name) {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+    private static volatile Codec configuredCodec = null;
+
+    private RasterSerialization() {
+    }
+
+    /**
+     * Sets the codec of the raster writables written by this process
+     * to the value of {@link JobConfigNames#CALVALUS_RASTER_CODEC}, if given.
+     */
+    public static void configure(Configuration conf) {
+        String codecName = conf.get(JobConfigNames.CALVALUS_RASTER_CODEC);
+        configuredCodec = codecName != null ? Codec.of(codecName) : null;
+    }
+
+    /**
+     * @return the configured codec, or the default of the writable if none is configured
+     */
+    public static Codec getCodec(Codec defaultCodec) {
+        Codec codec = configuredCodec;
+        return codec != null ? codec : defaultCodec;
+    }
+
+    /**
+     * Writes an int[], long[], float[], double[], short[] or byte[] array.
+     */
+    public static void write(DataOutput out, Object array, Codec codec) throws IOException {
+        int elementSize = getElementSize(array);
+        if (elementSize == 1 && codec == Codec.SHUFFLE_DEFLATE) {
+            codec = Codec.DEFLATE;
+        }
+        out.writeByte(codec.id);
+        if (codec == Codec.RAW && array instanceof byte[]) {
+            out.write((byte[]) array);
+            return;
+        }
+        Buffers buffers = BUFFERS.get();
+        int numBytes = getLength(array) * elementSize;
+        byte[] bytes = buffers.getBytes(numBytes);
+        pack(array, bytes);
+        if (codec == Codec.RAW) {
+            out.write(bytes, 0, numBytes);
+            return;
+        }
+        byte[] input = bytes;
+        if (codec == Codec.SHUFFLE_DEFLATE) {
+            input = buffers.getShuffled(numBytes);
+            shuffle(bytes, input, numBytes, elementSize);
+        }
+        Deflater deflater = buffers.deflater;
+        deflater.reset();
+        deflater.setInput(input, 0, numBytes);
+        deflater.finish();
+        byte[] compressed = buffers.getCompressed(numBytes / 2 + 64);
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                compressed = buffers.getCompressed(2 * compressed.length);
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+        out.writeInt(compressedLength);
+        out.write(compressed, 0, compressedLength);
+    }
+
+    /**
+     * Reads an array written by {@link #write}, into an array of the same type and length.
+     */
+    public static void read(DataInput in, Object array) throws IOException {
+        int elementSize = getElementSize(array);
+        Codec codec = Codec.ofId(in.readByte());
+        if (codec == Codec.RAW && array instanceof byte[]) {
+            in.readFully((byte[]) array);
+            return;
+        }
+        Buffers buffers = BUFFERS.get();
+        int numBytes = getLength(array) * elementSize;
+        byte[] bytes = buffers.getBytes(numBytes);
+        if (codec == Codec.RAW) {
+            in.readFully(bytes, 0, numBytes);
+        } else {
+            int compressedLength = in.readInt();
+            byte[] compressed = buffers.getCompressed(compressedLength);
+            in.readFully(compressed, 0, compressedLength);
+            byte[] output = codec == Codec.SHUFFLE_DEFLATE ? buffers.getShuffled(numBytes) : bytes;
+            inflate(buffers.inflater, compressed, compressedLength, output, numBytes);
+            if (codec == Codec.SHUFFLE_DEFLATE) {
+                unshuffle(output, bytes, numBytes, elementSize);
+            }
+        }
+        unpack(bytes, array);
+    }
+
+    private static void inflate(Inflater inflater, byte[] compressed, int compressedLength, byte[] output, int numBytes) throws IOException {
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedLength);
+        try {
+            int length = 0;
+            while (length < numBytes) {
+                int n = inflater.inflate(output, length, numBytes - length);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException(String.format("raster truncated, %d of %d bytes", length, numBytes));
+                }
+                length += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt raster: " + e.getMessage(), e);
+        }
+    }
+
+    private static void shuffle(byte[] source, byte[] target, int numBytes, int elementSize) {
+        int numElements = numBytes / elementSize;
+        for (int b = 0; b < elementSize; b++) {
+            int targetIndex = b * numElements;
+            for (int sourceIndex = b; sourceIndex < numBytes; sourceIndex += elementSize) {
+                target[targetIndex++] = source[sourceIndex];
+            }
+        }
+    }
+
+    private static void unshuffle(byte[] source, byte[] target, int numBytes, int elementSize) {
+        int numElements = numBytes / elementSize;
+        for (int b = 0; b < elementSize; b++) {
+            int sourceIndex = b * numElements;
+            for (int targetIndex = b; targetIndex < numBytes; targetIndex += elementSize) {
+                target[targetIndex] = source[sourceIndex++];
+            }
+        }
+    }
+
+    private static void pack(Object array, byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (array instanceof float[]) {
+            buffer.asFloatBuffer().put((float[]) array);
+        } else if (array instanceof int[]) {
+            buffer.asIntBuffer().put((int[]) array);
+        } else if (array instanceof short[]) {
+            buffer.asShortBuffer().put((short[]) array);
+        } else if (array instanceof double[]) {
+            buffer.asDoubleBuffer().put((double[]) array);
+        } else if (array instanceof long[]) {
+            buffer.asLongBuffer().put((long[]) array);
+        } else {
+            byte[] byteArray = (byte[]) array;
+            System.arraycopy(byteArray, 0, bytes, 0, byteArray.length);
+        }
+    }
+
+    private static void unpack(byte[] bytes, Object array) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (array instanceof float[]) {
+            buffer.asFloatBuffer().get((float[]) array);
+        } else if (array instanceof int[]) {
+            buffer.asIntBuffer().get((int[]) array);
+        } else if (array instanceof short[]) {
+            buffer.asShortBuffer().get((short[]) array);
+        } else if (array instanceof double[]) {
+            buffer.asDoubleBuffer().get((double[]) array);
+        } else if (array instanceof long[]) {
+            buffer.asLongBuffer().get((long[]) array);
+        } else {
+            byte[] byteArray = (byte[]) array;
+            System.arraycopy(bytes, 0, byteArray, 0, byteArray.length);
+        }
+    }
+
+    private static int getElementSize(Object array) {
+        if (array instanceof float[] || array instanceof int[]) {
+            return 4;
+        } else if (array instanceof short[]) {
+            return 2;
+        } else if (array instanceof double[] || array instanceof long[]) {
+            return 8;
+        } else if (array instanceof byte[]) {
+            return 1;
+        }
+        throw new IllegalArgumentException("unsupported raster array " + (array != null ? array.getClass().getName() : null));
+    }
+
+    private static int getLength(Object array) {
+        if (array instanceof float[]) {
+            return ((float[]) array).length;
+        } else if (array instanceof int[]) {
+            return ((int[]) array).length;
+        } else if (array instanceof short[]) {
+            return ((short[]) array).length;
+        } else if (array instanceof double[]) {
+            return ((double[]) array).length;
+        } else if (array instanceof long[]) {
+            return ((long[]) array).length;
+        }
+        return ((byte[]) array).length;
+    }
+
+    private static class Buffers {
+
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final Inflater inflater = new Inflater();
+        private byte[] bytes = new byte[0];
+        private byte[] shuffled = new byte[0];
+        private byte[] compressed = new byte[0];
+
+        private byte[] getBytes(int length) {
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            return bytes;
+        }
+
+        private byte[] getShuffled(int length) {
+            if (shuffled.length < length) {
+                shuffled = new byte[length];
+            }
+            return shuffled;
+        }
+
+        private byte[] getCompressed(int length) {
+            if (compressed.length < length) {
+                compressed = Arrays.copyOf(compressed, length);
+            }
+            return compressed;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import org.apache.hadoop.io.Writable;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.lang.reflect.Array;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -36,29 +37,9 @@ public class RasterStackWritable implements Writable {
             out.writeChar(bandType.id);
         }
 
-        for (int i = 0; i < bandTypes.length; i++) {
-            Type type = bandTypes[i];
-            Object sourceArray = data[i];
-
-            int pixelIndex = 0;
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    if (type == Type.INTEGER) {
-                        out.writeInt(((int[]) sourceArray)[pixelIndex]);
-                    } else if (type == Type.LONG) {
-                        out.writeLong(((long[]) sourceArray)[pixelIndex]);
-                    } else if (type == Type.FLOAT) {
-                        out.writeFloat(((float[]) sourceArray)[pixelIndex]);
-                    } else if (type == Type.DOUBLE) {
-                        out.writeDouble(((double[]) sourceArray)[pixelIndex]);
-                    } else if (type == Type.SHORT) {
-                        out.writeShort(((short[]) sourceArray)[pixelIndex]);
-                    } else if (type == Type.BYTE) {
-                        out.writeByte(((byte[]) sourceArray)[pixelIndex]);
-                    }
-                    pixelIndex++;
-                }
-            }
+        RasterSerialization.Codec codec = RasterSerialization.getCodec(RasterSerialization.Codec.RAW);
+        for (Object array : data) {
+            RasterSerialization.write(out, array, codec);
         }
     }
 
@@ -67,10 +48,18 @@ public class RasterStackWritable implements Writable {
         width = in.readInt();
         height = in.readInt();
         int numBands = in.readInt();
+        Type[] previousTypes = bandTypes;
+        Object[] previousData = data;
         bandTypes = new Type[numBands];
         data = new Object[numBands];
         for (int i = 0; i < numBands; i++) {
             bandTypes[i] = Type.getType(in.readChar());
+            if (previousTypes != null && i < previousTypes.length && previousTypes[i] == bandTypes[i]
+                && previousData[i] != null && Array.getLength(previousData[i]) == width * height) {
+                // reuse the array of the previous record
+                data[i] = previousData[i];
+                continue;
+            }
             switch (bandTypes[i]) {
                 case INTEGER:
                     data[i] = new int[width * height];
@@ -95,31 +84,9 @@ public class RasterStackWritable implements Writable {
             }
         }
 
-        for (int i = 0; i < numBands; i++) {
-            Type type = bandTypes[i];
-            Object sourceArray = data[i];
-
-            int pixelIndex = 0;
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    if (type == Type.INTEGER) {
-                        ((int[]) sourceArray)[pixelIndex] = in.readInt();
-                    } else if (type == Type.LONG) {
-                        ((long[]) sourceArray)[pixelIndex] = in.readLong();
-                    } else if (type == Type.FLOAT) {
-                        ((float[]) sourceArray)[pixelIndex] = in.readFloat();
-                    } else if (type == Type.DOUBLE) {
-                        ((double[]) sourceArray)[pixelIndex] = in.readDouble();
-                    } else if (type == Type.SHORT) {
-                        ((short[]) sourceArray)[pixelIndex] = in.readShort();
-                    } else if (type == Type.BYTE) {
-                        ((byte[]) sourceArray)[pixelIndex] = in.readByte();
-                    }
-                    pixelIndex++;
-                }
-            }
+        for (Object array : data) {
+            RasterSerialization.read(in, array);
         }
-
     }
 
     public void setBandType(int index, Type bandType) {
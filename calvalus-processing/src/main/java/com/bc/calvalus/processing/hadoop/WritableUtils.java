@@ -51,4 +51,50 @@ public class WritableUtils {
         }
     }
 
+    /**
+     * Converts a float into its IEEE 754 half precision (binary16) representation.
+     * Values are rounded to nearest, values beyond the half precision range become infinite.
+     */
+    public static short floatToHalf(float value) {
+        if (Float.isNaN(value)) {
+            return (short) 0x7e00;
+        }
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int abs = bits & 0x7fffffff;
+        if (abs >= 0x477ff000) {
+            // 65520 and above rounds to infinity
+            return (short) (sign | 0x7c00);
+        }
+        if (abs >= 0x38800000) {
+            // normal half, round to nearest even
+            int rounded = abs + 0x0fff + ((abs >>> 13) & 1);
+            return (short) (sign | ((rounded - 0x38000000) >>> 13));
+        }
+        if (abs < 0x33000000) {
+            return (short) sign;
+        }
+        // sub-normal half
+        int shift = 126 - (abs >>> 23);
+        int mantissa = (abs & 0x7fffff) | 0x800000;
+        return (short) (sign | ((mantissa + (1 << (shift - 1))) >>> shift));
+    }
+
+    /**
+     * Converts an IEEE 754 half precision (binary16) value into a float.
+     */
+    public static float halfToFloat(short half) {
+        int sign = (half & 0x8000) << 16;
+        int exponent = (half >>> 10) & 0x1f;
+        int mantissa = half & 0x03ff;
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            float subNormal = mantissa * 0x1p-24f;
+            return sign != 0 ? -subNormal : subNormal;
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+
 }
@@ -0,0 +1,422 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A zip archive in a Hadoop file system, read with positional reads.
+ * <p>
+ * Only the central directory at the end of the archive is read when the archive is opened.
+ * The content of an entry is read when the entry is opened, the other entries are not transferred.
+ * Entries can be opened concurrently. Zip64 archives are supported, encrypted entries and compression
+ * methods other than stored and deflated are not.
+ */
+public class ZipArchive implements Closeable {
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int ZIP64_EOCD_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EOCD_SIZE = 56;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final int SHORT_COMMENT_SIZE = 1024;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FSDataInputStream in;
+    private final long length;
+    private final String name;
+    private final List<Entry> entries;
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    /**
+     * Opens an archive and reads its central directory.
+     *
+     * @throws IOException if the file is no zip archive
+     */
+    public static ZipArchive open(Path path, Configuration conf) throws IOException {
+        FileSystem fs = path.getFileSystem(conf);
+        long length = fs.getFileStatus(path).getLen();
+        FSDataInputStream in = fs.open(path);
+        try {
+            return new ZipArchive(in, length, path.toString());
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    public ZipArchive(FSDataInputStream in, long length, String name) throws IOException {
+        this.in = in;
+        this.length = length;
+        this.name = name;
+        this.entries = Collections.unmodifiableList(readCentralDirectory());
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public Entry getEntry(String entryName) {
+        for (Entry entry : entries) {
+            if (entry.getName().equals(entryName)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the length of the archive file
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the number of bytes read from the archive file so far, including the central directory
+     */
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * Opens the uncompressed content of an entry.
+     */
+    public EntryInputStream openEntry(Entry entry) throws IOException {
+        if (entry.isDirectory()) {
+            throw new IOException("entry " + entry.getName() + " of " + name + " is a directory");
+        }
+        return new EntryInputStream(entry, getDataOffset(entry));
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        // archives rarely have a comment, the end of the central directory is searched in a short tail first
+        int tailSize = (int) Math.min(length, EOCD_SIZE + SHORT_COMMENT_SIZE);
+        ByteBuffer tail = read(length - tailSize, tailSize);
+        int eocd = findEndOfCentralDirectory(tail, tailSize);
+        if (eocd < 0 && tailSize < length) {
+            tailSize = (int) Math.min(length, EOCD_SIZE + MAX_COMMENT_SIZE);
+            tail = read(length - tailSize, tailSize);
+            eocd = findEndOfCentralDirectory(tail, tailSize);
+        }
+        if (eocd < 0) {
+            throw new IOException("no zip archive, end of central directory not found in " + name);
+        }
+        long numEntries = tail.getShort(eocd + 10) & 0xffff;
+        long directorySize = tail.getInt(eocd + 12) & 0xffffffffL;
+        long directoryOffset = tail.getInt(eocd + 16) & 0xffffffffL;
+        long eocdPosition = length - tailSize + eocd;
+        if ((numEntries == 0xffff || directorySize == 0xffffffffL || directoryOffset == 0xffffffffL)
+                && eocdPosition >= ZIP64_EOCD_LOCATOR_SIZE) {
+            ByteBuffer locator = read(eocdPosition - ZIP64_EOCD_LOCATOR_SIZE, ZIP64_EOCD_LOCATOR_SIZE);
+            if (locator.getInt(0) == ZIP64_EOCD_LOCATOR_SIGNATURE) {
+                ByteBuffer zip64Eocd = read(locator.getLong(8), ZIP64_EOCD_SIZE);
+                if (zip64Eocd.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+                    throw new IOException("corrupt zip64 end of central directory in " + name);
+                }
+                numEntries = zip64Eocd.getLong(32);
+                directorySize = zip64Eocd.getLong(40);
+                directoryOffset = zip64Eocd.getLong(48);
+            }
+        }
+        if (directoryOffset + directorySize > length || directorySize > Integer.MAX_VALUE) {
+            throw new IOException("corrupt central directory in " + name);
+        }
+        ByteBuffer directory = read(directoryOffset, (int) directorySize);
+        List<Entry> entries = new ArrayList<>((int) Math.min(numEntries, 100000));
+        int pos = 0;
+        for (long i = 0; i < numEntries; i++) {
+            if (pos + CENTRAL_HEADER_SIZE > directorySize || directory.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("corrupt central directory entry " + i + " in " + name);
+            }
+            int method = directory.getShort(pos + 10) & 0xffff;
+            long compressedSize = directory.getInt(pos + 20) & 0xffffffffL;
+            long size = directory.getInt(pos + 24) & 0xffffffffL;
+            int nameLength = directory.getShort(pos + 28) & 0xffff;
+            int extraLength = directory.getShort(pos + 30) & 0xffff;
+            int commentLength = directory.getShort(pos + 32) & 0xffff;
+            long localHeaderOffset = directory.getInt(pos + 42) & 0xffffffffL;
+            byte[] nameBytes = new byte[nameLength];
+            directory.position(pos + CENTRAL_HEADER_SIZE);
+            directory.get(nameBytes);
+            int extra = pos + CENTRAL_HEADER_SIZE + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = directory.getShort(extra) & 0xffff;
+                int dataSize = directory.getShort(extra + 2) & 0xffff;
+                if (id == ZIP64_EXTRA_ID) {
+                    int field = extra + 4;
+                    if (size == 0xffffffffL) {
+                        size = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == 0xffffffffL) {
+                        compressedSize = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (localHeaderOffset == 0xffffffffL) {
+                        localHeaderOffset = directory.getLong(field);
+                    }
+                }
+                extra += 4 + dataSize;
+            }
+            String entryName = new String(nameBytes, StandardCharsets.UTF_8);
+            if (method != STORED && method != DEFLATED && !entryName.endsWith("/")) {
+                throw new IOException("unsupported compression method " + method + " of " + entryName + " in " + name);
+            }
+            entries.add(new Entry(entryName, method, compressedSize, size, localHeaderOffset));
+            pos = extraEnd + commentLength;
+        }
+        return entries;
+    }
+
+    private static int findEndOfCentralDirectory(ByteBuffer tail, int tailSize) {
+        for (int i = tailSize - EOCD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE && i + EOCD_SIZE + (tail.getShort(i + 20) & 0xffff) == tailSize) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private long getDataOffset(Entry entry) throws IOException {
+        ByteBuffer header = read(entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("corrupt local header of " + entry.getName() + " in " + name);
+        }
+        int nameLength = header.getShort(26) & 0xffff;
+        int extraLength = header.getShort(28) & 0xffff;
+        return entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    private ByteBuffer read(long position, int size) throws IOException {
+        byte[] bytes = new byte[size];
+        readFully(position, bytes, 0, size);
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void readFully(long position, byte[] buffer, int offset, int size) throws IOException {
+        if (position < 0 || position + size > length) {
+            throw new EOFException("read beyond end of " + name);
+        }
+        in.readFully(position, buffer, offset, size);
+        bytesRead.addAndGet(size);
+    }
+
+    public static class Entry {
+
+        private final String name;
+        private final int method;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        Entry(String name, int method, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * The uncompressed content of an entry. Seeking is cheap for stored entries. For deflated entries
+     * seeking forward skips and seeking backward starts to inflate again from the beginning of the entry.
+     */
+    public class EntryInputStream extends InputStream {
+
+        private final Entry entry;
+        private final long dataOffset;
+        private InputStream inflated;
+        private long pos;
+
+        private EntryInputStream(Entry entry, long dataOffset) {
+            this.entry = entry;
+            this.dataOffset = dataOffset;
+            if (entry.method == DEFLATED) {
+                inflated = openInflated();
+            }
+        }
+
+        public long getPos() {
+            return pos;
+        }
+
+        public long length() {
+            return entry.size;
+        }
+
+        public void seek(long newPos) throws IOException {
+            if (newPos < 0 || newPos > entry.size) {
+                throw new EOFException("seek to " + newPos + " outside of " + entry.getName());
+            }
+            if (inflated != null) {
+                if (newPos < pos) {
+                    inflated.close();
+                    inflated = openInflated();
+                    pos = 0;
+                }
+                while (pos < newPos) {
+                    long n = inflated.skip(newPos - pos);
+                    if (n <= 0) {
+                        throw new EOFException("entry " + entry.getName() + " truncated");
+                    }
+                    pos += n;
+                }
+            }
+            pos = newPos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (pos >= entry.size) {
+                return -1;
+            }
+            int n = (int) Math.min(len, entry.size - pos);
+            if (inflated != null) {
+                n = inflated.read(b, off, n);
+                if (n < 0) {
+                    throw new EOFException("entry " + entry.getName() + " truncated");
+                }
+            } else {
+                readFully(dataOffset + pos, b, off, n);
+            }
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = Math.max(0L, Math.min(n, entry.size - pos));
+            seek(pos + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, entry.size - pos);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (inflated != null) {
+                inflated.close();
+            }
+        }
+
+        private InputStream openInflated() {
+            return new InflaterInputStream(new RangeInputStream(dataOffset, entry.compressedSize), new Inflater(true), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inf.end();
+                }
+            };
+        }
+    }
+
+    private class RangeInputStream extends InputStream {
+
+        private long position;
+        private final long end;
+
+        private RangeInputStream(long position, long length) {
+            this.position = position;
+            // one more byte for the inflater, a raw deflate stream may need it to detect its end
+            this.end = Math.min(position + length + 1, ZipArchive.this.length);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int n = (int) Math.min(len, end - position);
+            readFully(position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+}
@@ -37,7 +37,6 @@ import org.esa.snap.core.gpf.GPF;
 import org.esa.snap.core.util.StringUtils;
 import org.esa.snap.core.util.io.FileUtils;
 
-import java.io.File;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.util.*;
@@ -141,24 +140,14 @@ public class L2FormattingMapper extends Mapper<NullWritable, NullWritable, NullW
     private Product writeProductFile(Product targetProduct, ProductFormatter productFormatter, Mapper.Context context,
                                      Configuration jobConfig, String outputFormat, ProgressMonitor pm) throws
             IOException {
-        long t0 = System.currentTimeMillis();
         Map<String, Object> bandSubsetParameter = createBandSubsetParameter(targetProduct, jobConfig);
         if (!bandSubsetParameter.isEmpty()) {
             targetProduct = GPF.createProduct("Subset", bandSubsetParameter, targetProduct);
         }
 
-        File productFile = productFormatter.createTemporaryProductFile();
-        LOG.info("Start writing product to file: " + productFile.getName());
-
-        //ProductIO.writeProduct(targetProduct, productFile, outputFormat, false, pm);
-        GPF.writeProduct(targetProduct, productFile, outputFormat, false, pm);
-        LOG.info("formatting done in [ms]: " + (System.currentTimeMillis() - t0));
-
-        t0 = System.currentTimeMillis();
-        context.setStatus("Copying");
-        productFormatter.compressToHDFS(context, productFile);
+        boolean streaming = jobConfig.getBoolean(JobConfigNames.CALVALUS_OUTPUT_DIRECT_TO_HDFS, true);
+        productFormatter.writeProductToHDFS(context, targetProduct, streaming, pm);
         context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Product formatted").increment(1);
-        LOG.info("archiving done in [ms]: " + (System.currentTimeMillis() - t0));
         return targetProduct;
     }
 
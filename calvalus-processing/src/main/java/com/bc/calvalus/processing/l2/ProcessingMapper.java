@@ -620,25 +620,15 @@ public class ProcessingMapper extends Mapper<NullWritable, NullWritable, Text /*
     protected Product writeProductFile(Product targetProduct, ProductFormatter productFormatter, Mapper.Context context,
                                        Configuration jobConfig, String outputFormat, ProgressMonitor pm) throws
             IOException, InterruptedException {
-        long t0 = System.currentTimeMillis();
         Map<String, Object> bandSubsetParameter = createBandSubsetParameter(targetProduct, jobConfig);
         if (!bandSubsetParameter.isEmpty()) {
             targetProduct = GPF.createProduct("Subset", bandSubsetParameter, targetProduct);
         }
 
-        File productFile = productFormatter.createTemporaryProductFile();
-        LOG.info("Start writing product to file: " + productFile.getName());
-
-        //ProductIO.writeProduct(targetProduct, productFile, outputFormat, false, pm);
-        GPF.writeProduct(targetProduct, productFile, outputFormat, false, pm);
-        LOG.info("formatting done in [ms]: " + (System.currentTimeMillis() - t0));
-
-        t0 = System.currentTimeMillis();
-        context.setStatus("Copying");
-        productFormatter.compressToHDFS(context, productFile);
+        boolean streaming = jobConfig.getBoolean(JobConfigNames.CALVALUS_OUTPUT_DIRECT_TO_HDFS, true);
+        productFormatter.writeProductToHDFS(context, targetProduct, streaming, pm);
         context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Product formatted").increment(1);
-        LOG.info("Formatted product " + productFile.getName() + " archived in " + FileOutputFormat.getWorkOutputPath(context));
-        LOG.info("archiving done in [ms]: " + (System.currentTimeMillis() - t0));
+        LOG.info("Formatted product " + productFormatter.getOutputFilename() + " archived in " + FileOutputFormat.getWorkOutputPath(context));
         return targetProduct;
     }
 
@@ -17,6 +17,9 @@
 package com.bc.calvalus.processing.l2;
 
 import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.processing.hadoop.PipelinedOutputStream;
+import com.bc.ceres.core.ProgressMonitor;
+import com.bc.ceres.core.SubProgressMonitor;
 import com.bc.ceres.core.runtime.internal.DirScanner;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -24,7 +27,11 @@ import org.apache.hadoop.mapreduce.TaskInputOutputContext;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.util.Progressable;
 import org.esa.snap.core.dataio.ProductIOPlugInManager;
+import org.esa.snap.core.dataio.ProductWriter;
 import org.esa.snap.core.dataio.ProductWriterPlugIn;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.gpf.GPF;
 import org.esa.snap.core.util.io.FileUtils;
 
 import java.io.BufferedInputStream;
@@ -47,11 +54,13 @@ import java.util.zip.ZipOutputStream;
 public class ProductFormatter {
 
     private static final Logger LOG = CalvalusLogger.getLogger();
+    private static final String COUNTER_GROUP_NAME_PRODUCTS = "Products";
 
     private final String outputFormat;
     private final String outputFilename;
     private final String productFilename;
     private final String outputCompression;
+    private final ProductWriterPlugIn streamingWriterPlugIn;
     private File tmpDir;
 
     public ProductFormatter(String productName, String outputFormat, String desiredOutputCompression) {
@@ -103,8 +112,9 @@ public class ProductFormatter {
         // test if writer for output format exists
         ProductIOPlugInManager registry = ProductIOPlugInManager.getInstance();
         Iterator it = registry.getWriterPlugIns(outputFormat);
+        ProductWriterPlugIn plugIn;
         if(it.hasNext()) {
-            ProductWriterPlugIn plugIn = (ProductWriterPlugIn) it.next();
+            plugIn = (ProductWriterPlugIn) it.next();
             if (outputExtension.isEmpty()) {
                 // get output extension from writer
                 String[] defaultFileExtensions = plugIn.getDefaultFileExtensions();
@@ -125,6 +135,20 @@ public class ProductFormatter {
         }
         this.outputFormat = outputFormat;
         this.productFilename = productName + outputExtension;
+        this.streamingWriterPlugIn = canStream(plugIn, outputCompression) ? plugIn : null;
+    }
+
+    private static boolean canStream(ProductWriterPlugIn plugIn, String outputCompression) {
+        if (outputCompression != null && !outputCompression.isEmpty()
+            && !"gz".equals(outputCompression) && !"zip".equals(outputCompression)) {
+            return false;
+        }
+        for (Class outputType : plugIn.getOutputTypes()) {
+            if (outputType == OutputStream.class) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public String getOutputFilename() {
@@ -143,6 +167,87 @@ public class ProductFormatter {
         return outputCompression;
     }
 
+    /**
+     * @return true if the writer of the output format accepts an output stream and the product is a single file,
+     * i.e. the product can be written to HDFS without a temporary product file
+     */
+    public boolean isStreamingSupported() {
+        return streamingWriterPlugIn != null;
+    }
+
+    /**
+     * Writes the product to HDFS, directly if streaming is supported and enabled,
+     * otherwise to a temporary product file that is copied or compressed to HDFS.
+     * The output mode and the bytes written are counted.
+     */
+    public void writeProductToHDFS(TaskInputOutputContext<?, ?, ?, ?> context, Product product, boolean streaming,
+                                   ProgressMonitor pm) throws IOException {
+        long t0 = System.currentTimeMillis();
+        if (streaming && isStreamingSupported()) {
+            LOG.info("Start streaming product to HDFS: " + outputFilename);
+            long bytesWritten = streamToHDFS(context, product, pm);
+            context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Product output streamed").increment(1);
+            context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Product bytes streamed").increment(bytesWritten);
+            LOG.info("streaming done in [ms]: " + (System.currentTimeMillis() - t0));
+        } else {
+            File productFile = createTemporaryProductFile();
+            LOG.info("Start writing product to file: " + productFile.getName());
+            GPF.writeProduct(product, productFile, outputFormat, false, pm);
+            LOG.info("formatting done in [ms]: " + (System.currentTimeMillis() - t0));
+
+            t0 = System.currentTimeMillis();
+            context.setStatus("Copying");
+            compressToHDFS(context, productFile);
+            context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Product output via temp file").increment(1);
+            context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Product bytes via temp file").increment(getSize(tmpDir));
+            LOG.info("archiving done in [ms]: " + (System.currentTimeMillis() - t0));
+        }
+    }
+
+    /**
+     * Writes the product with a writer that accepts an output stream into the output file on HDFS,
+     * gzipped or zipped as configured. The writer and the HDFS stream are decoupled by a bounded buffer.
+     *
+     * @return the number of bytes of the product
+     */
+    public long streamToHDFS(TaskInputOutputContext<?, ?, ?, ?> context, Product product, ProgressMonitor pm) throws IOException {
+        if (!isStreamingSupported()) {
+            throw new IllegalStateException("Output format " + outputFormat + " cannot be streamed");
+        }
+        OutputStream hdfsStream = new BufferedOutputStream(createOutputStream(context, outputFilename));
+        if ("zip".equals(outputCompression)) {
+            // closing the pipeline finishes the entry and the archive
+            ZipOutputStream zipOutputStream = new ZipOutputStream(hdfsStream);
+            zipOutputStream.putNextEntry(new ZipEntry(productFilename));
+            hdfsStream = zipOutputStream;
+        } else if ("gz".equals(outputCompression)) {
+            hdfsStream = new GZIPOutputStream(hdfsStream, 64 * 1024);
+        }
+        PipelinedOutputStream outputStream = new PipelinedOutputStream(hdfsStream, context);
+        ProductWriter productWriter = streamingWriterPlugIn.createWriterInstance();
+        try {
+            productWriter.setIncrementalMode(false);
+            product.setProductWriter(productWriter);
+            productWriter.writeProductNodes(product, outputStream);
+            Band[] bands = product.getBands();
+            pm.beginTask("Writing bands of product " + product.getName(), bands.length);
+            for (Band band : bands) {
+                if (productWriter.shouldWrite(band)) {
+                    band.writeRasterDataFully(SubProgressMonitor.create(pm, 1));
+                } else {
+                    pm.worked(1);
+                }
+            }
+            productWriter.flush();
+            productWriter.close();
+        } finally {
+            pm.done();
+            product.setProductWriter(null);
+            outputStream.close();
+        }
+        return outputStream.getBytesWritten();
+    }
+
     public File createTemporaryProductFile() throws IOException {
         tmpDir = new File(System.getProperty("java.io.tmpdir"), "tmpProductDir");
         if (tmpDir.exists()) {
@@ -154,6 +259,23 @@ public class ProductFormatter {
         return new File(tmpDir, getProductFilename());
     }
 
+    private static long getSize(File file) {
+        if (file == null) {
+            return 0L;
+        }
+        if (file.isDirectory()) {
+            long size = 0L;
+            File[] files = file.listFiles();
+            if (files != null) {
+                for (File child : files) {
+                    size += getSize(child);
+                }
+            }
+            return size;
+        }
+        return file.length();
+    }
+
     public void cleanupTempDir() {
         if (tmpDir != null) {
             FileUtils.deleteTree(tmpDir);
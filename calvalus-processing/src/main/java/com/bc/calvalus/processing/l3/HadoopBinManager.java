@@ -17,6 +17,8 @@ import org.esa.snap.core.datamodel.ProductData;
 import org.esa.snap.core.util.StringUtils;
 
 import java.text.ParseException;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Overrides the default implementation in order to create instances of {@link L3SpatialBin} and {@link L3TemporalBin}.
@@ -86,6 +88,27 @@ public class HadoopBinManager extends BinManager {
                                       regionGeometry);
     }
 
+    /**
+     * Determines the spatial features to be shuffled with half precision from the job configuration.
+     *
+     * @return a flag per spatial feature, or null if all features keep full precision
+     */
+    public static boolean[] getHalfFeatures(Configuration conf, BinManager binManager) {
+        String[] halfFeatureNames = conf.getTrimmedStrings(JobConfigNames.CALVALUS_L3_HALF_PRECISION_FEATURES);
+        if (halfFeatureNames.length == 0) {
+            return null;
+        }
+        List<String> halfFeatureList = Arrays.asList(halfFeatureNames);
+        boolean[] halfFeatures = new boolean[binManager.getSpatialFeatureCount()];
+        int featureIndex = 0;
+        for (int i = 0; i < binManager.getAggregatorCount(); i++) {
+            for (String featureName : binManager.getAggregator(i).getSpatialFeatureNames()) {
+                halfFeatures[featureIndex++] = halfFeatureList.contains(featureName);
+            }
+        }
+        return halfFeatures;
+    }
+
     public static ProductData.UTC parseStartDateUtc(String date) {
         try {
             if (date.matches("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}")) {
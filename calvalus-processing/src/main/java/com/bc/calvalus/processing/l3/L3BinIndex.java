@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l3;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.esa.snap.binning.PlanetaryGrid;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The positions of the sync marks of an L3 part file and the first bin index written after each of them.
+ * <p>
+ * The bins of a part file are sorted by bin index. The index is written by the {@link L3BinIndexOutputFormat}
+ * into a sidecar file next to the part file, and allows to read only the byte ranges
+ * of the part file that contain the bins of some planetary grid rows.
+ */
+public class L3BinIndex {
+
+    static final String FILE_NAME_PREFIX = "_bin_index-";
+
+    private final long[] firstBinIndexes;
+    private final long[] positions;
+
+    L3BinIndex(long[] firstBinIndexes, long[] positions) {
+        this.firstBinIndexes = firstBinIndexes;
+        this.positions = positions;
+    }
+
+    int getNumRanges() {
+        return positions.length;
+    }
+
+    public static Path getIndexPath(Path partPath) {
+        return new Path(partPath.getParent(), FILE_NAME_PREFIX + partPath.getName());
+    }
+
+    /**
+     * @return the index of the part file, or null if the part file has no index
+     */
+    public static L3BinIndex read(Path partPath, Configuration conf) throws IOException {
+        Path indexPath = getIndexPath(partPath);
+        FileSystem fs = indexPath.getFileSystem(conf);
+        if (!fs.exists(indexPath)) {
+            return null;
+        }
+        List<long[]> entries = new ArrayList<>();
+        LongWritable binIndex = new LongWritable();
+        LongWritable position = new LongWritable();
+        try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(indexPath))) {
+            while (reader.next(binIndex, position)) {
+                entries.add(new long[]{binIndex.get(), position.get()});
+            }
+        }
+        long[] firstBinIndexes = new long[entries.size()];
+        long[] positions = new long[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            firstBinIndexes[i] = entries.get(i)[0];
+            positions[i] = entries.get(i)[1];
+        }
+        return new L3BinIndex(firstBinIndexes, positions);
+    }
+
+    static void write(Path partPath, long[] firstBinIndexes, long[] positions, int numRanges, Configuration conf) throws IOException {
+        Path indexPath = getIndexPath(partPath);
+        try (SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+                                                                     SequenceFile.Writer.file(indexPath),
+                                                                     SequenceFile.Writer.keyClass(LongWritable.class),
+                                                                     SequenceFile.Writer.valueClass(LongWritable.class))) {
+            LongWritable binIndex = new LongWritable();
+            LongWritable position = new LongWritable();
+            for (int i = 0; i < numRanges; i++) {
+                binIndex.set(firstBinIndexes[i]);
+                position.set(positions[i]);
+                writer.append(binIndex, position);
+            }
+        }
+    }
+
+    /**
+     * Determines the byte ranges of the part file that contain all bins of the given bin ranges.
+     *
+     * @param binRanges  pairs of the first bin index and the bin index after the last one, ascending
+     * @param fileLength the length of the part file
+     * @return pairs of start and end positions, ascending and not adjacent
+     */
+    List<long[]> getByteRanges(long[] binRanges, long fileLength) {
+        List<long[]> byteRanges = new ArrayList<>();
+        int r = 0;
+        for (int i = 0; i < positions.length; i++) {
+            long firstBin = firstBinIndexes[i];
+            long endBin = i + 1 < positions.length ? firstBinIndexes[i + 1] : Long.MAX_VALUE;
+            while (r < binRanges.length && binRanges[r + 1] <= firstBin) {
+                r += 2;
+            }
+            if (r < binRanges.length && binRanges[r] < endBin) {
+                long start = positions[i];
+                long end = i + 1 < positions.length ? positions[i + 1] : fileLength;
+                if (!byteRanges.isEmpty() && byteRanges.get(byteRanges.size() - 1)[1] == start) {
+                    byteRanges.get(byteRanges.size() - 1)[1] = end;
+                } else {
+                    byteRanges.add(new long[]{start, end});
+                }
+            }
+        }
+        return byteRanges;
+    }
+
+    /**
+     * @param minRows the first rows of the row ranges, inclusive
+     * @param maxRows the last rows of the row ranges, inclusive
+     * @return pairs of the first bin index and the bin index after the last one of each consecutive run of rows
+     */
+    static long[] getBinRanges(PlanetaryGrid planetaryGrid, int[] minRows, int[] maxRows) {
+        boolean[] rows = new boolean[planetaryGrid.getNumRows()];
+        for (int i = 0; i < minRows.length; i++) {
+            int fromRow = Math.max(0, minRows[i]);
+            int toRow = Math.min(rows.length, maxRows[i] + 1);
+            if (fromRow < toRow) {
+                Arrays.fill(rows, fromRow, toRow, true);
+            }
+        }
+        List<Long> binRanges = new ArrayList<>();
+        for (int row = 0; row < rows.length; row++) {
+            if (rows[row]) {
+                long firstBin = planetaryGrid.getFirstBinIndex(row);
+                long endBin = firstBin + planetaryGrid.getNumCols(row);
+                if (!binRanges.isEmpty() && binRanges.get(binRanges.size() - 1) == firstBin) {
+                    binRanges.set(binRanges.size() - 1, endBin);
+                } else {
+                    binRanges.add(firstBin);
+                    binRanges.add(endBin);
+                }
+            }
+        }
+        long[] result = new long[binRanges.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = binRanges.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l3;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.processing.JobConfigNames;
+import com.bc.calvalus.processing.utils.GeometryUtils;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.esa.snap.binning.PlanetaryGrid;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An input format for the L3 part files that only reads the bins of the rows of a region.
+ * <p>
+ * The region is given by {@link JobConfigNames#CALVALUS_L3_BIN_INDEX_REGION}. The splits of the
+ * {@link SequenceFileInputFormat} are cut down to the byte ranges that the {@link L3BinIndex}
+ * of a part file lists for the rows of the region. Part files without index and jobs without region
+ * are read completely.
+ */
+public class L3BinIndexInputFormat extends SequenceFileInputFormat<LongWritable, L3TemporalBin> {
+
+    /**
+     * Sets the region of the job to the collection of the given geometries.
+     */
+    public static void setRegion(Configuration conf, List<Geometry> geometries) {
+        Geometry region = new GeometryFactory().buildGeometry(geometries);
+        conf.set(JobConfigNames.CALVALUS_L3_BIN_INDEX_REGION, region.toText());
+    }
+
+    @Override
+    public List<InputSplit> getSplits(JobContext job) throws IOException {
+        List<InputSplit> splits = super.getSplits(job);
+        Configuration conf = job.getConfiguration();
+        Geometry region = GeometryUtils.createGeometry(conf.get(JobConfigNames.CALVALUS_L3_BIN_INDEX_REGION));
+        if (region == null || region.isEmpty()) {
+            return splits;
+        }
+        PlanetaryGrid planetaryGrid = HadoopBinManager.getBinningConfig(conf).createPlanetaryGrid();
+        long[] binRanges = getBinRanges(planetaryGrid, region);
+
+        Map<Path, List<long[]>> byteRangesOfParts = new HashMap<>();
+        List<InputSplit> regionSplits = new ArrayList<>();
+        long totalLength = 0;
+        long regionLength = 0;
+        for (InputSplit split : splits) {
+            FileSplit fileSplit = (FileSplit) split;
+            Path partPath = fileSplit.getPath();
+            totalLength += fileSplit.getLength();
+            if (!byteRangesOfParts.containsKey(partPath)) {
+                L3BinIndex binIndex = L3BinIndex.read(partPath, conf);
+                long fileLength = partPath.getFileSystem(conf).getFileStatus(partPath).getLen();
+                byteRangesOfParts.put(partPath, binIndex != null ? binIndex.getByteRanges(binRanges, fileLength) : null);
+            }
+            List<long[]> byteRanges = byteRangesOfParts.get(partPath);
+            if (byteRanges == null) {
+                regionSplits.add(split);
+                regionLength += fileSplit.getLength();
+                continue;
+            }
+            long splitStart = fileSplit.getStart();
+            long splitEnd = splitStart + fileSplit.getLength();
+            for (long[] byteRange : byteRanges) {
+                long start = Math.max(splitStart, byteRange[0]);
+                long end = Math.min(splitEnd, byteRange[1]);
+                if (start < end) {
+                    regionSplits.add(new FileSplit(partPath, start, end - start, fileSplit.getLocations()));
+                    regionLength += end - start;
+                }
+            }
+        }
+        CalvalusLogger.getLogger().info(String.format("%d splits with %d of %d bytes selected by the bin index",
+                                                      regionSplits.size(), regionLength, totalLength));
+        return regionSplits;
+    }
+
+    /**
+     * @return pairs of the first bin index and the bin index after the last one of the rows
+     * that may contain bins with their centre in the region, ascending
+     */
+    static long[] getBinRanges(PlanetaryGrid planetaryGrid, Geometry region) {
+        int numGeometries = region.getNumGeometries();
+        int[] minRows = new int[numGeometries];
+        int[] maxRows = new int[numGeometries];
+        for (int i = 0; i < numGeometries; i++) {
+            Envelope envelope = region.getGeometryN(i).getEnvelopeInternal();
+            int row1 = getRowIndex(planetaryGrid, envelope.getMinY());
+            int row2 = getRowIndex(planetaryGrid, envelope.getMaxY());
+            // one more row on either side, the rows may not be aligned with the latitudes of the bin centres
+            minRows[i] = Math.min(row1, row2) - 1;
+            maxRows[i] = Math.max(row1, row2) + 1;
+        }
+        return L3BinIndex.getBinRanges(planetaryGrid, minRows, maxRows);
+    }
+
+    private static int getRowIndex(PlanetaryGrid planetaryGrid, double lat) {
+        double clampedLat = Math.max(-90.0, Math.min(90.0, lat));
+        return planetaryGrid.getRowIndex(planetaryGrid.getBinIndex(clampedLat, 0.0));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l3;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.processing.JobConfigNames;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The output format of the {@link L3Reducer}. Writes the temporal bins into a sequence file
+ * like the {@link SequenceFileOutputFormat}, and a {@link L3BinIndex} next to it.
+ * <p>
+ * Every time about {@link JobConfigNames#CALVALUS_L3_BIN_INDEX_RANGE_SIZE} bytes have been
+ * written, a sync mark is inserted before the next bin and its position is recorded.
+ * Block compressed outputs are written without index, their sync marks do not precede the records written after them.
+ */
+public class L3BinIndexOutputFormat extends SequenceFileOutputFormat<LongWritable, L3TemporalBin> {
+
+    public static final long DEFAULT_RANGE_SIZE = 1024 * 1024;
+    // a sync mark is the escape int followed by the 16 bytes of the sync hash
+    private static final int SYNC_SIZE = 4 + 16;
+
+    @Override
+    public RecordWriter<LongWritable, L3TemporalBin> getRecordWriter(TaskAttemptContext context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        final SequenceFile.Writer out = getSequenceWriter(context, LongWritable.class, L3TemporalBin.class);
+        if (!conf.getBoolean(JobConfigNames.CALVALUS_L3_BIN_INDEX, true)
+            || getOutputCompressionType(context) == SequenceFile.CompressionType.BLOCK && getCompressOutput(context)) {
+            return new RecordWriter<LongWritable, L3TemporalBin>() {
+                @Override
+                public void write(LongWritable key, L3TemporalBin value) throws IOException {
+                    out.append(key, value);
+                }
+
+                @Override
+                public void close(TaskAttemptContext context) throws IOException {
+                    out.close();
+                }
+            };
+        }
+        Path partPath = getDefaultWorkFile(context, "");
+        long rangeSize = conf.getLong(JobConfigNames.CALVALUS_L3_BIN_INDEX_RANGE_SIZE, DEFAULT_RANGE_SIZE);
+        return new IndexingRecordWriter(out, partPath, rangeSize, conf);
+    }
+
+    private static class IndexingRecordWriter extends RecordWriter<LongWritable, L3TemporalBin> {
+
+        private final SequenceFile.Writer out;
+        private final Path partPath;
+        private final long rangeSize;
+        private final Configuration conf;
+        private long[] firstBinIndexes;
+        private long[] positions;
+        private int numRanges;
+
+        private IndexingRecordWriter(SequenceFile.Writer out, Path partPath, long rangeSize, Configuration conf) {
+            this.out = out;
+            this.partPath = partPath;
+            this.rangeSize = rangeSize;
+            this.conf = conf;
+            this.firstBinIndexes = new long[64];
+            this.positions = new long[64];
+            this.numRanges = 0;
+        }
+
+        @Override
+        public void write(LongWritable key, L3TemporalBin value) throws IOException {
+            long position = out.getLength();
+            if (numRanges == 0 || position - positions[numRanges - 1] >= rangeSize) {
+                out.sync();
+                // no sync mark is written if the last one ends here
+                long syncPosition = out.getLength() > position ? position : position - SYNC_SIZE;
+                if (numRanges == firstBinIndexes.length) {
+                    firstBinIndexes = Arrays.copyOf(firstBinIndexes, 2 * numRanges);
+                    positions = Arrays.copyOf(positions, 2 * numRanges);
+                }
+                firstBinIndexes[numRanges] = key.get();
+                positions[numRanges] = syncPosition;
+                numRanges++;
+            }
+            out.append(key, value);
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) throws IOException {
+            out.close();
+            L3BinIndex.write(partPath, firstBinIndexes, positions, numRanges, conf);
+            CalvalusLogger.getLogger().info(String.format("%d bin ranges indexed for %s", numRanges, partPath.getName()));
+        }
+    }
+}
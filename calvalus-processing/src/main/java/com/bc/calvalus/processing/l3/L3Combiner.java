@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l3;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.esa.snap.binning.Aggregator;
+import org.esa.snap.binning.BinningContext;
+import org.esa.snap.binning.operator.BinningConfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Map-side combiner merging the spatial bins of one bin index and one pass into a single spatial bin.
+ * <p>
+ * The merge is done per aggregator as if all observations of the combined bins had been
+ * aggregated into one spatial bin. This is exact for the observations of one product that
+ * the spatial binner emitted in several parts. Spatial bins of different passes are kept apart,
+ * the reducer counts each of them as a pass of its own. Bins without a pass id are not merged.
+ * The combiner is optional and only used if all aggregators support merging,
+ * see {@link #isApplicable(BinningConfig)}.
+ */
+public class L3Combiner extends Reducer<LongWritable, L3SpatialBin, LongWritable, L3SpatialBin> {
+
+    static final String COUNTER_GROUP_NAME_COMBINER = "L3 Combiner";
+
+    private SpatialBinMerger merger;
+    private boolean[] halfFeatures;
+
+    public L3Combiner() {
+    }
+
+    L3Combiner(SpatialBinMerger merger) {
+        this.merger = merger;
+    }
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        BinningConfig binningConfig = HadoopBinManager.getBinningConfig(conf);
+        BinningContext binningContext = HadoopBinManager.createBinningContext(binningConfig, null, null);
+        merger = new SpatialBinMerger(binningConfig.createAggregators(binningConfig.createVariableContext()));
+        halfFeatures = HadoopBinManager.getHalfFeatures(conf, binningContext.getBinManager());
+    }
+
+    @Override
+    protected void reduce(LongWritable binIndex, Iterable<L3SpatialBin> spatialBins, Context context) throws IOException, InterruptedException {
+        if (binIndex.get() == L3SpatialBin.METADATA_MAGIC_NUMBER) {
+            for (L3SpatialBin metadataBin : spatialBins) {
+                context.write(binIndex, metadataBin);
+            }
+            return;
+        }
+        int numBinsIn = 0;
+        List<L3SpatialBin> combinedBins = new ArrayList<>(1);
+        for (L3SpatialBin spatialBin : spatialBins) {
+            combine(binIndex.get(), spatialBin, combinedBins);
+            numBinsIn++;
+        }
+        for (L3SpatialBin combinedBin : combinedBins) {
+            combinedBin.setHalfFeatures(halfFeatures);
+            context.write(binIndex, combinedBin);
+        }
+        context.getCounter(COUNTER_GROUP_NAME_COMBINER, "Spatial bins in").increment(numBinsIn);
+        context.getCounter(COUNTER_GROUP_NAME_COMBINER, "Spatial bins out").increment(combinedBins.size());
+    }
+
+    /**
+     * Merges the spatial bin into the combined bin of its pass, or adds a copy of it to the combined bins.
+     * The combined bins are few, usually one, they are searched linearly.
+     */
+    void combine(long binIndex, L3SpatialBin spatialBin, List<L3SpatialBin> combinedBins) {
+        int passId = spatialBin.getPassId();
+        if (passId != L3SpatialBin.NO_PASS_ID) {
+            for (L3SpatialBin combinedBin : combinedBins) {
+                if (combinedBin.getPassId() == passId) {
+                    merger.merge(spatialBin, combinedBin);
+                    return;
+                }
+            }
+        }
+        // values are re-used by the framework, they must be copied
+        combinedBins.add(copyOf(binIndex, spatialBin));
+    }
+
+    /**
+     * @return true, if all aggregators of the binning config can be merged by this combiner
+     */
+    public static boolean isApplicable(BinningConfig binningConfig) {
+        Aggregator[] aggregators = binningConfig.createAggregators(binningConfig.createVariableContext());
+        for (Aggregator aggregator : aggregators) {
+            if (!SpatialBinMerger.isSupported(aggregator)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static L3SpatialBin copyOf(long binIndex, L3SpatialBin spatialBin) {
+        float[] featureValues = spatialBin.getFeatureValues();
+        L3SpatialBin copy = new L3SpatialBin(binIndex, featureValues.length, 0);
+        copy.setNumObs(spatialBin.getNumObs());
+        copy.setPassId(spatialBin.getPassId());
+        System.arraycopy(featureValues, 0, copy.getFeatureValues(), 0, featureValues.length);
+        return copy;
+    }
+
+    /**
+     * Merges the completed spatial feature vectors of two spatial bins aggregator by aggregator.
+     */
+    static class SpatialBinMerger {
+
+        private final String[] aggregatorNames;
+        private final int[] featureOffsets;
+        private final int[] featureCounts;
+
+        SpatialBinMerger(Aggregator[] aggregators) {
+            aggregatorNames = new String[aggregators.length];
+            featureOffsets = new int[aggregators.length];
+            featureCounts = new int[aggregators.length];
+            int offset = 0;
+            for (int i = 0; i < aggregators.length; i++) {
+                if (!isSupported(aggregators[i])) {
+                    throw new IllegalArgumentException("Aggregator " + aggregators[i].getName() + " does not support combining spatial bins");
+                }
+                aggregatorNames[i] = aggregators[i].getName();
+                featureOffsets[i] = offset;
+                featureCounts[i] = aggregators[i].getSpatialFeatureNames().length;
+                offset += featureCounts[i];
+            }
+        }
+
+        static boolean isSupported(Aggregator aggregator) {
+            switch (aggregator.getName()) {
+                case "AVG":
+                case "MIN_MAX":
+                case "ON_MAX_SET":
+                case "ON_MAX_SET_DEBUG":
+                case "FIRST":
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * Merges source into target. The number of observations of the target is updated.
+         */
+        void merge(L3SpatialBin source, L3SpatialBin target) {
+            float[] src = source.getFeatureValues();
+            float[] tgt = target.getFeatureValues();
+            for (int i = 0; i < aggregatorNames.length; i++) {
+                int offset = featureOffsets[i];
+                switch (aggregatorNames[i]) {
+                    case "AVG":
+                        mergeAverage(source.getNumObs(), src, target.getNumObs(), tgt, offset, featureCounts[i]);
+                        break;
+                    case "MIN_MAX":
+                        tgt[offset] = min(tgt[offset], src[offset]);
+                        tgt[offset + 1] = max(tgt[offset + 1], src[offset + 1]);
+                        break;
+                    case "ON_MAX_SET":
+                    case "ON_MAX_SET_DEBUG":
+                        if (Float.isNaN(tgt[offset]) || src[offset] > tgt[offset]) {
+                            System.arraycopy(src, offset, tgt, offset, featureCounts[i]);
+                        }
+                        break;
+                    case "FIRST":
+                        if (Float.isNaN(tgt[offset])) {
+                            tgt[offset] = src[offset];
+                        }
+                        break;
+                }
+            }
+            target.setNumObs(target.getNumObs() + source.getNumObs());
+        }
+
+        // AVG spatial features are the mean and the mean of squares, optionally followed by the valid counts
+        private static void mergeAverage(int srcNumObs, float[] src, int tgtNumObs, float[] tgt, int offset, int featureCount) {
+            boolean withCounts = featureCount > 2;
+            float srcWeight = withCounts ? src[offset + 2] : srcNumObs;
+            float tgtWeight = withCounts ? tgt[offset + 2] : tgtNumObs;
+            float sumWeight = srcWeight + tgtWeight;
+            if (srcWeight == 0.0f) {
+                return;
+            }
+            if (tgtWeight == 0.0f) {
+                System.arraycopy(src, offset, tgt, offset, featureCount);
+                return;
+            }
+            tgt[offset] = (tgt[offset] * tgtWeight + src[offset] * srcWeight) / sumWeight;
+            tgt[offset + 1] = (tgt[offset + 1] * tgtWeight + src[offset + 1] * srcWeight) / sumWeight;
+            if (withCounts) {
+                tgt[offset + 2] = sumWeight;
+            }
+        }
+
+        private static float min(float a, float b) {
+            return Float.isNaN(a) ? b : Float.isNaN(b) ? a : Math.min(a, b);
+        }
+
+        private static float max(float a, float b) {
+            return Float.isNaN(a) ? b : Float.isNaN(b) ? a : Math.max(a, b);
+        }
+    }
+}
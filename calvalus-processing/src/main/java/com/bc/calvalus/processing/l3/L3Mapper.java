@@ -43,6 +43,8 @@ import org.esa.snap.core.datamodel.Product;
 
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.logging.Level;
@@ -69,10 +71,17 @@ public class L3Mapper extends Mapper<NullWritable, NullWritable, LongWritable, L
         DataPeriod dataPeriod = HadoopBinManager.createDataPeriod(conf, binningConfig.getMinDataHour());
 
         BinningContext binningContext = HadoopBinManager.createBinningContext(binningConfig, dataPeriod, regionGeometry);
-        final SpatialBinEmitter spatialBinEmitter = new SpatialBinEmitter(context);
+        final boolean[] halfFeatures = HadoopBinManager.getHalfFeatures(conf, binningContext.getBinManager());
+        final SpatialBinEmitter spatialBinEmitter = new SpatialBinEmitter(context, halfFeatures);
         final SpatialBinner spatialBinner = new SpatialBinner(binningContext, spatialBinEmitter);
+        final ParallelProductBinner parallelBinner = createParallelBinner(conf, binningConfig, dataPeriod, regionGeometry);
         final ProcessorAdapter processorAdapter = ProcessorFactory.createAdapter(context);
         LOG.info("processing input " + processorAdapter.getInputPath() + " ...");
+        if (conf.getBoolean(JobConfigNames.CALVALUS_L3_COMBINER, false)) {
+            // the combiner merges the bins of one pass only, this task bins a single product,
+            // the task id is unique within the job, also in the merge of the map outputs of several tasks
+            spatialBinEmitter.passId = context.getTaskAttemptID().getTaskID().getId();
+        }
         ProgressMonitor pm = new ProgressSplitProgressMonitor(context);
         final int progressForProcessing = processorAdapter.supportsPullProcessing() ? 5 : 90;
         final int progressForBinning = processorAdapter.supportsPullProcessing() ? 90 : 20;
@@ -83,10 +92,16 @@ public class L3Mapper extends Mapper<NullWritable, NullWritable, LongWritable, L
                 HashMap<Product, List<Band>> addedBands = new HashMap<>();
                 long numObs;
                 try {
-                    numObs = SpatialProductBinner.processProduct(product,
-                            spatialBinner,
-                            addedBands,
-                            SubProgressMonitor.create(pm, progressForBinning));
+                    if (parallelBinner != null && ParallelProductBinner.isSplittable(product)) {
+                        numObs = parallelBinner.processProduct(product,
+                                spatialBinEmitter,
+                                SubProgressMonitor.create(pm, progressForBinning));
+                    } else {
+                        numObs = SpatialProductBinner.processProduct(product,
+                                spatialBinner,
+                                addedBands,
+                                SubProgressMonitor.create(pm, progressForBinning));
+                    }
                 } catch (IllegalArgumentException e) {
                     boolean isSmallProduct = product.getSceneRasterHeight() <= 2 || product.getSceneRasterWidth() <= 2;
                     boolean cannotConstructGeoCoding = isSmallProduct && e.getMessage().equals("The specified region, if not null, must intersect with the image`s bounds.");
@@ -117,9 +132,15 @@ public class L3Mapper extends Mapper<NullWritable, NullWritable, LongWritable, L
         } finally {
             pm.done();
             processorAdapter.dispose();
+            if (parallelBinner != null) {
+                parallelBinner.dispose();
+            }
         }
 
-        final Exception[] exceptions = spatialBinner.getExceptions();
+        final List<Exception> exceptions = new ArrayList<>(Arrays.asList(spatialBinner.getExceptions()));
+        if (parallelBinner != null) {
+            exceptions.addAll(Arrays.asList(parallelBinner.getExceptions()));
+        }
         for (Exception exception : exceptions) {
             String m = MessageFormat.format("Failed to process input slice of {0}", processorAdapter.getInputPath());
             LOG.log(Level.SEVERE, m, exception);
@@ -130,6 +151,23 @@ public class L3Mapper extends Mapper<NullWritable, NullWritable, LongWritable, L
                                       spatialBinEmitter.numBinsTotal));
     }
 
+    /**
+     * Creates a binner for stripes of the product in several threads if configured and
+     * if the spatial bins of the stripes can be merged.
+     */
+    private static ParallelProductBinner createParallelBinner(Configuration conf, BinningConfig binningConfig, DataPeriod dataPeriod, Geometry regionGeometry) {
+        int numThreads = conf.getInt(JobConfigNames.CALVALUS_L3_BINNING_THREADS, 1);
+        if (numThreads <= 1) {
+            return null;
+        }
+        if (!L3Combiner.isApplicable(binningConfig)) {
+            LOG.warning("parallel binning requested but not supported by all aggregators, binning in one thread");
+            return null;
+        }
+        LOG.info("binning in " + numThreads + " threads");
+        return new ParallelProductBinner(binningConfig, dataPeriod, regionGeometry, numThreads);
+    }
+
     static String extractProcessingGraphXml(Product product) {
         final MetadataElement metadataRoot = product.getMetadataRoot();
         final MetadataElement processingGraph = metadataRoot.getElement("Processing_Graph");
@@ -139,17 +177,23 @@ public class L3Mapper extends Mapper<NullWritable, NullWritable, LongWritable, L
 
     private static class SpatialBinEmitter implements SpatialBinConsumer {
         private Context context;
+        private final boolean[] halfFeatures;
         int numObsTotal = 0;
         int numBinsTotal = 0;
+        int passId = L3SpatialBin.NO_PASS_ID;
 
-        public SpatialBinEmitter(Context context) {
+        public SpatialBinEmitter(Context context, boolean[] halfFeatures) {
             this.context = context;
+            this.halfFeatures = halfFeatures;
         }
 
         @Override
         public void consumeSpatialBins(BinningContext binningContext, List<SpatialBin> spatialBins) throws Exception {
             for (SpatialBin spatialBin : spatialBins) {
-                context.write(new LongWritable(spatialBin.getIndex()), (L3SpatialBin) spatialBin);
+                L3SpatialBin l3SpatialBin = (L3SpatialBin) spatialBin;
+                l3SpatialBin.setHalfFeatures(halfFeatures);
+                l3SpatialBin.setPassId(passId);
+                context.write(new LongWritable(spatialBin.getIndex()), l3SpatialBin);
                 numObsTotal += spatialBin.getNumObs();
                 numBinsTotal++;
             }
@@ -27,9 +27,13 @@ import org.apache.hadoop.mapreduce.Partitioner;
 import org.esa.snap.binning.PlanetaryGrid;
 import org.esa.snap.binning.operator.BinningConfig;
 
+import java.util.Arrays;
+
 /**
  * Partitions the bins by their bin index.
  * Reduces will receive spatial bins of contiguous latitude ranges.
+ * By default the ranges have an equal number of rows. If the job configuration contains
+ * partition start rows, e.g. computed from a {@link L3RowHistogram}, these are used instead.
  *
  * @author Marco Zuehlke
  * @author Norman Fomferra
@@ -40,6 +44,7 @@ public class L3Partitioner extends Partitioner<LongWritable, L3SpatialBin> imple
     private PlanetaryGrid planetaryGrid;
     private int minRowIndex;
     private int numRowsCovered;
+    private int[] partitionStartRows;
 
     @Override
     public int getPartition(LongWritable binIndex, L3SpatialBin spatialBin, int numPartitions) {
@@ -48,6 +53,10 @@ public class L3Partitioner extends Partitioner<LongWritable, L3SpatialBin> imple
         // for metadata contributions
         if (idx < 0) {
             partition = 0;
+        } else if (partitionStartRows != null && partitionStartRows.length == numPartitions - 1) {
+            int row = planetaryGrid.getRowIndex(idx);
+            int pos = Arrays.binarySearch(partitionStartRows, row);
+            partition = pos >= 0 ? pos + 1 : -pos - 1;
         } else {
             int row = planetaryGrid.getRowIndex(idx);
             partition = ((row - minRowIndex) * numPartitions) / numRowsCovered;
@@ -80,6 +89,23 @@ public class L3Partitioner extends Partitioner<LongWritable, L3SpatialBin> imple
             numRowsCovered = planetaryGrid.getNumRows();
             minRowIndex = 0;
         }
+        String[] startRows = conf.getTrimmedStrings(JobConfigNames.CALVALUS_L3_PARTITION_START_ROWS);
+        if (startRows.length > 0) {
+            partitionStartRows = new int[startRows.length];
+            for (int i = 0; i < startRows.length; i++) {
+                partitionStartRows[i] = Integer.parseInt(startRows[i]);
+            }
+        } else {
+            partitionStartRows = null;
+        }
+    }
+
+    int getMinRowIndex() {
+        return minRowIndex;
+    }
+
+    int getNumRowsCovered() {
+        return numRowsCovered;
     }
 
     @Override
@@ -42,6 +42,7 @@ import org.apache.hadoop.mapreduce.TaskAttemptID;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.security.Credentials;
 import org.esa.snap.binning.BinningContext;
+import org.esa.snap.binning.PlanetaryGrid;
 import org.esa.snap.binning.TemporalBin;
 import org.esa.snap.binning.TemporalBinSource;
 import org.esa.snap.binning.TemporalBinner;
@@ -71,6 +72,9 @@ public class L3Reducer extends Reducer<LongWritable, L3SpatialBin, LongWritable,
 
     private static final String DATETIME_OUTPUT_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
     private static final DateFormat DATETIME_OUTPUT_FORMAT = DateUtils.createDateFormat(DATETIME_OUTPUT_PATTERN);
+    private static final String COUNTER_GROUP_NAME_PARTITIONS = "L3 Partitions";
+    // Hadoop limits the number of counters of a job
+    private static final int MAX_PARTITION_COUNTERS = 64;
 
     static {
         DATETIME_OUTPUT_FORMAT.setTimeZone(TimeZone.getTimeZone("UTC"));
@@ -83,6 +87,9 @@ public class L3Reducer extends Reducer<LongWritable, L3SpatialBin, LongWritable,
     private BinningConfig binningConfig;
     private MetadataElement processingGraphMetadata;
     private MetadataSerializer metadataSerializer;
+    private PlanetaryGrid planetaryGrid;
+    private L3RowHistogram rowHistogram;
+    private long numBins;
 
     @Override
     public void run(Context context) throws IOException, InterruptedException {
@@ -155,6 +162,9 @@ public class L3Reducer extends Reducer<LongWritable, L3SpatialBin, LongWritable,
         Geometry regionGeometry = GeometryUtils.createGeometry(conf.get(JobConfigNames.CALVALUS_REGION_GEOMETRY));
         BinningContext binningContext = HadoopBinManager.createBinningContext(binningConfig, null, regionGeometry);
         temporalBinner = new TemporalBinner(binningContext);
+        planetaryGrid = binningContext.getPlanetaryGrid();
+        rowHistogram = new L3RowHistogram(planetaryGrid.getNumRows());
+        numBins = 0;
         cellChain = new CellProcessorChain(binningContext);
         conf.setStrings(JobConfigNames.CALVALUS_L3_FEATURE_NAMES, binningContext.getBinManager().getResultFeatureNames());
     }
@@ -190,6 +200,8 @@ public class L3Reducer extends Reducer<LongWritable, L3SpatialBin, LongWritable,
             return null;
         } else {
             TemporalBin temporalBin = temporalBinner.processSpatialBins(idx, spatialBins);
+            rowHistogram.add(planetaryGrid.getRowIndex(idx), 1);
+            numBins++;
 
             if (computeOutput) {
                 temporalBin = temporalBinner.computeOutput(idx, temporalBin);
@@ -213,8 +225,17 @@ public class L3Reducer extends Reducer<LongWritable, L3SpatialBin, LongWritable,
 
     @Override
     protected void cleanup(Context context) throws IOException, InterruptedException {
-        // only write this file in the first reducer
         final int partition = context.getTaskAttemptID().getTaskID().getId();
+        // bins per reducer to check the partition balance, and the row histogram for balancing the next run
+        context.getCounter(COUNTER_GROUP_NAME_PARTITIONS, "Bins total").increment(numBins);
+        if (context.getNumReduceTasks() <= MAX_PARTITION_COUNTERS) {
+            context.getCounter(COUNTER_GROUP_NAME_PARTITIONS, String.format("Bins in partition %05d", partition)).increment(numBins);
+        }
+        CalvalusLogger.getLogger().info(String.format("%d bins in partition %d", numBins, partition));
+        if (numBins > 0) {
+            rowHistogram.write(FileOutputFormat.getWorkOutputPath(context), partition, conf);
+        }
+        // only write this file in the first reducer
         if (partition == 0) {
             final Map<String, String> metadata = ProcessingMetadata.config2metadata(conf, JobConfigNames.LEVEL3_METADATA_KEYS);
             final String aggregatedMetadataXml = metadataSerializer.toXml(processingGraphMetadata);
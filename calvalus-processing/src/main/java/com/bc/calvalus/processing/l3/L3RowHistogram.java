@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l3;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.esa.snap.binning.PlanetaryGrid;
+
+import java.io.IOException;
+
+/**
+ * The number of bins per planetary grid row. Used to balance the L3 reducers.
+ * <p>
+ * The histogram is either derived from the planetary grid or from the
+ * histogram files the {@link L3Reducer} writes next to its outputs.
+ */
+public class L3RowHistogram {
+
+    static final String FILE_NAME_PREFIX = "_row_histogram-";
+
+    private final long[] binsPerRow;
+
+    public L3RowHistogram(int numRows) {
+        this.binsPerRow = new long[numRows];
+    }
+
+    public int getNumRows() {
+        return binsPerRow.length;
+    }
+
+    public long getBins(int row) {
+        return binsPerRow[row];
+    }
+
+    public void add(int row, long numBins) {
+        binsPerRow[row] += numBins;
+    }
+
+    /**
+     * Creates a histogram of the grid cells per row, the density of a fully covered region.
+     */
+    public static L3RowHistogram fromGrid(PlanetaryGrid planetaryGrid) {
+        L3RowHistogram histogram = new L3RowHistogram(planetaryGrid.getNumRows());
+        for (int row = 0; row < planetaryGrid.getNumRows(); row++) {
+            histogram.add(row, planetaryGrid.getNumCols(row));
+        }
+        return histogram;
+    }
+
+    /**
+     * Reads and sums up all histogram files of an L3 output directory.
+     *
+     * @return the histogram, or null if the directory contains no histogram files
+     */
+    public static L3RowHistogram read(FileSystem fs, Path outputDirectory, int numRows, Configuration conf) throws IOException {
+        FileStatus[] histogramFiles = fs.globStatus(new Path(outputDirectory, FILE_NAME_PREFIX + "*"));
+        if (histogramFiles == null || histogramFiles.length == 0) {
+            return null;
+        }
+        L3RowHistogram histogram = new L3RowHistogram(numRows);
+        IntWritable row = new IntWritable();
+        LongWritable numBins = new LongWritable();
+        for (FileStatus histogramFile : histogramFiles) {
+            try (SequenceFile.Reader reader = new SequenceFile.Reader(fs, histogramFile.getPath(), conf)) {
+                while (reader.next(row, numBins)) {
+                    if (row.get() >= 0 && row.get() < numRows) {
+                        histogram.add(row.get(), numBins.get());
+                    }
+                }
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Writes the non-empty rows of this histogram into a histogram file of an L3 output directory.
+     */
+    public void write(Path outputDirectory, int partition, Configuration conf) throws IOException {
+        Path histogramPath = new Path(outputDirectory, String.format("%s%05d", FILE_NAME_PREFIX, partition));
+        FileSystem fs = histogramPath.getFileSystem(conf);
+        try (SequenceFile.Writer writer = SequenceFile.createWriter(fs, conf, histogramPath, IntWritable.class, LongWritable.class)) {
+            IntWritable row = new IntWritable();
+            LongWritable numBins = new LongWritable();
+            for (int i = 0; i < binsPerRow.length; i++) {
+                if (binsPerRow[i] > 0) {
+                    row.set(i);
+                    numBins.set(binsPerRow[i]);
+                    writer.append(row, numBins);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cuts the rows from minRowIndex on into ranges of roughly equal bin count.
+     *
+     * @return the first row of the partitions 1 to numPartitions - 1, strictly increasing,
+     * or null if the rows can not be split into the requested number of partitions
+     */
+    public int[] computePartitionStartRows(int minRowIndex, int numRowsCovered, int numPartitions) {
+        if (numPartitions < 2 || numRowsCovered < numPartitions) {
+            return null;
+        }
+        int maxRowIndex = Math.min(minRowIndex + numRowsCovered, binsPerRow.length) - 1;
+        long total = 0;
+        for (int row = minRowIndex; row <= maxRowIndex; row++) {
+            total += binsPerRow[row];
+        }
+        if (total == 0) {
+            return null;
+        }
+        int[] startRows = new int[numPartitions - 1];
+        long accumulated = 0;
+        int partition = 1;
+        for (int row = minRowIndex; row <= maxRowIndex && partition < numPartitions; row++) {
+            long previous = accumulated;
+            accumulated += binsPerRow[row];
+            while (partition < numPartitions && accumulated * numPartitions >= total * partition) {
+                // the next partition starts at the row boundary nearest to its share of bins,
+                // but leaves at least one row for each remaining partition
+                long overshoot = accumulated * numPartitions - total * partition;
+                long undershoot = total * partition - previous * numPartitions;
+                int startRow = overshoot <= undershoot ? row + 1 : row;
+                int minStartRow = partition > 1 ? startRows[partition - 2] + 1 : minRowIndex + 1;
+                int maxStartRow = maxRowIndex - (numPartitions - 1 - partition);
+                startRows[partition - 1] = Math.max(minStartRow, Math.min(startRow, maxStartRow));
+                partition++;
+            }
+        }
+        while (partition < numPartitions) {
+            startRows[partition - 1] = startRows[partition - 2] + 1;
+            partition++;
+        }
+        return startRows;
+    }
+}
@@ -1,6 +1,7 @@
 package com.bc.calvalus.processing.l3;
 
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 import org.esa.snap.binning.SpatialBin;
 import org.esa.snap.binning.support.GrowableVector;
 
@@ -9,10 +10,15 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.util.Arrays;
 
+import static com.bc.calvalus.processing.hadoop.WritableUtils.floatToHalf;
+import static com.bc.calvalus.processing.hadoop.WritableUtils.halfToFloat;
+
 
 /**
  * A Hadoop-serializable, spatial bin.
  * The class is final for allowing method in-lining.
+ * The serialisation is only used for the shuffle. It uses variable length integers
+ * for the header and optionally half precision floats for selected features.
  *
  * @author Norman Fomferra
  * @author Martin
@@ -20,8 +26,11 @@ import java.util.Arrays;
 public final class L3SpatialBin extends SpatialBin implements Writable {
 
     public static final int METADATA_MAGIC_NUMBER = -1;
+    public static final int NO_PASS_ID = -1;
 
     String metadata = null;
+    private boolean[] halfFeatures = null;
+    private int passId = NO_PASS_ID;
 
     @SuppressWarnings("UnusedDeclaration")
     public L3SpatialBin() {
@@ -45,12 +54,70 @@ public final class L3SpatialBin extends SpatialBin implements Writable {
         this.metadata = metadata;
     }
 
+    /**
+     * Selects the features written with half precision, may be null for full precision.
+     * The selection is encoded in the record, the reading side needs no configuration.
+     */
+    public void setHalfFeatures(boolean[] halfFeatures) {
+        this.halfFeatures = halfFeatures;
+    }
+
+    /**
+     * The pass (product) the bin has been aggregated from, the id of the map task that binned the product
+     * and unique within the job, or {@link #NO_PASS_ID}.
+     * Only bins of the same pass may be merged before the temporal aggregation.
+     */
+    public int getPassId() {
+        return passId;
+    }
+
+    public void setPassId(int passId) {
+        this.passId = passId;
+    }
+
     public void write(DataOutput dataOutput) throws IOException {
          // Note, we don't serialise the index, because it is usually the MapReduce key
         if (metadata == null) {
-            super.write(dataOutput);
+            // compact encoding for the shuffle, variable length header, optional half precision features
+            WritableUtils.writeVInt(dataOutput, getNumObs());
+            final float[] featureValues = getFeatureValues();
+            final int numFeatures = featureValues.length;
+            final boolean withHalfFeatures = halfFeatures != null && halfFeatures.length == numFeatures;
+            final boolean withPassId = passId != NO_PASS_ID;
+            WritableUtils.writeVInt(dataOutput, (numFeatures << 2) | (withPassId ? 2 : 0) | (withHalfFeatures ? 1 : 0));
+            if (withPassId) {
+                WritableUtils.writeVInt(dataOutput, passId);
+            }
+            if (withHalfFeatures) {
+                for (int i = 0; i < numFeatures; i += 8) {
+                    int mask = 0;
+                    for (int k = 0; k < 8 && i + k < numFeatures; k++) {
+                        if (halfFeatures[i + k]) {
+                            mask |= 1 << k;
+                        }
+                    }
+                    dataOutput.writeByte(mask);
+                }
+            }
+            for (int i = 0; i < numFeatures; i++) {
+                if (withHalfFeatures && halfFeatures[i]) {
+                    dataOutput.writeShort(floatToHalf(featureValues[i]));
+                } else {
+                    dataOutput.writeFloat(featureValues[i]);
+                }
+            }
+            final int numVectors = vectors != null ? vectors.length : 0;
+            WritableUtils.writeVInt(dataOutput, numVectors);
+            for (int i = 0; i < numVectors; i++) {
+                final GrowableVector vector = vectors[i];
+                final int vectorLength = vector.size();
+                WritableUtils.writeVInt(dataOutput, vectorLength);
+                for (int k = 0; k < vectorLength; k++) {
+                    dataOutput.writeFloat(vector.get(k));
+                }
+            }
         } else {
-            dataOutput.writeInt(METADATA_MAGIC_NUMBER);
+            WritableUtils.writeVInt(dataOutput, METADATA_MAGIC_NUMBER);
             int chunkSize = 65535 / 3;  // UTF may blow up the string to trice the size in bytes
             int noOfChunks = (metadata.length() + chunkSize - 1) / chunkSize;
             dataOutput.writeInt(noOfChunks);
@@ -66,20 +133,38 @@ public final class L3SpatialBin extends SpatialBin implements Writable {
 
      public void readFields(DataInput dataInput) throws IOException {
          // // Note, we don't serialise the index, because it is usually the MapReduce key
-         setNumObs(dataInput.readInt());
+         setNumObs(WritableUtils.readVInt(dataInput));
          if (getNumObs() != METADATA_MAGIC_NUMBER) {
-             final int numFeatures = dataInput.readInt();
+             metadata = null;
+             final int featureHeader = WritableUtils.readVInt(dataInput);
+             final int numFeatures = featureHeader >>> 2;
+             final boolean withHalfFeatures = (featureHeader & 1) != 0;
+             passId = (featureHeader & 2) != 0 ? WritableUtils.readVInt(dataInput) : NO_PASS_ID;
              if (getFeatureValues() == null || getFeatureValues().length != numFeatures) {
                  setNumFeatures(numFeatures);
              }
-             for (int i = 0; i < numFeatures; i++) {
-                 getFeatureValues()[i] = dataInput.readFloat();
+             final float[] featureValues = getFeatureValues();
+             if (withHalfFeatures) {
+                 final boolean[] isHalf = new boolean[numFeatures];
+                 for (int i = 0; i < numFeatures; i += 8) {
+                     final int mask = dataInput.readUnsignedByte();
+                     for (int k = 0; k < 8 && i + k < numFeatures; k++) {
+                         isHalf[i + k] = (mask & (1 << k)) != 0;
+                     }
+                 }
+                 for (int i = 0; i < numFeatures; i++) {
+                     featureValues[i] = isHalf[i] ? halfToFloat(dataInput.readShort()) : dataInput.readFloat();
+                 }
+             } else {
+                 for (int i = 0; i < numFeatures; i++) {
+                     featureValues[i] = dataInput.readFloat();
+                 }
              }
 
-             final int numVectors = dataInput.readInt();
+             final int numVectors = WritableUtils.readVInt(dataInput);
              vectors = new GrowableVector[numVectors];
              for (int i = 0; i < numVectors; i++) {
-                 final int vectorLength = dataInput.readInt();
+                 final int vectorLength = WritableUtils.readVInt(dataInput);
                  final GrowableVector vector = new GrowableVector(vectorLength);
                  vectors[i] = vector;
                  for (int k = 0; k < vectorLength; k++) {
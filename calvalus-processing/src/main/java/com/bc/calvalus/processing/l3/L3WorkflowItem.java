@@ -16,14 +16,17 @@
 
 package com.bc.calvalus.processing.l3;
 
+import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.JobUtils;
 import com.bc.calvalus.processing.hadoop.HadoopProcessingService;
 import com.bc.calvalus.processing.hadoop.HadoopWorkflowItem;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapreduce.Job;
-import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.esa.snap.binning.PlanetaryGrid;
 
 import java.io.IOException;
 
@@ -81,15 +84,59 @@ public class L3WorkflowItem extends HadoopWorkflowItem {
         job.setMapperClass(L3Mapper.class);
         job.setMapOutputKeyClass(LongWritable.class);
         job.setMapOutputValueClass(L3SpatialBin.class);
+        if (jobConfig.getBoolean(JobConfigNames.CALVALUS_L3_COMBINER, false)) {
+            if (L3Combiner.isApplicable(HadoopBinManager.getBinningConfig(jobConfig))) {
+                job.setCombinerClass(L3Combiner.class);
+            } else {
+                CalvalusLogger.getLogger().warning("L3 combiner requested but not supported by all aggregators, running without combiner");
+            }
+        }
         if (jobConfig.get("mapreduce.job.partitioner.class") == null) {
             job.setPartitionerClass(L3Partitioner.class);
+            String balancing = jobConfig.get(JobConfigNames.CALVALUS_L3_PARTITION_BALANCING);
+            if (balancing != null) {
+                configurePartitionStartRows(jobConfig, balancing, job.getNumReduceTasks());
+            }
         }
         job.setReducerClass(L3Reducer.class);
         job.setOutputKeyClass(LongWritable.class);
         job.setOutputValueClass(L3TemporalBin.class);
-        job.setOutputFormatClass(SequenceFileOutputFormat.class);
+        job.setOutputFormatClass(L3BinIndexOutputFormat.class);
 
         JobUtils.clearAndSetOutputDir(getOutputDir(), job, this);
     }
 
+    /**
+     * Cuts the covered rows into ranges of roughly equal bin count, either by the grid cells per row ("grid")
+     * or by the row histogram of the previous run of the production ("previous"), which falls back to the grid.
+     * Must be called before the output dir is cleared.
+     */
+    private void configurePartitionStartRows(Configuration jobConfig, String balancing, int numReducers) throws IOException {
+        L3Partitioner partitioner = new L3Partitioner();
+        partitioner.setConf(jobConfig);
+        PlanetaryGrid planetaryGrid = partitioner.getPlanetaryGrid();
+        L3RowHistogram histogram = null;
+        if ("previous".equals(balancing)) {
+            String histogramDir = jobConfig.get(JobConfigNames.CALVALUS_L3_PARTITION_HISTOGRAM_DIR, getOutputDir());
+            FileSystem fileSystem = getProcessingService().getFileSystem(getUserName(), histogramDir);
+            histogram = L3RowHistogram.read(fileSystem, new Path(histogramDir), planetaryGrid.getNumRows(), jobConfig);
+            if (histogram == null) {
+                CalvalusLogger.getLogger().info("no row histogram found in " + histogramDir + ", balancing partitions by grid");
+            }
+        } else if (!"grid".equals(balancing)) {
+            throw new IllegalArgumentException("Unknown partition balancing '" + balancing + "', must be 'grid' or 'previous'");
+        }
+        if (histogram == null) {
+            histogram = L3RowHistogram.fromGrid(planetaryGrid);
+        }
+        int[] startRows = histogram.computePartitionStartRows(partitioner.getMinRowIndex(), partitioner.getNumRowsCovered(), numReducers);
+        if (startRows != null) {
+            String[] startRowStrings = new String[startRows.length];
+            for (int i = 0; i < startRows.length; i++) {
+                startRowStrings[i] = Integer.toString(startRows[i]);
+            }
+            jobConfig.setStrings(JobConfigNames.CALVALUS_L3_PARTITION_START_ROWS, startRowStrings);
+        }
+    }
+
 }
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l3;
+
+import com.bc.ceres.core.ProgressMonitor;
+import com.vividsolutions.jts.geom.Geometry;
+import org.esa.snap.binning.BinningContext;
+import org.esa.snap.binning.DataPeriod;
+import org.esa.snap.binning.SpatialBin;
+import org.esa.snap.binning.SpatialBinConsumer;
+import org.esa.snap.binning.SpatialBinner;
+import org.esa.snap.binning.operator.BinningConfig;
+import org.esa.snap.binning.operator.SpatialProductBinner;
+import org.esa.snap.core.dataio.ProductSubsetDef;
+import org.esa.snap.core.datamodel.Product;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bins horizontal stripes of a product concurrently. Each stripe is binned by its own
+ * {@link SpatialBinner} with its own binning context, because bin managers are not thread-safe.
+ * <p>
+ * The spatial bins are handed to the consumer in the calling thread while the stripes are binned,
+ * through a bounded queue of chunks. Only the bins at the borders of the stripes are held back:
+ * a bin of the last slice of a stripe that is continued in the first slice of the next stripe
+ * is merged by the {@link L3Combiner.SpatialBinMerger}, as the spatial binner of the whole product
+ * would have continued it. The result equals the one of {@link SpatialProductBinner} up to rounding.
+ * <p>
+ * The pool of threads is kept for all products, it is released by {@link #dispose()}.
+ */
+class ParallelProductBinner {
+
+    private static final int STRIPES_PER_THREAD = 4;
+    // number of bins handed to the consumer at once
+    private static final int CHUNK_SIZE = 4096;
+    // number of chunks waiting for the consumer per thread, bounds the bins held in memory
+    private static final int QUEUED_CHUNKS_PER_THREAD = 4;
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final BinningConfig binningConfig;
+    private final DataPeriod dataPeriod;
+    private final Geometry regionGeometry;
+    private final int numThreads;
+    private final L3Combiner.SpatialBinMerger merger;
+    private final List<Exception> exceptions;
+    private final ExecutorService executorService;
+    private final BlockingQueue<List<SpatialBin>> chunkQueue;
+
+    ParallelProductBinner(BinningConfig binningConfig, DataPeriod dataPeriod, Geometry regionGeometry, int numThreads) {
+        this.binningConfig = binningConfig;
+        this.dataPeriod = dataPeriod;
+        this.regionGeometry = regionGeometry;
+        this.numThreads = numThreads;
+        this.merger = new L3Combiner.SpatialBinMerger(binningConfig.createAggregators(binningConfig.createVariableContext()));
+        this.exceptions = Collections.synchronizedList(new ArrayList<>());
+        this.executorService = Executors.newFixedThreadPool(numThreads);
+        this.chunkQueue = new ArrayBlockingQueue<>(numThreads * QUEUED_CHUNKS_PER_THREAD);
+    }
+
+    /**
+     * @return true, if the product is large enough to be split into stripes of whole tile rows
+     */
+    static boolean isSplittable(Product product) {
+        return product.getSceneRasterHeight() >= 2 * getTileHeight(product);
+    }
+
+    Exception[] getExceptions() {
+        return exceptions.toArray(new Exception[0]);
+    }
+
+    /**
+     * Releases the threads.
+     */
+    void dispose() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Bins the product and emits the spatial bins, those of the stripe borders last.
+     *
+     * @return the number of observations
+     */
+    long processProduct(Product product, SpatialBinConsumer consumer, ProgressMonitor pm) throws IOException, InterruptedException {
+        int width = product.getSceneRasterWidth();
+        int height = product.getSceneRasterHeight();
+        int tileHeight = getTileHeight(product);
+        int numStripes = Math.max(1, Math.min(numThreads * STRIPES_PER_THREAD, height / tileHeight));
+        int stripeHeight = ((height / numStripes + tileHeight - 1) / tileHeight) * tileHeight;
+
+        List<Future<StripeResult>> futures = new ArrayList<>();
+        try {
+            for (int y = 0; y < height; y += stripeHeight) {
+                final int stripeY = y;
+                final int stripeH = Math.min(stripeHeight, height - y);
+                futures.add(executorService.submit(() -> processStripe(product, stripeY, stripeH, tileHeight)));
+            }
+            pm.beginTask("Binning stripes", futures.size() + 1);
+            BinningContext binningContext = HadoopBinManager.createBinningContext(binningConfig, dataPeriod, regionGeometry);
+            int numDone = 0;
+            while (numDone < futures.size()) {
+                List<SpatialBin> chunk = chunkQueue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (chunk != null) {
+                    consume(consumer, binningContext, chunk);
+                }
+                int done = countDone(futures);
+                pm.worked(done - numDone);
+                numDone = done;
+            }
+            List<SpatialBin> chunk;
+            while ((chunk = chunkQueue.poll()) != null) {
+                consume(consumer, binningContext, chunk);
+            }
+            long numObs = 0;
+            List<StripeResult> stripeResults = new ArrayList<>(futures.size());
+            for (Future<StripeResult> future : futures) {
+                StripeResult stripeResult = getResult(future);
+                numObs += stripeResult.numObs;
+                stripeResults.add(stripeResult);
+            }
+            emitBorderBins(stripeResults, consumer, binningContext);
+            pm.worked(1);
+            return numObs;
+        } finally {
+            for (Future<StripeResult> future : futures) {
+                future.cancel(true);
+            }
+            chunkQueue.clear();
+            pm.done();
+        }
+    }
+
+    private StripeResult processStripe(Product product, int y, int h, int tileHeight) throws Exception {
+        // the bins of the first and the last slice may be continued by the neighbouring stripes
+        Set<Long> headIndexes = y > 0 ? getBinIndexes(product, y, Math.min(tileHeight, h)) : Collections.emptySet();
+        Set<Long> tailIndexes = y + h < product.getSceneRasterHeight() ? getBinIndexes(product, y + h - tileHeight, tileHeight) : Collections.emptySet();
+        Product stripe = createStripe(product, y, h);
+        try {
+            BinningContext binningContext = HadoopBinManager.createBinningContext(binningConfig, dataPeriod, regionGeometry);
+            StripeResult stripeResult = new StripeResult(headIndexes, tailIndexes);
+            SpatialBinner spatialBinner = new SpatialBinner(binningContext, stripeResult);
+            stripeResult.numObs = SpatialProductBinner.processProduct(stripe, spatialBinner, new HashMap<>(), ProgressMonitor.NULL);
+            stripeResult.flush();
+            Collections.addAll(exceptions, spatialBinner.getExceptions());
+            return stripeResult;
+        } finally {
+            stripe.dispose();
+        }
+    }
+
+    private Set<Long> getBinIndexes(Product product, int y, int h) throws IOException {
+        Product slice = createStripe(product, y, h);
+        try {
+            Set<Long> binIndexes = new HashSet<>();
+            BinningContext binningContext = HadoopBinManager.createBinningContext(binningConfig, dataPeriod, regionGeometry);
+            SpatialBinner spatialBinner = new SpatialBinner(binningContext, (context, bins) -> {
+                for (SpatialBin bin : bins) {
+                    binIndexes.add(bin.getIndex());
+                }
+            });
+            SpatialProductBinner.processProduct(slice, spatialBinner, new HashMap<>(), ProgressMonitor.NULL);
+            return binIndexes;
+        } finally {
+            slice.dispose();
+        }
+    }
+
+    private static Product createStripe(Product product, int y, int h) throws IOException {
+        ProductSubsetDef subsetDef = new ProductSubsetDef();
+        subsetDef.setRegion(0, y, product.getSceneRasterWidth(), h);
+        return product.createSubset(subsetDef, product.getName() + "_" + y, product.getDescription());
+    }
+
+    /**
+     * Merges the tail bins of each stripe with the head bins of the next one, in the order of the stripes.
+     */
+    private void emitBorderBins(List<StripeResult> stripeResults, SpatialBinConsumer consumer, BinningContext binningContext) throws IOException {
+        List<SpatialBin> chunk = new ArrayList<>();
+        Map<Long, L3SpatialBin> continued = new HashMap<>();
+        for (StripeResult stripeResult : stripeResults) {
+            Map<Long, L3SpatialBin> tailBins = new HashMap<>(stripeResult.tailBins);
+            for (Map.Entry<Long, L3SpatialBin> entry : stripeResult.headBins.entrySet()) {
+                Long binIndex = entry.getKey();
+                L3SpatialBin headBin = entry.getValue();
+                L3SpatialBin mergedBin = continued.remove(binIndex);
+                if (mergedBin != null) {
+                    merger.merge(headBin, mergedBin);
+                } else {
+                    mergedBin = headBin;
+                }
+                if (tailBins.get(binIndex) == headBin) {
+                    // the bin covers the whole stripe, it may be continued by the next one
+                    tailBins.put(binIndex, mergedBin);
+                } else {
+                    chunk.add(mergedBin);
+                }
+            }
+            chunk.addAll(continued.values());
+            continued = tailBins;
+        }
+        chunk.addAll(continued.values());
+        if (!chunk.isEmpty()) {
+            consume(consumer, binningContext, chunk);
+        }
+    }
+
+    private static void consume(SpatialBinConsumer consumer, BinningContext binningContext, List<SpatialBin> chunk) throws IOException {
+        try {
+            consumer.consumeSpatialBins(binningContext, chunk);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static int countDone(List<Future<StripeResult>> futures) {
+        int numDone = 0;
+        for (Future<StripeResult> future : futures) {
+            if (future.isDone()) {
+                numDone++;
+            }
+        }
+        return numDone;
+    }
+
+    private static StripeResult getResult(Future<StripeResult> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("failed to bin product stripe", cause);
+        }
+    }
+
+    private static int getTileHeight(Product product) {
+        return product.getPreferredTileSize() != null ? product.getPreferredTileSize().height : 64;
+    }
+
+    /**
+     * Queues the bins of a stripe for the consumer, except the first bin of an index of the first slice
+     * (the head bin) and the last bin of an index of the last slice (the tail bin).
+     */
+    private class StripeResult implements SpatialBinConsumer {
+
+        private final Set<Long> headIndexes;
+        private final Set<Long> tailIndexes;
+        final Map<Long, L3SpatialBin> headBins = new HashMap<>();
+        final Map<Long, L3SpatialBin> tailBins = new HashMap<>();
+        private List<SpatialBin> chunk = new ArrayList<>(CHUNK_SIZE);
+        long numObs;
+
+        StripeResult(Set<Long> headIndexes, Set<Long> tailIndexes) {
+            this.headIndexes = headIndexes;
+            this.tailIndexes = tailIndexes;
+        }
+
+        @Override
+        public void consumeSpatialBins(BinningContext binningContext, List<SpatialBin> bins) throws InterruptedException {
+            for (SpatialBin spatialBin : bins) {
+                L3SpatialBin bin = (L3SpatialBin) spatialBin;
+                Long binIndex = bin.getIndex();
+                boolean held = false;
+                if (headIndexes.contains(binIndex) && !headBins.containsKey(binIndex)) {
+                    headBins.put(binIndex, bin);
+                    held = true;
+                }
+                if (tailIndexes.contains(binIndex)) {
+                    L3SpatialBin previousBin = tailBins.put(binIndex, bin);
+                    if (previousBin != null && previousBin != headBins.get(binIndex)) {
+                        queue(previousBin);
+                    }
+                    held = true;
+                }
+                if (!held) {
+                    queue(bin);
+                }
+            }
+        }
+
+        private void queue(SpatialBin bin) throws InterruptedException {
+            chunk.add(bin);
+            if (chunk.size() == CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() throws InterruptedException {
+            if (!chunk.isEmpty()) {
+                chunkQueue.put(chunk);
+                chunk = new ArrayList<>(CHUNK_SIZE);
+            }
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package com.bc.calvalus.processing.l3.cellstream;
 
+import com.bc.calvalus.commons.CalvalusLogger;
 import com.bc.calvalus.commons.DateUtils;
+import com.bc.calvalus.processing.JobConfigNames;
+import com.bc.calvalus.processing.hadoop.HdfsRandomAccessFile;
+import com.bc.calvalus.processing.hadoop.NodeLocalCache;
 import com.bc.calvalus.processing.l3.L3TemporalBin;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
@@ -17,23 +21,38 @@ import java.io.IOException;
 import java.text.DateFormat;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A record reader for reading binned data out of netcdf files.
  * The actual reading is done by implementations of {@link }AbstractNetcdfCellReader}.
+ * <p>
+ * The file is read directly from the file system, only the blocks needed are fetched.
+ * It is copied to the local directory if it cannot be opened this way, or if direct reading
+ * is switched off with {@link JobConfigNames#CALVALUS_INPUT_DIRECT_READ}.
  */
 class CellRecordReader extends RecordReader<LongWritable, L3TemporalBin> {
 
+    private static final Logger LOG = CalvalusLogger.getLogger();
     private static final DateFormat DATE_FORMAT = DateUtils.createDateFormat("yyyy-MM-dd");
 
     private final AbstractNetcdfCellReader cellReader;
     private final LongWritable key;
     private final L3TemporalBin value;
+    private HdfsRandomAccessFile directFile;
+    private TaskAttemptContext context;
     private boolean hasMore;
 
     public CellRecordReader(Path path, Configuration conf) throws IOException {
-        File localFile = copyToLocal(path, conf);
-        NetcdfFile netcdfFile = NetcdfFile.open(localFile.getAbsolutePath());
+        NetcdfFile netcdfFile = null;
+        if (conf.getBoolean(JobConfigNames.CALVALUS_INPUT_DIRECT_READ, true)) {
+            netcdfFile = openDirect(path, conf);
+        }
+        if (netcdfFile == null) {
+            File localFile = copyToLocal(path, conf);
+            netcdfFile = NetcdfFile.open(localFile.getAbsolutePath());
+        }
         cellReader = createReader(netcdfFile);
         key = new LongWritable();
         value = new L3TemporalBin(-1, cellReader.getFeatureNames().length);
@@ -42,6 +61,8 @@ class CellRecordReader extends RecordReader<LongWritable, L3TemporalBin> {
     @Override
     public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
         hasMore = true;
+        this.context = context;
+        NodeLocalCache.reportCounters(context);
     }
 
     @Override
@@ -75,6 +96,10 @@ class CellRecordReader extends RecordReader<LongWritable, L3TemporalBin> {
     @Override
     public void close() throws IOException {
         cellReader.close();
+        if (directFile != null && context != null) {
+            context.getCounter("Direct File System Counters", "CELL_BYTES_READ").increment(directFile.getBytesRead());
+            context.getCounter("Direct File System Counters", "CELL_BYTES").increment(directFile.length());
+        }
     }
 
     public String[] getFeatureNames() {
@@ -102,6 +127,25 @@ class CellRecordReader extends RecordReader<LongWritable, L3TemporalBin> {
         return cellReader.getNumRows();
     }
 
+    private NetcdfFile openDirect(Path path, Configuration conf) {
+        HdfsRandomAccessFile raf = null;
+        try {
+            raf = HdfsRandomAccessFile.open(path, conf);
+            NetcdfFile netcdfFile = NetcdfFile.open(raf, path.toString(), null, null);
+            directFile = raf;
+            return netcdfFile;
+        } catch (Exception e) {
+            LOG.log(Level.INFO, "cannot read " + path + " directly, copying it: " + e.getMessage());
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ignore) {
+                }
+            }
+            return null;
+        }
+    }
+
     /**
      * Copies the file given to the local input directory for access as a ordinary {@link java.io.File}.
      *
@@ -112,8 +156,13 @@ class CellRecordReader extends RecordReader<LongWritable, L3TemporalBin> {
     private static File copyToLocal(Path inputPath, Configuration conf) throws IOException {
         File localFile = new File(".", inputPath.getName());
         if (!localFile.exists()) {
-            FileSystem fs = inputPath.getFileSystem(conf);
-            FileUtil.copy(fs, inputPath, localFile, false, conf);
+            NodeLocalCache cache = NodeLocalCache.getInstance(conf);
+            if (cache != null) {
+                cache.copyToLocal(inputPath, localFile, conf);
+            } else {
+                FileSystem fs = inputPath.getFileSystem(conf);
+                FileUtil.copy(fs, inputPath, localFile, false, conf);
+            }
         }
         return localFile;
     }
@@ -3,11 +3,9 @@ package com.bc.calvalus.processing.l3.multiregion;
 import com.bc.calvalus.processing.l3.HadoopBinManager;
 import com.bc.calvalus.processing.l3.L3TemporalBin;
 import com.bc.calvalus.processing.utils.GeometryUtils;
-import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
-import com.vividsolutions.jts.geom.Point;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.LongWritable;
@@ -26,7 +24,7 @@ import java.io.IOException;
  */
 public class L3MultiRegionFormatMapper extends Mapper<LongWritable, L3TemporalBin, L3MultiRegionBinIndex, L3MultiRegionTemporalBin> implements Configurable {
     private Configuration conf;
-    private Geometry[] geometries;
+    private L3MultiRegionLookup regionLookup;
     private PlanetaryGrid planetaryGrid;
     private GeometryFactory geometryFactory;
     private L3MultiRegionTemporalBin mBin;
@@ -35,11 +33,12 @@ public class L3MultiRegionFormatMapper extends Mapper<LongWritable, L3TemporalBi
     protected void map(LongWritable binIndex, L3TemporalBin temporalBin, Context context) throws IOException, InterruptedException {
         long binIndexLong = binIndex.get();
         double[] centerLatLon = planetaryGrid.getCenterLatLon(binIndexLong);
-        Point point = geometryFactory.createPoint(new Coordinate(centerLatLon[1], centerLatLon[0]));
+        double lat = centerLatLon[0];
+        double lon = centerLatLon[1];
 
         boolean binContentCopied = false;
-        for (int regionId = 0; regionId < geometries.length; regionId++) {
-            if (geometries[regionId].contains(point)) {
+        for (int regionId : regionLookup.getCandidates(lat, lon)) {
+            if (regionLookup.contains(regionId, lat, lon)) {
                 L3MultiRegionBinIndex mBinIndex = new L3MultiRegionBinIndex(regionId, binIndexLong);
                 if (!binContentCopied) {
                     float[] srcValues = temporalBin.getFeatureValues();
@@ -68,7 +67,7 @@ public class L3MultiRegionFormatMapper extends Mapper<LongWritable, L3TemporalBi
 
         L3MultiRegionFormatConfig l3MultiRegionFormatConfig = L3MultiRegionFormatConfig.get(conf);
         L3MultiRegionFormatConfig.Region[] regions = l3MultiRegionFormatConfig.getRegions();
-        geometries = new Geometry[regions.length];
+        Geometry[] geometries = new Geometry[regions.length];
         for (int i = 0; i < regions.length; i++) {
             // create buffer around given geometry to include also bins that
             // only partially fall into the given geometry
@@ -82,6 +81,7 @@ public class L3MultiRegionFormatMapper extends Mapper<LongWritable, L3TemporalBi
             Geometry extendedGeometry = geometryFactory.toGeometry(envelope);
             geometries[i] = extendedGeometry;
         }
+        regionLookup = new L3MultiRegionLookup(geometries);
     }
 
     private double getLongitudeExtend(double latitude) {
@@ -5,12 +5,16 @@ import com.bc.calvalus.processing.JobUtils;
 import com.bc.calvalus.processing.hadoop.HadoopProcessingService;
 import com.bc.calvalus.processing.hadoop.HadoopWorkflowItem;
 import com.bc.calvalus.processing.hadoop.ProcessingMetadata;
+import com.bc.calvalus.processing.l3.L3BinIndexInputFormat;
+import com.bc.calvalus.processing.utils.GeometryUtils;
+import com.vividsolutions.jts.geom.Geometry;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -44,7 +48,12 @@ public class L3MultiRegionFormatWorkflowItem extends HadoopWorkflowItem {
         Configuration jobConfig = job.getConfiguration();
 
         FileInputFormat.addInputPaths(job, getInputDir());
-        job.setInputFormatClass(SequenceFileInputFormat.class);
+        job.setInputFormatClass(L3BinIndexInputFormat.class);
+        List<Geometry> regions = new ArrayList<>();
+        for (L3MultiRegionFormatConfig.Region region : L3MultiRegionFormatConfig.get(jobConfig).getRegions()) {
+            regions.add(GeometryUtils.createGeometry(region.getRegionWKT()));
+        }
+        L3BinIndexInputFormat.setRegion(jobConfig, regions);
 
         job.setMapperClass(L3MultiRegionFormatMapper.class);
         job.setMapOutputKeyClass(L3MultiRegionBinIndex.class);
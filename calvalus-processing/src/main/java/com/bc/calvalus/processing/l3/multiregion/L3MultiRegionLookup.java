@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l3.multiregion;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+import java.util.Arrays;
+
+/**
+ * Finds the regions containing a lat/lon position.
+ * <p>
+ * The envelopes of the regions are registered in the cells of a regular lat/lon grid
+ * spanning all regions. A position is tested only against the regions of its cell.
+ * Rectangular regions are tested by comparing coordinates, the same as JTS does
+ * for rectangles, without creating a point.
+ */
+class L3MultiRegionLookup {
+
+    private static final int[] NO_REGIONS = new int[0];
+    // the grid has at most this number of rows and columns
+    private static final int MAX_GRID_SIZE = 512;
+    // the grid is coarsened until the regions are registered in at most this number of cells altogether
+    private static final long MAX_NUM_ENTRIES = 1L << 22;
+
+    private final Geometry[] geometries;
+    private final boolean[] rectangular;
+    private final double[] minLons;
+    private final double[] maxLons;
+    private final double[] minLats;
+    private final double[] maxLats;
+    private final GeometryFactory geometryFactory;
+
+    private final Envelope gridEnvelope;
+    private final int numRows;
+    private final int numCols;
+    private final double cellHeight;
+    private final double cellWidth;
+    private final int[][] cellRegions;
+
+    L3MultiRegionLookup(Geometry[] geometries) {
+        this.geometries = geometries;
+        this.rectangular = new boolean[geometries.length];
+        this.minLons = new double[geometries.length];
+        this.maxLons = new double[geometries.length];
+        this.minLats = new double[geometries.length];
+        this.maxLats = new double[geometries.length];
+        this.geometryFactory = new GeometryFactory();
+
+        gridEnvelope = new Envelope();
+        double[] heights = new double[geometries.length];
+        double[] widths = new double[geometries.length];
+        for (int i = 0; i < geometries.length; i++) {
+            Envelope envelope = geometries[i].getEnvelopeInternal();
+            rectangular[i] = geometries[i].isRectangle();
+            minLons[i] = envelope.getMinX();
+            maxLons[i] = envelope.getMaxX();
+            minLats[i] = envelope.getMinY();
+            maxLats[i] = envelope.getMaxY();
+            gridEnvelope.expandToInclude(envelope);
+            heights[i] = envelope.getHeight();
+            widths[i] = envelope.getWidth();
+        }
+
+        // cells about the size of a typical region
+        int rows = getGridSize(gridEnvelope.getHeight(), heights);
+        int cols = getGridSize(gridEnvelope.getWidth(), widths);
+        while ((rows > 1 || cols > 1) && countEntries(rows, cols) > MAX_NUM_ENTRIES) {
+            rows = Math.max(1, rows / 2);
+            cols = Math.max(1, cols / 2);
+        }
+        numRows = rows;
+        numCols = cols;
+        cellHeight = gridEnvelope.getHeight() / numRows;
+        cellWidth = gridEnvelope.getWidth() / numCols;
+
+        int[] numCellRegions = new int[numRows * numCols];
+        for (int i = 0; i < geometries.length; i++) {
+            for (int row = getRow(minLats[i]); row <= getRow(maxLats[i]); row++) {
+                for (int col = getCol(minLons[i]); col <= getCol(maxLons[i]); col++) {
+                    numCellRegions[row * numCols + col]++;
+                }
+            }
+        }
+        cellRegions = new int[numRows * numCols][];
+        for (int cell = 0; cell < cellRegions.length; cell++) {
+            cellRegions[cell] = numCellRegions[cell] > 0 ? new int[numCellRegions[cell]] : NO_REGIONS;
+        }
+        // regions are registered in ascending order, the same order they are tested in without lookup
+        Arrays.fill(numCellRegions, 0);
+        for (int i = 0; i < geometries.length; i++) {
+            for (int row = getRow(minLats[i]); row <= getRow(maxLats[i]); row++) {
+                for (int col = getCol(minLons[i]); col <= getCol(maxLons[i]); col++) {
+                    int cell = row * numCols + col;
+                    cellRegions[cell][numCellRegions[cell]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the ids of the regions that may contain the position, ascending; the array must not be modified
+     */
+    int[] getCandidates(double lat, double lon) {
+        if (cellRegions.length == 0 || !gridEnvelope.contains(lon, lat)) {
+            return NO_REGIONS;
+        }
+        return cellRegions[getRow(lat) * numCols + getCol(lon)];
+    }
+
+    boolean contains(int regionId, double lat, double lon) {
+        if (rectangular[regionId]) {
+            // points on the boundary are not contained, as for Geometry.contains
+            return lon > minLons[regionId] && lon < maxLons[regionId]
+                   && lat > minLats[regionId] && lat < maxLats[regionId];
+        }
+        return geometries[regionId].contains(geometryFactory.createPoint(new Coordinate(lon, lat)));
+    }
+
+    int getNumCells() {
+        return cellRegions.length;
+    }
+
+    private int getRow(double lat) {
+        if (cellHeight == 0.0) {
+            return 0;
+        }
+        return Math.min(numRows - 1, (int) ((lat - gridEnvelope.getMinY()) / cellHeight));
+    }
+
+    private int getCol(double lon) {
+        if (cellWidth == 0.0) {
+            return 0;
+        }
+        return Math.min(numCols - 1, (int) ((lon - gridEnvelope.getMinX()) / cellWidth));
+    }
+
+    private long countEntries(int rows, int cols) {
+        double height = gridEnvelope.getHeight() / rows;
+        double width = gridEnvelope.getWidth() / cols;
+        long numEntries = 0;
+        for (int i = 0; i < geometries.length; i++) {
+            long regionRows = height > 0.0 ? (long) ((maxLats[i] - minLats[i]) / height) + 2 : 1;
+            long regionCols = width > 0.0 ? (long) ((maxLons[i] - minLons[i]) / width) + 2 : 1;
+            numEntries += Math.min(rows, regionRows) * Math.min(cols, regionCols);
+        }
+        return numEntries;
+    }
+
+    private static int getGridSize(double extent, double[] regionExtents) {
+        if (regionExtents.length == 0) {
+            return 1;
+        }
+        double[] sorted = regionExtents.clone();
+        Arrays.sort(sorted);
+        double median = sorted[sorted.length / 2];
+        if (median <= 0.0) {
+            return MAX_GRID_SIZE;
+        }
+        return (int) Math.max(1, Math.min(MAX_GRID_SIZE, Math.ceil(extent / median)));
+    }
+}
@@ -1,5 +1,6 @@
 package com.bc.calvalus.processing.l3.seasonal;
 
+import com.bc.calvalus.processing.hadoop.RasterSerialization;
 import org.apache.hadoop.io.Writable;
 
 import java.io.DataInput;
@@ -27,19 +28,15 @@ public class BandTileWritable implements Writable {
     @Override
     public void write(DataOutput out) throws IOException {
         out.writeInt(tileData.length);
-        for (float f : tileData) {
-            out.writeFloat(f);
-        }
+        RasterSerialization.write(out, tileData, RasterSerialization.getCodec(RasterSerialization.Codec.RAW));
     }
 
     @Override
     public void readFields(DataInput in) throws IOException {
         final int length = in.readInt();
-        if (tileData == null) {
+        if (tileData == null || tileData.length != length) {
             tileData = new float[length];
         }
-        for (int i = 0; i < length; ++i) {
-            tileData[i] = in.readFloat();
-        }
+        RasterSerialization.read(in, tileData);
     }
 }
@@ -5,6 +5,7 @@ import com.bc.calvalus.commons.DateUtils;
 import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.beam.GpfUtils;
 import com.bc.calvalus.processing.hadoop.ProgressSplitProgressMonitor;
+import com.bc.calvalus.processing.hadoop.RasterSerialization;
 import com.bc.ceres.binding.BindingException;
 import com.bc.ceres.glevel.MultiLevelImage;
 import org.apache.hadoop.conf.Configuration;
@@ -92,6 +93,7 @@ public class SeasonalCompositingMapper extends Mapper<NullWritable, NullWritable
     public void run(Context context) throws IOException, InterruptedException {
 
         GpfUtils.init(context.getConfiguration());
+        RasterSerialization.configure(context.getConfiguration());
         Engine.start();  // required here!  we do not use a ProcessorAdapter
         CalvalusLogger.restoreCalvalusLogFormatter();
         // parse input path /calvalus/eodata/MERIS_SR_FR/v1.0/2010/2010-01-01/ESACCI-LC-L3-SR-MERIS-300m-P7D-h36v08-20100101-v1.0.nc
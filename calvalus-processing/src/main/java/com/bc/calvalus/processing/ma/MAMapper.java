@@ -37,6 +37,7 @@ import org.esa.snap.core.util.io.FileUtils;
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Area;
+import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -93,7 +94,9 @@ public class MAMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
                                    context.getTaskAttemptID(), inputProduct.getName(), productOpenTime / 1E3));
 
             t0 = now();
-            RecordSource referenceRecordSource = getReferenceRecordSource(maConfig, regionGeometry, conf);
+            ReferenceRecordIndex referenceRecordIndex = openReferenceRecordIndex(conf);
+            RecordSource referenceRecordSource = getReferenceRecordSource(maConfig, regionGeometry, conf,
+                                                                          referenceRecordIndex, inputProduct);
             Header referenceRecordHeader = referenceRecordSource.getHeader();
             PixelPosProvider pixelPosProvider = new PixelPosProvider(inputProduct,
                                                                      PixelTimeProvider.create(inputProduct),
@@ -153,7 +156,8 @@ public class MAMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
                     if (!useInputPixelPos || transform == null) {
                         LOG.info("Retrieving pixel positions from processed product");
                         transform = new AffineTransform();
-                        referenceRecordSource = getReferenceRecordSource(maConfig, regionGeometry, conf);
+                        referenceRecordSource = getReferenceRecordSource(maConfig, regionGeometry, conf,
+                                                                         referenceRecordIndex, processedProduct);
                         pixelPosProvider = new PixelPosProvider(processedProduct,
                                                                 PixelTimeProvider.create(processedProduct),
                                                                 maConfig.getMaxTimeDifference(),
@@ -231,7 +235,26 @@ public class MAMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
 
     }
 
-    private RecordSource getReferenceRecordSource(MAConfig maConfig, Geometry regionGeometry, Configuration conf) {
+    private static ReferenceRecordIndex openReferenceRecordIndex(Configuration conf) throws IOException {
+        if (!conf.getBoolean(JobConfigNames.CALVALUS_MA_REFERENCE_INDEX, false)) {
+            return null;
+        }
+        File indexFile = new File(ReferenceRecordIndex.CACHE_FILE_NAME);
+        if (!indexFile.exists()) {
+            LOG.warning("reference record index " + indexFile.getAbsolutePath() + " not found, reading all reference records");
+            return null;
+        }
+        ReferenceRecordIndex referenceRecordIndex = ReferenceRecordIndex.open(indexFile);
+        LOG.info(String.format("mapped reference record index with %s records", referenceRecordIndex.getNumRecords()));
+        return referenceRecordIndex;
+    }
+
+    private RecordSource getReferenceRecordSource(MAConfig maConfig, Geometry regionGeometry, Configuration conf,
+                                                  ReferenceRecordIndex referenceRecordIndex, Product product) {
+        if (referenceRecordIndex != null) {
+            // the region filter has been applied when the index was built
+            return referenceRecordIndex.query(product, maConfig.getMaxTimeDifference());
+        }
         final RecordSource referenceRecordSource;
         try {
             referenceRecordSource = maConfig.createRecordSource(conf);
@@ -16,16 +16,27 @@
 
 package com.bc.calvalus.processing.ma;
 
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.commons.WorkflowException;
 import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.JobUtils;
 import com.bc.calvalus.processing.hadoop.HadoopProcessingService;
 import com.bc.calvalus.processing.hadoop.HadoopWorkflowItem;
+import com.bc.calvalus.processing.utils.GeometryUtils;
+import com.vividsolutions.jts.geom.Geometry;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.filecache.DistributedCache;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.UUID;
 
 /**
  * A workflow item creating a Hadoop job for match-up extraction on n input products.
@@ -35,6 +46,8 @@ import java.io.IOException;
  */
 public class MAWorkflowItem extends HadoopWorkflowItem {
 
+    private Path indexDir;
+
     public MAWorkflowItem(HadoopProcessingService processingService, String username, String jobName, Configuration jobConfig) {
         super(processingService, username, jobName, jobConfig);
     }
@@ -95,6 +108,76 @@ public class MAWorkflowItem extends HadoopWorkflowItem {
         job.setOutputFormatClass(SequenceFileOutputFormat.class);
 
         JobUtils.clearAndSetOutputDir(getOutputDir(), job, this);
+
+        if (jobConfig.getBoolean(JobConfigNames.CALVALUS_MA_REFERENCE_INDEX, false)) {
+            addReferenceRecordIndex(jobConfig);
+        }
+    }
+
+    @Override
+    public void submitInternal() throws WorkflowException {
+        try {
+            super.submitInternal();
+        } catch (WorkflowException e) {
+            deleteReferenceRecordIndex();
+            throw e;
+        }
+    }
+
+    @Override
+    public void updateStatus() {
+        super.updateStatus();
+        if (getStatus().isDone()) {
+            deleteReferenceRecordIndex();
+        }
+    }
+
+    /**
+     * Reads the reference records once, writes their index into a directory of its own next to the
+     * output directory (the output directory itself must not exist before the job starts),
+     * and ships the index to the mappers via the distributed cache.
+     * The directory is deleted when the job is done.
+     */
+    private void addReferenceRecordIndex(Configuration jobConfig) throws IOException {
+        MAConfig maConfig = MAConfig.get(jobConfig);
+        Geometry regionGeometry = GeometryUtils.createGeometry(jobConfig.get(JobConfigNames.CALVALUS_REGION_GEOMETRY));
+        RecordSource recordSource;
+        try {
+            recordSource = maConfig.createRecordSource(jobConfig);
+        } catch (Exception e) {
+            throw new IOException("failed to index reference records: " + e.getMessage(), e);
+        }
+        if (regionGeometry != null) {
+            recordSource = new FilteredRecordSource(recordSource, new GeometryRecordFilter(regionGeometry));
+        }
+        File localFile = File.createTempFile("reference-records", ".idx");
+        try {
+            ReferenceRecordIndex.write(recordSource, ReferenceRecordIndex.DEFAULT_CELL_SIZE, localFile);
+            indexDir = new Path(getOutputDir() + "_index-" + UUID.randomUUID());
+            Path indexPath = new Path(indexDir, ReferenceRecordIndex.CACHE_FILE_NAME);
+            FileSystem fileSystem = getProcessingService().getFileSystem(getUserName(), indexPath.toString());
+            fileSystem.copyFromLocalFile(false, true, new Path(localFile.getAbsolutePath()), indexPath);
+            URI uri = fileSystem.makeQualified(indexPath).toUri();
+            DistributedCache.addCacheFile(new URI(uri + "#" + ReferenceRecordIndex.CACHE_FILE_NAME), jobConfig);
+            DistributedCache.createSymlink(jobConfig);
+        } catch (URISyntaxException e) {
+            throw new IOException("invalid location of reference record index", e);
+        } finally {
+            localFile.delete();
+        }
+    }
+
+    private synchronized void deleteReferenceRecordIndex() {
+        if (indexDir == null) {
+            return;
+        }
+        try {
+            FileSystem fileSystem = getProcessingService().getFileSystem(getUserName(), indexDir.toString());
+            fileSystem.delete(indexDir, true);
+        } catch (IOException e) {
+            CalvalusLogger.getLogger().warning("failed to delete reference record index " + indexDir + ": " + e.getMessage());
+        }
+        indexDir = null;
     }
 
 }
@@ -0,0 +1,547 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ma;
+
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.util.ProductUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A binary index of reference records, built once per match-up job and memory-mapped by the mappers.
+ * <p>
+ * The records are grouped by lat/lon cells and sorted by time within a cell. A query for the
+ * bounding box and time window of a product reads the cell directory and the record table only,
+ * the attribute and annotation values of a record are decoded when they are accessed.
+ * <p>
+ * File layout, big-endian:
+ * <pre>
+ *     magic, version, cell size
+ *     header: hasLocation, hasTime, attribute names, annotation names, time and location column description
+ *     cell directory: number of cells, cell keys ascending, index of the first record of each cell
+ *     record table: number of records, per record latitude, longitude, time, id and payload offset
+ *     payloads: the attribute and annotation values of the records as written by {@link RecordWritable}
+ * </pre>
+ * Records without a location are not indexed, they can not be matched with any product.
+ */
+public class ReferenceRecordIndex {
+
+    /**
+     * The name of the index in the working directory of a task, the fragment of its distributed cache URI.
+     */
+    public static final String CACHE_FILE_NAME = "reference-records.idx";
+    public static final double DEFAULT_CELL_SIZE = 1.0;
+
+    private static final int MAGIC = 0x4d415249; // "MARI"
+    private static final int VERSION = 1;
+    private static final int RECORD_ENTRY_SIZE = 8 + 8 + 8 + 4 + 8;
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final long HOUR_IN_MS = 60 * 60 * 1000L;
+    private static final long DAY_IN_MS = 24 * HOUR_IN_MS;
+
+    private final Header header;
+    private final String timeAndLocationColumnDescription;
+    private final double cellSize;
+    private final int numLonCells;
+    private final int[] cellKeys;
+    private final int[] cellStarts;
+    private final int numRecords;
+    private final ByteBuffer buffer;
+    private final int tableStart;
+    private final int payloadStart;
+
+    private ReferenceRecordIndex(Header header, String timeAndLocationColumnDescription, double cellSize,
+                                 int[] cellKeys, int[] cellStarts, int numRecords, ByteBuffer buffer, int tableStart) {
+        this.header = header;
+        this.timeAndLocationColumnDescription = timeAndLocationColumnDescription;
+        this.cellSize = cellSize;
+        this.numLonCells = getNumLonCells(cellSize);
+        this.cellKeys = cellKeys;
+        this.cellStarts = cellStarts;
+        this.numRecords = numRecords;
+        this.buffer = buffer;
+        this.tableStart = tableStart;
+        this.payloadStart = tableStart + numRecords * RECORD_ENTRY_SIZE;
+    }
+
+    public Header getHeader() {
+        return header;
+    }
+
+    public int getNumRecords() {
+        return numRecords;
+    }
+
+    /**
+     * Writes the index of all records of the source.
+     *
+     * @return the number of indexed records
+     */
+    public static int write(RecordSource recordSource, double cellSize, File file) throws Exception {
+        Header header = recordSource.getHeader();
+        int numLonCells = getNumLonCells(cellSize);
+        File payloadFile = File.createTempFile("reference-records", ".payload");
+        try {
+            RecordTable table = new RecordTable();
+            try (DataOutputStream payloadOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(payloadFile)))) {
+                ByteArrayOutputStream payload = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(payload);
+                long payloadOffset = 0;
+                for (Record record : recordSource.getRecords()) {
+                    GeoPos location = record.getLocation();
+                    if (location == null || !location.isValid()) {
+                        continue;
+                    }
+                    payload.reset();
+                    new RecordWritable(record.getAttributeValues(), record.getAnnotationValues()).write(out);
+                    payload.writeTo(payloadOut);
+                    Date time = record.getTime();
+                    int cellKey = getCellKey(location.lat, location.lon, cellSize, numLonCells);
+                    table.add(cellKey, location.lat, location.lon, time != null ? time.getTime() : NO_TIME, record.getId(), payloadOffset);
+                    payloadOffset += payload.size();
+                }
+            }
+            int[] order = table.sortByCellAndTime();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeDouble(cellSize);
+                writeHeader(out, header, recordSource.getTimeAndLocationColumnDescription());
+                writeCellDirectory(out, table, order);
+                out.writeInt(order.length);
+                for (int i : order) {
+                    out.writeDouble(table.lats[i]);
+                    out.writeDouble(table.lons[i]);
+                    out.writeLong(table.times[i]);
+                    out.writeInt(table.ids[i]);
+                    out.writeLong(table.payloadOffsets[i]);
+                }
+                try (InputStream payloadIn = new BufferedInputStream(new FileInputStream(payloadFile))) {
+                    byte[] bytes = new byte[64 * 1024];
+                    int n;
+                    while ((n = payloadIn.read(bytes)) > 0) {
+                        out.write(bytes, 0, n);
+                    }
+                }
+            }
+            return order.length;
+        } finally {
+            payloadFile.delete();
+        }
+    }
+
+    /**
+     * Maps the index into memory.
+     */
+    public static ReferenceRecordIndex open(File file) throws IOException {
+        ByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("reference record index too large to be mapped: " + file);
+            }
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer.duplicate()));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a reference record index: " + file);
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported version " + version + " of reference record index " + file);
+        }
+        double cellSize = in.readDouble();
+        boolean hasLocation = in.readBoolean();
+        boolean hasTime = in.readBoolean();
+        String[] attributeNames = readStrings(in);
+        String[] annotationNames = readStrings(in);
+        String timeAndLocationColumnDescription = in.readBoolean() ? in.readUTF() : null;
+        int numCells = in.readInt();
+        int[] cellKeys = readInts(in, numCells);
+        int[] cellStarts = readInts(in, numCells + 1);
+        int numRecords = in.readInt();
+        int tableStart = buffer.capacity() - in.available();
+        return new ReferenceRecordIndex(new DefaultHeader(hasLocation, hasTime, attributeNames, annotationNames),
+                                        timeAndLocationColumnDescription, cellSize, cellKeys, cellStarts,
+                                        numRecords, buffer, tableStart);
+    }
+
+    /**
+     * Selects the records that may match with the product, a superset of the records a
+     * {@link PixelPosProvider} would find in the product with the same maximum time difference.
+     */
+    public RecordSource query(Product product, String maxTimeDifference) {
+        double[] bounds = getGeoBounds(product, cellSize);
+        long minTime = Long.MIN_VALUE;
+        long maxTime = Long.MAX_VALUE;
+        long timeMargin = getTimeMargin(maxTimeDifference);
+        if (header.hasTime() && timeMargin >= 0 && product.getStartTime() != null && product.getEndTime() != null) {
+            long startTime = product.getStartTime().getAsDate().getTime();
+            long endTime = product.getEndTime().getAsDate().getTime();
+            minTime = Math.min(startTime, endTime) - timeMargin;
+            maxTime = Math.max(startTime, endTime) + timeMargin;
+        }
+        List<Record> records = query(bounds[0], bounds[1], bounds[2], bounds[3], minTime, maxTime);
+        return new DefaultRecordSource(header, records.toArray(new Record[0])) {
+            @Override
+            public String getTimeAndLocationColumnDescription() {
+                return timeAndLocationColumnDescription;
+            }
+        };
+    }
+
+    /**
+     * Selects the records of the cells overlapping the bounding box, with a time within the time window.
+     * The records are not tested against the bounding box itself.
+     */
+    List<Record> query(double minLat, double maxLat, double minLon, double maxLon, long minTime, long maxTime) {
+        int minLatCell = getLatCell(minLat, cellSize);
+        int maxLatCell = getLatCell(maxLat, cellSize);
+        int minLonCell = getLonCell(minLon, cellSize, numLonCells);
+        int maxLonCell = getLonCell(maxLon, cellSize, numLonCells);
+        List<Record> records = new ArrayList<>();
+        for (int latCell = minLatCell; latCell <= maxLatCell; latCell++) {
+            int firstKey = latCell * numLonCells + minLonCell;
+            int lastKey = latCell * numLonCells + maxLonCell;
+            int cell = Arrays.binarySearch(cellKeys, firstKey);
+            if (cell < 0) {
+                cell = -cell - 1;
+            }
+            for (; cell < cellKeys.length && cellKeys[cell] <= lastKey; cell++) {
+                int end = cellStarts[cell + 1];
+                for (int i = findFirstRecord(cellStarts[cell], end, minTime); i < end; i++) {
+                    long time = getTime(i);
+                    if (time > maxTime) {
+                        break;
+                    }
+                    records.add(new IndexedRecord(i));
+                }
+            }
+        }
+        return records;
+    }
+
+    // the first record of the range with a time not before minTime, the records of a cell are sorted by time
+    private int findFirstRecord(int start, int end, long minTime) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTime(mid) < minTime) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private long getTime(int record) {
+        return buffer.getLong(tableStart + record * RECORD_ENTRY_SIZE + 16);
+    }
+
+    /**
+     * @return the maximum time difference between a reference record and a matching pixel in ms,
+     * -1 if the time is not tested
+     */
+    static long getTimeMargin(String maxTimeDifference) {
+        if (maxTimeDifference == null || maxTimeDifference.trim().isEmpty()) {
+            return -1;
+        }
+        String trimmed = maxTimeDifference.trim();
+        if (trimmed.endsWith("d")) {
+            // see PixelPosProvider.CalDayTimeRangeProvider
+            int days = Integer.parseInt(trimmed.substring(0, trimmed.length() - 1));
+            return (days + 1) * DAY_IN_MS;
+        }
+        double hours = Double.parseDouble(trimmed);
+        return hours > 0 ? Math.round(hours * HOUR_IN_MS) : -1;
+    }
+
+    /**
+     * @return minLat, maxLat, minLon, maxLon of the product boundary, widened by one cell,
+     * all longitudes if the product crosses the anti-meridian or covers a pole
+     */
+    static double[] getGeoBounds(Product product, double cellSize) {
+        int step = Math.max(1, Math.min(product.getSceneRasterWidth(), product.getSceneRasterHeight()) / 8);
+        GeoPos[] boundary = ProductUtils.createGeoBoundary(product, null, step, true);
+        if (boundary.length == 0) {
+            return new double[]{-90.0, 90.0, -180.0, 180.0};
+        }
+        double minLat = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        for (GeoPos geoPos : boundary) {
+            if (!geoPos.isValid()) {
+                return new double[]{-90.0, 90.0, -180.0, 180.0};
+            }
+            minLat = Math.min(minLat, geoPos.lat);
+            maxLat = Math.max(maxLat, geoPos.lat);
+            minLon = Math.min(minLon, geoPos.lon);
+            maxLon = Math.max(maxLon, geoPos.lon);
+        }
+        if (maxLon - minLon > 180.0) {
+            // the boundary crosses the anti-meridian, or runs around a pole
+            minLon = -180.0;
+            maxLon = 180.0;
+            if (maxLat > 0.0) {
+                maxLat = 90.0;
+            }
+            if (minLat < 0.0) {
+                minLat = -90.0;
+            }
+        } else if (minLon - cellSize < -180.0 || maxLon + cellSize > 180.0) {
+            // longitudes beyond the anti-meridian are not normalized by all geo-codings
+            minLon = -180.0;
+            maxLon = 180.0;
+        } else {
+            minLon -= cellSize;
+            maxLon += cellSize;
+        }
+        return new double[]{Math.max(-90.0, minLat - cellSize), Math.min(90.0, maxLat + cellSize), minLon, maxLon};
+    }
+
+    private static int getNumLonCells(double cellSize) {
+        return (int) Math.ceil(360.0 / cellSize);
+    }
+
+    private static int getCellKey(double lat, double lon, double cellSize, int numLonCells) {
+        return getLatCell(lat, cellSize) * numLonCells + getLonCell(lon, cellSize, numLonCells);
+    }
+
+    private static int getLatCell(double lat, double cellSize) {
+        return (int) Math.floor((Math.max(-90.0, Math.min(90.0, lat)) + 90.0) / cellSize);
+    }
+
+    private static int getLonCell(double lon, double cellSize, int numLonCells) {
+        double normalized = lon - 360.0 * Math.floor((lon + 180.0) / 360.0);
+        return Math.min(numLonCells - 1, (int) Math.floor((normalized + 180.0) / cellSize));
+    }
+
+    private static void writeHeader(DataOutputStream out, Header header, String timeAndLocationColumnDescription) throws IOException {
+        out.writeBoolean(header.hasLocation());
+        out.writeBoolean(header.hasTime());
+        writeStrings(out, header.getAttributeNames());
+        writeStrings(out, header.getAnnotationNames());
+        out.writeBoolean(timeAndLocationColumnDescription != null);
+        if (timeAndLocationColumnDescription != null) {
+            out.writeUTF(timeAndLocationColumnDescription);
+        }
+    }
+
+    // the keys of the non-empty cells and the index of their first record, followed by the number of records
+    private static void writeCellDirectory(DataOutputStream out, RecordTable table, int[] order) throws IOException {
+        int numCells = 0;
+        for (int i = 0; i < order.length; i++) {
+            if (i == 0 || table.cellKeys[order[i]] != table.cellKeys[order[i - 1]]) {
+                numCells++;
+            }
+        }
+        int[] cellKeys = new int[numCells];
+        int[] cellStarts = new int[numCells + 1];
+        int cell = -1;
+        for (int i = 0; i < order.length; i++) {
+            if (i == 0 || table.cellKeys[order[i]] != table.cellKeys[order[i - 1]]) {
+                cell++;
+                cellKeys[cell] = table.cellKeys[order[i]];
+                cellStarts[cell] = i;
+            }
+        }
+        cellStarts[numCells] = order.length;
+        out.writeInt(numCells);
+        for (int cellKey : cellKeys) {
+            out.writeInt(cellKey);
+        }
+        for (int cellStart : cellStarts) {
+            out.writeInt(cellStart);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+        out.writeInt(strings.length);
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+        return strings;
+    }
+
+    private static int[] readInts(DataInputStream in, int length) throws IOException {
+        int[] ints = new int[length];
+        for (int i = 0; i < length; i++) {
+            ints[i] = in.readInt();
+        }
+        return ints;
+    }
+
+    /**
+     * A record of the index, its values are decoded on first access.
+     */
+    private class IndexedRecord implements Record {
+
+        private final int index;
+        private RecordWritable values;
+
+        private IndexedRecord(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public int getId() {
+            return buffer.getInt(tableStart + index * RECORD_ENTRY_SIZE + 24);
+        }
+
+        @Override
+        public GeoPos getLocation() {
+            int entry = tableStart + index * RECORD_ENTRY_SIZE;
+            return new GeoPos(buffer.getDouble(entry), buffer.getDouble(entry + 8));
+        }
+
+        @Override
+        public Date getTime() {
+            long time = ReferenceRecordIndex.this.getTime(index);
+            return time != NO_TIME ? new Date(time) : null;
+        }
+
+        @Override
+        public Object[] getAttributeValues() {
+            return getValues().getAttributeValues();
+        }
+
+        @Override
+        public Object[] getAnnotationValues() {
+            return getValues().getAnnotationValues();
+        }
+
+        private RecordWritable getValues() {
+            if (values == null) {
+                long payloadOffset = buffer.getLong(tableStart + index * RECORD_ENTRY_SIZE + 28);
+                ByteBuffer payload = buffer.duplicate();
+                payload.position(payloadStart + (int) payloadOffset);
+                RecordWritable recordWritable = new RecordWritable();
+                try {
+                    recordWritable.readFields(new DataInputStream(new ByteBufferInputStream(payload)));
+                } catch (IOException e) {
+                    throw new IllegalStateException("failed to read reference record " + getId(), e);
+                }
+                values = recordWritable;
+            }
+            return values;
+        }
+    }
+
+    // the columns of the record table while it is built
+    private static class RecordTable {
+
+        int size;
+        int[] cellKeys = new int[1024];
+        double[] lats = new double[1024];
+        double[] lons = new double[1024];
+        long[] times = new long[1024];
+        int[] ids = new int[1024];
+        long[] payloadOffsets = new long[1024];
+
+        void add(int cellKey, double lat, double lon, long time, int id, long payloadOffset) {
+            if (size == cellKeys.length) {
+                int capacity = 2 * size;
+                cellKeys = Arrays.copyOf(cellKeys, capacity);
+                lats = Arrays.copyOf(lats, capacity);
+                lons = Arrays.copyOf(lons, capacity);
+                times = Arrays.copyOf(times, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+                payloadOffsets = Arrays.copyOf(payloadOffsets, capacity);
+            }
+            cellKeys[size] = cellKey;
+            lats[size] = lat;
+            lons[size] = lon;
+            times[size] = time;
+            ids[size] = id;
+            payloadOffsets[size] = payloadOffset;
+            size++;
+        }
+
+        // the record indices in the order of cell key and time, records of equal key and time keep their order
+        int[] sortByCellAndTime() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> {
+                int c = Integer.compare(cellKeys[a], cellKeys[b]);
+                return c != 0 ? c : Long.compare(times[a], times[b]);
+            });
+            int[] result = new int[size];
+            for (int i = 0; i < size; i++) {
+                result[i] = order[i];
+            }
+            return result;
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(bytes, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.bc.calvalus.processing.mosaic;
 
+import com.bc.calvalus.processing.hadoop.RasterSerialization;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.Reducer;
@@ -48,6 +49,7 @@ public class MosaicReducer extends Reducer<TileIndexWritable, TileDataWritable,
     @Override
     public void setConf(Configuration jobConf) {
         this.jobConf = jobConf;
+        RasterSerialization.configure(jobConf);
         algorithm = MosaicConfig.createAlgorithm(jobConf);
     }
 
@@ -16,6 +16,7 @@
 
 package com.bc.calvalus.processing.mosaic;
 
+import com.bc.calvalus.processing.hadoop.RasterSerialization;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -34,6 +35,7 @@ public class MosaicSeasonalMapper extends Mapper<NullWritable, NullWritable, Til
     @Override
     public void run(Context context) throws IOException, InterruptedException {
         jobConfig = context.getConfiguration();
+        RasterSerialization.configure(jobConfig);
         final FileSplit split = (FileSplit) context.getInputSplit();
         Path partFile = split.getPath();
 
@@ -16,19 +16,29 @@
 
 package com.bc.calvalus.processing.mosaic;
 
-import com.bc.calvalus.processing.hadoop.WritableUtils;
-import org.apache.hadoop.io.CompressedWritable;
+import com.bc.calvalus.processing.hadoop.RasterSerialization;
+import org.apache.hadoop.io.Writable;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.zip.InflaterInputStream;
 
 /**
  * A Hadoop writable for a bunch of {@link org.esa.snap.core.gpf.Tile}s.
+ * <p>
+ * The bands are written by the {@link RasterSerialization}, shuffled and deflated unless another codec
+ * is configured. Tiles written in the former format of a {@link org.apache.hadoop.io.CompressedWritable}
+ * can still be read, they start with the non-negative length of the compressed data.
  *
  * @author MarcoZ
  */
-public class TileDataWritable extends CompressedWritable {
+public class TileDataWritable implements Writable {
+
+    private static final int FORMAT_MARKER = -1;
 
     // an array of databuffers
     private float[][] sampleValues;
@@ -42,40 +52,65 @@ public class TileDataWritable extends CompressedWritable {
     }
 
     public float[][] getSamples() {
-        ensureInflated();
         return sampleValues;
     }
 
     @Override
-    public void writeCompressed(DataOutput out) throws IOException {
+    public void write(DataOutput out) throws IOException {
         float[][] array2D = sampleValues;
         int numBands = array2D.length;
-        int numElems = array2D[0].length;
+        int numElems = numBands > 0 ? array2D[0].length : 0;
+        out.writeInt(FORMAT_MARKER);
         out.writeInt(numBands);
         out.writeInt(numElems);
-        byte[] byteBuffer = new byte[numElems * 4];
+        RasterSerialization.Codec codec = RasterSerialization.getCodec(RasterSerialization.Codec.SHUFFLE_DEFLATE);
         for (float[] array1D : array2D) {
-            WritableUtils.convertFloatToByte(array1D, byteBuffer);
-            out.write(byteBuffer);
+            RasterSerialization.write(out, array1D, codec);
         }
     }
 
     @Override
-    public void readFieldsCompressed(DataInput in) throws IOException {
+    public void readFields(DataInput in) throws IOException {
+        int marker = in.readInt();
+        if (marker != FORMAT_MARKER) {
+            readFieldsCompressed(in, marker);
+            return;
+        }
         int numBands = in.readInt();
         int numElems = in.readInt();
-        float[][] array2D = this.sampleValues;
-        if (array2D == null || array2D.length != numBands || array2D[0].length != numElems) {
-            array2D = new float[numBands][numElems];
+        float[][] array2D = getArray(numBands, numElems);
+        for (float[] array1D : array2D) {
+            RasterSerialization.read(in, array1D);
+        }
+        this.sampleValues = array2D;
+    }
+
+    private void readFieldsCompressed(DataInput in, int compressedLength) throws IOException {
+        if (compressedLength < 0) {
+            throw new IOException("unknown tile format " + compressedLength);
         }
-        byte[] byteBuffer = new byte[numElems * 4];
+        byte[] compressed = new byte[compressedLength];
+        in.readFully(compressed, 0, compressedLength);
+        DataInputStream inflated = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed))));
+        int numBands = inflated.readInt();
+        int numElems = inflated.readInt();
+        float[][] array2D = getArray(numBands, numElems);
         for (float[] array1D : array2D) {
-            in.readFully(byteBuffer);
-            WritableUtils.convertByteToFloat(byteBuffer, array1D);
+            for (int i = 0; i < numElems; i++) {
+                array1D[i] = inflated.readFloat();
+            }
         }
         this.sampleValues = array2D;
     }
 
+    private float[][] getArray(int numBands, int numElems) {
+        float[][] array2D = this.sampleValues;
+        if (array2D == null || array2D.length != numBands || (numBands > 0 && array2D[0].length != numElems)) {
+            array2D = new float[numBands][numElems];
+        }
+        return array2D;
+    }
+
     public String toString() {
         if (sampleValues != null && sampleValues.length > 0 && sampleValues[0] != null) {
             return "TileDataWritable(" + sampleValues.length + "," + sampleValues[0].length + ")";
@@ -130,6 +130,10 @@ public class RAConfig implements XmlConvertible {
     @Parameter(defaultValue = "")
     private int[] percentiles;
 
+    // if > 0 the percentiles are approximated with this normalized rank error, otherwise computed exactly
+    @Parameter(defaultValue = "0.0")
+    private double percentileAccuracy;
+
     // TODO bandNames have to be given, switch to all if not given ?
     @Parameter(itemAlias = "band")
     private BandConfig[] bands;
@@ -150,6 +154,10 @@ public class RAConfig implements XmlConvertible {
     @Parameter(defaultValue = "false")
     private boolean binValuesAsRatio = false;
 
+    // if true the mappers emit partial statistics instead of the samples, not used when pixel values are written
+    @Parameter(defaultValue = "false")
+    private boolean mapSideStatistics = false;
+
     // internal, will be set by the production type, to prevent repeated reading
     @Parameter
     private String[] internalRegionNames;
@@ -225,6 +233,14 @@ public class RAConfig implements XmlConvertible {
         }
     }
 
+    public double getPercentileAccuracy() {
+        return percentileAccuracy;
+    }
+
+    public void setPercentileAccuracy(double percentileAccuracy) {
+        this.percentileAccuracy = percentileAccuracy;
+    }
+
     public BandConfig[] getBandConfigs() {
         return bands;
     }
@@ -273,6 +289,14 @@ public class RAConfig implements XmlConvertible {
         this.binValuesAsRatio = binValuesAsRatio;
     }
 
+    public boolean isMapSideStatistics() {
+        return mapSideStatistics;
+    }
+
+    public void setMapSideStatistics(boolean mapSideStatistics) {
+        this.mapSideStatistics = mapSideStatistics;
+    }
+
     public static RAConfig get(Configuration conf) {
         String xml = conf.get(JobConfigNames.CALVALUS_RA_PARAMETERS);
         if (xml == null) {
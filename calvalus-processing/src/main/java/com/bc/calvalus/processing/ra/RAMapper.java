@@ -23,6 +23,8 @@ import com.bc.calvalus.processing.ProcessorFactory;
 import com.bc.calvalus.processing.hadoop.ProgressSplitProgressMonitor;
 import com.bc.calvalus.processing.ra.stat.Extractor;
 import com.bc.calvalus.processing.ra.stat.RADateRanges;
+import com.bc.calvalus.processing.ra.stat.RegionAnalysis;
+import com.bc.calvalus.processing.ra.stat.Statistics;
 import com.bc.ceres.core.ProgressMonitor;
 import com.bc.ceres.core.SubProgressMonitor;
 import org.apache.hadoop.conf.Configuration;
@@ -34,7 +36,9 @@ import org.esa.snap.core.datamodel.ProductData;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
@@ -83,13 +87,25 @@ public class RAMapper extends Mapper<NullWritable, NullWritable, RAKey, RAValue>
                 final AtomicLong numSamplesTotal = new AtomicLong(0);
                 final Set<Integer> regionIdSet = new HashSet<>();
                 final String productName = product.getName();
+                final boolean mapSideStatistics = useMapSideStatistics(raConfig);
+                // partial statistics of the product, per region and time
+                final Map<RAKey, PartialStatistics> partialStatisticsMap = new TreeMap<>();
                 RARegions.RegionIterator regionIterator = raConfig.createNamedRegionIterator(context.getConfiguration());
                 Extractor extractor = new Extractor(product, raConfig.getGoodPixelExpression(), raConfig.getBandNames(), regionIterator) {
                     @Override
                     public void extractedData(int regionIndex, String regionName, long time, int numObs, float[][] samples) throws IOException, InterruptedException {
                         RAKey key = new RAKey(regionIndex, regionName, time);
-                        RAValue value = new RAValue(numObs, samples, time, productName);
-                        context.write(key, value);
+                        if (mapSideStatistics) {
+                            PartialStatistics partialStatistics = partialStatisticsMap.get(key);
+                            if (partialStatistics == null) {
+                                partialStatistics = new PartialStatistics(raConfig);
+                                partialStatisticsMap.put(key, partialStatistics);
+                            }
+                            partialStatistics.process(numObs, samples);
+                        } else {
+                            RAValue value = new RAValue(numObs, samples, time, productName);
+                            context.write(key, value);
+                        }
 
                         int numSamples = samples[0].length;
                         context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Observations").increment(numObs);
@@ -102,6 +118,12 @@ public class RAMapper extends Mapper<NullWritable, NullWritable, RAKey, RAValue>
                     }
                 };
                 extractor.extract(pm);
+                for (Map.Entry<RAKey, PartialStatistics> entry : partialStatisticsMap.entrySet()) {
+                    RAKey key = entry.getKey();
+                    PartialStatistics partialStatistics = entry.getValue();
+                    context.write(key, new RAValue(partialStatistics.numObs, partialStatistics.stats, key.getTime(), productName));
+                    context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Partial statistics").increment(1);
+                }
                 if (foundPixel.get()) {
                     context.getCounter(COUNTER_GROUP_NAME_PRODUCTS, "Product with pixel").increment(1);
                     LOG.info("");
@@ -119,4 +141,38 @@ public class RAMapper extends Mapper<NullWritable, NullWritable, RAKey, RAValue>
         }
     }
 
+    static boolean useMapSideStatistics(RAConfig raConfig) {
+        if (!raConfig.isMapSideStatistics()) {
+            return false;
+        }
+        if (raConfig.isWritePixelValues()) {
+            LOG.info("pixel values are written, samples are passed to the reducer");
+            return false;
+        }
+        int[] percentiles = raConfig.getPercentiles();
+        if (percentiles != null && percentiles.length > 0 && raConfig.getPercentileAccuracy() <= 0.0) {
+            LOG.warning("exact percentiles require all samples, samples are passed to the reducer. " +
+                        "Set percentileAccuracy to compute partial statistics in the mapper.");
+            return false;
+        }
+        return true;
+    }
+
+    private static class PartialStatistics {
+
+        private final Statistics[] stats;
+        private int numObs;
+
+        private PartialStatistics(RAConfig raConfig) {
+            // the reducer decides on histogram values as ratio
+            stats = RegionAnalysis.createStatistics(raConfig, false);
+        }
+
+        private void process(int numObs, float[][] samples) {
+            this.numObs += numObs;
+            for (int bandId = 0; bandId < samples.length; bandId++) {
+                stats[bandId].process(samples[bandId]);
+            }
+        }
+    }
 }
@@ -22,6 +22,7 @@ import com.bc.calvalus.processing.l2.ProductFormatter;
 import com.bc.calvalus.processing.ra.stat.PixelArchiver;
 import com.bc.calvalus.processing.ra.stat.RADateRanges;
 import com.bc.calvalus.processing.ra.stat.RegionAnalysis;
+import com.bc.calvalus.processing.ra.stat.Statistics;
 import com.bc.calvalus.processing.ra.stat.WriterFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
@@ -96,14 +97,19 @@ public class RAReducer extends Reducer<RAKey, RAValue, NullWritable, NullWritabl
             long time = extract.getTime();
             int numObs = extract.getNumObs();
             float[][] samples = extract.getSamples();
-            int numSamples = samples[0].length;
+            Statistics[] partialStatistics = extract.getPartialStatistics();
+            long numSamples = samples != null ? samples[0].length : partialStatistics[0].getNumValid();
             String productName = extract.getProductName();
 
             String timeFormatted = RADateRanges.dateFormat.format(new Date(time));
             LOG.info(String.format("    time: %s numObs: %8d  numSamples: %8d   %s", timeFormatted, numObs, numSamples, productName));
 
-            regionAnalysis.addData(time, numObs, samples, productName);
-            if (pixelArchiver != null) {
+            if (samples != null) {
+                regionAnalysis.addData(time, numObs, samples, productName);
+            } else {
+                regionAnalysis.addPartialStatistics(time, numObs, partialStatistics, productName);
+            }
+            if (pixelArchiver != null && samples != null) {
                 if (time != lastTime && lastTime != -1) {
                     pixelArchiver.writeTempNetcdf();
                 }
@@ -17,6 +17,7 @@
 package com.bc.calvalus.processing.ra;
 
 import com.bc.calvalus.processing.hadoop.WritableUtils;
+import com.bc.calvalus.processing.ra.stat.Statistics;
 import org.apache.hadoop.io.CompressedWritable;
 import org.apache.hadoop.io.Text;
 
@@ -25,7 +26,8 @@ import java.io.DataOutput;
 import java.io.IOException;
 
 /**
- * A {@link org.apache.hadoop.io.Writable} to hold a region analysis extract.
+ * A {@link org.apache.hadoop.io.Writable} to hold a region analysis extract,
+ * either the samples or the partial statistics of each band.
  *
  * @author MarcoZ
  */
@@ -33,6 +35,7 @@ public class RAValue extends CompressedWritable {
 
     private int numObs;
     private float[][] sampleValues;
+    private Statistics[] partialStatistics;
     private long time;
     private String productName;
 
@@ -47,6 +50,13 @@ public class RAValue extends CompressedWritable {
         this.productName = productName;
     }
 
+    public RAValue(int numObs, Statistics[] partialStatistics, long time, String productName) {
+        this.numObs = numObs;
+        this.partialStatistics = partialStatistics;
+        this.time = time;
+        this.productName = productName;
+    }
+
     public int getNumObs() {
         ensureInflated();
         return numObs;
@@ -62,16 +72,35 @@ public class RAValue extends CompressedWritable {
         return time;
     }
 
+    /**
+     * @return the samples, or null if the extract holds partial statistics
+     */
     public float[][] getSamples() {
         ensureInflated();
         return sampleValues;
     }
 
+    /**
+     * @return the partial statistics, or null if the extract holds samples
+     */
+    public Statistics[] getPartialStatistics() {
+        ensureInflated();
+        return partialStatistics;
+    }
+
     @Override
     public void writeCompressed(DataOutput out) throws IOException {
         out.writeInt(numObs);
         out.writeLong(time);
         Text.writeString(out, productName);
+        out.writeBoolean(partialStatistics != null);
+        if (partialStatistics != null) {
+            out.writeInt(partialStatistics.length);
+            for (Statistics statistics : partialStatistics) {
+                statistics.write(out);
+            }
+            return;
+        }
         float[][] array2D = sampleValues;
         int numBands = array2D.length;
         int numElems = array2D[0].length;
@@ -89,6 +118,15 @@ public class RAValue extends CompressedWritable {
         numObs = in.readInt();
         time = in.readLong();
         productName = Text.readString(in);
+        if (in.readBoolean()) {
+            partialStatistics = new Statistics[in.readInt()];
+            for (int i = 0; i < partialStatistics.length; i++) {
+                partialStatistics[i] = Statistics.read(in);
+            }
+            sampleValues = null;
+            return;
+        }
+        partialStatistics = null;
         int numBands = in.readInt();
         int numSamples = in.readInt();
         float[][] array2D = sampleValues;
@@ -104,7 +142,9 @@ public class RAValue extends CompressedWritable {
     }
 
     public String toString() {
-        if (sampleValues != null && sampleValues.length > 0 && sampleValues[0] != null) {
+        if (partialStatistics != null) {
+            return "ExtractWritable(" + partialStatistics.length + " partial statistics)";
+        } else if (sampleValues != null && sampleValues.length > 0 && sampleValues[0] != null) {
             return "ExtractWritable(" + sampleValues.length + "," + sampleValues[0].length + ")";
         } else {
             return "ExtractWritable(null)";
@@ -1,45 +1,78 @@
 package com.bc.calvalus.processing.ra.stat;
 
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
 /**
- * accumulates 'valid' float values
+ * accumulates 'valid' float values in a growing buffer
  */
 class Accumulator {
 
+    private static final int INITIAL_CAPACITY = 1024;
+
     private float[] values;
+    private int size;
 
     public Accumulator() {
         values = new float[0];
+        size = 0;
     }
 
     public void accumulateNoNaN(float... samples) {
-        float[] buffer = new float[samples.length];
-        int i = 0;
+        ensureCapacity(size + samples.length);
         for (float sample : samples) {
             if (!Float.isNaN(sample)) {
-                buffer[i++] = sample;
+                values[size++] = sample;
             }
         }
-        if (i > 0) {
-            values = concat(values, buffer, i);
-        }
     }
 
     public void accumulate(float... samples) {
-        values = concat(values, samples, samples.length);
+        ensureCapacity(size + samples.length);
+        System.arraycopy(samples, 0, values, size, samples.length);
+        size += samples.length;
     }
 
     void clear() {
-        values = new float[0];
+        size = 0;
+    }
+
+    int size() {
+        return size;
     }
 
+    /**
+     * @return a copy of the accumulated values
+     */
     public float[] getValues() {
-        return values;
+        return Arrays.copyOf(values, size);
     }
 
-    private static float[] concat(float[] a1, float[] a2, int a2Length) {
-        float[] b = new float[a1.length + a2Length];
-        System.arraycopy(a1, 0, b, 0, a1.length);
-        System.arraycopy(a2, 0, b, a1.length, a2Length);
-        return b;
+    void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, size);
+        for (int i = 0; i < size; i++) {
+            out.writeFloat(values[i]);
+        }
+    }
+
+    void readFields(DataInput in) throws IOException {
+        size = 0;
+        int newSize = WritableUtils.readVInt(in);
+        ensureCapacity(newSize);
+        for (int i = 0; i < newSize; i++) {
+            values[i] = in.readFloat();
+        }
+        size = newSize;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            long newCapacity = Math.max(Math.max(INITIAL_CAPACITY, capacity), 2L * values.length);
+            values = Arrays.copyOf(values, (int) Math.min(newCapacity, Integer.MAX_VALUE - 8));
+        }
     }
 }
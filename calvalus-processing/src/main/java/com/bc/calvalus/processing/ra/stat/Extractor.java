@@ -153,11 +153,18 @@ public abstract class Extractor {
     }
 
     private Extractor.Extract handleSingleTile(Extractor.RasterStack rasterStack, Rectangle rect, Extractor.GeometryFilter geometryFilter) {
-        int numPixelsMax = rect.width * rect.height;
+        RegionMask regionMask = geometryFilter.getMask();
+        int numPixelsMax = regionMask.countPixels(rect);
+        if (numPixelsMax == 0) {
+            return null;
+        }
         Extractor.Extract extract = new Extractor.Extract(dataImages.length, numPixelsMax);
         for (int y = rect.y; y < rect.y + rect.height; y++) {
-            for (int x = rect.x; x < rect.x + rect.width; x++) {
-                if (geometryFilter.test(x, y)) {
+            int[] runs = regionMask.getRuns(y);
+            for (int r = 0; r < runs.length; r += 2) {
+                int xStart = Math.max(runs[r], rect.x);
+                int xEnd = Math.min(runs[r + 1], rect.x + rect.width);
+                for (int x = xStart; x < xEnd; x++) {
                     extract.numObs++;
                     // test valid mask
                     if (rasterStack.maskTile.getSample(x, y, 0) != 0) {
@@ -258,6 +265,7 @@ public abstract class Extractor {
         private final GeoCoding geoCoding;
         private final PreparedGeometry geometry;
         private final GeometryFactory geometryFactory;
+        private RegionMask mask;
 
         GeometryFilter(int geoId, String name, Rectangle pixelRect, GeoCoding geoCoding, PreparedGeometry geometry) {
             this.geoId = geoId;
@@ -268,6 +276,16 @@ public abstract class Extractor {
             this.geometryFactory = new GeometryFactory();
         }
 
+        /**
+         * @return the mask of the pixels within the region, rasterized on first use
+         */
+        RegionMask getMask() {
+            if (mask == null) {
+                mask = RegionMask.rasterize(pixelRect, geoCoding, geometry);
+            }
+            return mask;
+        }
+
         boolean test(int x, int y) {
             final PixelPos pixelPos = new PixelPos(x + 0.5, y + 0.5);
             final GeoPos geoPos = geoCoding.getGeoPos(pixelPos, null);
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ra.stat;
+
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A mergeable quantile sketch with bounded memory, following
+ * "Optimal Quantile Approximation in Streams", Karnin, Lang, Liberty (KLL), 2016.
+ * <p>
+ * Values are kept in levels, a value at level h stands for 2^h samples. A full level is
+ * sorted and every other value, starting at a random offset, is promoted to the next level.
+ * The capacity of the levels decreases geometrically from the top level downwards.
+ * <p>
+ * As long as no level has been compacted the sketch holds all samples and the percentiles
+ * are exact. Afterwards the error of the rank of a percentile is estimated from the
+ * compactions done, see {@link #getRankError()}.
+ */
+class QuantileSketch {
+
+    private static final int MIN_LEVEL_CAPACITY = 8;
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+    // two-sided 99% quantile of the normal distribution
+    private static final double CONFIDENCE_FACTOR = 2.576;
+    // the compactions of all levels add up to a rank error of about 1.35 / k standard deviations
+    private static final double LEVEL_ERROR_FACTOR = 1.4;
+
+    private final int k;
+    private final Random random;
+
+    private float[][] levels;
+    private int[] levelSizes;
+    private long count;
+    // sum of the variances of the rank errors of all compactions
+    private double rankErrorVariance;
+
+    /**
+     * @param accuracy the intended error of the rank of a percentile, normalized by the number of samples,
+     *                 e.g. 0.01 for an error of 1% with a probability of 99%
+     */
+    QuantileSketch(double accuracy) {
+        if (!(accuracy > 0.0 && accuracy < 1.0)) {
+            throw new IllegalArgumentException("accuracy must be in (0, 1), but is " + accuracy);
+        }
+        this.k = Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(LEVEL_ERROR_FACTOR * CONFIDENCE_FACTOR / accuracy));
+        // a fixed seed makes the output of a job reproducible
+        this.random = new Random(k);
+        clear();
+    }
+
+    public void accumulateNoNaN(float... samples) {
+        for (float sample : samples) {
+            if (!Float.isNaN(sample)) {
+                append(0, sample);
+                count++;
+                if (levelSizes[0] >= getCapacity(0)) {
+                    compress();
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds all samples of the other sketch to this one.
+     */
+    public void merge(QuantileSketch other) {
+        for (int h = 0; h < other.levels.length; h++) {
+            for (int i = 0; i < other.levelSizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+        count += other.count;
+        rankErrorVariance += other.rankErrorVariance;
+        compress();
+    }
+
+    void clear() {
+        levels = new float[][]{new float[MIN_LEVEL_CAPACITY]};
+        levelSizes = new int[1];
+        count = 0;
+        rankErrorVariance = 0.0;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the number of values held by the sketch
+     */
+    int getRetainedSize() {
+        int size = 0;
+        for (int levelSize : levelSizes) {
+            size += levelSize;
+        }
+        return size;
+    }
+
+    /**
+     * @return the estimated error of the rank of the percentiles, normalized by the number of samples,
+     * that is not exceeded with a probability of 99%, 0 if the percentiles are exact
+     */
+    double getRankError() {
+        if (count == 0) {
+            return 0.0;
+        }
+        return CONFIDENCE_FACTOR * Math.sqrt(rankErrorVariance) / count;
+    }
+
+    /**
+     * @param p The percentage in percent ranging from 0 to 100.
+     * @return the sample at the rank of the p-th percentile,
+     * the exact percentile as long as no compaction has been done
+     */
+    double computePercentile(int p) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (levels.length == 1) {
+            float[] values = Arrays.copyOf(levels[0], levelSizes[0]);
+            Arrays.sort(values);
+            return Statistics.computePercentile(p, values);
+        }
+        for (int h = 0; h < levels.length; h++) {
+            Arrays.sort(levels[h], 0, levelSizes[h]);
+        }
+        // walk through the levels in ascending order of values, until the rank is reached
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * count));
+        int[] cursors = new int[levels.length];
+        long weightSum = 0;
+        float value = Float.NaN;
+        while (weightSum < rank) {
+            int minLevel = -1;
+            for (int h = 0; h < levels.length; h++) {
+                if (cursors[h] < levelSizes[h] && (minLevel < 0 || levels[h][cursors[h]] < levels[minLevel][cursors[minLevel]])) {
+                    minLevel = h;
+                }
+            }
+            if (minLevel < 0) {
+                break;
+            }
+            value = levels[minLevel][cursors[minLevel]++];
+            weightSum += 1L << minLevel;
+        }
+        return value;
+    }
+
+    void write(DataOutput out) throws IOException {
+        WritableUtils.writeVLong(out, count);
+        out.writeDouble(rankErrorVariance);
+        WritableUtils.writeVInt(out, levels.length);
+        for (int h = 0; h < levels.length; h++) {
+            WritableUtils.writeVInt(out, levelSizes[h]);
+            for (int i = 0; i < levelSizes[h]; i++) {
+                out.writeFloat(levels[h][i]);
+            }
+        }
+    }
+
+    void readFields(DataInput in) throws IOException {
+        count = WritableUtils.readVLong(in);
+        rankErrorVariance = in.readDouble();
+        int numLevels = WritableUtils.readVInt(in);
+        levels = new float[numLevels][];
+        levelSizes = new int[numLevels];
+        for (int h = 0; h < numLevels; h++) {
+            levelSizes[h] = WritableUtils.readVInt(in);
+            levels[h] = new float[Math.max(MIN_LEVEL_CAPACITY, levelSizes[h])];
+            for (int i = 0; i < levelSizes[h]; i++) {
+                levels[h][i] = in.readFloat();
+            }
+        }
+    }
+
+    private int getCapacity(int level) {
+        int depth = levels.length - 1 - level;
+        return Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    private void compress() {
+        for (int h = 0; h < levels.length; h++) {
+            if (levelSizes[h] >= getCapacity(h)) {
+                compact(h);
+            }
+        }
+    }
+
+    private void compact(int level) {
+        float[] values = levels[level];
+        int size = levelSizes[level];
+        Arrays.sort(values, 0, size);
+        // with an odd number of values the largest one stays on this level
+        int numPaired = size - size % 2;
+        for (int i = random.nextBoolean() ? 1 : 0; i < numPaired; i += 2) {
+            append(level + 1, values[i]);
+        }
+        if (numPaired < size) {
+            values[0] = values[size - 1];
+        }
+        levelSizes[level] = size - numPaired;
+        // the rank of any value stays or changes by +-2^level with equal probability
+        double weight = 1L << level;
+        rankErrorVariance += weight * weight;
+    }
+
+    private void append(int level, float value) {
+        while (level >= levels.length) {
+            levels = Arrays.copyOf(levels, levels.length + 1);
+            levels[levels.length - 1] = new float[MIN_LEVEL_CAPACITY];
+            levelSizes = Arrays.copyOf(levelSizes, levelSizes.length + 1);
+        }
+        if (levelSizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], 2 * levels[level].length);
+        }
+        levels[level][levelSizes[level]++] = value;
+    }
+}
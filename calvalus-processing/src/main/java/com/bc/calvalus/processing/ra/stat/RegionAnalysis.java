@@ -37,32 +37,41 @@ public class RegionAnalysis {
         this.regionNameList = Arrays.asList(internalRegionNames);
         this.regionHandler = new HandleAll(internalRegionNames.length);
 
+        stats = createStatistics(raConfig, binValuesAsRatio);
+        withProductNames = raConfig.withProductNames();
+        statisticsWriter = new StatisticsWriter(raConfig, stats, writerFactor);
+    }
+
+    /**
+     * Creates the statistics of all bands of the region analysis.
+     */
+    public static Statistics[] createStatistics(RAConfig raConfig, boolean binValuesAsRatio) {
         RAConfig.BandConfig[] bandConfigs = raConfig.getBandConfigs();
-        stats = new Statistics[bandConfigs.length];
+        Statistics[] stats = new Statistics[bandConfigs.length];
         for (int i = 0; i < bandConfigs.length; i++) {
             RAConfig.BandConfig bConfig = bandConfigs[i];
-            stats[i] = new Statistics(bConfig.getNumBins(), bConfig.getMin(), bConfig.getMax(), raConfig.getPercentiles(), binValuesAsRatio);
+            stats[i] = new Statistics(bConfig.getNumBins(), bConfig.getMin(), bConfig.getMax(), raConfig.getPercentiles(), raConfig.getPercentileAccuracy(), binValuesAsRatio);
         }
-        withProductNames = raConfig.withProductNames();
-        statisticsWriter = new StatisticsWriter(raConfig, stats, writerFactor);
+        return stats;
     }
 
     public void addData(long time, int numObs, float[][] samples, String... productNames) throws IOException {
-        int newDateRange = dateRanges.findIndex(time);
-        if (newDateRange == -1) {
-            String out_ouf_range_date = dateRanges.format(time);
-            LOG.warning("out_ouf_range_date = " + out_ouf_range_date + " --> ignoring extract data");
-        } else {
-            if (newDateRange != dataRangeHandler.current()) {
-                writeCurrentRecord();
-                resetRecord();
-                writeEmptyRecords(regionHandler.current(), dataRangeHandler.preceedingUnhandledIndices(newDateRange));
-            }
+        if (startDateRange(time)) {
             accumulate(time, numObs, samples);
             productName = productNames.length > 0 ? productNames[0] : null;
         }
     }
 
+    /**
+     * Adds statistics computed for a part of the samples, e.g. in the mapper.
+     */
+    public void addPartialStatistics(long time, int numObs, Statistics[] partialStats, String... productNames) throws IOException {
+        if (startDateRange(time)) {
+            accumulate(time, numObs, partialStats);
+            productName = productNames.length > 0 ? productNames[0] : null;
+        }
+    }
+
     public void startRegion(int regionId, String regionName) throws IOException {
         dataRangeHandler.reset();
         //for (int regionIndex : regionHandler.preceedingUnhandledIndices(regionNameList.indexOf(regionName))) {
@@ -96,12 +105,41 @@ public class RegionAnalysis {
 
     /////////////////////////////////
 
-    private void accumulate(long time, int numObs, float[][] samples) {
+    private boolean startDateRange(long time) throws IOException {
+        int newDateRange = dateRanges.findIndex(time);
+        if (newDateRange == -1) {
+            String out_ouf_range_date = dateRanges.format(time);
+            LOG.warning("out_ouf_range_date = " + out_ouf_range_date + " --> ignoring extract data");
+            return false;
+        }
+        if (newDateRange != dataRangeHandler.current()) {
+            writeCurrentRecord();
+            resetRecord();
+            writeEmptyRecords(regionHandler.current(), dataRangeHandler.preceedingUnhandledIndices(newDateRange));
+        }
+        return true;
+    }
+
+    private void countPass(long time, int numObs) {
         if (time != currentTime) {
             currentTime = time;
             numPasses++;
         }
         this.numObs += numObs;
+    }
+
+    private void accumulate(long time, int numObs, Statistics[] partialStats) {
+        countPass(time, numObs);
+        if (partialStats.length != stats.length) {
+            throw new IllegalArgumentException(String.format("partialStats.length(%d) does not match num bands(%d)", partialStats.length, stats.length));
+        }
+        for (int bandId = 0; bandId < partialStats.length; bandId++) {
+            stats[bandId].merge(partialStats[bandId]);
+        }
+    }
+
+    private void accumulate(long time, int numObs, float[][] samples) {
+        countPass(time, numObs);
         if (samples.length != stats.length) {
             throw new IllegalArgumentException(String.format("samples.length(%d) does not match num bands(%d)", samples.length, stats.length));
         }
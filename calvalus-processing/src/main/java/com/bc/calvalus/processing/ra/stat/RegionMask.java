@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ra.stat;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.TopologyException;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import org.esa.snap.core.datamodel.GeoCoding;
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.PixelPos;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The pixels of a product whose centre lies within a region, as runs of pixels per row.
+ * <p>
+ * The mask is rasterized coarse to fine: the footprint of a block of pixel centres is the polygon
+ * through the geo-positions of all its outer pixel centres, and is tested against the region geometry
+ * as a whole. As the outer pixels are vertices of the footprint, a block is decided at once only if
+ * all of them are inside or outside, the same for non-linear pixel and swath geo-codings.
+ * Blocks properly inside or outside of the region are decided at once,
+ * only the blocks on the region boundary are split and finally tested pixel by pixel.
+ */
+class RegionMask {
+
+    private static final int[] NO_RUNS = new int[0];
+    // size of the blocks the quadtree starts with
+    private static final int BLOCK_SIZE = 64;
+    // blocks smaller than this in any direction are tested pixel by pixel
+    private static final int MIN_BLOCK_SIZE = 3;
+
+    private final Rectangle pixelRect;
+    private final int[][] rowRuns;
+    private final long numPixels;
+
+    private RegionMask(Rectangle pixelRect, int[][] rowRuns, long numPixels) {
+        this.pixelRect = pixelRect;
+        this.rowRuns = rowRuns;
+        this.numPixels = numPixels;
+    }
+
+    /**
+     * @return pairs of the first x and the x after the last pixel of each run in row y, ascending
+     */
+    int[] getRuns(int y) {
+        if (y < pixelRect.y || y >= pixelRect.y + pixelRect.height) {
+            return NO_RUNS;
+        }
+        return rowRuns[y - pixelRect.y];
+    }
+
+    /**
+     * @return the number of pixels of the mask within the rectangle
+     */
+    int countPixels(Rectangle rect) {
+        int count = 0;
+        for (int y = rect.y; y < rect.y + rect.height; y++) {
+            int[] runs = getRuns(y);
+            for (int r = 0; r < runs.length; r += 2) {
+                count += Math.max(0, Math.min(runs[r + 1], rect.x + rect.width) - Math.max(runs[r], rect.x));
+            }
+        }
+        return count;
+    }
+
+    long getNumPixels() {
+        return numPixels;
+    }
+
+    static RegionMask rasterize(Rectangle pixelRect, GeoCoding geoCoding, PreparedGeometry geometry) {
+        Rasterizer rasterizer = new Rasterizer(pixelRect, geoCoding, geometry);
+        for (int y = pixelRect.y; y < pixelRect.y + pixelRect.height; y += BLOCK_SIZE) {
+            for (int x = pixelRect.x; x < pixelRect.x + pixelRect.width; x += BLOCK_SIZE) {
+                int w = Math.min(BLOCK_SIZE, pixelRect.x + pixelRect.width - x);
+                int h = Math.min(BLOCK_SIZE, pixelRect.y + pixelRect.height - y);
+                rasterizer.rasterize(x, y, w, h);
+            }
+        }
+        return rasterizer.toRegionMask();
+    }
+
+    private static class Rasterizer {
+
+        private final Rectangle pixelRect;
+        private final GeoCoding geoCoding;
+        private final PreparedGeometry geometry;
+        private final GeometryFactory geometryFactory;
+        private final BitSet inside;
+        private final PixelPos pixelPos;
+        private final GeoPos geoPos;
+
+        private Rasterizer(Rectangle pixelRect, GeoCoding geoCoding, PreparedGeometry geometry) {
+            this.pixelRect = pixelRect;
+            this.geoCoding = geoCoding;
+            this.geometry = geometry;
+            this.geometryFactory = new GeometryFactory();
+            this.inside = new BitSet(pixelRect.width * pixelRect.height);
+            this.pixelPos = new PixelPos();
+            this.geoPos = new GeoPos();
+        }
+
+        private void rasterize(int x, int y, int w, int h) {
+            if (w < MIN_BLOCK_SIZE || h < MIN_BLOCK_SIZE) {
+                testPixels(x, y, w, h);
+                return;
+            }
+            Polygon footprint = createFootprint(x, y, w, h);
+            if (footprint != null) {
+                try {
+                    if (geometry.containsProperly(footprint)) {
+                        setInside(x, y, w, h);
+                        return;
+                    } else if (!geometry.intersects(footprint)) {
+                        return;
+                    }
+                } catch (TopologyException ignored) {
+                    // split the block further
+                }
+            }
+            int w1 = w / 2;
+            int h1 = h / 2;
+            rasterize(x, y, w1, h1);
+            rasterize(x + w1, y, w - w1, h1);
+            rasterize(x, y + h1, w1, h - h1);
+            rasterize(x + w1, y + h1, w - w1, h - h1);
+        }
+
+        // the polygon through the geo-positions of the outer pixel centres of the block,
+        // null if the block has invalid geo-positions or crosses the anti-meridian
+        private Polygon createFootprint(int x, int y, int w, int h) {
+            double x0 = x + 0.5;
+            double y0 = y + 0.5;
+            double x1 = x + w - 0.5;
+            double y1 = y + h - 0.5;
+            Coordinate[] ring = new Coordinate[2 * (w - 1) + 2 * (h - 1) + 1];
+            int i = 0;
+            for (int k = 0; k < w - 1; k++) {
+                ring[i++] = geoCode(x0 + k, y0);
+            }
+            for (int k = 0; k < h - 1; k++) {
+                ring[i++] = geoCode(x1, y0 + k);
+            }
+            for (int k = 0; k < w - 1; k++) {
+                ring[i++] = geoCode(x1 - k, y1);
+            }
+            for (int k = 0; k < h - 1; k++) {
+                ring[i++] = geoCode(x0, y1 - k);
+            }
+            ring[i] = ring[0];
+            double minLon = Double.POSITIVE_INFINITY;
+            double maxLon = Double.NEGATIVE_INFINITY;
+            for (Coordinate coordinate : ring) {
+                if (coordinate == null) {
+                    return null;
+                }
+                minLon = Math.min(minLon, coordinate.x);
+                maxLon = Math.max(maxLon, coordinate.x);
+            }
+            if (maxLon - minLon > 180.0) {
+                return null;
+            }
+            return geometryFactory.createPolygon(geometryFactory.createLinearRing(ring), null);
+        }
+
+        private Coordinate geoCode(double x, double y) {
+            pixelPos.setLocation(x, y);
+            geoCoding.getGeoPos(pixelPos, geoPos);
+            if (!geoPos.isValid()) {
+                return null;
+            }
+            return new Coordinate(geoPos.lon, geoPos.lat);
+        }
+
+        private void testPixels(int x, int y, int w, int h) {
+            for (int py = y; py < y + h; py++) {
+                for (int px = x; px < x + w; px++) {
+                    Coordinate coordinate = geoCode(px + 0.5, py + 0.5);
+                    // same test as the Extractor.GeometryFilter
+                    if (coordinate != null && geometry.contains(geometryFactory.createPoint(coordinate))) {
+                        setInside(px, py, 1, 1);
+                    }
+                }
+            }
+        }
+
+        private void setInside(int x, int y, int w, int h) {
+            for (int py = y; py < y + h; py++) {
+                int rowStart = (py - pixelRect.y) * pixelRect.width - pixelRect.x;
+                inside.set(rowStart + x, rowStart + x + w);
+            }
+        }
+
+        private RegionMask toRegionMask() {
+            int[][] rowRuns = new int[pixelRect.height][];
+            List<Integer> runs = new ArrayList<>();
+            long numPixels = 0;
+            for (int row = 0; row < pixelRect.height; row++) {
+                int rowStart = row * pixelRect.width;
+                int rowEnd = rowStart + pixelRect.width;
+                runs.clear();
+                int start = inside.nextSetBit(rowStart);
+                while (start >= 0 && start < rowEnd) {
+                    int end = Math.min(inside.nextClearBit(start), rowEnd);
+                    runs.add(pixelRect.x + start - rowStart);
+                    runs.add(pixelRect.x + end - rowStart);
+                    numPixels += end - start;
+                    start = inside.nextSetBit(end);
+                }
+                if (runs.isEmpty()) {
+                    rowRuns[row] = NO_RUNS;
+                } else {
+                    rowRuns[row] = new int[runs.size()];
+                    for (int i = 0; i < runs.size(); i++) {
+                        rowRuns[row][i] = runs.get(i);
+                    }
+                }
+            }
+            return new RegionMask(pixelRect, rowRuns, numPixels);
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package com.bc.calvalus.processing.ra.stat;
 
+import org.apache.hadoop.io.WritableUtils;
+
 //import javax.media.jai.Histogram;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -16,8 +21,9 @@ import java.util.List;
  * arithmetic overflow or arithmetic underflow.
  * This is less likely to occur with the sum of the logarithms for each number.
  *
+ * Partial statistics computed for parts of the samples can be serialized and merged.
  */
-class Statistics {
+public class Statistics {
 
 
     private long numValid;
@@ -34,6 +40,8 @@ class Statistics {
 
     private final int[] percentiles;
     private final Accumulator accu;
+    private final QuantileSketch sketch;
+    private final double percentileAccuracy;
     private final boolean binValuesAsRatio;
 
     Statistics() {
@@ -51,6 +59,19 @@ class Statistics {
                double highValue,
                int[] percentiles,
                boolean binValuesAsRatio) {
+        this(numBins, lowValue, highValue, percentiles, 0.0, binValuesAsRatio);
+    }
+
+    /**
+     * @param percentileAccuracy if &gt; 0 the percentiles are approximated by a quantile sketch with this
+     *                           error of the rank, normalized by the number of samples, otherwise they are exact
+     */
+    Statistics(int numBins,
+               double lowValue,
+               double highValue,
+               int[] percentiles,
+               double percentileAccuracy,
+               boolean binValuesAsRatio) {
         if (numBins > 0) {
             histogram = new Histogram64(numBins, lowValue, highValue, 1);
         } else {
@@ -58,11 +79,14 @@ class Statistics {
         }
         if (percentiles != null && percentiles.length > 0) {
             this.percentiles = percentiles;
-            this.accu = new Accumulator();
+            this.accu = percentileAccuracy > 0.0 ? null : new Accumulator();
+            this.sketch = percentileAccuracy > 0.0 ? new QuantileSketch(percentileAccuracy) : null;
         } else {
             this.percentiles = null;
             this.accu = null;
+            this.sketch = null;
         }
+        this.percentileAccuracy = percentileAccuracy;
         this.binValuesAsRatio = binValuesAsRatio;
         reset();
     }
@@ -106,6 +130,127 @@ class Statistics {
         if (accu != null) {
             accu.accumulateNoNaN(samples);
         }
+        if (sketch != null) {
+            sketch.accumulateNoNaN(samples);
+        }
+    }
+
+    /**
+     * Adds the partial statistics of other samples. The other statistics must have the same histogram bins.
+     */
+    public void merge(Statistics other) {
+        if ((histogram == null) != (other.histogram == null) ||
+            histogram != null && histogram.getNumBins(0) != other.histogram.getNumBins(0)) {
+            throw new IllegalArgumentException("statistics to merge differ in histogram bins");
+        }
+        numValid += other.numValid;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sum += other.sum;
+        sumSQ += other.sumSQ;
+        geomNumValid += other.geomNumValid;
+        geomLogSum += other.geomLogSum;
+        if (histogram != null) {
+            long[] bins = histogram.getBins(0);
+            long[] otherBins = other.histogram.getBins(0);
+            for (int i = 0; i < bins.length; i++) {
+                bins[i] += otherBins[i];
+            }
+            belowHistogram += other.belowHistogram;
+            aboveHistogram += other.aboveHistogram;
+        }
+        if (accu != null) {
+            if (other.accu != null) {
+                accu.accumulate(other.accu.getValues());
+            } else if (other.sketch != null) {
+                throw new IllegalArgumentException("approximated percentiles can not be merged into exact ones");
+            }
+        }
+        if (sketch != null) {
+            if (other.sketch != null) {
+                sketch.merge(other.sketch);
+            } else if (other.accu != null) {
+                sketch.accumulateNoNaN(other.accu.getValues());
+            }
+        }
+    }
+
+    public long getNumValid() {
+        return numValid;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        int numBins = histogram != null ? histogram.getNumBins(0) : 0;
+        WritableUtils.writeVInt(out, numBins);
+        if (histogram != null) {
+            out.writeDouble(histogram.getLowValue(0));
+            out.writeDouble(histogram.getHighValue(0));
+        }
+        int numPercentiles = percentiles != null ? percentiles.length : 0;
+        WritableUtils.writeVInt(out, numPercentiles);
+        for (int i = 0; i < numPercentiles; i++) {
+            WritableUtils.writeVInt(out, percentiles[i]);
+        }
+        out.writeDouble(percentileAccuracy);
+        out.writeBoolean(binValuesAsRatio);
+
+        WritableUtils.writeVLong(out, numValid);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        out.writeDouble(sum);
+        out.writeDouble(sumSQ);
+        WritableUtils.writeVLong(out, geomNumValid);
+        out.writeDouble(geomLogSum);
+        if (histogram != null) {
+            WritableUtils.writeVLong(out, belowHistogram);
+            WritableUtils.writeVLong(out, aboveHistogram);
+            // most bins of a partial histogram are empty and take a single byte
+            for (long bin : histogram.getBins(0)) {
+                WritableUtils.writeVLong(out, bin);
+            }
+        }
+        if (accu != null) {
+            accu.write(out);
+        }
+        if (sketch != null) {
+            sketch.write(out);
+        }
+    }
+
+    public static Statistics read(DataInput in) throws IOException {
+        int numBins = WritableUtils.readVInt(in);
+        double lowValue = numBins > 0 ? in.readDouble() : Double.NaN;
+        double highValue = numBins > 0 ? in.readDouble() : Double.NaN;
+        int[] percentiles = new int[WritableUtils.readVInt(in)];
+        for (int i = 0; i < percentiles.length; i++) {
+            percentiles[i] = WritableUtils.readVInt(in);
+        }
+        double percentileAccuracy = in.readDouble();
+        boolean binValuesAsRatio = in.readBoolean();
+        Statistics statistics = new Statistics(numBins, lowValue, highValue, percentiles, percentileAccuracy, binValuesAsRatio);
+
+        statistics.numValid = WritableUtils.readVLong(in);
+        statistics.min = in.readDouble();
+        statistics.max = in.readDouble();
+        statistics.sum = in.readDouble();
+        statistics.sumSQ = in.readDouble();
+        statistics.geomNumValid = WritableUtils.readVLong(in);
+        statistics.geomLogSum = in.readDouble();
+        if (statistics.histogram != null) {
+            statistics.belowHistogram = WritableUtils.readVLong(in);
+            statistics.aboveHistogram = WritableUtils.readVLong(in);
+            long[] bins = statistics.histogram.getBins(0);
+            for (int i = 0; i < bins.length; i++) {
+                bins[i] = WritableUtils.readVLong(in);
+            }
+        }
+        if (statistics.accu != null) {
+            statistics.accu.readFields(in);
+        }
+        if (statistics.sketch != null) {
+            statistics.sketch.readFields(in);
+        }
+        return statistics;
     }
 
     public void reset() {
@@ -124,6 +269,9 @@ class Statistics {
         if (accu != null) {
             accu.clear();
         }
+        if (sketch != null) {
+            sketch.clear();
+        }
     }
 
     public List<String> getStatisticsHeaders(String bandName) {
@@ -139,6 +287,9 @@ class Statistics {
             for (int percentile : percentiles) {
                 header.add(String.format("%s_p%02d", bandName, percentile));
             }
+            if (sketch != null) {
+                header.add(bandName + "_pRankError");
+            }
         }
         return header;
     }
@@ -187,6 +338,12 @@ class Statistics {
                 stats.add(Double.toString(computePercentile(percentile, values)));
             }
         }
+        if (sketch != null) {
+            for (int percentile : percentiles) {
+                stats.add(Double.toString(sketch.computePercentile(percentile)));
+            }
+            stats.add(Double.toString(sketch.getRankError()));
+        }
         return stats;
     }
 
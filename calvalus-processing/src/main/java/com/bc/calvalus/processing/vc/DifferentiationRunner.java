@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.vc;
+
+import com.bc.ceres.core.ProgressMonitor;
+import com.bc.ceres.core.SubProgressMonitor;
+import org.apache.hadoop.util.Progressable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the processing of the differentiation products, one after the other or concurrently.
+ * <p>
+ * The match-ups are returned in the order of the products, independent of the order of completion.
+ * While the products are processed concurrently, the task thread reports progress at a fixed interval,
+ * so that long Level 2 runs without progress of their own do not time out the task.
+ */
+class DifferentiationRunner<T> {
+
+    interface Differentiation<T> {
+
+        /**
+         * @return the match-ups of the product, or null if the product could not be used
+         */
+        NamedRecordSource[] process(T product, ProgressMonitor pm) throws IOException, InterruptedException;
+    }
+
+    static final long DEFAULT_PROGRESS_INTERVAL_MILLIS = 10000L;
+
+    private final Progressable progressable;
+    private final int parallelism;
+    private final int workPerProduct;
+    private final long progressIntervalMillis;
+
+    DifferentiationRunner(Progressable progressable, int parallelism, int workPerProduct, long progressIntervalMillis) {
+        this.progressable = progressable;
+        this.parallelism = parallelism;
+        this.workPerProduct = workPerProduct;
+        this.progressIntervalMillis = progressIntervalMillis;
+    }
+
+    /**
+     * @return the match-ups of all products in the order of the products, or null if a product could not be used
+     */
+    List<NamedRecordSource> run(List<T> products, Differentiation<T> differentiation, ProgressMonitor pm) throws IOException, InterruptedException {
+        if (parallelism <= 1) {
+            return runSequentially(products, differentiation, pm);
+        }
+        return runConcurrently(products, differentiation, pm);
+    }
+
+    private List<NamedRecordSource> runSequentially(List<T> products, Differentiation<T> differentiation, ProgressMonitor pm) throws IOException, InterruptedException {
+        List<NamedRecordSource> namedRecordSources = new ArrayList<>(2 * products.size());
+        for (T product : products) {
+            NamedRecordSource[] matchups = differentiation.process(product, SubProgressMonitor.create(pm, workPerProduct));
+            if (matchups == null) {
+                return null;
+            }
+            Collections.addAll(namedRecordSources, matchups);
+        }
+        return namedRecordSources;
+    }
+
+    private List<NamedRecordSource> runConcurrently(List<T> products, Differentiation<T> differentiation, ProgressMonitor pm) throws IOException, InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<NamedRecordSource[]>> futures = new ArrayList<>(products.size());
+            for (T product : products) {
+                futures.add(executorService.submit(() -> differentiation.process(product, ProgressMonitor.NULL)));
+            }
+            List<NamedRecordSource> namedRecordSources = new ArrayList<>(2 * products.size());
+            for (Future<NamedRecordSource[]> future : futures) {
+                NamedRecordSource[] matchups = await(future);
+                pm.worked(workPerProduct);
+                progressable.progress();
+                if (matchups == null) {
+                    return null;
+                }
+                Collections.addAll(namedRecordSources, matchups);
+            }
+            return namedRecordSources;
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private NamedRecordSource[] await(Future<NamedRecordSource[]> future) throws IOException, InterruptedException {
+        while (true) {
+            try {
+                return future.get(progressIntervalMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                progressable.progress();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+}
@@ -58,7 +58,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Logger;
 
 /**
@@ -77,6 +79,8 @@ public class VCMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
     private static final String COUNTER_GROUP_NAME_PRODUCTS = "Products";
     private static final Logger LOG = CalvalusLogger.getLogger();
     private static final AffineTransform IDENTITY = new AffineTransform();
+    private static final int DIFFERENTIATION_WORK = 1 + 5 + 30 + 5 + 1;
+    private static final long MB = 1024L * 1024L;
 
     @Override
     public void run(Context context) throws IOException, InterruptedException {
@@ -171,70 +175,15 @@ public class VCMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
 
                 // handle all product produced by the differentiation processor
                 ProgressMonitor mainLoopPM = SubProgressMonitor.create(pm, progressForProcessing);
-                mainLoopPM.beginTask("Level 2", namedOutputs.length * (1 + 5 + 30 + 5 + 1) + (30 + 5 + 1));
-                for (KeywordHandler.NamedOutput namedOutput : namedOutputs) {
-                    context.progress();
-
-                    // save differentiation product
-                    File l1DiffFile = saveDifferentiationProduct(namedOutput, context);
-                    mainLoopPM.worked(1);
-
-                    Product l1DiffProduct = ProductIO.readProduct(namedOutput.getFile());
-
-                    // extract differentiation match-ups
-                    String diffPrefix = namedOutput.getName() + "_";
-                    NamedRecordSource differentiationMatchups = extractMatchups(context, maConfigWithoutExpression, referenceRecordHeader, pixelPosRecords, l1DiffProduct, diffPrefix, IDENTITY);
-                    mainLoopPM.worked(5);
-                    if (differentiationMatchups == null) {
-                        return;
-                    } else {
-                        namedRecordSources.add(differentiationMatchups);
-                    }
-                    l1DiffProduct.dispose();
-
-                    //  Level 2 processing
-                    LOG.info("Processing to Level 2: " + l1DiffFile);
-                    l2ProcessorAdapter.closeInputProduct();
-                    l2ProcessorAdapter.setInputFile(l1DiffFile);
-                    l2ProcessorAdapter.processSourceProduct(ProcessorAdapter.MODE.TARGET, SubProgressMonitor.create(mainLoopPM, 30));
-                    Product l2DiffProduct = l2ProcessorAdapter.openProcessedProduct();
-
-                    // extract Level 2 match-ups
-                    List<PixelPosProvider.PixelPosRecord> pixelPosRecords4L2 = pixelPosRecords;
-                    AffineTransform i2oTransform4L2 = l2ProcessorAdapter.getInput2OutputTransform();
-                    if (i2oTransform4L2 == null) {
-                        i2oTransform4L2 = new AffineTransform();
-                        referenceRecordSource = getReferenceRecordSource(maConfigWithoutExpression, regionGeometry, conf);
-
-                        try {
-                            PixelPosProvider pixelPosProvider = new PixelPosProvider(l2DiffProduct,
-                                                                                     PixelTimeProvider.create(l2DiffProduct),
-                                                                                     maConfigWithoutExpression.getMaxTimeDifference(),
-                                                                                     referenceRecordHeader.hasTime());
-                            pixelPosRecords4L2 = pixelPosProvider.computePixelPosRecords(referenceRecordSource.getRecords());
-                        } catch (Exception e) {
-                            throw new RuntimeException("Failed to retrieve input records.", e);
-                        }
-                    }
-                    String l2Prefix = "L2_" + namedOutput.getName() + "_";
-                    NamedRecordSource l2Matchups = extractMatchups(context, maConfigWithoutExpression, referenceRecordHeader, pixelPosRecords4L2, l2DiffProduct, l2Prefix, i2oTransform4L2);
-                    mainLoopPM.worked(5);
-                    if (l2Matchups == null) {
-                        return;
-                    } else {
-                        namedRecordSources.add(l2Matchups);
-                    }
-
-                    if (conf.getBoolean("calvalus.vc.outputL2", false)) {
-                        // TODO handle operators and graphs
-                        l2ProcessorAdapter.saveProcessedProducts(SubProgressMonitor.create(mainLoopPM, 1));
-                    } else {
-                        mainLoopPM.worked(1);
-                    }
-                    if (l2DiffProduct != null) {
-                        l2DiffProduct.dispose();
-                    }
+                mainLoopPM.beginTask("Level 2", namedOutputs.length * DIFFERENTIATION_WORK + (30 + 5 + 1));
+                int parallelism = getParallelism(conf, namedOutputs.length);
+                List<NamedRecordSource> differentiationMatchups = processDifferentiations(
+                        context, l2ProcessorAdapter, namedOutputs, processingRectangle, maConfigWithoutExpression,
+                        referenceRecordHeader, pixelPosRecords, regionGeometry, parallelism, mainLoopPM);
+                if (differentiationMatchups == null) {
+                    return;
                 }
+                namedRecordSources.addAll(differentiationMatchups);
                 //  Level 2 processing of primary product
                 LOG.info("Processing to Level 2: " + l1LocalFile);
                 l2ProcessorAdapter.closeInputProduct();
@@ -310,6 +259,155 @@ public class VCMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
         }
     }
 
+    /**
+     * The number of differentiation products processed concurrently, 1 for sequential processing.
+     * Executable processors are always run one after the other, they share the working directory.
+     */
+    private static int getParallelism(Configuration conf, int numProducts) {
+        int parallelism = conf.getInt("calvalus.vc.parallelism", 1);
+        if (parallelism > 1 && "EXEC".equals(conf.get(JobConfigNames.CALVALUS_L2_PROCESSOR_TYPE))) {
+            LOG.warning("executable processors are run sequentially, ignoring calvalus.vc.parallelism " + parallelism);
+            return 1;
+        }
+        return Math.max(1, Math.min(parallelism, numProducts));
+    }
+
+    /**
+     * Processes the differentiation products, sequentially with the processor adapter of the input product,
+     * or concurrently, each with its own processor adapter. A product processed concurrently is processed
+     * to Level 2 only if the memory it is estimated to need is available from the budget
+     * <code>calvalus.vc.memoryBudget</code> in MB, by default half of the maximum heap.
+     *
+     * @return the match-ups of the differentiation and Level 2 products, in the order of the named outputs,
+     * or null if a product could not be used
+     */
+    private List<NamedRecordSource> processDifferentiations(Context context,
+                                                            ProcessorAdapter l2ProcessorAdapter,
+                                                            KeywordHandler.NamedOutput[] namedOutputs,
+                                                            Rectangle processingRectangle,
+                                                            MAConfig maConfig,
+                                                            Header referenceRecordHeader,
+                                                            List<PixelPosProvider.PixelPosRecord> pixelPosRecords,
+                                                            Geometry regionGeometry,
+                                                            int parallelism,
+                                                            ProgressMonitor pm) throws IOException, InterruptedException {
+        DifferentiationRunner<KeywordHandler.NamedOutput> runner = new DifferentiationRunner<>(
+                context, parallelism, DIFFERENTIATION_WORK, DifferentiationRunner.DEFAULT_PROGRESS_INTERVAL_MILLIS);
+        if (parallelism <= 1) {
+            return runner.run(Arrays.asList(namedOutputs),
+                              (namedOutput, productPM) -> processDifferentiation(context, l2ProcessorAdapter, namedOutput, maConfig,
+                                                                                 referenceRecordHeader, pixelPosRecords,
+                                                                                 regionGeometry, null, productPM),
+                              pm);
+        }
+        Configuration conf = context.getConfiguration();
+        int defaultMemoryBudget = (int) (Runtime.getRuntime().maxMemory() / 2 / MB);
+        int memoryBudget = Math.max(1, conf.getInt("calvalus.vc.memoryBudget", defaultMemoryBudget));
+        MemoryBudget budget = new MemoryBudget(memoryBudget, processingRectangle);
+        LOG.info(String.format("processing %d differentiation products with %d threads and %d MB",
+                               namedOutputs.length, parallelism, memoryBudget));
+        return runner.run(Arrays.asList(namedOutputs), (namedOutput, productPM) -> {
+            ProcessorAdapter productAdapter = ProcessorFactory.createAdapter(context);
+            try {
+                productAdapter.setProcessingRectangle(processingRectangle);
+                return processDifferentiation(context, productAdapter, namedOutput, maConfig,
+                                              referenceRecordHeader, pixelPosRecords, regionGeometry,
+                                              budget, productPM);
+            } finally {
+                productAdapter.dispose();
+            }
+        }, pm);
+    }
+
+    /**
+     * Saves a differentiation product, processes it to Level 2 and extracts the match-ups of both.
+     * If a memory budget is given, the Level 2 processing waits until the memory it needs is available.
+     *
+     * @return the match-ups of the differentiation product and of its Level 2 product,
+     * or null if one of the products could not be used
+     */
+    private NamedRecordSource[] processDifferentiation(Context context,
+                                                       ProcessorAdapter l2ProcessorAdapter,
+                                                       KeywordHandler.NamedOutput namedOutput,
+                                                       MAConfig maConfigWithoutExpression,
+                                                       Header referenceRecordHeader,
+                                                       List<PixelPosProvider.PixelPosRecord> pixelPosRecords,
+                                                       Geometry regionGeometry,
+                                                       MemoryBudget memoryBudget,
+                                                       ProgressMonitor pm) throws IOException, InterruptedException {
+        Configuration conf = context.getConfiguration();
+        pm.beginTask("Level 2 of " + namedOutput.getName(), DIFFERENTIATION_WORK);
+        int memoryMB = 0;
+        try {
+            context.progress();
+
+            // save differentiation product
+            File l1DiffFile = saveDifferentiationProduct(namedOutput, context);
+            pm.worked(1);
+
+            Product l1DiffProduct = ProductIO.readProduct(namedOutput.getFile());
+
+            // extract differentiation match-ups
+            String diffPrefix = namedOutput.getName() + "_";
+            NamedRecordSource differentiationMatchups = extractMatchups(context, maConfigWithoutExpression, referenceRecordHeader, pixelPosRecords, l1DiffProduct, diffPrefix, IDENTITY);
+            pm.worked(5);
+            if (differentiationMatchups == null) {
+                return null;
+            }
+            if (memoryBudget != null) {
+                memoryMB = memoryBudget.acquire(l1DiffProduct);
+            }
+            l1DiffProduct.dispose();
+
+            //  Level 2 processing
+            LOG.info("Processing to Level 2: " + l1DiffFile);
+            l2ProcessorAdapter.closeInputProduct();
+            l2ProcessorAdapter.setInputFile(l1DiffFile);
+            l2ProcessorAdapter.processSourceProduct(ProcessorAdapter.MODE.TARGET, SubProgressMonitor.create(pm, 30));
+            Product l2DiffProduct = l2ProcessorAdapter.openProcessedProduct();
+
+            // extract Level 2 match-ups
+            List<PixelPosProvider.PixelPosRecord> pixelPosRecords4L2 = pixelPosRecords;
+            AffineTransform i2oTransform4L2 = l2ProcessorAdapter.getInput2OutputTransform();
+            if (i2oTransform4L2 == null) {
+                i2oTransform4L2 = new AffineTransform();
+                RecordSource referenceRecordSource = getReferenceRecordSource(maConfigWithoutExpression, regionGeometry, conf);
+
+                try {
+                    PixelPosProvider pixelPosProvider = new PixelPosProvider(l2DiffProduct,
+                                                                             PixelTimeProvider.create(l2DiffProduct),
+                                                                             maConfigWithoutExpression.getMaxTimeDifference(),
+                                                                             referenceRecordHeader.hasTime());
+                    pixelPosRecords4L2 = pixelPosProvider.computePixelPosRecords(referenceRecordSource.getRecords());
+                } catch (Exception e) {
+                    throw new RuntimeException("Failed to retrieve input records.", e);
+                }
+            }
+            String l2Prefix = "L2_" + namedOutput.getName() + "_";
+            NamedRecordSource l2Matchups = extractMatchups(context, maConfigWithoutExpression, referenceRecordHeader, pixelPosRecords4L2, l2DiffProduct, l2Prefix, i2oTransform4L2);
+            pm.worked(5);
+            if (l2Matchups == null) {
+                return null;
+            }
+
+            if (conf.getBoolean("calvalus.vc.outputL2", false)) {
+                // TODO handle operators and graphs
+                l2ProcessorAdapter.saveProcessedProducts(SubProgressMonitor.create(pm, 1));
+            } else {
+                pm.worked(1);
+            }
+            if (l2DiffProduct != null) {
+                l2DiffProduct.dispose();
+            }
+            return new NamedRecordSource[]{differentiationMatchups, l2Matchups};
+        } finally {
+            if (memoryMB > 0) {
+                memoryBudget.release(memoryMB);
+            }
+            pm.done();
+        }
+    }
+
     private static MAConfig getMaConfigWithoutExpressions(Configuration conf) {
         MAConfig maConfig = MAConfig.get(conf);
         maConfig.setCopyInput(false);// insitu data is merge separately
@@ -411,4 +509,32 @@ public class VCMapper extends Mapper<NullWritable, NullWritable, Text, RecordWri
         }
         LOG.info("Attribute names:\n" + sb);
     }
+
+    /**
+     * Limits the memory used by the concurrent Level 2 processing. The memory a product needs is estimated
+     * from its bands within the processing rectangle, twice for the input and the output.
+     */
+    private static class MemoryBudget {
+
+        private final Semaphore permits;
+        private final int budgetMB;
+        private final Rectangle processingRectangle;
+
+        private MemoryBudget(int budgetMB, Rectangle processingRectangle) {
+            this.permits = new Semaphore(budgetMB, true);
+            this.budgetMB = budgetMB;
+            this.processingRectangle = processingRectangle;
+        }
+
+        private int acquire(Product product) throws InterruptedException {
+            long bytes = 2L * 4L * processingRectangle.width * processingRectangle.height * product.getNumBands();
+            int memoryMB = (int) Math.max(1L, Math.min(budgetMB, bytes / MB));
+            permits.acquire(memoryMB);
+            return memoryMB;
+        }
+
+        private void release(int memoryMB) {
+            permits.release(memoryMB);
+        }
+    }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing;
+
+import com.bc.calvalus.processing.ProcessingScheduler.TaskType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ProcessingSchedulerTest {
+
+    private ProcessingScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new ProcessingScheduler(Collections.emptyMap(), 2);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testSlowTaskDoesNotDelayOtherTypes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch submitted = new CountDownLatch(1);
+        scheduler.submit(TaskType.STATUS_POLLING, "slow", () -> await(release));
+        scheduler.submit(TaskType.STATUS_POLLING, "slow", () -> await(release));
+        assertTrue(scheduler.submit(TaskType.JOB_SUBMISSION, "submit", submitted::countDown));
+        try {
+            assertTrue(submitted.await(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testPeriodicTaskContinuesAfterFailure() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch threeRuns = new CountDownLatch(3);
+        scheduler.scheduleAtFixedRate(TaskType.CACHE_MAINTENANCE, "failing", () -> {
+            runs.incrementAndGet();
+            threeRuns.countDown();
+            throw new IllegalStateException("test failure");
+        }, 0, 10, TimeUnit.MILLISECONDS);
+
+        assertTrue(threeRuns.await(5, TimeUnit.SECONDS));
+        ProcessingScheduler.TaskStatistics statistics = scheduler.getStatistics(TaskType.CACHE_MAINTENANCE);
+        assertTrue(statistics.getFailureCount() >= 2);
+        assertTrue(statistics.getExecutionCount() >= statistics.getFailureCount());
+    }
+
+    @Test
+    public void testBackPressure() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        try {
+            assertTrue(scheduler.submit(TaskType.JOB_SUBMISSION, "blocking", () -> {
+                started.countDown();
+                await(release);
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertTrue(scheduler.submit(TaskType.JOB_SUBMISSION, "waiting", () -> {}));
+            assertTrue(scheduler.submit(TaskType.JOB_SUBMISSION, "waiting", () -> {}));
+            assertFalse(scheduler.submit(TaskType.JOB_SUBMISSION, "rejected", () -> {}));
+            assertEquals(1, scheduler.getStatistics(TaskType.JOB_SUBMISSION).getRejectionCount());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
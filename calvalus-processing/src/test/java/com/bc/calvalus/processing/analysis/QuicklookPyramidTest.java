@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.analysis;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.image.ColoredBandImageMultiLevelSource;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class QuicklookPyramidTest {
+
+    @Test
+    public void testLevels() {
+        QuicklookPyramid pyramid = new QuicklookPyramid(new BufferedImage(1000, 600, BufferedImage.TYPE_INT_RGB),
+                                                        256, Color.BLACK, false);
+        assertEquals(2, pyramid.getMaxZoom());
+        assertEquals(1000, pyramid.getLevelWidth(2));
+        assertEquals(600, pyramid.getLevelHeight(2));
+        assertEquals(4, pyramid.getNumTilesX(2));
+        assertEquals(3, pyramid.getNumTilesY(2));
+        assertEquals(500, pyramid.getLevelWidth(1));
+        assertEquals(2, pyramid.getNumTilesX(1));
+        assertEquals(2, pyramid.getNumTilesY(1));
+        assertEquals(250, pyramid.getLevelWidth(0));
+        assertEquals(150, pyramid.getLevelHeight(0));
+        assertEquals(1, pyramid.getNumTilesX(0));
+        assertEquals(1, pyramid.getNumTilesY(0));
+
+        Map<String, Object> index = pyramid.getIndex("png");
+        assertEquals(2, index.get("maxZoom"));
+        assertEquals(3, ((List<?>) index.get("levels")).size());
+    }
+
+    @Test
+    public void testEachTileIsWrittenOnce() throws Exception {
+        QuicklookPyramid pyramid = new QuicklookPyramid(new BufferedImage(1000, 600, BufferedImage.TYPE_INT_RGB),
+                                                        256, Color.BLACK, false);
+        Map<String, BufferedImage> tiles = writeTiles(pyramid);
+        assertEquals(4 * 3 + 2 * 2 + 1, tiles.size());
+        assertTrue(tiles.containsKey("2/3/2"));
+        assertFalse(tiles.containsKey("2/4/0"));
+    }
+
+    @Test
+    public void testFinestTilesShowTheImage() throws Exception {
+        BufferedImage image = new BufferedImage(100, 60, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, x << 16 | y << 8 | 7);
+            }
+        }
+        QuicklookPyramid pyramid = new QuicklookPyramid(image, 32, Color.BLUE, false);
+        assertEquals(2, pyramid.getMaxZoom());
+        Map<String, BufferedImage> tiles = writeTiles(pyramid);
+
+        BufferedImage tile = tiles.get("2/1/1");
+        assertEquals(32, tile.getWidth());
+        assertEquals(image.getRGB(32, 32), tile.getRGB(0, 0));
+        assertEquals(image.getRGB(63, 40), tile.getRGB(31, 8));
+        BufferedImage borderTile = tiles.get("2/3/1");
+        assertEquals(image.getRGB(99, 32), borderTile.getRGB(3, 0));
+        assertEquals(Color.BLUE.getRGB(), borderTile.getRGB(4, 0));
+    }
+
+    @Test
+    public void testCoarseTilesAreAveragedFromFinerTiles() throws Exception {
+        BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                image.setRGB(x, y, x % 2 == 0 ? 0xff000000 | 100 << 16 : 0xff000000 | 200 << 16 | 50);
+            }
+        }
+        image.setRGB(6, 6, 0);
+        image.setRGB(7, 6, 0);
+        image.setRGB(6, 7, 0);
+        image.setRGB(7, 7, 0);
+        QuicklookPyramid pyramid = new QuicklookPyramid(image, 4, new Color(0, 0, 0, 0), true);
+        assertEquals(1, pyramid.getMaxZoom());
+        Map<String, BufferedImage> tiles = writeTiles(pyramid);
+
+        BufferedImage coarse = tiles.get("0/0/0");
+        assertEquals(0xff000000 | 150 << 16 | 25, coarse.getRGB(0, 0));
+        assertEquals(0, coarse.getRGB(3, 3) >>> 24);
+    }
+
+    @Test
+    public void testPyramidOfSyntheticProduct() throws Exception {
+        Product product = new Product("synthetic", "test", 300, 200);
+        Band band = product.addBand("ramp", "X + Y");
+        RenderedImage image = ColoredBandImageMultiLevelSource.create(band, ProgressMonitor.NULL).getImage(0);
+
+        QuicklookPyramid pyramid = new QuicklookPyramid(image, 64, Color.BLACK, false);
+        assertEquals(3, pyramid.getMaxZoom());
+        Map<String, BufferedImage> tiles = writeTiles(pyramid);
+        assertEquals(5 * 4 + 3 * 2 + 2 * 1 + 1, tiles.size());
+
+        BufferedImage coarse = tiles.get("0/0/0");
+        assertNotEquals(coarse.getRGB(5, 5), coarse.getRGB(35, 23));
+        assertEquals(Color.BLACK.getRGB(), coarse.getRGB(40, 1));
+        BufferedImage fine = tiles.get("3/4/3");
+        assertNotEquals(Color.BLACK.getRGB(), fine.getRGB(43, 7));
+        assertEquals(Color.BLACK.getRGB(), fine.getRGB(44, 7));
+    }
+
+    private static Map<String, BufferedImage> writeTiles(QuicklookPyramid pyramid) throws Exception {
+        Map<String, BufferedImage> tiles = new HashMap<>();
+        pyramid.write((zoom, x, y, tile) -> assertNull(tiles.put(zoom + "/" + x + "/" + y, tile)));
+        return tiles;
+    }
+}
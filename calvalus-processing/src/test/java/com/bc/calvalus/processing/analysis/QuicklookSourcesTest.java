@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.analysis;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.VirtualBand;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class QuicklookSourcesTest {
+
+    @Test
+    public void testSubsetsAreShared() {
+        Product product = new Product("test", "test", 20, 10);
+        product.addBand("b1", ProductData.TYPE_FLOAT32);
+        QuicklookSources sources = new QuicklookSources(product);
+
+        assertSame(product, sources.getProduct(0, 0));
+        Product subset = sources.getProduct(2, 2);
+        assertNotSame(product, subset);
+        assertEquals(10, subset.getSceneRasterWidth());
+        assertSame(subset, sources.getProduct(2, 2));
+        assertNotSame(subset, sources.getProduct(4, 2));
+    }
+
+    @Test
+    public void testExpressionBandsArePerProduct() {
+        Product product = new Product("test", "test", 20, 10);
+        product.addBand("b1", ProductData.TYPE_FLOAT32);
+        QuicklookSources sources = new QuicklookSources(product);
+        Band band = new VirtualBand("red", ProductData.TYPE_FLOAT32, 20, 10, "b1 * 2");
+        product.addBand(band);
+
+        assertNull(sources.getExpressionBand(product, "b1 * 2"));
+        sources.putExpressionBand(product, "b1 * 2", band);
+        assertSame(band, sources.getExpressionBand(product, "b1 * 2"));
+        assertNull(sources.getExpressionBand(product, "b1 * 3"));
+        assertNull(sources.getExpressionBand(sources.getProduct(2, 2), "b1 * 2"));
+    }
+}
@@ -1,10 +1,22 @@
 package com.bc.calvalus.processing.beam;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductData;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author thomas
@@ -20,4 +32,34 @@ public class CalvalusProductIOTest {
         assertEquals(expected, actual);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testUncompressArchiveWithExclude() throws Exception {
+        File testDir = Files.createTempDirectory("CalvalusProductIOTest").toFile();
+        try {
+            File zipFile = new File(testDir, "S2A_MSIL1C_20161212T100412.zip");
+            try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile))) {
+                out.putNextEntry(new ZipEntry("S2A.SAFE/MTD_MSIL1C.xml"));
+                out.write("<metadata/>".getBytes("UTF-8"));
+                out.putNextEntry(new ZipEntry("S2A.SAFE/IMG_DATA/B01.jp2"));
+                out.write(new byte[100000]);
+                out.putNextEntry(new ZipEntry("S2A.SAFE/IMG_DATA/B02.jp2"));
+                out.write(new byte[100000]);
+                out.closeEntry();
+            }
+            File outDir = new File(testDir, "out");
+            long bytesExtracted = CalvalusProductIO.getArchiveStatistics().getBytesExtracted();
+
+            File[] files = CalvalusProductIO.uncompressArchiveToDir(new Path(zipFile.toURI()), outDir, new Configuration(),
+                                                                    Pattern.compile(".*/B01\\.jp2"));
+
+            assertEquals(2, files.length);
+            assertTrue(new File(outDir, "S2A.SAFE/MTD_MSIL1C.xml").exists());
+            assertFalse(new File(outDir, "S2A.SAFE/IMG_DATA/B01.jp2").exists());
+            assertEquals(100000, new File(outDir, "S2A.SAFE/IMG_DATA/B02.jp2").length());
+            assertEquals(100011, CalvalusProductIO.getArchiveStatistics().getBytesExtracted() - bytesExtracted);
+        } finally {
+            FileUtil.fullyDelete(testDir);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package com.bc.calvalus.processing.beam;
 
 
+import com.bc.calvalus.processing.JobConfigNames;
 import com.bc.calvalus.processing.UnixTestRunner;
 import com.bc.calvalus.processing.hadoop.ByteArrayWritable;
 import com.bc.ceres.core.ProgressMonitor;
@@ -27,8 +28,10 @@ import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
 import org.esa.snap.core.dataio.ProductIO;
 import org.esa.snap.core.dataio.ProductReader;
+import org.esa.snap.core.datamodel.Band;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.TiePointGrid;
 import org.esa.snap.core.util.math.MathUtils;
 import org.junit.Before;
 import org.junit.Test;
@@ -105,6 +108,61 @@ public class StreamingFormatTest {
         }
     }
 
+    @Test
+    public void testWriteReadCycleVersion2() throws Exception {
+        Product sourceProduct = new Product("synthetic", "test", 100, 150);
+        sourceProduct.setPreferredTileSize(100, TILE_HEIGHT);
+        float[] floats = new float[100 * 150];
+        short[] shorts = new short[100 * 150];
+        for (int i = 0; i < floats.length; i++) {
+            floats[i] = i % 7 == 0 ? Float.NaN : (float) Math.sin(i * 0.001);
+            shorts[i] = (short) (i % 3000 - 1500);
+        }
+        Band floatBand = sourceProduct.addBand("reflec", ProductData.TYPE_FLOAT32);
+        floatBand.setRasterData(ProductData.createInstance(floats));
+        Band shortBand = sourceProduct.addBand("flags", ProductData.TYPE_INT16);
+        shortBand.setRasterData(ProductData.createInstance(shorts));
+        float[] tiePoints = new float[11 * 16];
+        for (int i = 0; i < tiePoints.length; i++) {
+            tiePoints[i] = 0.5f * i;
+        }
+        sourceProduct.addTiePointGrid(new TiePointGrid("sza", 11, 16, 0.5, 0.5, 10, 10, tiePoints));
+
+        configuration.setInt(JobConfigNames.CALVALUS_OUTPUT_STREAMING_VERSION, 2);
+        Path outputDir = new Path("target/testdata/StreamingProductWriterTestV2");
+        Path productPath = new Path(outputDir, "testWrite.seq");
+        try {
+            StreamingProductWriter.writeProductInSlices(configuration, ProgressMonitor.NULL, sourceProduct, productPath, TILE_HEIGHT);
+            assertTrue(fileSystem.exists(productPath));
+            assertFalse(fileSystem.exists(StreamingProductIndex.getIndexPath(productPath)));
+
+            try (SequenceFile.Reader reader = new SequenceFile.Reader(fileSystem, productPath, configuration)) {
+                Text formatVersion = reader.getMetadata().get(new Text(StreamingProductWriter.FORMAT_VERSION_KEY));
+                assertEquals("2", formatVersion.toString());
+            }
+
+            Product targetProduct = CalvalusProductIO.readProduct(productPath, configuration, StreamingProductPlugin.FORMAT_NAME);
+            try {
+                assertEquals(2, targetProduct.getNumBands());
+                ProductData targetTiePoints = targetProduct.getTiePointGrid("sza").getData();
+                assertArrayEquals(tiePoints, (float[]) targetTiePoints.getElems(), 0.0f);
+
+                Raster floatData = targetProduct.getBand("reflec").getSourceImage().getData();
+                Raster shortData = targetProduct.getBand("flags").getSourceImage().getData();
+                for (int y = 0; y < 150; y++) {
+                    for (int x = 0; x < 100; x++) {
+                        assertEquals("[" + x + "," + y + "]", floats[y * 100 + x], floatData.getSampleFloat(x, y, 0), 0.0f);
+                        assertEquals("[" + x + "," + y + "]", shorts[y * 100 + x], shortData.getSample(x, y, 0));
+                    }
+                }
+            } finally {
+                targetProduct.dispose();
+            }
+        } finally {
+            fileSystem.delete(outputDir, true);
+        }
+    }
+
     private void testThatIndicesAreTheSame(Path productPath) throws IOException {
         Path indexPath = StreamingProductIndex.getIndexPath(productPath);
         StreamingProductIndex streamingProductIndex = new StreamingProductIndex(indexPath, configuration);
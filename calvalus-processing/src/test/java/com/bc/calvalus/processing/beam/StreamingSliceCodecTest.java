@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.beam;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StreamingSliceCodecTest {
+
+    @Test
+    public void testFloats() throws Exception {
+        float[] values = new float[4096];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 13 == 0 ? Float.NaN : 0.01f * (i % 200);
+        }
+        byte[] encoded = StreamingSliceCodec.encode(values, values.length);
+        assertTrue(encoded.length < 4 * values.length / 2);
+        float[] decoded = new float[values.length];
+        StreamingSliceCodec.decode(encoded, decoded, decoded.length);
+        assertArrayEquals(values, decoded, 0.0f);
+    }
+
+    @Test
+    public void testIntegerTypes() throws Exception {
+        Random random = new Random(7);
+        byte[] bytes = new byte[1000];
+        short[] shorts = new short[1000];
+        int[] ints = new int[1000];
+        long[] longs = new long[1000];
+        double[] doubles = new double[1000];
+        random.nextBytes(bytes);
+        for (int i = 0; i < 1000; i++) {
+            shorts[i] = (short) random.nextInt();
+            ints[i] = random.nextInt();
+            longs[i] = random.nextLong();
+            doubles[i] = random.nextGaussian();
+        }
+
+        byte[] decodedBytes = new byte[1000];
+        StreamingSliceCodec.decode(StreamingSliceCodec.encode(bytes, 1000), decodedBytes, 1000);
+        assertArrayEquals(bytes, decodedBytes);
+        short[] decodedShorts = new short[1000];
+        StreamingSliceCodec.decode(StreamingSliceCodec.encode(shorts, 1000), decodedShorts, 1000);
+        assertArrayEquals(shorts, decodedShorts);
+        int[] decodedInts = new int[1000];
+        StreamingSliceCodec.decode(StreamingSliceCodec.encode(ints, 1000), decodedInts, 1000);
+        assertArrayEquals(ints, decodedInts);
+        long[] decodedLongs = new long[1000];
+        StreamingSliceCodec.decode(StreamingSliceCodec.encode(longs, 1000), decodedLongs, 1000);
+        assertArrayEquals(longs, decodedLongs);
+        double[] decodedDoubles = new double[1000];
+        StreamingSliceCodec.decode(StreamingSliceCodec.encode(doubles, 1000), decodedDoubles, 1000);
+        assertArrayEquals(doubles, decodedDoubles, 0.0);
+    }
+
+    @Test
+    public void testDecodeIntoLargerArray() throws Exception {
+        int[] values = {1, -2, 3};
+        int[] decoded = {9, 9, 9, 9};
+        StreamingSliceCodec.decode(StreamingSliceCodec.encode(values, 3), decoded, 3);
+        assertArrayEquals(new int[]{1, -2, 3, 9}, decoded);
+    }
+
+    @Test(expected = IOException.class)
+    public void testWrongNumberOfElements() throws Exception {
+        byte[] encoded = StreamingSliceCodec.encode(new int[10], 10);
+        StreamingSliceCodec.decode(encoded, new int[11], 11);
+    }
+}
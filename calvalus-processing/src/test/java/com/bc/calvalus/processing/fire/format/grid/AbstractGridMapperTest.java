@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.fire.format.grid;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class AbstractGridMapperTest {
+
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 4;
+
+    @Test
+    public void testConcurrentGridCellsEqualSequentialGridCells() throws Exception {
+        GridCells sequential = computeGridCells(1);
+        GridCells concurrent = computeGridCells(4);
+
+        assertArrayEquals(sequential.ba, concurrent.ba, 0.0);
+        assertArrayEquals(sequential.patchNumber, concurrent.patchNumber, 0.0F);
+        assertArrayEquals(sequential.errors, concurrent.errors, 0.0F);
+        assertArrayEquals(sequential.coverage, concurrent.coverage, 0.0F);
+        assertArrayEquals(sequential.burnableFraction, concurrent.burnableFraction, 0.0F);
+        assertEquals(sequential.baInLc.size(), concurrent.baInLc.size());
+        for (int c = 0; c < sequential.baInLc.size(); c++) {
+            assertArrayEquals(sequential.baInLc.get(c), concurrent.baInLc.get(c), 0.0);
+        }
+    }
+
+    private static GridCells computeGridCells(int numThreads) throws IOException {
+        TestGridMapper mapper = new TestGridMapper();
+        mapper.setDataSource(new TestDataSource());
+        mapper.setNumThreads(numThreads);
+        return mapper.computeGridCells(2019, 2);
+    }
+
+    private static class TestGridMapper extends AbstractGridMapper {
+
+        TestGridMapper() {
+            super(WIDTH, HEIGHT);
+        }
+
+        @Override
+        protected int getLcClassesCount() {
+            return 2;
+        }
+
+        @Override
+        protected void addBaInLandCover(List<double[]> baInLc, int targetGridCellIndex, double burnedArea, int sourceLc) {
+            baInLc.get(sourceLc % 2)[targetGridCellIndex] += burnedArea;
+        }
+
+        @Override
+        protected float getErrorPerPixel(double[] probabilityOfBurn, double gridCellArea, double burnedPercentage) {
+            double sum = 0.0;
+            for (double p : probabilityOfBurn) {
+                sum += p * (1.0 - p);
+            }
+            return (float) Math.sqrt(sum);
+        }
+
+        @Override
+        protected void predict(double[] ba, double[] areas, float[] originalErrors) {
+        }
+
+        @Override
+        protected void validate(float burnableFraction, List<double[]> baInLc, int targetGridCellIndex, double area) {
+        }
+    }
+
+    /**
+     * A thread safe data source with deterministic pixels per cell, cells of a row complete in mixed order.
+     */
+    private static class TestDataSource extends AbstractFireGridDataSource {
+
+        TestDataSource() {
+            super(1, 4);
+        }
+
+        @Override
+        public SourceData readPixels(int x, int y) throws IOException {
+            try {
+                Thread.sleep((WIDTH - x) % 3);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if ((x + y) % 5 == 4) {
+                return null;
+            }
+            SourceData data = new SourceData(4, 4);
+            for (int i = 0; i < 16; i++) {
+                int seed = 31 * (y * WIDTH + x) + i;
+                data.burnedPixels[i] = seed % 7 == 0 ? 0 : 32 + seed % 28;
+                data.areas[i] = 100.0 + seed % 13;
+                data.lcClasses[i] = seed % 3;
+                data.burnable[i] = seed % 4 != 0;
+                data.statusPixels[i] = seed % 6 == 0 ? 0 : 1;
+                data.probabilityOfBurn[i] = (seed % 10) / 10.0;
+            }
+            data.patchCount = x + y;
+            return data;
+        }
+
+        @Override
+        public boolean isThreadSafe() {
+            return true;
+        }
+    }
+}
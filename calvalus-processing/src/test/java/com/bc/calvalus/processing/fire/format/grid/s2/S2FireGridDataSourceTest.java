@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.fire.format.grid.s2;
+
+import com.bc.calvalus.processing.fire.format.grid.SourceData;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class S2FireGridDataSourceTest {
+
+    // covers the tile x190y100, that is lon 10..11 and lat 10..11, with a margin
+    private static final int SIZE = 120;
+    private static final double LON0 = 9.9;
+    private static final double LAT0 = 11.1;
+
+    private Product[] sourceProducts;
+    private Product[] clProducts;
+    private Product[] lcProducts;
+
+    @Before
+    public void setUp() throws Exception {
+        sourceProducts = new Product[]{createProduct("BA-T32PPS-20190210T101925", "JD", ProductData.TYPE_INT32, SIZE, 0.01, 0)};
+        clProducts = new Product[]{createProduct("CL-T32PPS-20190210T101925", "CL", ProductData.TYPE_FLOAT32, SIZE, 0.01, 1)};
+        lcProducts = new Product[]{createProduct("LC", "band_1", ProductData.TYPE_INT32, SIZE / 2, 0.02, 2)};
+    }
+
+    @Test
+    public void testBlockReadsEqualSeparateReads() throws Exception {
+        S2FireGridDataSource separate = createDataSource(false);
+        S2FireGridDataSource blocks = createDataSource(true);
+        assertFalse(separate.isThreadSafe());
+        assertTrue(blocks.isThreadSafe());
+
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                SourceData expected = separate.readPixels(x, y);
+                SourceData actual = blocks.readPixels(x, y);
+                String cell = "cell " + x + "," + y;
+                assertEquals(cell, expected.width, actual.width);
+                assertEquals(cell, expected.height, actual.height);
+                assertArrayEquals(cell, expected.burnedPixels, actual.burnedPixels, 0.0F);
+                assertArrayEquals(cell, expected.probabilityOfBurn, actual.probabilityOfBurn, 0.0);
+                assertArrayEquals(cell, expected.lcClasses, actual.lcClasses);
+                assertArrayEquals(cell, expected.statusPixels, actual.statusPixels);
+                assertArrayEquals(cell, expected.areas, actual.areas, 1.0E-6);
+                assertEquals(cell, expected.burnable.length, actual.burnable.length);
+                for (int i = 0; i < expected.burnable.length; i++) {
+                    assertEquals(cell, expected.burnable[i], actual.burnable[i]);
+                }
+                assertEquals(cell, expected.patchCount, actual.patchCount);
+            }
+        }
+    }
+
+    private S2FireGridDataSource createDataSource(boolean blockReads) {
+        S2FireGridDataSource dataSource = new S2FireGridDataSource("x190y100", sourceProducts, clProducts, lcProducts);
+        dataSource.setDoyFirstOfMonth(32);
+        dataSource.setDoyLastOfMonth(59);
+        dataSource.setBlockReads(blockReads);
+        return dataSource;
+    }
+
+    private static Product createProduct(String name, String bandName, int dataType, int size, double pixelSize, int kind) throws Exception {
+        Product product = new Product(name, "test", size, size);
+        product.setSceneGeoCoding(new CrsGeoCoding(DefaultGeographicCRS.WGS84, size, size, LON0, LAT0, pixelSize, pixelSize));
+        Band band = new Band(bandName, dataType, size, size);
+        product.addBand(band);
+        ProductData rasterData = band.createCompatibleRasterData();
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int i = y * size + x;
+                switch (kind) {
+                    case 0:
+                        // burned days within and outside of February, unobserved pixels
+                        rasterData.setElemIntAt(i, (x * 7 + y * 3) % 11 == 0 ? -1 : 20 + (x + 2 * y) % 50);
+                        break;
+                    case 1:
+                        rasterData.setElemFloatAt(i, ((x + y) % 10) / 10.0F);
+                        break;
+                    default:
+                        // burnable and non-burnable land cover classes
+                        rasterData.setElemIntAt(i, (x + y) % 3 == 0 ? 190 : 10 * (1 + (x * y) % 5));
+                        break;
+                }
+            }
+        }
+        band.setRasterData(rasterData);
+        return product;
+    }
+}
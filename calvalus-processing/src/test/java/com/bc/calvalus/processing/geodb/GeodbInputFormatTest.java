@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.geodb;
+
+import com.bc.calvalus.processing.JobConfigNames;
+import com.bc.calvalus.processing.hadoop.ProductSplit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GeodbInputFormatTest {
+
+    private File testDir;
+    private Configuration conf;
+
+    @Before
+    public void setUp() throws Exception {
+        testDir = Files.createTempDirectory("GeodbInputFormatTest").toFile();
+        conf = new Configuration();
+        conf.setInt(JobConfigNames.CALVALUS_INPUT_SPLIT_THREADS, 3);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.fullyDelete(testDir);
+    }
+
+    @Test
+    public void testCreateInputSplits() throws Exception {
+        List<String> paths = new ArrayList<>();
+        paths.add(createFile("2017/04/08", "single.nc", 3));
+        for (int i = 0; i < 6; i++) {
+            paths.add(createFile("2017/04/07", "product-" + i + ".nc", 10 + i));
+            if (i == 2) {
+                paths.add(new File(testDir, "2017/04/07/missing.nc").toURI().toString());
+                paths.add(new File(testDir, "2017/04/09/missing.nc").toURI().toString());
+            }
+        }
+
+        List<InputSplit> splits = GeodbInputFormat.createInputSplits(conf, paths, 0);
+
+        assertEquals(7, splits.size());
+        int splitIndex = 0;
+        for (String path : paths) {
+            if (path.endsWith("missing.nc")) {
+                continue;
+            }
+            ProductSplit split = (ProductSplit) splits.get(splitIndex++);
+            assertEquals(path, split.getPath().toString());
+            assertEquals(new File(split.getPath().toUri()).length(), split.getLength());
+            assertTrue(split.getLocations().length > 0);
+        }
+    }
+
+    @Test
+    public void testCreateInputSplitsWithRequestSizeLimit() throws Exception {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            paths.add(createFile("2017/04/07", "product-" + i + ".nc", 10));
+        }
+
+        List<InputSplit> splits = GeodbInputFormat.createInputSplits(conf, paths, 4);
+
+        assertEquals(4, splits.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(paths.get(i), ((ProductSplit) splits.get(i)).getPath().toString());
+        }
+    }
+
+    private String createFile(String dirName, String fileName, int length) throws IOException {
+        File dir = new File(testDir, dirName);
+        assertTrue(dir.isDirectory() || dir.mkdirs());
+        File file = new File(dir, fileName);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[length]);
+        }
+        return file.toURI().toString();
+    }
+}
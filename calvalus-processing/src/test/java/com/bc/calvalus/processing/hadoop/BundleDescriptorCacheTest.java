@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import com.bc.calvalus.commons.shared.BundleFilter;
+import com.bc.calvalus.processing.BundleDescriptor;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class BundleDescriptorCacheTest {
+
+    private File testDir;
+    private BundleDescriptorCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        testDir = Files.createTempDirectory("BundleDescriptorCacheTest").toFile();
+        FileSystem localFs = FileSystem.getLocal(new Configuration());
+        cache = new BundleDescriptorCache((userName, path) -> localFs, "calvalus",
+                                          new File(testDir, "software").getPath(),
+                                          new File(testDir, "home").getPath(), 60000L);
+        writeDescriptor("software/snap-8.0", "snap", "8.0", "BandMaths");
+        writeDescriptor("home/martin/software/ql-1.0", "ql", "1.0", "Quicklook");
+        writeDescriptor("home/thomas/software/fire-2.0", "fire", "2.0", "FireCCI");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.fullyDelete(testDir);
+    }
+
+    @Test
+    public void testQueryByProvider() throws Exception {
+        BundleFilter all = BundleFilter.fromString("provider=SYSTEM,USER,ALL_USER").withTheUser("martin");
+        assertBundles(cache.getBundles("martin", all), "ql", "fire", "snap");
+        assertEquals("martin", cache.getBundles("martin", all)[0].getOwner());
+        assertEquals("thomas", cache.getBundles("martin", all)[1].getOwner());
+
+        BundleFilter system = BundleFilter.fromString("provider=SYSTEM");
+        assertBundles(cache.getBundles("martin", system), "snap");
+
+        BundleFilter processor = BundleFilter.fromString("provider=SYSTEM,ALL_USER").withTheProcessor("FireCCI", "1.0");
+        assertBundles(cache.getBundles("martin", processor), "fire");
+
+        BundleFilter bundle = BundleFilter.fromString("provider=SYSTEM,USER").withTheUser("martin").withTheBundle("ql", "1.0");
+        assertBundles(cache.getBundles("martin", bundle), "ql");
+    }
+
+    @Test
+    public void testDescriptorsAreParsedOnce() throws Exception {
+        BundleFilter all = BundleFilter.fromString("provider=SYSTEM,USER,ALL_USER").withTheUser("martin");
+        cache.getBundles("martin", all);
+        cache.getBundles("thomas", all);
+        assertEquals(3, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getRefreshCount());
+
+        cache.refresh();
+        assertEquals(3, cache.getMissCount());
+        assertEquals(2, cache.getRefreshCount());
+    }
+
+    @Test
+    public void testRefreshFindsNewAndRemovedBundles() throws Exception {
+        BundleFilter all = BundleFilter.fromString("provider=SYSTEM,USER,ALL_USER").withTheUser("martin");
+        assertEquals(3, cache.getBundles("martin", all).length);
+
+        writeDescriptor("home/martin/software/ql-1.1", "ql", "1.1", "Quicklook");
+        FileUtil.fullyDelete(new File(testDir, "home/thomas/software/fire-2.0"));
+        cache.refresh();
+
+        assertBundles(cache.getBundles("martin", all), "ql", "ql", "snap");
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void testRefreshFindsRevokedPermissions() throws Exception {
+        BundleFilter all = BundleFilter.fromString("provider=SYSTEM,USER,ALL_USER").withTheUser("martin");
+        assertBundles(cache.getBundles("martin", all), "ql", "fire", "snap");
+        File fireBundleDir = new File(testDir, "home/thomas/software/fire-2.0");
+        long modificationTime = fireBundleDir.lastModified();
+
+        // neither chmod modifies the bundle directory
+        assertTrue(new File(fireBundleDir, HadoopProcessingService.BUNDLE_DESCRIPTOR_XML_FILENAME).setReadable(false, false));
+        assertTrue(new File(testDir, "software/snap-8.0").setExecutable(false, false));
+        cache.refresh();
+
+        assertEquals(modificationTime, fireBundleDir.lastModified());
+        assertBundles(cache.getBundles("martin", all), "ql");
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void testAbsoluteBundlePathIsNotCached() throws Exception {
+        BundleFilter filter = BundleFilter.fromString("provider=SYSTEM").withTheBundle("/calvalus/home/martin/software/ql", "1.0");
+        assertNull(cache.getBundles("martin", filter));
+    }
+
+    private static void assertBundles(BundleDescriptor[] bundles, String... expectedNames) {
+        assertEquals(expectedNames.length, bundles.length);
+        for (int i = 0; i < expectedNames.length; i++) {
+            assertEquals(expectedNames[i], bundles[i].getBundleName());
+        }
+    }
+
+    private void writeDescriptor(String dir, String bundleName, String bundleVersion, String processorName) throws IOException {
+        File bundleDir = new File(testDir, dir);
+        assertTrue(bundleDir.mkdirs());
+        String xml = "<bundleDescriptor>\n" +
+                     "    <bundleName>" + bundleName + "</bundleName>\n" +
+                     "    <bundleVersion>" + bundleVersion + "</bundleVersion>\n" +
+                     "    <processorDescriptors>\n" +
+                     "        <processorDescriptor>\n" +
+                     "            <processorName>" + processorName + "</processorName>\n" +
+                     "            <processorVersion>1.0</processorVersion>\n" +
+                     "        </processorDescriptor>\n" +
+                     "    </processorDescriptors>\n" +
+                     "</bundleDescriptor>\n";
+        Files.write(new File(bundleDir, HadoopProcessingService.BUNDLE_DESCRIPTOR_XML_FILENAME).toPath(),
+                    xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
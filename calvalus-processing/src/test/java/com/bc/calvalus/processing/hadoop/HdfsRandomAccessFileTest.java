@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class HdfsRandomAccessFileTest {
+
+    private File file;
+    private byte[] content;
+    private FileSystem fs;
+
+    @Before
+    public void setUp() throws IOException {
+        content = new byte[1000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 7);
+        }
+        file = File.createTempFile("raf", ".nc");
+        Files.write(file.toPath(), content);
+        fs = FileSystem.getLocal(new Configuration());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testReadAcrossBlocks() throws IOException {
+        try (HdfsRandomAccessFile raf = open(4)) {
+            byte[] buffer = new byte[200];
+            assertEquals(200, raf.read_(90, buffer, 0, 200));
+            assertArrayEquals(Arrays.copyOfRange(content, 90, 290), buffer);
+            assertEquals(4 * 64, raf.getBytesRead());
+        }
+    }
+
+    @Test
+    public void testBlocksAreCached() throws IOException {
+        try (HdfsRandomAccessFile raf = open(4)) {
+            byte[] buffer = new byte[10];
+            raf.read_(0, buffer, 0, 10);
+            raf.read_(20, buffer, 0, 10);
+            raf.read_(5, buffer, 0, 10);
+            assertEquals(64, raf.getBytesRead());
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedBlockIsEvicted() throws IOException {
+        try (HdfsRandomAccessFile raf = open(2)) {
+            byte[] buffer = new byte[1];
+            raf.read_(0, buffer, 0, 1);
+            raf.read_(64, buffer, 0, 1);
+            raf.read_(0, buffer, 0, 1);
+            raf.read_(128, buffer, 0, 1);
+            assertEquals(3 * 64, raf.getBytesRead());
+            raf.read_(0, buffer, 0, 1);
+            assertEquals(3 * 64, raf.getBytesRead());
+            raf.read_(64, buffer, 0, 1);
+            assertEquals(4 * 64, raf.getBytesRead());
+        }
+    }
+
+    @Test
+    public void testReadAtEndOfFile() throws IOException {
+        try (HdfsRandomAccessFile raf = open(4)) {
+            byte[] buffer = new byte[100];
+            assertEquals(40, raf.read_(960, buffer, 0, 100));
+            assertArrayEquals(Arrays.copyOfRange(content, 960, 1000), Arrays.copyOf(buffer, 40));
+            assertEquals(1000 - 15 * 64, raf.getBytesRead());
+            assertEquals(-1, raf.read_(1000, buffer, 0, 100));
+        }
+    }
+
+    @Test
+    public void testReadToByteChannel() throws IOException {
+        try (HdfsRandomAccessFile raf = open(4)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(300, raf.readToByteChannel(Channels.newChannel(out), 500, 300));
+            assertArrayEquals(Arrays.copyOfRange(content, 500, 800), out.toByteArray());
+        }
+    }
+
+    private HdfsRandomAccessFile open(int numBlocks) throws IOException {
+        Path path = new Path(file.toURI());
+        return new HdfsRandomAccessFile(fs.open(path), content.length, path.toString(), 64, numBlocks);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class NodeLocalCacheTest {
+
+    private File testDir;
+    private File cacheDir;
+    private Configuration conf;
+
+    @Before
+    public void setUp() throws Exception {
+        testDir = Files.createTempDirectory("NodeLocalCacheTest").toFile();
+        cacheDir = new File(testDir, "cache/user");
+        conf = new Configuration();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.fullyDelete(testDir);
+    }
+
+    @Test
+    public void testSecondTaskUsesCachedCopy() throws Exception {
+        byte[] content = createContent(100000, 1);
+        Path input = writeInput("input.nc", content);
+        NodeLocalCache cache = new NodeLocalCache(cacheDir, 1024 * 1024);
+        long misses = NodeLocalCache.getMisses();
+        long hits = NodeLocalCache.getHits();
+
+        File localFile1 = cache.copyToLocal(input, new File(testDir, "task1/input.nc"), conf);
+        File localFile2 = cache.copyToLocal(input, new File(testDir, "task2/input.nc"), conf);
+
+        assertEquals(1, NodeLocalCache.getMisses() - misses);
+        assertEquals(1, NodeLocalCache.getHits() - hits);
+        assertTrue(Files.isSymbolicLink(localFile1.toPath()));
+        assertArrayEquals(content, Files.readAllBytes(localFile1.toPath()));
+        assertArrayEquals(content, Files.readAllBytes(localFile2.toPath()));
+        assertEquals(1, countEntries());
+    }
+
+    @Test
+    public void testModifiedInputIsCopiedAgain() throws Exception {
+        Path input = writeInput("input.nc", createContent(1000, 1));
+        NodeLocalCache cache = new NodeLocalCache(cacheDir, 1024 * 1024);
+        cache.copyToLocal(input, new File(testDir, "task1/input.nc"), conf);
+        File inputFile = new File(testDir, "input.nc");
+        assertTrue(inputFile.setLastModified(inputFile.lastModified() - 60000));
+        long misses = NodeLocalCache.getMisses();
+
+        cache.copyToLocal(input, new File(testDir, "task2/input.nc"), conf);
+
+        assertEquals(1, NodeLocalCache.getMisses() - misses);
+        assertEquals(2, countEntries());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+        File oldEntry = createEntry("k1", "old.nc", 100000, System.currentTimeMillis() - 20000);
+        File recentEntry = createEntry("k2", "recent.nc", 100000, System.currentTimeMillis() - 10000);
+        Path input = writeInput("input.nc", createContent(100000, 1));
+        NodeLocalCache cache = new NodeLocalCache(cacheDir, 250000);
+
+        cache.copyToLocal(input, new File(testDir, "task1/input.nc"), conf);
+
+        assertFalse(oldEntry.exists());
+        assertTrue(recentEntry.exists());
+        assertEquals(2, countEntries());
+    }
+
+    @Test
+    public void testTooLargeInputIsCopiedDirectly() throws Exception {
+        byte[] content = createContent(2000, 1);
+        Path input = writeInput("input.nc", content);
+        NodeLocalCache cache = new NodeLocalCache(cacheDir, 1000);
+
+        File localFile = cache.copyToLocal(input, new File(testDir, "task1/input.nc"), conf);
+
+        assertFalse(Files.isSymbolicLink(localFile.toPath()));
+        assertArrayEquals(content, Files.readAllBytes(localFile.toPath()));
+        assertEquals(0, countEntries());
+    }
+
+    @Test
+    public void testEntriesAreAccessibleByTheUserOnly() throws Exception {
+        Path input = writeInput("input.nc", createContent(1000, 1));
+        NodeLocalCache cache = new NodeLocalCache(cacheDir, 1024 * 1024);
+
+        cache.copyToLocal(input, new File(testDir, "task1/input.nc"), conf);
+
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(cacheDir.toPath())));
+        assertEquals("rwxrwxrwx", PosixFilePermissions.toString(Files.getPosixFilePermissions(cacheDir.getParentFile().toPath())));
+    }
+
+    @Test
+    public void testDirectoryIsCopiedDirectly() throws Exception {
+        byte[] content = createContent(1000, 1);
+        File inputDir = new File(testDir, "input.SAFE");
+        assertTrue(inputDir.mkdirs());
+        Files.write(new File(inputDir, "MTD_MSIL1C.xml").toPath(), content);
+        NodeLocalCache cache = new NodeLocalCache(cacheDir, 1024 * 1024);
+
+        File localDir = cache.copyToLocal(new Path(inputDir.toURI()), new File(testDir, "task1/input.SAFE"), conf);
+
+        assertFalse(Files.isSymbolicLink(localDir.toPath()));
+        assertArrayEquals(content, Files.readAllBytes(new File(localDir, "MTD_MSIL1C.xml").toPath()));
+        assertEquals(0, countEntries());
+    }
+
+    @Test
+    public void testConcurrentTasksShareOneCopy() throws Exception {
+        byte[] content = createContent(1000000, 2);
+        Path input = writeInput("input.nc", content);
+        NodeLocalCache cache = new NodeLocalCache(cacheDir, 10 * 1024 * 1024);
+        long misses = NodeLocalCache.getMisses();
+        long hits = NodeLocalCache.getHits();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<File>> localFiles = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                File localFile = new File(testDir, "task" + i + "/input.nc");
+                localFiles.add(executor.submit(() -> cache.copyToLocal(input, localFile, conf)));
+            }
+            for (Future<File> localFile : localFiles) {
+                assertArrayEquals(content, Files.readAllBytes(localFile.get().toPath()));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, NodeLocalCache.getMisses() - misses);
+        assertEquals(3, NodeLocalCache.getHits() - hits);
+    }
+
+    private Path writeInput(String name, byte[] content) throws IOException {
+        File file = new File(testDir, name);
+        Files.write(file.toPath(), content);
+        return new Path(file.toURI());
+    }
+
+    private File createEntry(String key, String name, int size, long lastModified) throws IOException {
+        File entryDir = new File(cacheDir, key);
+        assertTrue(entryDir.mkdirs());
+        Files.write(new File(entryDir, name).toPath(), new byte[size]);
+        assertTrue(entryDir.setLastModified(lastModified));
+        return entryDir;
+    }
+
+    private int countEntries() {
+        File[] entryDirs = cacheDir.listFiles(File::isDirectory);
+        return entryDirs != null ? entryDirs.length : 0;
+    }
+
+    private static byte[] createContent(int length, long seed) {
+        byte[] content = new byte[length];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+}
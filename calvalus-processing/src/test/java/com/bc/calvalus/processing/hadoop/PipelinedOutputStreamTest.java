@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PipelinedOutputStreamTest {
+
+    @Test
+    public void testWrite() throws Exception {
+        byte[] content = new byte[10000];
+        new Random(1).nextBytes(content);
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        AtomicInteger progressCount = new AtomicInteger();
+        PipelinedOutputStream outputStream = new PipelinedOutputStream(target, progressCount::incrementAndGet, 256, 2);
+        outputStream.write(content[0]);
+        outputStream.write(content, 1, 4000);
+        outputStream.flush();
+        outputStream.write(content, 4001, content.length - 4001);
+        outputStream.close();
+
+        assertArrayEquals(content, target.toByteArray());
+        assertEquals(content.length, outputStream.getBytesWritten());
+        assertTrue(progressCount.get() > 0);
+    }
+
+    @Test
+    public void testTargetErrorIsThrown() throws Exception {
+        OutputStream failingTarget = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        PipelinedOutputStream outputStream = new PipelinedOutputStream(failingTarget, () -> {}, 16, 2);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                outputStream.write(new byte[16]);
+            }
+            outputStream.close();
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("disk full"));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import com.bc.calvalus.processing.hadoop.RasterSerialization.Codec;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class RasterSerializationTest {
+
+    @Test
+    public void testRoundTripAllCodecsAndTypes() throws Exception {
+        for (Codec codec : Codec.values()) {
+            float[] floats = new float[1000];
+            int[] ints = new int[1000];
+            short[] shorts = new short[1000];
+            double[] doubles = new double[1000];
+            long[] longs = new long[1000];
+            byte[] bytes = new byte[1000];
+            for (int i = 0; i < 1000; i++) {
+                floats[i] = i % 17 == 0 ? Float.NaN : 0.5F * i;
+                ints[i] = i * 31 - 500;
+                shorts[i] = (short) (i - 300);
+                doubles[i] = Math.sin(i);
+                longs[i] = Long.MAX_VALUE - i;
+                bytes[i] = (byte) i;
+            }
+            Object[] arrays = {floats, ints, shorts, doubles, longs, bytes};
+            byte[] serialized = write(codec, arrays);
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(serialized));
+            float[] floats2 = new float[1000];
+            int[] ints2 = new int[1000];
+            short[] shorts2 = new short[1000];
+            double[] doubles2 = new double[1000];
+            long[] longs2 = new long[1000];
+            byte[] bytes2 = new byte[1000];
+            for (Object array : new Object[]{floats2, ints2, shorts2, doubles2, longs2, bytes2}) {
+                RasterSerialization.read(in, array);
+            }
+            assertEquals(-1, in.read());
+            assertArrayEquals(codec.name(), floats, floats2, 0.0F);
+            assertArrayEquals(codec.name(), ints, ints2);
+            assertArrayEquals(codec.name(), shorts, shorts2);
+            assertArrayEquals(codec.name(), doubles, doubles2, 0.0);
+            assertArrayEquals(codec.name(), longs, longs2);
+            assertArrayEquals(codec.name(), bytes, bytes2);
+        }
+    }
+
+    @Test
+    public void testShuffleDeflateCompressesSmoothRaster() throws Exception {
+        float[] raster = new float[256 * 256];
+        for (int i = 0; i < raster.length; i++) {
+            raster[i] = 280.0F + (i % 256) * 0.01F;
+        }
+        int rawLength = write(Codec.RAW, raster).length;
+        int deflatedLength = write(Codec.DEFLATE, raster).length;
+        int shuffledLength = write(Codec.SHUFFLE_DEFLATE, raster).length;
+        assertEquals(1 + 4 * raster.length, rawLength);
+        assertTrue(deflatedLength < rawLength);
+        assertTrue(shuffledLength <= deflatedLength);
+    }
+
+    @Test
+    public void testTruncatedRasterFails() throws Exception {
+        byte[] serialized = write(Codec.DEFLATE, new float[100]);
+        float[] tooLarge = new float[200];
+        try {
+            RasterSerialization.read(new DataInputStream(new ByteArrayInputStream(serialized)), tooLarge);
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("truncated"));
+        }
+    }
+
+    @Test
+    public void testCodecOf() {
+        assertEquals(Codec.SHUFFLE_DEFLATE, Codec.of("shuffle-deflate"));
+        assertEquals(Codec.RAW, Codec.of(" raw "));
+    }
+
+    @Test
+    public void testRasterStackWritableReusesArrays() throws Exception {
+        RasterStackWritable raster = new RasterStackWritable(4, 3, 2);
+        raster.setData(0, new float[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11}, RasterStackWritable.Type.FLOAT);
+        raster.setData(1, new short[12], RasterStackWritable.Type.SHORT);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        raster.write(out);
+        raster.write(out);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        RasterStackWritable copy = new RasterStackWritable();
+        copy.readFields(in);
+        Object firstBand = copy.data[0];
+        assertArrayEquals((float[]) raster.data[0], (float[]) firstBand, 0.0F);
+        copy.readFields(in);
+        assertSame(firstBand, copy.data[0]);
+        assertArrayEquals((float[]) raster.data[0], (float[]) copy.data[0], 0.0F);
+        assertEquals(RasterStackWritable.Type.SHORT, copy.bandTypes[1]);
+    }
+
+    private static byte[] write(Codec codec, Object... arrays) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Object array : arrays) {
+            RasterSerialization.write(out, array, codec);
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+}
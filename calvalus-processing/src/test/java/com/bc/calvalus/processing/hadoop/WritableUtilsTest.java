@@ -68,4 +68,20 @@ public class WritableUtilsTest {
         assertEquals(5.67f, in.readFloat(), 0.000001f);
     }
 
+    @Test
+    public void testHalfFloatConversion() throws Exception {
+        assertEquals(0.0f, WritableUtils.halfToFloat(WritableUtils.floatToHalf(0.0f)), 0.0f);
+        assertEquals(1.0f, WritableUtils.halfToFloat(WritableUtils.floatToHalf(1.0f)), 0.0f);
+        assertEquals(-2.5f, WritableUtils.halfToFloat(WritableUtils.floatToHalf(-2.5f)), 0.0f);
+        assertEquals(65504f, WritableUtils.halfToFloat(WritableUtils.floatToHalf(65504f)), 0.0f);
+        assertEquals(0.12f, WritableUtils.halfToFloat(WritableUtils.floatToHalf(0.12f)), 0.0001f);
+        assertEquals(5.67f, WritableUtils.halfToFloat(WritableUtils.floatToHalf(5.67f)), 0.002f);
+        assertEquals(1e-6f, WritableUtils.halfToFloat(WritableUtils.floatToHalf(1e-6f)), 1e-7f);
+        assertEquals(0x3c00, WritableUtils.floatToHalf(1.0f));
+        assertEquals(0x0001, WritableUtils.floatToHalf(0x1p-24f));
+        assertEquals(Float.POSITIVE_INFINITY, WritableUtils.halfToFloat(WritableUtils.floatToHalf(1e6f)), 0.0f);
+        assertEquals(Float.NEGATIVE_INFINITY, WritableUtils.halfToFloat(WritableUtils.floatToHalf(Float.NEGATIVE_INFINITY)), 0.0f);
+        assertTrue(Float.isNaN(WritableUtils.halfToFloat(WritableUtils.floatToHalf(Float.NaN))));
+    }
+
 }
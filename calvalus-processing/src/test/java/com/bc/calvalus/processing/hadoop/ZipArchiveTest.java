@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.hadoop;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ZipArchiveTest {
+
+    private File testDir;
+    private byte[] metadata;
+    private byte[] storedBand;
+    private byte[] deflatedBand;
+
+    @Before
+    public void setUp() throws Exception {
+        testDir = Files.createTempDirectory("ZipArchiveTest").toFile();
+        metadata = "<metadata>granule</metadata>".getBytes("UTF-8");
+        storedBand = new byte[200000];
+        new Random(1).nextBytes(storedBand);
+        deflatedBand = new byte[1000000];
+        for (int i = 0; i < deflatedBand.length; i++) {
+            deflatedBand[i] = (byte) (i / 1000 + (i % 7));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.fullyDelete(testDir);
+    }
+
+    @Test
+    public void testEntries() throws Exception {
+        try (ZipArchive archive = ZipArchive.open(writeProductZip(), new Configuration())) {
+            assertEquals(Arrays.asList("P.SAFE/", "P.SAFE/MTD.xml", "P.SAFE/IMG/B01.jp2", "P.SAFE/IMG/B02.img"),
+                         Arrays.asList(archive.getEntries().stream().map(ZipArchive.Entry::getName).toArray()));
+            assertTrue(archive.getEntry("P.SAFE/").isDirectory());
+            assertEquals(storedBand.length, archive.getEntry("P.SAFE/IMG/B01.jp2").getSize());
+            assertEquals(deflatedBand.length, archive.getEntry("P.SAFE/IMG/B02.img").getSize());
+            assertTrue(archive.getEntry("P.SAFE/IMG/B02.img").getCompressedSize() < deflatedBand.length / 10);
+            assertNull(archive.getEntry("P.SAFE/IMG/B03.jp2"));
+            assertTrue(archive.getBytesRead() < 2000);
+        }
+    }
+
+    @Test
+    public void testReadEntry() throws Exception {
+        try (ZipArchive archive = ZipArchive.open(writeProductZip(), new Configuration())) {
+            assertArrayEquals(metadata, readFully(archive.openEntry(archive.getEntry("P.SAFE/MTD.xml"))));
+            assertArrayEquals(deflatedBand, readFully(archive.openEntry(archive.getEntry("P.SAFE/IMG/B02.img"))));
+            assertTrue(archive.getBytesRead() < archive.getLength() / 10);
+        }
+    }
+
+    @Test
+    public void testSeek() throws Exception {
+        try (ZipArchive archive = ZipArchive.open(writeProductZip(), new Configuration())) {
+            for (String name : new String[]{"P.SAFE/IMG/B01.jp2", "P.SAFE/IMG/B02.img"}) {
+                byte[] expected = name.endsWith(".jp2") ? storedBand : deflatedBand;
+                try (ZipArchive.EntryInputStream in = archive.openEntry(archive.getEntry(name))) {
+                    assertEquals(expected.length, in.length());
+                    in.seek(150000);
+                    assertEquals(expected[150000] & 0xff, in.read());
+                    in.seek(10);
+                    byte[] buffer = new byte[100];
+                    assertEquals(100, in.read(buffer));
+                    assertArrayEquals(Arrays.copyOfRange(expected, 10, 110), buffer);
+                    assertEquals(110, in.getPos());
+                    in.seek(expected.length);
+                    assertEquals(-1, in.read());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testZip64() throws Exception {
+        File file = new File(testDir, "many.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < 70000; i++) {
+                out.putNextEntry(new ZipEntry("e" + i));
+                out.write(("entry " + i).getBytes("UTF-8"));
+                out.closeEntry();
+            }
+        }
+        try (ZipArchive archive = ZipArchive.open(new Path(file.toURI()), new Configuration())) {
+            assertEquals(70000, archive.getEntries().size());
+            assertArrayEquals("entry 69999".getBytes("UTF-8"), readFully(archive.openEntry(archive.getEntry("e69999"))));
+        }
+    }
+
+    @Test
+    public void testNoZip() throws Exception {
+        File file = new File(testDir, "no.zip");
+        Files.write(file.toPath(), storedBand);
+        try {
+            ZipArchive.open(new Path(file.toURI()), new Configuration());
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("no zip archive"));
+        }
+    }
+
+    private Path writeProductZip() throws IOException {
+        File file = new File(testDir, "P.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            out.putNextEntry(new ZipEntry("P.SAFE/"));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("P.SAFE/MTD.xml"));
+            out.write(metadata);
+            out.closeEntry();
+            ZipEntry stored = new ZipEntry("P.SAFE/IMG/B01.jp2");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(storedBand.length);
+            CRC32 crc = new CRC32();
+            crc.update(storedBand);
+            stored.setCrc(crc.getValue());
+            out.putNextEntry(stored);
+            out.write(storedBand);
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("P.SAFE/IMG/B02.img"));
+            out.write(deflatedBand);
+            out.closeEntry();
+        }
+        return new Path(file.toURI());
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try (InputStream entryIn = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = entryIn.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
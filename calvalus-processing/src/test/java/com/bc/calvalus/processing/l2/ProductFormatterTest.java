@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l2;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.esa.snap.core.dataio.AbstractProductWriter;
+import org.esa.snap.core.dataio.EncodeQualification;
+import org.esa.snap.core.dataio.ProductIOPlugInManager;
+import org.esa.snap.core.dataio.ProductWriter;
+import org.esa.snap.core.dataio.ProductWriterPlugIn;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.util.io.SnapFileFilter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProductFormatterTest {
+
+    private static final String FORMAT_NAME = "PRODUCT-FORMATTER-TEST";
+
+    private final TestWriterPlugIn writerPlugIn = new TestWriterPlugIn();
+    private File testDir;
+
+    @Before
+    public void setUp() throws Exception {
+        testDir = Files.createTempDirectory("ProductFormatterTest").toFile();
+        ProductIOPlugInManager.getInstance().addWriterPlugIn(writerPlugIn);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ProductIOPlugInManager.getInstance().removeWriterPlugIn(writerPlugIn);
+        FileUtil.fullyDelete(testDir);
+    }
+
+    @Test
+    public void testStreamedProductEqualsCopiedProduct() throws Exception {
+        ProductFormatter productFormatter = new ProductFormatter("test", FORMAT_NAME, "");
+        assertTrue(productFormatter.isStreamingSupported());
+        assertEquals("test.bin", productFormatter.getOutputFilename());
+
+        assertArrayEquals(writeViaTempFile(productFormatter), stream(productFormatter));
+    }
+
+    @Test
+    public void testStreamedProductEqualsCopiedProduct_gz() throws Exception {
+        ProductFormatter productFormatter = new ProductFormatter("test", FORMAT_NAME, "gz");
+        assertTrue(productFormatter.isStreamingSupported());
+        assertEquals("test.bin.gz", productFormatter.getOutputFilename());
+
+        assertArrayEquals(gunzip(writeViaTempFile(productFormatter)), gunzip(stream(productFormatter)));
+    }
+
+    @Test
+    public void testStreamedProductEqualsCopiedProduct_zip() throws Exception {
+        ProductFormatter productFormatter = new ProductFormatter("test", FORMAT_NAME, "zip");
+        assertTrue(productFormatter.isStreamingSupported());
+        assertEquals("test.zip", productFormatter.getOutputFilename());
+
+        Map<String, byte[]> expected = unzip(writeViaTempFile(productFormatter));
+        Map<String, byte[]> actual = unzip(stream(productFormatter));
+        assertEquals(expected.keySet(), actual.keySet());
+        assertNotNull(actual.get("test.bin"));
+        for (String entryName : expected.keySet()) {
+            assertArrayEquals(entryName, expected.get(entryName), actual.get(entryName));
+        }
+    }
+
+    @Test
+    public void testCompressedDirectoryIsNotStreamed() {
+        assertFalse(new ProductFormatter("test", FORMAT_NAME, "dir2").isStreamingSupported());
+    }
+
+    private byte[] stream(ProductFormatter productFormatter) throws Exception {
+        TestContext context = new TestContext(new File(testDir, "streamed"));
+        productFormatter.writeProductToHDFS(context.mapContext, createProduct(), true, ProgressMonitor.NULL);
+        assertEquals(1, context.getCounterValue("Product output streamed"));
+        assertNull(context.reporter.counters.getGroup("Products").findCounter("Product output via temp file", false));
+        return context.readOutput(productFormatter.getOutputFilename());
+    }
+
+    private byte[] writeViaTempFile(ProductFormatter productFormatter) throws Exception {
+        TestContext context = new TestContext(new File(testDir, "copied"));
+        try {
+            productFormatter.writeProductToHDFS(context.mapContext, createProduct(), false, ProgressMonitor.NULL);
+        } finally {
+            productFormatter.cleanupTempDir();
+        }
+        assertEquals(1, context.getCounterValue("Product output via temp file"));
+        return context.readOutput(productFormatter.getOutputFilename());
+    }
+
+    private static Product createProduct() {
+        Product product = new Product("test", "test", 12, 10);
+        for (int b = 0; b < 2; b++) {
+            Band band = new Band("band_" + b, ProductData.TYPE_FLOAT32, 12, 10);
+            float[] data = new float[12 * 10];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = b * 1000 + i * 0.5f;
+            }
+            band.setRasterData(new ProductData.Float(data));
+            product.addBand(band);
+        }
+        return product;
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws IOException {
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return readFully(inputStream);
+        }
+    }
+
+    private static Map<String, byte[]> unzip(byte[] bytes) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream inputStream = new ZipInputStream(new ByteArrayInputStream(bytes))) {
+            ZipEntry entry;
+            while ((entry = inputStream.getNextEntry()) != null) {
+                entries.put(entry.getName(), readFully(inputStream));
+            }
+        }
+        return entries;
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = inputStream.read(buffer)) > 0) {
+            outputStream.write(buffer, 0, n);
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * A map context with a file output committer on the local file system and counters.
+     */
+    private static class TestContext {
+
+        private final TestReporter reporter = new TestReporter();
+        private final FileOutputCommitter committer;
+        private final MapContextImpl<Object, Object, Object, Object> mapContext;
+
+        TestContext(File outputDir) throws IOException {
+            Configuration conf = new Configuration();
+            TaskAttemptID taskAttemptID = new TaskAttemptID("test", 1, TaskType.MAP, 0, 0);
+            committer = new FileOutputCommitter(new Path(outputDir.toURI()), new TaskAttemptContextImpl(conf, taskAttemptID));
+            mapContext = new MapContextImpl<>(conf, taskAttemptID, null, null, committer, reporter, null);
+        }
+
+        long getCounterValue(String name) {
+            return reporter.getCounter("Products", name).getValue();
+        }
+
+        byte[] readOutput(String filename) throws IOException {
+            File file = new File(committer.getWorkPath().toUri().getPath(), filename);
+            try (InputStream inputStream = new FileInputStream(file)) {
+                return readFully(inputStream);
+            }
+        }
+    }
+
+    private static class TestReporter extends StatusReporter {
+
+        private final Counters counters = new Counters();
+
+        @Override
+        public Counter getCounter(Enum<?> name) {
+            return counters.findCounter(name);
+        }
+
+        @Override
+        public Counter getCounter(String group, String name) {
+            return counters.findCounter(group, name);
+        }
+
+        @Override
+        public void progress() {
+        }
+
+        @Override
+        public float getProgress() {
+            return 0;
+        }
+
+        @Override
+        public void setStatus(String status) {
+        }
+    }
+
+    /**
+     * A writer accepting files and output streams. The bands are written in the order of the product
+     * when the writer is closed, the output does not depend on the order of the tiles.
+     */
+    private static class TestWriter extends AbstractProductWriter {
+
+        private final Map<Band, float[]> bandData = new LinkedHashMap<>();
+
+        TestWriter(ProductWriterPlugIn writerPlugIn) {
+            super(writerPlugIn);
+        }
+
+        @Override
+        protected void writeProductNodesImpl() {
+            for (Band band : getSourceProduct().getBands()) {
+                bandData.put(band, new float[band.getRasterWidth() * band.getRasterHeight()]);
+            }
+        }
+
+        @Override
+        public void writeBandRasterData(Band band, int offsetX, int offsetY, int width, int height,
+                                        ProductData data, ProgressMonitor pm) {
+            float[] values = bandData.get(band);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    values[(offsetY + y) * band.getRasterWidth() + offsetX + x] = data.getElemFloatAt(y * width + x);
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (bandData.isEmpty()) {
+                return;
+            }
+            Object output = getOutput();
+            OutputStream outputStream = output instanceof OutputStream ? (OutputStream) output : new FileOutputStream(output.toString());
+            DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+            dataOutputStream.writeUTF(getSourceProduct().getName());
+            for (Map.Entry<Band, float[]> entry : bandData.entrySet()) {
+                dataOutputStream.writeUTF(entry.getKey().getName());
+                for (float value : entry.getValue()) {
+                    dataOutputStream.writeFloat(value);
+                }
+            }
+            dataOutputStream.flush();
+            if (outputStream != output) {
+                outputStream.close();
+            }
+            bandData.clear();
+        }
+
+        @Override
+        public void deleteOutput() {
+        }
+    }
+
+    private static class TestWriterPlugIn implements ProductWriterPlugIn {
+
+        @Override
+        public EncodeQualification getEncodeQualification(Product product) {
+            return EncodeQualification.FULL;
+        }
+
+        @Override
+        public Class[] getOutputTypes() {
+            return new Class[]{String.class, File.class, OutputStream.class};
+        }
+
+        @Override
+        public ProductWriter createWriterInstance() {
+            return new TestWriter(this);
+        }
+
+        @Override
+        public String[] getFormatNames() {
+            return new String[]{FORMAT_NAME};
+        }
+
+        @Override
+        public String[] getDefaultFileExtensions() {
+            return new String[]{".bin"};
+        }
+
+        @Override
+        public String getDescription(Locale locale) {
+            return "ProductFormatter test format";
+        }
+
+        @Override
+        public SnapFileFilter getProductFileFilter() {
+            return null;
+        }
+    }
+}
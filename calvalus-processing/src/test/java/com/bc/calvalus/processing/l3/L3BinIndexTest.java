@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l3;
+
+import com.bc.calvalus.processing.JobConfigNames;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileRecordReader;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.esa.snap.binning.PlanetaryGrid;
+import org.esa.snap.binning.operator.BinningConfig;
+import org.esa.snap.binning.support.SEAGrid;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class L3BinIndexTest {
+
+    private static final int NUM_ROWS = 180;
+
+    private File testDir;
+    private Configuration conf;
+    private PlanetaryGrid planetaryGrid;
+
+    @Before
+    public void setUp() throws Exception {
+        testDir = Files.createTempDirectory("L3BinIndexTest").toFile();
+        conf = new Configuration();
+        BinningConfig binningConfig = new BinningConfig();
+        binningConfig.setNumRows(NUM_ROWS);
+        conf.set(JobConfigNames.CALVALUS_L3_PARAMETERS, binningConfig.toXml());
+        conf.setLong(JobConfigNames.CALVALUS_L3_BIN_INDEX_RANGE_SIZE, 1024);
+        planetaryGrid = new SEAGrid(NUM_ROWS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.fullyDelete(testDir);
+    }
+
+    @Test
+    public void testGetByteRanges() {
+        L3BinIndex binIndex = new L3BinIndex(new long[]{0, 100, 200, 300}, new long[]{10, 1000, 2000, 3000});
+
+        assertByteRanges(binIndex.getByteRanges(new long[]{120, 130}, 4000), 1000, 2000);
+        assertByteRanges(binIndex.getByteRanges(new long[]{50, 250}, 4000), 10, 3000);
+        assertByteRanges(binIndex.getByteRanges(new long[]{0, 10, 350, 360}, 4000), 10, 1000, 3000, 4000);
+        assertByteRanges(binIndex.getByteRanges(new long[]{100, 200}, 4000), 1000, 2000);
+        assertByteRanges(binIndex.getByteRanges(new long[0], 4000));
+    }
+
+    @Test
+    public void testGetBinRanges() {
+        long[] binRanges = L3BinIndex.getBinRanges(planetaryGrid, new int[]{-1, 3, 10}, new int[]{1, 5, 9});
+        assertArrayEquals(new long[]{0, planetaryGrid.getFirstBinIndex(2),
+                planetaryGrid.getFirstBinIndex(3), planetaryGrid.getFirstBinIndex(6)}, binRanges);
+    }
+
+    @Test
+    public void testReadRegionOnly() throws Exception {
+        Path partPath = writePart();
+        assertTrue(new File(L3BinIndex.getIndexPath(partPath).toUri()).exists());
+        L3BinIndex binIndex = L3BinIndex.read(partPath, conf);
+        assertNotNull(binIndex);
+        assertTrue(binIndex.getNumRanges() > 10);
+
+        Set<Long> allBins = readBins(partPath.getParent(), null);
+        Set<Long> regionBins = readBins(partPath.getParent(), "POLYGON((0 10, 10 10, 10 20, 0 20, 0 10))");
+
+        assertEquals(countBins(), allBins.size());
+        assertTrue(regionBins.size() < allBins.size() / 4);
+        for (long bin : allBins) {
+            double lat = planetaryGrid.getCenterLatLon(bin)[0];
+            if (lat > 10.0 && lat < 20.0) {
+                assertTrue("missing bin " + bin, regionBins.contains(bin));
+            }
+        }
+    }
+
+    private Path writePart() throws Exception {
+        conf.set(FileOutputFormat.OUTDIR, new File(testDir, "out").toURI().toString());
+        TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID("test", 1, TaskType.REDUCE, 0, 0));
+        L3BinIndexOutputFormat outputFormat = new L3BinIndexOutputFormat();
+        RecordWriter<LongWritable, L3TemporalBin> writer = outputFormat.getRecordWriter(context);
+        LongWritable key = new LongWritable();
+        for (long bin = 0; bin < planetaryGrid.getNumBins(); bin += 3) {
+            L3TemporalBin temporalBin = new L3TemporalBin(bin, 2);
+            temporalBin.setNumObs(1);
+            temporalBin.getFeatureValues()[0] = bin;
+            key.set(bin);
+            writer.write(key, temporalBin);
+        }
+        writer.close(context);
+        return outputFormat.getDefaultWorkFile(context, "");
+    }
+
+    private long countBins() {
+        return (planetaryGrid.getNumBins() + 2) / 3;
+    }
+
+    private Set<Long> readBins(Path partDir, String regionWkt) throws Exception {
+        Job job = Job.getInstance(conf);
+        FileInputFormat.setInputPaths(job, partDir);
+        if (regionWkt != null) {
+            job.getConfiguration().set(JobConfigNames.CALVALUS_L3_BIN_INDEX_REGION, regionWkt);
+        }
+        List<InputSplit> splits = new L3BinIndexInputFormat().getSplits(job);
+        Set<Long> bins = new TreeSet<>();
+        for (InputSplit split : splits) {
+            try (SequenceFileRecordReader<LongWritable, L3TemporalBin> reader = new SequenceFileRecordReader<>()) {
+                reader.initialize(split, new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID()));
+                while (reader.nextKeyValue()) {
+                    long bin = reader.getCurrentKey().get();
+                    assertEquals(bin, reader.getCurrentValue().getFeatureValues()[0], 0.0f);
+                    assertTrue("bin read twice " + bin, bins.add(bin));
+                }
+            }
+        }
+        return bins;
+    }
+
+    private static void assertByteRanges(List<long[]> byteRanges, long... expected) {
+        assertEquals(expected.length / 2, byteRanges.size());
+        for (int i = 0; i < byteRanges.size(); i++) {
+            assertEquals(expected[2 * i], byteRanges.get(i)[0]);
+            assertEquals(expected[2 * i + 1], byteRanges.get(i)[1]);
+        }
+    }
+}
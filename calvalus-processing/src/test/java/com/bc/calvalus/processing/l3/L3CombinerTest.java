@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l3;
+
+import org.esa.snap.binning.AggregatorConfig;
+import org.esa.snap.binning.AggregatorDescriptor;
+import org.esa.snap.binning.TemporalBin;
+import org.esa.snap.binning.TemporalBinner;
+import org.esa.snap.binning.aggregators.AggregatorAverage;
+import org.esa.snap.binning.aggregators.AggregatorMinMax;
+import org.esa.snap.binning.aggregators.AggregatorPercentile;
+import org.esa.snap.binning.operator.BinningConfig;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class L3CombinerTest {
+
+    @Test
+    public void testIsApplicable() {
+        assertTrue(L3Combiner.isApplicable(createL3Config(new AggregatorAverage.Descriptor(), new AggregatorMinMax.Descriptor())));
+        assertFalse(L3Combiner.isApplicable(createL3Config(new AggregatorAverage.Descriptor(), new AggregatorPercentile.Descriptor())));
+    }
+
+    @Test
+    public void testMerge() {
+        BinningConfig binningConfig = createL3Config(new AggregatorAverage.Descriptor(), new AggregatorMinMax.Descriptor());
+        L3Combiner.SpatialBinMerger merger = new L3Combiner.SpatialBinMerger(binningConfig.createAggregators(binningConfig.createVariableContext()));
+
+        L3SpatialBin target = createSBin(2, 0.2f, 0.05f, 0.1f, 0.3f);
+        merger.merge(createSBin(6, 0.4f, 0.17f, 0.35f, 0.45f), target);
+
+        assertEquals(8, target.getNumObs());
+        float[] featureValues = target.getFeatureValues();
+        assertEquals(0.35f, featureValues[0], 1e-5f);
+        assertEquals(0.14f, featureValues[1], 1e-5f);
+        assertEquals(0.1f, featureValues[2], 1e-5f);
+        assertEquals(0.45f, featureValues[3], 1e-5f);
+    }
+
+    @Test
+    public void testCopyOf() {
+        L3SpatialBin spatialBin = createSBin(3, 0.5f, 0.25f);
+        L3SpatialBin copy = L3Combiner.copyOf(42, spatialBin);
+        spatialBin.getFeatureValues()[0] = 0.0f;
+
+        assertEquals(42, copy.getIndex());
+        assertEquals(3, copy.getNumObs());
+        assertArrayEquals(new float[]{0.5f, 0.25f}, copy.getFeatureValues(), 1e-6f);
+    }
+
+    @Test
+    public void testTemporalBinsWithAndWithoutCombiner() {
+        BinningConfig binningConfig = createL3Config(new AggregatorAverage.Descriptor(), new AggregatorMinMax.Descriptor());
+        List<L3SpatialBin> spatialBins = Arrays.asList(createPassBin(1, 2, 0.2f, 0.05f, 0.1f, 0.3f),
+                                                       createPassBin(2, 6, 0.4f, 0.17f, 0.35f, 0.45f),
+                                                       createPassBin(3, 3, 0.3f, 0.1f, 0.2f, 0.4f),
+                                                       createPassBin(L3SpatialBin.NO_PASS_ID, 4, 0.5f, 0.26f, 0.45f, 0.55f),
+                                                       createPassBin(L3SpatialBin.NO_PASS_ID, 5, 0.1f, 0.02f, 0.05f, 0.15f));
+
+        List<L3SpatialBin> combinedBins = combine(binningConfig, spatialBins);
+
+        assertEquals(5, combinedBins.size());
+        assertTemporalBinEquals(binningConfig, spatialBins, combinedBins);
+    }
+
+    @Test
+    public void testCombinerMergesPartsOfOnePass() {
+        BinningConfig binningConfig = createL3Config(new AggregatorAverage.Descriptor(), new AggregatorMinMax.Descriptor());
+        List<L3SpatialBin> parts = Arrays.asList(createPassBin(1, 2, 0.2f, 0.05f, 0.1f, 0.3f),
+                                                 createPassBin(2, 3, 0.3f, 0.1f, 0.2f, 0.4f),
+                                                 createPassBin(1, 6, 0.4f, 0.17f, 0.35f, 0.45f));
+        // the spatial bins of the two passes as if the first one had been emitted in one part
+        List<L3SpatialBin> passes = Arrays.asList(createPassBin(1, 8, 0.35f, 0.14f, 0.1f, 0.45f),
+                                                  createPassBin(2, 3, 0.3f, 0.1f, 0.2f, 0.4f));
+
+        List<L3SpatialBin> combinedBins = combine(binningConfig, parts);
+
+        assertEquals(2, combinedBins.size());
+        assertEquals(1, combinedBins.get(0).getPassId());
+        assertEquals(2, combinedBins.get(1).getPassId());
+        assertTemporalBinEquals(binningConfig, passes, combinedBins);
+    }
+
+    private static List<L3SpatialBin> combine(BinningConfig binningConfig, List<L3SpatialBin> spatialBins) {
+        L3Combiner combiner = new L3Combiner(new L3Combiner.SpatialBinMerger(binningConfig.createAggregators(binningConfig.createVariableContext())));
+        List<L3SpatialBin> combinedBins = new ArrayList<>();
+        for (L3SpatialBin spatialBin : spatialBins) {
+            combiner.combine(42, spatialBin, combinedBins);
+        }
+        return combinedBins;
+    }
+
+    private static void assertTemporalBinEquals(BinningConfig binningConfig, List<L3SpatialBin> expectedSpatialBins, List<L3SpatialBin> actualSpatialBins) {
+        TemporalBinner temporalBinner = new TemporalBinner(HadoopBinManager.createBinningContext(binningConfig, null, null));
+        TemporalBin expected = temporalBinner.processSpatialBins(42, expectedSpatialBins);
+        TemporalBin actual = temporalBinner.processSpatialBins(42, actualSpatialBins);
+
+        assertEquals(expected.getNumObs(), actual.getNumObs());
+        assertEquals(expected.getNumPasses(), actual.getNumPasses());
+        assertArrayEquals(expected.getFeatureValues(), actual.getFeatureValues(), 1e-5f);
+    }
+
+    private static L3SpatialBin createPassBin(int passId, int numObs, float... values) {
+        L3SpatialBin sBin = createSBin(numObs, values);
+        sBin.setPassId(passId);
+        return sBin;
+    }
+
+    private static L3SpatialBin createSBin(int numObs, float... values) {
+        L3SpatialBin sBin = new L3SpatialBin(0, values.length, 0);
+        sBin.setNumObs(numObs);
+        System.arraycopy(values, 0, sBin.getFeatureValues(), 0, values.length);
+        return sBin;
+    }
+
+    private static BinningConfig createL3Config(AggregatorDescriptor... descriptors) {
+        BinningConfig binningConfig = new BinningConfig();
+        binningConfig.setNumRows(2160);
+        AggregatorConfig[] aggregatorConfigs = new AggregatorConfig[descriptors.length];
+        for (int i = 0; i < descriptors.length; i++) {
+            aggregatorConfigs[i] = descriptors[i].createConfig();
+            aggregatorConfigs[i].asPropertySet().setValue("varName", "chl_conc");
+        }
+        binningConfig.setAggregatorConfigs(aggregatorConfigs);
+        return binningConfig;
+    }
+}
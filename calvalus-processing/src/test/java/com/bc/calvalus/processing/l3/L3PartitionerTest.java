@@ -143,9 +143,36 @@ public class L3PartitionerTest {
 
     }
 
+    @Test
+    public void test6Rows3PartitionsWithStartRows() {
+        L3Partitioner l3Partitioner = createPartitioner(6, "", "2,4");
+        int numPartitions = 3;
+
+        //rows 1 and 2
+        assertEquals(0, l3Partitioner.getPartition(new LongWritable(0), null, numPartitions));
+        assertEquals(0, l3Partitioner.getPartition(new LongWritable(3 + 8 - 1), null, numPartitions));
+        //rows 3 and 4
+        assertEquals(1, l3Partitioner.getPartition(new LongWritable(3 + 8), null, numPartitions));
+        assertEquals(1, l3Partitioner.getPartition(new LongWritable(3 + 8 + 12 + 12 - 1), null, numPartitions));
+        //rows 5 and 6
+        assertEquals(2, l3Partitioner.getPartition(new LongWritable(3 + 8 + 12 + 12), null, numPartitions));
+        assertEquals(2, l3Partitioner.getPartition(new LongWritable(3 + 8 + 12 + 12 + 8 + 3 - 1), null, numPartitions));
+        //metadata
+        assertEquals(0, l3Partitioner.getPartition(new LongWritable(-1), null, numPartitions));
+        // start rows not matching the number of partitions are ignored
+        assertEquals(1, l3Partitioner.getPartition(new LongWritable(3 + 8 + 12 + 12), null, 2));
+    }
+
     private static L3Partitioner createPartitioner(int numRows, String wkt) {
+        return createPartitioner(numRows, wkt, null);
+    }
+
+    private static L3Partitioner createPartitioner(int numRows, String wkt, String startRows) {
         L3Partitioner l3Partitioner = new L3Partitioner();
         Configuration configuration = new Configuration();
+        if (startRows != null) {
+            configuration.set(JobConfigNames.CALVALUS_L3_PARTITION_START_ROWS, startRows);
+        }
 
         BinningConfig l3Config = new BinningConfig();
         l3Config.setNumRows(numRows);
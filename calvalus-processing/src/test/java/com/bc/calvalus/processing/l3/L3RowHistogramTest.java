@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l3;
+
+import org.esa.snap.binning.support.SEAGrid;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class L3RowHistogramTest {
+
+    @Test
+    public void testFromGrid() {
+        L3RowHistogram histogram = L3RowHistogram.fromGrid(new SEAGrid(6));
+        assertEquals(6, histogram.getNumRows());
+        assertEquals(3, histogram.getBins(0));
+        assertEquals(8, histogram.getBins(1));
+        assertEquals(12, histogram.getBins(2));
+        assertEquals(12, histogram.getBins(3));
+        assertEquals(8, histogram.getBins(4));
+        assertEquals(3, histogram.getBins(5));
+    }
+
+    @Test
+    public void testComputePartitionStartRows() {
+        L3RowHistogram histogram = createHistogram(3, 8, 12, 12, 8, 3);
+        assertArrayEquals(new int[]{3}, histogram.computePartitionStartRows(0, 6, 2));
+        assertArrayEquals(new int[]{2, 4}, histogram.computePartitionStartRows(0, 6, 3));
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5}, histogram.computePartitionStartRows(0, 6, 6));
+        assertArrayEquals(new int[]{3}, histogram.computePartitionStartRows(1, 4, 2));
+        assertNull(histogram.computePartitionStartRows(0, 6, 7));
+        assertNull(histogram.computePartitionStartRows(0, 6, 1));
+    }
+
+    @Test
+    public void testComputePartitionStartRows_unevenCoverage() {
+        L3RowHistogram histogram = createHistogram(1, 1, 1, 1, 1, 1, 40, 40, 1, 1);
+        assertArrayEquals(new int[]{7}, histogram.computePartitionStartRows(0, 10, 2));
+        assertNull(createHistogram(0, 0, 0, 0).computePartitionStartRows(0, 4, 2));
+    }
+
+    private static L3RowHistogram createHistogram(long... binsPerRow) {
+        L3RowHistogram histogram = new L3RowHistogram(binsPerRow.length);
+        for (int row = 0; row < binsPerRow.length; row++) {
+            histogram.add(row, binsPerRow[row]);
+        }
+        return histogram;
+    }
+}
@@ -18,6 +18,8 @@ package com.bc.calvalus.processing.l3;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -25,6 +27,7 @@ import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class L3SpatialBinTest {
 
@@ -44,4 +47,45 @@ public class L3SpatialBinTest {
         assertEquals(metadata.length(), l3SpatialBin1.getMetadata().length());
         assertEquals(metadata, l3SpatialBin1.getMetadata());
     }
+
+    @Test
+    public void testCompactEncoding() throws IOException {
+        L3SpatialBin spatialBin = new L3SpatialBin(17, 3, 0);
+        spatialBin.setNumObs(5);
+        spatialBin.getFeatureValues()[0] = 0.123456f;
+        spatialBin.getFeatureValues()[1] = 2.5f;
+        spatialBin.getFeatureValues()[2] = Float.NaN;
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        spatialBin.write(new DataOutputStream(output));
+        // 1 byte numObs, 1 byte feature header, 3 floats, 1 byte vector count
+        assertEquals(1 + 1 + 3 * 4 + 1, output.size());
+        L3SpatialBin readBin = (L3SpatialBin) L3SpatialBin.read(new DataInputStream(new ByteArrayInputStream(output.toByteArray())));
+        assertEquals(5, readBin.getNumObs());
+        assertEquals(0.123456f, readBin.getFeatureValues()[0], 0.0f);
+        assertEquals(2.5f, readBin.getFeatureValues()[1], 0.0f);
+        assertTrue(Float.isNaN(readBin.getFeatureValues()[2]));
+
+        spatialBin.setHalfFeatures(new boolean[]{true, false, true});
+        output = new ByteArrayOutputStream();
+        spatialBin.write(new DataOutputStream(output));
+        // 1 byte numObs, 1 byte feature header, 1 byte half mask, 2 half floats, 1 float, 1 byte vector count
+        assertEquals(1 + 1 + 1 + 2 * 2 + 4 + 1, output.size());
+        readBin = (L3SpatialBin) L3SpatialBin.read(new DataInputStream(new ByteArrayInputStream(output.toByteArray())));
+        assertEquals(5, readBin.getNumObs());
+        assertEquals(0.123456f, readBin.getFeatureValues()[0], 1e-4f);
+        assertEquals(2.5f, readBin.getFeatureValues()[1], 0.0f);
+        assertTrue(Float.isNaN(readBin.getFeatureValues()[2]));
+        assertEquals(L3SpatialBin.NO_PASS_ID, readBin.getPassId());
+
+        spatialBin.setPassId(7);
+        output = new ByteArrayOutputStream();
+        spatialBin.write(new DataOutputStream(output));
+        // 1 more byte for the pass id
+        assertEquals(1 + 1 + 1 + 1 + 2 * 2 + 4 + 1, output.size());
+        readBin = (L3SpatialBin) L3SpatialBin.read(new DataInputStream(new ByteArrayInputStream(output.toByteArray())));
+        assertEquals(7, readBin.getPassId());
+        assertEquals(5, readBin.getNumObs());
+        assertEquals(2.5f, readBin.getFeatureValues()[1], 0.0f);
+    }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l3;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.binning.AggregatorConfig;
+import org.esa.snap.binning.BinningContext;
+import org.esa.snap.binning.SpatialBin;
+import org.esa.snap.binning.SpatialBinner;
+import org.esa.snap.binning.aggregators.AggregatorAverage;
+import org.esa.snap.binning.operator.BinningConfig;
+import org.esa.snap.binning.operator.SpatialProductBinner;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Test;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ParallelProductBinnerTest {
+
+    @Test
+    public void testParallelBinningEqualsSequentialBinning() throws Exception {
+        BinningConfig binningConfig = createL3Config();
+
+        List<SpatialBin> sequentialBins = new ArrayList<>();
+        BinningContext binningContext = HadoopBinManager.createBinningContext(binningConfig, null, null);
+        SpatialBinner spatialBinner = new SpatialBinner(binningContext, (context, bins) -> sequentialBins.addAll(bins));
+        long sequentialNumObs = SpatialProductBinner.processProduct(createProduct(), spatialBinner, new HashMap<>(), ProgressMonitor.NULL);
+
+        List<SpatialBin> parallelBins = new ArrayList<>();
+        ParallelProductBinner parallelBinner = new ParallelProductBinner(binningConfig, null, null, 3);
+        long parallelNumObs;
+        try {
+            parallelNumObs = parallelBinner.processProduct(createProduct(), (context, bins) -> parallelBins.addAll(bins), ProgressMonitor.NULL);
+        } finally {
+            parallelBinner.dispose();
+        }
+
+        assertEquals(0, parallelBinner.getExceptions().length);
+        assertEquals(sequentialNumObs, parallelNumObs);
+        assertEquals(sequentialBins.size(), parallelBins.size());
+        Comparator<SpatialBin> binOrder = Comparator.comparingLong(SpatialBin::getIndex).thenComparingInt(SpatialBin::getNumObs);
+        sequentialBins.sort(binOrder);
+        parallelBins.sort(binOrder);
+        for (int i = 0; i < sequentialBins.size(); i++) {
+            SpatialBin expected = sequentialBins.get(i);
+            SpatialBin actual = parallelBins.get(i);
+            assertEquals(expected.getIndex(), actual.getIndex());
+            assertEquals(expected.getNumObs(), actual.getNumObs());
+            assertArrayEquals(expected.getFeatureValues(), actual.getFeatureValues(), 1e-4f);
+        }
+    }
+
+    @Test
+    public void testIsSplittable() {
+        assertTrue(ParallelProductBinner.isSplittable(createProduct()));
+        Product product = new Product("small", "test", 8, 100);
+        product.setPreferredTileSize(new Dimension(8, 64));
+        assertFalse(ParallelProductBinner.isSplittable(product));
+    }
+
+    private static Product createProduct() {
+        int width = 16;
+        int height = 512;
+        Product product = new Product("test", "test", width, height);
+        product.setPreferredTileSize(new Dimension(width, 64));
+        try {
+            product.setSceneGeoCoding(new CrsGeoCoding(DefaultGeographicCRS.WGS84, width, height, 10.0, 60.0, 0.05, 0.05));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        float[] data = new float[width * height];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = 0.1f + (i % 17) * 0.01f;
+        }
+        Band band = product.addBand("chl_conc", ProductData.TYPE_FLOAT32);
+        band.setRasterData(ProductData.createInstance(data));
+        return product;
+    }
+
+    private static BinningConfig createL3Config() {
+        BinningConfig binningConfig = new BinningConfig();
+        binningConfig.setNumRows(2160);
+        binningConfig.setSuperSampling(1);
+        binningConfig.setMaskExpr("");
+        AggregatorConfig aggConf = new AggregatorAverage.Descriptor().createConfig();
+        aggConf.asPropertySet().setValue("varName", "chl_conc");
+        binningConfig.setAggregatorConfigs(aggConf);
+        return binningConfig;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l3.multiregion;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import org.esa.snap.binning.PlanetaryGrid;
+import org.esa.snap.binning.support.SEAGrid;
+
+import java.util.Random;
+
+/**
+ * Compares the time of testing the bins of a global grid against all regions
+ * with testing them against the candidates of a {@link L3MultiRegionLookup}, for 10, 100 and 1000 regions.
+ * Not a unit test, run it with a main method.
+ */
+public class L3MultiRegionLookupBenchmark {
+
+    public static void main(String[] args) {
+        int numRuns = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int numGridRows = args.length > 1 ? Integer.parseInt(args[1]) : 2160;
+        PlanetaryGrid planetaryGrid = new SEAGrid(numGridRows);
+        GeometryFactory geometryFactory = new GeometryFactory();
+
+        for (int numRegions : new int[]{10, 100, 1000}) {
+            Geometry[] geometries = L3MultiRegionLookupTest.createRegions(numRegions, new Random(numRegions));
+            for (int run = 0; run < numRuns; run++) {
+                long t0 = System.nanoTime();
+                long numContainedAll = 0;
+                for (long binIndex = 0; binIndex < planetaryGrid.getNumBins(); binIndex++) {
+                    double[] centerLatLon = planetaryGrid.getCenterLatLon(binIndex);
+                    Point point = geometryFactory.createPoint(new Coordinate(centerLatLon[1], centerLatLon[0]));
+                    for (Geometry geometry : geometries) {
+                        if (geometry.contains(point)) {
+                            numContainedAll++;
+                        }
+                    }
+                }
+                long t1 = System.nanoTime();
+                L3MultiRegionLookup regionLookup = new L3MultiRegionLookup(geometries);
+                long t2 = System.nanoTime();
+                long numContainedLookup = 0;
+                for (long binIndex = 0; binIndex < planetaryGrid.getNumBins(); binIndex++) {
+                    double[] centerLatLon = planetaryGrid.getCenterLatLon(binIndex);
+                    for (int regionId : regionLookup.getCandidates(centerLatLon[0], centerLatLon[1])) {
+                        if (regionLookup.contains(regionId, centerLatLon[0], centerLatLon[1])) {
+                            numContainedLookup++;
+                        }
+                    }
+                }
+                long t3 = System.nanoTime();
+
+                System.out.printf("%4d regions run %d: %d bins in regions  all regions %9.1f ms  build lookup %6.1f ms  lookup %8.1f ms%n",
+                                  numRegions, run, numContainedLookup, (t1 - t0) / 1e6, (t2 - t1) / 1e6, (t3 - t2) / 1e6);
+                if (numContainedAll != numContainedLookup) {
+                    throw new IllegalStateException("lookup differs from testing all regions: " + numContainedLookup + " != " + numContainedAll);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.l3.multiregion;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class L3MultiRegionLookupTest {
+
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    @Test
+    public void testSameRegionsAsGeometryContains() {
+        Geometry[] geometries = createRegions(300, new Random(17));
+        L3MultiRegionLookup regionLookup = new L3MultiRegionLookup(geometries);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            double lat;
+            double lon;
+            if (i % 4 == 0) {
+                // a point on the boundary of a region
+                Envelope envelope = geometries[random.nextInt(geometries.length)].getEnvelopeInternal();
+                lat = random.nextBoolean() ? envelope.getMinY() : envelope.getMaxY();
+                lon = envelope.getMinX() + random.nextDouble() * envelope.getWidth();
+            } else {
+                lat = -90.0 + 180.0 * random.nextDouble();
+                lon = -180.0 + 360.0 * random.nextDouble();
+            }
+            assertEquals("at " + lat + "," + lon, getContainingRegions(geometries, lat, lon),
+                         getContainingRegions(regionLookup, lat, lon));
+        }
+    }
+
+    @Test
+    public void testDegenerateRegions() {
+        Geometry[] geometries = {
+                GEOMETRY_FACTORY.toGeometry(new Envelope(10.0, 20.0, 45.0, 45.0)),
+                GEOMETRY_FACTORY.toGeometry(new Envelope(10.0, 20.0, 40.0, 50.0)),
+        };
+        L3MultiRegionLookup regionLookup = new L3MultiRegionLookup(geometries);
+
+        for (double lat : new double[]{40.0, 42.5, 45.0, 50.0}) {
+            for (double lon : new double[]{5.0, 10.0, 15.0, 20.0}) {
+                assertEquals(getContainingRegions(geometries, lat, lon), getContainingRegions(regionLookup, lat, lon));
+            }
+        }
+        assertEquals(2, getContainingRegions(regionLookup, 45.0, 15.0).size());
+    }
+
+    @Test
+    public void testNoRegions() {
+        L3MultiRegionLookup regionLookup = new L3MultiRegionLookup(new Geometry[0]);
+        assertEquals(0, regionLookup.getCandidates(0.0, 0.0).length);
+    }
+
+    @Test
+    public void testNumCellsIsBounded() {
+        Geometry[] geometries = createRegions(1000, new Random(5));
+        geometries[0] = GEOMETRY_FACTORY.toGeometry(new Envelope(-180.0, 180.0, -90.0, 90.0));
+        L3MultiRegionLookup regionLookup = new L3MultiRegionLookup(geometries);
+        assertTrue(regionLookup.getNumCells() > 1);
+        assertTrue(regionLookup.getNumCells() <= 512 * 512);
+        assertEquals(1, getContainingRegions(regionLookup, 89.0, 179.0).size());
+    }
+
+    static Geometry[] createRegions(int numRegions, Random random) {
+        Geometry[] geometries = new Geometry[numRegions];
+        for (int i = 0; i < numRegions; i++) {
+            double width = 0.5 + 10.0 * random.nextDouble();
+            double height = 0.5 + 10.0 * random.nextDouble();
+            double lon = -180.0 + (360.0 - width) * random.nextDouble();
+            double lat = -90.0 + (180.0 - height) * random.nextDouble();
+            geometries[i] = GEOMETRY_FACTORY.toGeometry(new Envelope(lon, lon + width, lat, lat + height));
+        }
+        return geometries;
+    }
+
+    private static List<Integer> getContainingRegions(Geometry[] geometries, double lat, double lon) {
+        List<Integer> regionIds = new ArrayList<>();
+        for (int regionId = 0; regionId < geometries.length; regionId++) {
+            if (geometries[regionId].contains(GEOMETRY_FACTORY.createPoint(new Coordinate(lon, lat)))) {
+                regionIds.add(regionId);
+            }
+        }
+        return regionIds;
+    }
+
+    private static List<Integer> getContainingRegions(L3MultiRegionLookup regionLookup, double lat, double lon) {
+        List<Integer> regionIds = new ArrayList<>();
+        for (int regionId : regionLookup.getCandidates(lat, lon)) {
+            if (regionLookup.contains(regionId, lat, lon)) {
+                regionIds.add(regionId);
+            }
+        }
+        return regionIds;
+    }
+}
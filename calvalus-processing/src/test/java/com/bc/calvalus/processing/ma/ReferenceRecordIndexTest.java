@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ma;
+
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.bc.calvalus.commons.DateUtils.ISO_FORMAT;
+import static org.junit.Assert.*;
+
+public class ReferenceRecordIndexTest {
+
+    private static final long HOUR_IN_MS = 60 * 60 * 1000L;
+
+    private File indexFile;
+
+    @Before
+    public void setUp() throws Exception {
+        indexFile = File.createTempFile("ReferenceRecordIndexTest", ".idx");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        indexFile.delete();
+    }
+
+    @Test
+    public void testWriteAndOpen() throws Exception {
+        DefaultHeader header = new DefaultHeader(true, true, new String[]{"lat", "lon", "time", "chl"}, new String[]{"site"});
+        Date time = ISO_FORMAT.parse("2017-04-08T12:00:00");
+        DefaultRecordSource recordSource = new DefaultRecordSource(header,
+                new DefaultRecord(7, new GeoPos(53.5f, 8.25f), time, new Object[]{53.5, 8.25, time, 0.42f}, new Object[]{"Helgoland"}),
+                new DefaultRecord(8, null, time, new Object[]{null, null, time, 0.1f}, new Object[]{"nowhere"}),
+                new DefaultRecord(9, new GeoPos(-12.0f, 179.9f), null, new Object[]{-12.0, 179.9, null, null}, new Object[]{"Fiji"}));
+
+        assertEquals(2, ReferenceRecordIndex.write(recordSource, 1.0, indexFile));
+        ReferenceRecordIndex index = ReferenceRecordIndex.open(indexFile);
+
+        assertEquals(2, index.getNumRecords());
+        assertTrue(index.getHeader().hasTime());
+        assertArrayEquals(header.getAttributeNames(), index.getHeader().getAttributeNames());
+        assertArrayEquals(header.getAnnotationNames(), index.getHeader().getAnnotationNames());
+
+        List<Record> records = index.query(50.0, 55.0, 5.0, 10.0, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(1, records.size());
+        Record record = records.get(0);
+        assertEquals(7, record.getId());
+        assertEquals(53.5, record.getLocation().getLat(), 1e-6);
+        assertEquals(8.25, record.getLocation().getLon(), 1e-6);
+        assertEquals(time, record.getTime());
+        assertArrayEquals(new Object[]{53.5, 8.25, time, 0.42f}, record.getAttributeValues());
+        assertArrayEquals(new Object[]{"Helgoland"}, record.getAnnotationValues());
+
+        records = index.query(-15.0, -10.0, 179.0, 180.0, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(1, records.size());
+        assertEquals(9, records.get(0).getId());
+        assertNull(records.get(0).getTime());
+
+        assertEquals(0, index.query(50.0, 55.0, 5.0, 10.0, time.getTime() + 1, Long.MAX_VALUE).size());
+        assertEquals(1, index.query(50.0, 55.0, 5.0, 10.0, time.getTime(), time.getTime()).size());
+    }
+
+    @Test
+    public void testQueryFindsAllMatchUps() throws Exception {
+        Product product = new Product("test", "test", 40, 20);
+        product.setSceneGeoCoding(new CrsGeoCoding(DefaultGeographicCRS.WGS84, 40, 20, 10.0, 50.0, 0.5, 0.5));
+        product.setStartTime(ProductData.UTC.create(ISO_FORMAT.parse("2017-04-08T10:00:00"), 0));
+        product.setEndTime(ProductData.UTC.create(ISO_FORMAT.parse("2017-04-08T10:05:00"), 0));
+
+        long productTime = product.getStartTime().getAsDate().getTime();
+        DefaultRecordSource recordSource = new DefaultRecordSource(new DefaultHeader(true, true, "chl"));
+        Random random = new Random(42);
+        for (int id = 0; id < 5000; id++) {
+            GeoPos location = new GeoPos(30.0 + 30.0 * random.nextDouble(), -10.0 + 60.0 * random.nextDouble());
+            Date time = new Date(productTime + (long) ((random.nextDouble() - 0.5) * 10 * 24 * HOUR_IN_MS));
+            recordSource.addRecord(new DefaultRecord(id, location, time, new Object[]{random.nextFloat()}));
+        }
+        ReferenceRecordIndex.write(recordSource, ReferenceRecordIndex.DEFAULT_CELL_SIZE, indexFile);
+        ReferenceRecordIndex index = ReferenceRecordIndex.open(indexFile);
+
+        for (String maxTimeDifference : new String[]{null, "0", "3.0", "1d"}) {
+            Set<Integer> expected = getMatchUpIds(product, maxTimeDifference, recordSource);
+            RecordSource queried = index.query(product, maxTimeDifference);
+            Set<Integer> actual = getMatchUpIds(product, maxTimeDifference, queried);
+            assertFalse(expected.isEmpty());
+            assertEquals(maxTimeDifference, expected, actual);
+            int numQueried = 0;
+            for (Record ignored : queried.getRecords()) {
+                numQueried++;
+            }
+            assertTrue(numQueried < 5000);
+        }
+    }
+
+    @Test
+    public void testGetTimeMargin() {
+        assertEquals(-1, ReferenceRecordIndex.getTimeMargin(null));
+        assertEquals(-1, ReferenceRecordIndex.getTimeMargin("0"));
+        assertEquals(3 * HOUR_IN_MS / 2, ReferenceRecordIndex.getTimeMargin("1.5"));
+        assertEquals(48 * HOUR_IN_MS, ReferenceRecordIndex.getTimeMargin("1d"));
+    }
+
+    @Test
+    public void testGetGeoBoundsAcrossAntiMeridian() throws Exception {
+        Product product = new Product("test", "test", 20, 20);
+        product.setSceneGeoCoding(new CrsGeoCoding(DefaultGeographicCRS.WGS84, 20, 20, 175.0, 10.0, 0.5, 0.5));
+        double[] bounds = ReferenceRecordIndex.getGeoBounds(product, 1.0);
+        assertEquals(-180.0, bounds[2], 1e-6);
+        assertEquals(180.0, bounds[3], 1e-6);
+    }
+
+    private static Set<Integer> getMatchUpIds(Product product, String maxTimeDifference, RecordSource recordSource) throws Exception {
+        PixelPosProvider pixelPosProvider = new PixelPosProvider(product, PixelTimeProvider.create(product),
+                                                                 maxTimeDifference, recordSource.getHeader().hasTime());
+        Set<Integer> ids = new TreeSet<>();
+        List<Record> records = new ArrayList<>();
+        for (Record record : recordSource.getRecords()) {
+            records.add(record);
+        }
+        for (PixelPosProvider.PixelPosRecord pixelPosRecord : pixelPosProvider.computePixelPosRecords(records)) {
+            ids.add(pixelPosRecord.getRecord().getId());
+        }
+        return ids;
+    }
+}
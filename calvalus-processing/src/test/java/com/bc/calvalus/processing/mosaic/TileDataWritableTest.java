@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.mosaic;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.*;
+
+public class TileDataWritableTest {
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        float[][] samples = {{1.0F, 2.0F, Float.NaN}, {-1.0F, 0.0F, 3.5F}};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new TileDataWritable(samples).write(new DataOutputStream(bytes));
+
+        TileDataWritable tile = new TileDataWritable();
+        tile.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(2, tile.getSamples().length);
+        assertArrayEquals(samples[0], tile.getSamples()[0], 0.0F);
+        assertArrayEquals(samples[1], tile.getSamples()[1], 0.0F);
+    }
+
+    @Test
+    public void testReadFormerCompressedFormat() throws Exception {
+        float[][] samples = {{1.0F, 2.0F}, {3.0F, 4.0F}, {5.0F, 6.0F}};
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        DataOutputStream compressedOut = new DataOutputStream(new DeflaterOutputStream(deflated));
+        compressedOut.writeInt(samples.length);
+        compressedOut.writeInt(samples[0].length);
+        for (float[] band : samples) {
+            for (float sample : band) {
+                compressedOut.writeFloat(sample);
+            }
+        }
+        compressedOut.close();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(deflated.size());
+        out.write(deflated.toByteArray());
+
+        TileDataWritable tile = new TileDataWritable();
+        tile.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(3, tile.getSamples().length);
+        for (int b = 0; b < samples.length; b++) {
+            assertArrayEquals(samples[b], tile.getSamples()[b], 0.0F);
+        }
+    }
+}
@@ -40,6 +40,7 @@ public class RAConfigTest {
                 "  <withProductNames>false</withProductNames>\n" +
                 "  <goodPixelExpression>not cloud and water</goodPixelExpression>\n" +
                 "  <percentiles>2,50,99</percentiles>\n" +
+                "  <percentileAccuracy>0.0</percentileAccuracy>\n" +
                 "  <bands>\n" +
                 "    <band>\n" +
                 "      <name>chl</name>\n" +
@@ -55,6 +56,7 @@ public class RAConfigTest {
                 "  <writeSeparateHistogram>true</writeSeparateHistogram>\n" +
                 "  <writePixelValues>false</writePixelValues>\n" +
                 "  <binValuesAsRatio>false</binValuesAsRatio>\n" +
+                "  <mapSideStatistics>false</mapSideStatistics>\n" +
                 "</parameters>";
         
         assertEquals(expected, xml);
@@ -88,6 +90,7 @@ public class RAConfigTest {
                 "</parameters>";
         RAConfig raConfig = RAConfig.fromXml(expected);
         assertEquals(false, raConfig.isBinValuesAsRatio());
+        assertEquals(false, raConfig.isMapSideStatistics());
         assertNull(raConfig.getPercentiles());
     }
 }
\ No newline at end of file
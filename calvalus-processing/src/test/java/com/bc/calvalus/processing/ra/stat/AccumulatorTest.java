@@ -51,4 +51,26 @@ public class AccumulatorTest {
         acc.accumulateNoNaN(1, Float.NaN, 2, 3);
         assertArrayEquals(new float[]{1, 2, 3}, acc.getValues(), 1E-5f);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGrowAndClear() throws Exception {
+        Accumulator acc = new Accumulator();
+
+        float[] samples = new float[700];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = i;
+        }
+        acc.accumulate(samples);
+        acc.accumulateNoNaN(samples);
+        acc.accumulateNoNaN(samples);
+        assertEquals(2100, acc.size());
+        float[] values = acc.getValues();
+        assertEquals(2100, values.length);
+        assertEquals(699f, values[2099], 1E-5f);
+
+        acc.clear();
+        assertArrayEquals(new float[0], acc.getValues(), 1E-5f);
+        acc.accumulate(42);
+        assertArrayEquals(new float[]{42}, acc.getValues(), 1E-5f);
+    }
+}
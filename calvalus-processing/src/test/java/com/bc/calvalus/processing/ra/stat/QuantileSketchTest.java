@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ra.stat;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QuantileSketchTest {
+
+    @Test
+    public void testExactAsLongAsNotCompacted() {
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        assertTrue(Double.isNaN(sketch.computePercentile(50)));
+
+        sketch.accumulateNoNaN(-1f, Float.NaN, 1f, 2f, 3f, 4f, Float.NaN, 5f, 6f, 7f, 11f);
+        assertEquals(9, sketch.getCount());
+        assertEquals(0.0, sketch.getRankError(), 0.0);
+        assertEquals(-1.0, sketch.computePercentile(5), 1e-6);
+        assertEquals(1.5, sketch.computePercentile(25), 1e-6);
+        assertEquals(4.0, sketch.computePercentile(50), 1e-6);
+        assertEquals(6.5, sketch.computePercentile(75), 1e-6);
+        assertEquals(11.0, sketch.computePercentile(95), 1e-6);
+    }
+
+    @Test
+    public void testRankErrorIsBounded() {
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        float[] sorted = accumulateRandom(sketch, 200000, 1);
+        Arrays.sort(sorted);
+
+        assertTrue(sketch.getRetainedSize() < 2000);
+        assertTrue(sketch.getRankError() > 0.0);
+        assertTrue(sketch.getRankError() <= 0.01);
+        for (int p : new int[]{5, 25, 50, 75, 95}) {
+            assertRank(p, sketch.computePercentile(p), sorted, 0.01);
+        }
+    }
+
+    @Test
+    public void testMerge() {
+        QuantileSketch sketch1 = new QuantileSketch(0.01);
+        QuantileSketch sketch2 = new QuantileSketch(0.01);
+        float[] values1 = accumulateRandom(sketch1, 100000, 2);
+        float[] values2 = accumulateRandom(sketch2, 50000, 3);
+        sketch1.merge(sketch2);
+
+        float[] sorted = new float[values1.length + values2.length];
+        System.arraycopy(values1, 0, sorted, 0, values1.length);
+        System.arraycopy(values2, 0, sorted, values1.length, values2.length);
+        Arrays.sort(sorted);
+
+        assertEquals(150000, sketch1.getCount());
+        assertTrue(sketch1.getRetainedSize() < 2000);
+        for (int p : new int[]{5, 25, 50, 75, 95}) {
+            assertRank(p, sketch1.computePercentile(p), sorted, 0.01);
+        }
+    }
+
+    @Test
+    public void testClear() {
+        QuantileSketch sketch = new QuantileSketch(0.05);
+        accumulateRandom(sketch, 10000, 4);
+        sketch.clear();
+        assertEquals(0, sketch.getCount());
+        assertEquals(0.0, sketch.getRankError(), 0.0);
+        sketch.accumulateNoNaN(42f);
+        assertEquals(42.0, sketch.computePercentile(50), 1e-6);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidAccuracy() {
+        new QuantileSketch(0.0);
+    }
+
+    private static float[] accumulateRandom(QuantileSketch sketch, int n, long seed) {
+        Random random = new Random(seed);
+        float[] values = new float[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = (float) random.nextGaussian();
+        }
+        for (int i = 0; i < n; i += 1000) {
+            sketch.accumulateNoNaN(Arrays.copyOfRange(values, i, Math.min(n, i + 1000)));
+        }
+        return values;
+    }
+
+    private static void assertRank(int p, double value, float[] sorted, double maxRankError) {
+        int index = Arrays.binarySearch(sorted, (float) value);
+        assertTrue("value of p" + p + " not a sample", index >= 0);
+        double rank = (index + 1) / (double) sorted.length;
+        assertEquals("rank of p" + p, p / 100.0, rank, maxRankError);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ra.stat;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.io.WKTReader;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.GeoCoding;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+
+import java.awt.Rectangle;
+
+/**
+ * Compares the time of selecting the pixels of a region by the per-pixel
+ * {@link Extractor.GeometryFilter} with rasterizing and reading a {@link RegionMask}.
+ * Not a unit test, run it with a main method.
+ */
+public class RegionMaskBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int numRuns = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        GeoCoding geoCoding = new CrsGeoCoding(DefaultGeographicCRS.WGS84, 3600, 1800, -180.0, 90.0, 0.1, 0.1, 0.0, 0.0);
+        Geometry geometry = new WKTReader().read(RegionMaskTest.RING_WKT);
+        Rectangle pixelRect = new Rectangle(1190, 540, 1070, 720);
+
+        for (int run = 0; run < numRuns; run++) {
+            Extractor.GeometryFilter filter = new Extractor.GeometryFilter(0, "ring", pixelRect, geoCoding, PreparedGeometryFactory.prepare(geometry));
+
+            long t0 = System.nanoTime();
+            long numFiltered = 0;
+            for (int y = pixelRect.y; y < pixelRect.y + pixelRect.height; y++) {
+                for (int x = pixelRect.x; x < pixelRect.x + pixelRect.width; x++) {
+                    if (filter.test(x, y)) {
+                        numFiltered++;
+                    }
+                }
+            }
+            long t1 = System.nanoTime();
+            RegionMask mask = filter.getMask();
+            long t2 = System.nanoTime();
+            long numMasked = 0;
+            for (int y = pixelRect.y; y < pixelRect.y + pixelRect.height; y++) {
+                int[] runs = mask.getRuns(y);
+                for (int r = 0; r < runs.length; r += 2) {
+                    for (int x = runs[r]; x < runs[r + 1]; x++) {
+                        numMasked++;
+                    }
+                }
+            }
+            long t3 = System.nanoTime();
+
+            System.out.printf("run %d: %d pixels  geometry filter %8.1f ms  rasterize %8.1f ms  read mask %6.1f ms%n",
+                              run, numMasked, (t1 - t0) / 1e6, (t2 - t1) / 1e6, (t3 - t2) / 1e6);
+            if (numFiltered != numMasked) {
+                throw new IllegalStateException("mask differs from geometry filter: " + numMasked + " != " + numFiltered);
+            }
+        }
+    }
+}
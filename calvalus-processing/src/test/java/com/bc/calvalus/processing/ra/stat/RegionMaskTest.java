@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.ra.stat;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.io.WKTReader;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.GeoCoding;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.TiePointGeoCoding;
+import org.esa.snap.core.datamodel.TiePointGrid;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+
+import static org.junit.Assert.*;
+
+public class RegionMaskTest {
+
+    static final String NORTH_SEA_WKT = "polygon((-19.94 40.00, 0.00 40.00, 0.00 49.22, 12.99 53.99, 13.06 65.00, 0.00 65.00, 0.0 60.00, -20.00 60.00, -19.94 40.00))";
+    static final String RING_WKT = "polygon((-60.3 -30.2, 40.7 -35.1, 45.2 30.9, -50.1 25.3, -60.3 -30.2), (-20.1 -10.3, 10.9 -12.7, 12.2 8.4, -18.6 9.9, -20.1 -10.3))";
+
+    @Test
+    public void testMaskEqualsGeometryFilter() throws Exception {
+        GeoCoding geoCoding = new CrsGeoCoding(DefaultGeographicCRS.WGS84, 360, 180, -180.0, 90.0, 1, 1, 0.0, 0.0);
+        assertMaskEqualsGeometryFilter(NORTH_SEA_WKT, new Rectangle(160, 25, 35, 52), geoCoding);
+        assertMaskEqualsGeometryFilter(RING_WKT, new Rectangle(100, 50, 130, 80), geoCoding);
+    }
+
+    @Test
+    public void testMaskEqualsGeometryFilterOnFineGrid() throws Exception {
+        GeoCoding geoCoding = new CrsGeoCoding(DefaultGeographicCRS.WGS84, 3600, 1800, -180.0, 90.0, 0.1, 0.1, 0.0, 0.0);
+        assertMaskEqualsGeometryFilter(RING_WKT, new Rectangle(1190, 540, 1070, 720), geoCoding);
+    }
+
+    @Test
+    public void testMaskEqualsGeometryFilterWithTiePointGeoCoding() throws Exception {
+        // a curved swath, the geo-positions are interpolated bilinearly between the tie points
+        int width = 320;
+        int height = 240;
+        int subSampling = 16;
+        int gridWidth = width / subSampling + 1;
+        int gridHeight = height / subSampling + 1;
+        float[] lats = new float[gridWidth * gridHeight];
+        float[] lons = new float[gridWidth * gridHeight];
+        for (int j = 0; j < gridHeight; j++) {
+            for (int i = 0; i < gridWidth; i++) {
+                double x = 0.5 + i * subSampling;
+                double y = 0.5 + j * subSampling;
+                lons[j * gridWidth + i] = (float) (-70.0 + 0.38 * x + 8.0 * Math.sin(y / 60.0));
+                lats[j * gridWidth + i] = (float) (40.0 - 0.32 * y + 6.0 * Math.sin(x / 70.0));
+            }
+        }
+        Product product = new Product("swath", "swath", width, height);
+        TiePointGrid latGrid = new TiePointGrid("lat", gridWidth, gridHeight, 0.5, 0.5, subSampling, subSampling, lats);
+        TiePointGrid lonGrid = new TiePointGrid("lon", gridWidth, gridHeight, 0.5, 0.5, subSampling, subSampling, lons);
+        product.addTiePointGrid(latGrid);
+        product.addTiePointGrid(lonGrid);
+        GeoCoding geoCoding = new TiePointGeoCoding(latGrid, lonGrid);
+
+        assertMaskEqualsGeometryFilter(RING_WKT, new Rectangle(0, 0, width, height), geoCoding);
+        assertMaskEqualsGeometryFilter("polygon((-40.3 20.1, 20.7 0.4, -10.2 -25.9, -40.3 20.1))", new Rectangle(13, 7, 290, 220), geoCoding);
+    }
+
+    @Test
+    public void testRuns() throws Exception {
+        GeoCoding geoCoding = new CrsGeoCoding(DefaultGeographicCRS.WGS84, 360, 180, -180.0, 90.0, 1, 1, 0.0, 0.0);
+        Geometry geometry = new WKTReader().read("polygon((10 10, 20 10, 20 20, 10 20, 10 10))");
+        RegionMask mask = RegionMask.rasterize(new Rectangle(185, 65, 20, 20), geoCoding, PreparedGeometryFactory.prepare(geometry));
+
+        assertEquals(100, mask.getNumPixels());
+        assertArrayEquals(new int[0], mask.getRuns(69));
+        assertArrayEquals(new int[]{190, 200}, mask.getRuns(70));
+        assertArrayEquals(new int[]{190, 200}, mask.getRuns(79));
+        assertArrayEquals(new int[0], mask.getRuns(80));
+        assertArrayEquals(new int[0], mask.getRuns(1000));
+        assertEquals(25, mask.countPixels(new Rectangle(195, 75, 10, 10)));
+        assertEquals(0, mask.countPixels(new Rectangle(0, 0, 10, 10)));
+    }
+
+    private static void assertMaskEqualsGeometryFilter(String wkt, Rectangle pixelRect, GeoCoding geoCoding) throws Exception {
+        Geometry geometry = new WKTReader().read(wkt);
+        Extractor.GeometryFilter filter = new Extractor.GeometryFilter(0, "r", pixelRect, geoCoding, PreparedGeometryFactory.prepare(geometry));
+        RegionMask mask = filter.getMask();
+        long numPixels = 0;
+        for (int y = pixelRect.y; y < pixelRect.y + pixelRect.height; y++) {
+            int[] runs = mask.getRuns(y);
+            int r = 0;
+            for (int x = pixelRect.x; x < pixelRect.x + pixelRect.width; x++) {
+                while (r < runs.length && runs[r + 1] <= x) {
+                    r += 2;
+                }
+                boolean inMask = r < runs.length && runs[r] <= x;
+                assertEquals("pixel " + x + "," + y, filter.test(x, y), inMask);
+                if (inMask) {
+                    numPixels++;
+                }
+            }
+        }
+        assertTrue(numPixels > 0);
+        assertEquals(numPixels, mask.getNumPixels());
+    }
+}
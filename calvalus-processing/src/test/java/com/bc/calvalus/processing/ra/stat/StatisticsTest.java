@@ -18,7 +18,14 @@ package com.bc.calvalus.processing.ra.stat;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 
 public class StatisticsTest {
 
@@ -87,6 +94,66 @@ public class StatisticsTest {
         testStat(new Statistics(4, 0.0, 10.0), stat2, histo2, samples2);
     }
 
+    @Test
+    public void test_approximatePercentiles() throws Exception {
+        String[] expected = {"b1_numValid", "b1_min", "b1_max", "b1_arithMean", "b1_sigma", "b1_geomMean",
+                "b1_p10", "b1_p90", "b1_pRankError"};
+        Statistics statistics = new Statistics(0, Double.NaN, Double.NaN, new int[]{10, 90}, 0.01, false);
+        assertArrayEquals(expected, statistics.getStatisticsHeaders("b1").toArray());
+
+        // few samples are not approximated
+        float[] samples = {1f, 2f, 3f, 4f, 5f, 6f, 7f};
+        String[] stat = {"7", "1.0", "7.0", "4.0", "2.0", "3.3800151591412964", "1.0", "7.0", "0.0"};
+        testStat(statistics, stat, new String[0], samples);
+    }
+
+    @Test
+    public void test_mergePartials() throws Exception {
+        float[] samples1 = {-1f, Float.NaN, 1f, 2f, 3f};
+        float[] samples2 = {4f, Float.NaN, 5f, 6f, 7f, 11f};
+        // the geometric mean differs in the last digits from test_many, the logarithms are summed in another order
+        String[] stat = {"9", "-1.0", "11.0", "4.222222222222222", "3.3591592128513272", "3.9172194543068817", "-1.0", "1.5", "4.0", "6.5", "11.0"};
+        String[] histo = {"1", "1", "4", "0.0", "10.0", "2", "2", "3", "0"};
+
+        Statistics partial1 = new Statistics(4, 0.0, 10.0);
+        partial1.process(samples1);
+        Statistics partial2 = new Statistics(4, 0.0, 10.0);
+        partial2.process(samples2);
+        Statistics merged = new Statistics(4, 0.0, 10.0);
+        merged.merge(serializeAndRead(partial1));
+        merged.merge(serializeAndRead(partial2));
+        assertEquals(9, merged.getNumValid());
+        assertArrayEquals("statitics", stat, merged.getStatisticsRecords().toArray());
+        assertArrayEquals("histogram", histo, merged.getHistogramRecords().toArray());
+    }
+
+    @Test
+    public void test_mergeApproximatePartials() throws Exception {
+        float[] samples1 = {1f, 2f, 3f};
+        float[] samples2 = {4f, 5f, 6f, 7f};
+        String[] stat = {"7", "1.0", "7.0", "4.0", "2.0", "3.3800151591412964", "1.0", "7.0", "0.0"};
+
+        Statistics partial1 = new Statistics(0, Double.NaN, Double.NaN, new int[]{10, 90}, 0.01, false);
+        partial1.process(samples1);
+        Statistics partial2 = new Statistics(0, Double.NaN, Double.NaN, new int[]{10, 90}, 0.01, false);
+        partial2.process(samples2);
+        Statistics merged = new Statistics(0, Double.NaN, Double.NaN, new int[]{10, 90}, 0.01, false);
+        merged.merge(serializeAndRead(partial1));
+        merged.merge(serializeAndRead(partial2));
+        assertArrayEquals("statitics", stat, merged.getStatisticsRecords().toArray());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_mergeDifferentHistograms() throws Exception {
+        new Statistics(4, 0.0, 10.0).merge(new Statistics(5, 0.0, 10.0));
+    }
+
+    private static Statistics serializeAndRead(Statistics statistics) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        statistics.write(new DataOutputStream(baos));
+        return Statistics.read(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+    }
+
     private static void testStat(Statistics stat, String[] recordsStat, String[] recordsHisto, float... samples) {
         stat.process(samples);
         Object[] stats = stat.getStatisticsRecords().toArray();
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.processing.vc;
+
+import com.bc.calvalus.processing.ma.DefaultRecord;
+import com.bc.calvalus.processing.ma.Header;
+import com.bc.calvalus.processing.ma.Record;
+import com.bc.calvalus.processing.ma.TestHeader;
+import com.bc.ceres.core.ProgressMonitor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DifferentiationRunnerTest {
+
+    private static final List<String> PRODUCTS = Arrays.asList("diff1", "diff2", "diff3", "diff4", "diff5");
+
+    @Test
+    public void testConcurrentMatchupsEqualSequentialMatchups() throws Exception {
+        DifferentiationRunner.Differentiation<String> differentiation = (product, pm) -> {
+            // the first products take longest, so they complete last
+            Thread.sleep(20L * (PRODUCTS.size() - PRODUCTS.indexOf(product)));
+            return createMatchups(product);
+        };
+        List<NamedRecordSource> sequential = new DifferentiationRunner<String>(() -> {}, 1, 10, 1000L)
+                .run(PRODUCTS, differentiation, ProgressMonitor.NULL);
+        List<NamedRecordSource> concurrent = new DifferentiationRunner<String>(() -> {}, 3, 10, 1000L)
+                .run(PRODUCTS, differentiation, ProgressMonitor.NULL);
+
+        assertEquals(2 * PRODUCTS.size(), sequential.size());
+        assertEquals(toStrings(sequential), toStrings(concurrent));
+        assertEquals("diff1_", concurrent.get(0).getName());
+        assertEquals("L2_diff1_", concurrent.get(1).getName());
+        assertEquals("L2_diff5_", concurrent.get(9).getName());
+    }
+
+    @Test
+    public void testProgressIsReportedWhileWaiting() throws Exception {
+        AtomicInteger progressCount = new AtomicInteger();
+        List<NamedRecordSource> matchups = new DifferentiationRunner<String>(progressCount::incrementAndGet, 2, 10, 10L)
+                .run(Arrays.asList("slow", "fast"), (product, pm) -> {
+                    Thread.sleep("slow".equals(product) ? 300L : 1L);
+                    return createMatchups(product);
+                }, ProgressMonitor.NULL);
+        assertEquals(4, matchups.size());
+        assertTrue("progress reported " + progressCount.get() + " times", progressCount.get() >= 10);
+    }
+
+    @Test
+    public void testUnusableProduct() throws Exception {
+        List<NamedRecordSource> matchups = new DifferentiationRunner<String>(() -> {}, 3, 10, 1000L)
+                .run(PRODUCTS, (product, pm) -> "diff3".equals(product) ? null : createMatchups(product), ProgressMonitor.NULL);
+        assertNull(matchups);
+    }
+
+    @Test
+    public void testFailureIsPropagated() throws Exception {
+        try {
+            new DifferentiationRunner<String>(() -> {}, 3, 10, 1000L).run(PRODUCTS, (product, pm) -> {
+                if ("diff2".equals(product)) {
+                    throw new IOException("cannot process " + product);
+                }
+                return createMatchups(product);
+            }, ProgressMonitor.NULL);
+            fail();
+        } catch (IOException e) {
+            assertEquals("cannot process diff2", e.getMessage());
+        }
+    }
+
+    private static NamedRecordSource[] createMatchups(String product) {
+        Header header = new TestHeader("a", "b");
+        int n = product.charAt(product.length() - 1) - '0';
+        List<Record> diffRecords = new ArrayList<>();
+        List<Record> l2Records = new ArrayList<>();
+        for (int id = 1; id <= n; id++) {
+            diffRecords.add(new DefaultRecord(id, null, null, new Object[]{n, id}));
+            l2Records.add(new DefaultRecord(id, null, null, new Object[]{n * 10, id * 10}));
+        }
+        return new NamedRecordSource[]{
+                new NamedRecordSource(product + "_", header, diffRecords),
+                new NamedRecordSource("L2_" + product + "_", header, l2Records)
+        };
+    }
+
+    private static List<String> toStrings(List<NamedRecordSource> sources) {
+        List<String> strings = new ArrayList<>();
+        for (NamedRecordSource source : sources) {
+            for (Record record : source.getRecords()) {
+                strings.add(source.getName() + record.getId() + Arrays.toString(record.getAttributeValues()));
+            }
+        }
+        return strings;
+    }
+}
@@ -337,6 +337,13 @@ public class ProductionRequest implements XmlConvertible {
         return getBoolean("autoStaging", false);
     }
 
+    /**
+     * @return true if the outputs are to be streamed into a single zip in the staging area, without copying them there
+     */
+    public boolean isStreamingStaging() throws ProductionException {
+        return getBoolean("streamingStaging", false);
+    }
+
     public String getStagingDirectory(String productionId) {
         String remoteUser;
         try {
@@ -21,6 +21,7 @@ import com.bc.calvalus.commons.ProcessState;
 import com.bc.calvalus.commons.ProcessStatus;
 import com.bc.calvalus.processing.ProcessingService;
 import com.bc.calvalus.production.Production;
+import com.bc.calvalus.production.ProductionException;
 import com.bc.calvalus.production.ProductionStaging;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
@@ -74,6 +75,10 @@ class CopyStaging extends ProductionStaging {
 
         // Simply copy entire content of remoteOutputDir
         FileStatus[] fileStatuses = fileSystem.globStatus(new Path(remoteOutputDir, "*.*"));
+        if (production.getProductionRequest().isStreamingStaging()) {
+            streamToZip(fileStatuses != null ? fileStatuses : new FileStatus[0]);
+            return;
+        }
         long totalFilesSize = 0L;
         if (fileStatuses != null) {
             for (int i = 0; i < fileStatuses.length; i++) {
@@ -111,6 +116,17 @@ class CopyStaging extends ProductionStaging {
         production.setStagingStatus(new ProcessStatus(ProcessState.COMPLETED, 1.0F, ""));
     }
 
+    private void streamToZip(FileStatus[] fileStatuses) throws IOException, ProductionException {
+        Production production = getProduction();
+        int numThreads = production.getProductionRequest().getInteger("stagingThreads", StreamingZip.DEFAULT_NUM_THREADS);
+        StreamingZip streamingZip = new StreamingZip(this, numThreads);
+        streamingZip.add(fileSystem, fileStatuses);
+        String zipFilename = getSafeFilename(production.getName() + ".zip");
+        if (streamingZip.write(new File(stagingDir, zipFilename)) >= 0) {
+            production.setStagingStatus(new ProcessStatus(ProcessState.COMPLETED, 1.0F, ""));
+        }
+    }
+
     @Override
     public void cancel() {
         super.cancel();
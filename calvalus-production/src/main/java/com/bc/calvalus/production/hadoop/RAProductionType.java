@@ -176,9 +176,11 @@ public class RAProductionType extends HadoopProductionType {
 
         raConfig.setGoodPixelExpression(productionRequest.getXmlDecodedString("goodPixelExpression", null));
         raConfig.setPercentiles(productionRequest.getString("percentiles", ""));
+        raConfig.setPercentileAccuracy(productionRequest.getDouble("percentileAccuracy", 0.0));
         raConfig.setWritePerRegion(productionRequest.getBoolean("writePerRegion", Boolean.TRUE));
         raConfig.setWriteSeparateHistogram(productionRequest.getBoolean("writeSeparateHistogram", Boolean.TRUE));
         raConfig.setWritePixelValues(productionRequest.getBoolean("writePixelValues", Boolean.FALSE));
+        raConfig.setMapSideStatistics(productionRequest.getBoolean("mapSideStatistics", Boolean.FALSE));
 
         int bandCount = productionRequest.getInteger("statband.count");
         RAConfig.BandConfig[] bandConfigs = new RAConfig.BandConfig[bandCount];
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.production.hadoop;
+
+import com.bc.calvalus.commons.CalvalusLogger;
+import com.bc.calvalus.commons.ProcessState;
+import com.bc.calvalus.commons.ProcessStatus;
+import com.bc.calvalus.production.ProductionStaging;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes files of a (distributed) file system into a zip file in the staging area
+ * without copying them to the staging area first.
+ * <p>
+ * Up to {@code numThreads} files are read concurrently, each into a bounded queue of chunks,
+ * while the chunks of the files are written into the zip one file after the other.
+ * A read that fails is resumed at the position reached, up to three attempts per file.
+ * Files with already compressed content are written without compression.
+ */
+class StreamingZip {
+
+    static final int DEFAULT_NUM_THREADS = 4;
+
+    private static final Logger LOG = CalvalusLogger.getLogger();
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int CHUNKS_PER_FILE = 8;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long STATUS_INTERVAL_MILLIS = 1000L;
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "zip", "gz", "tgz", "bz2", "xz", "7z", "zst", "lz4", "snappy", "jar", "png", "jpg", "jpeg", "jp2", "kmz"));
+
+    private final ProductionStaging staging;
+    private final int numThreads;
+    private final BlockingQueue<byte[]> freeBuffers;
+    private final List<FileSystem> fileSystems;
+    private final List<FileStatus> files;
+
+    StreamingZip(ProductionStaging staging, int numThreads) {
+        this.staging = staging;
+        this.numThreads = Math.max(1, numThreads);
+        this.freeBuffers = new LinkedBlockingQueue<>();
+        this.fileSystems = new ArrayList<>();
+        this.files = new ArrayList<>();
+    }
+
+    /**
+     * Adds files of the given file system, their names are the entry names.
+     */
+    void add(FileSystem fileSystem, FileStatus... fileStatuses) {
+        for (FileStatus fileStatus : fileStatuses) {
+            fileSystems.add(fileSystem);
+            files.add(fileStatus);
+        }
+    }
+
+    /**
+     * Writes the files added into the zip file, and reports the progress
+     * and the throughput as the staging status of the production.
+     *
+     * @return the number of bytes of the files written, or -1 if the staging has been cancelled
+     */
+    long write(File zipFile) throws IOException {
+        long totalBytes = 0L;
+        for (FileStatus file : files) {
+            totalBytes += file.getLen();
+        }
+        LOG.info(String.format("streaming %d files with %d bytes into %s", files.size(), totalBytes, zipFile));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        try {
+            // the tasks are started in the order of the files, the file written next is always being read
+            List<BlockingQueue<Chunk>> queues = new ArrayList<>(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                FileSystem fileSystem = fileSystems.get(i);
+                Path path = files.get(i).getPath();
+                BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(CHUNKS_PER_FILE + 1);
+                queues.add(queue);
+                executorService.submit(() -> {
+                    read(fileSystem, path, queue);
+                    return null;
+                });
+            }
+
+            long startTime = System.currentTimeMillis();
+            long lastStatusTime = startTime;
+            long bytesWritten = 0L;
+            try (ZipOutputStream zipOutputStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile), CHUNK_SIZE))) {
+                for (int i = 0; i < files.size(); i++) {
+                    String entryName = files.get(i).getPath().getName();
+                    zipOutputStream.setLevel(isCompressed(entryName) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+                    zipOutputStream.putNextEntry(new ZipEntry(entryName));
+                    while (true) {
+                        Chunk chunk = queues.get(i).take();
+                        if (chunk.error != null) {
+                            throw new IOException("failed to stage " + files.get(i).getPath() + ": " + chunk.error.getMessage(), chunk.error);
+                        }
+                        if (chunk.buffer == null) {
+                            break;
+                        }
+                        zipOutputStream.write(chunk.buffer, 0, chunk.length);
+                        freeBuffers.offer(chunk.buffer);
+                        bytesWritten += chunk.length;
+
+                        long now = System.currentTimeMillis();
+                        if (now - lastStatusTime >= STATUS_INTERVAL_MILLIS) {
+                            setStatus(bytesWritten, totalBytes, now - startTime, entryName);
+                            lastStatusTime = now;
+                        }
+                    }
+                    zipOutputStream.closeEntry();
+                    queues.set(i, null);
+                    if (staging.isCancelled()) {
+                        return -1L;
+                    }
+                }
+            }
+            long millis = System.currentTimeMillis() - startTime;
+            setStatus(bytesWritten, totalBytes, millis, zipFile.getName());
+            LOG.info(String.format("%d bytes streamed into %s in %d ms", bytesWritten, zipFile.getName(), millis));
+            return bytesWritten;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("staging interrupted");
+        } finally {
+            executorService.shutdownNow();
+            freeBuffers.clear();
+        }
+    }
+
+    static boolean isCompressed(String fileName) {
+        int dotIndex = fileName.lastIndexOf('.');
+        return dotIndex >= 0 && COMPRESSED_EXTENSIONS.contains(fileName.substring(dotIndex + 1).toLowerCase(Locale.ENGLISH));
+    }
+
+    private void read(FileSystem fileSystem, Path path, BlockingQueue<Chunk> queue) throws InterruptedException {
+        long position = 0L;
+        for (int attempt = 1; ; attempt++) {
+            try (FSDataInputStream in = fileSystem.open(path)) {
+                if (position > 0L) {
+                    in.seek(position);
+                }
+                while (true) {
+                    byte[] buffer = freeBuffers.poll();
+                    if (buffer == null) {
+                        buffer = new byte[CHUNK_SIZE];
+                    }
+                    int length = readChunk(in, buffer);
+                    if (length <= 0) {
+                        queue.put(new Chunk(null, 0, null));
+                        return;
+                    }
+                    queue.put(new Chunk(buffer, length, null));
+                    position += length;
+                }
+            } catch (RuntimeException e) {
+                queue.put(new Chunk(null, 0, new IOException(e)));
+                return;
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    queue.put(new Chunk(null, 0, e));
+                    return;
+                }
+                LOG.log(Level.FINE, String.format("Attempt(%d) Problem while staging: %s: %s", attempt, path, e.getMessage()), e);
+            }
+        }
+    }
+
+    private static int readChunk(FSDataInputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int n = in.read(buffer, length, buffer.length - length);
+            if (n < 0) {
+                break;
+            }
+            length += n;
+        }
+        return length;
+    }
+
+    private void setStatus(long bytesWritten, long totalBytes, long millis, String name) {
+        float progress = totalBytes > 0L ? (float) bytesWritten / totalBytes : 1.0F;
+        double megabytesPerSecond = millis > 0L ? bytesWritten / (1024.0 * 1024.0) / (millis / 1000.0) : 0.0;
+        String message = String.format(Locale.ENGLISH, "%.1f MB/s %s", megabytesPerSecond, name);
+        staging.getProduction().setStagingStatus(new ProcessStatus(ProcessState.RUNNING, Math.min(progress, 1.0F), message));
+    }
+
+    /**
+     * A chunk of a file, the end of the file if the buffer is null, or the failure to read it.
+     */
+    private static class Chunk {
+
+        private final byte[] buffer;
+        private final int length;
+        private final IOException error;
+
+        private Chunk(byte[] buffer, int length, IOException error) {
+            this.buffer = buffer;
+            this.length = length;
+            this.error = error;
+        }
+    }
+}
@@ -165,7 +165,24 @@ class TAStaging extends ProductionStaging {
 
         final FileStatus[] fileStatuses = fs.globStatus(new Path(inputDir, "*-timeseries.csv"));
         long totalFilesSize = 0L;
-        if (fileStatuses != null) {
+        if (productionRequest.isStreamingStaging()) {
+            // the time series are not copied, the zip takes them from the input dir and the reports from the staging dir
+            int numThreads = productionRequest.getInteger("stagingThreads", StreamingZip.DEFAULT_NUM_THREADS);
+            StreamingZip streamingZip = new StreamingZip(this, numThreads);
+            String zipFilename = getSafeFilename(production.getName() + ".zip");
+            FileSystem localFs = FileSystem.getLocal(hadoopConfiguration);
+            for (FileStatus stagedFile : localFs.listStatus(new Path(stagingDir.toURI()))) {
+                if (stagedFile.isFile() && !stagedFile.getPath().getName().equals(zipFilename)) {
+                    streamingZip.add(localFs, stagedFile);
+                }
+            }
+            if (fileStatuses != null) {
+                streamingZip.add(fs, fileStatuses);
+            }
+            if (streamingZip.write(new File(stagingDir, zipFilename)) < 0) {
+                return;
+            }
+        } else if (fileStatuses != null) {
             for (int i = 0; i < fileStatuses.length; i++) {
                 FileStatus fileStatus = fileStatuses[i];
                 Path path = fileStatus.getPath();
@@ -178,7 +195,7 @@ class TAStaging extends ProductionStaging {
                 production.setStagingStatus(new ProcessStatus(ProcessState.RUNNING, (i + 1.0F) / fileStatuses.length, path.getName()));
             }
         }
-        if (totalFilesSize < 2L * GIGABYTE / 2) {
+        if (!productionRequest.isStreamingStaging() && totalFilesSize < 2L * GIGABYTE / 2) {
             String zipFilename = getSafeFilename(production.getName() + ".zip");
             zip(stagingDir, new File(stagingDir, zipFilename));
         }
@@ -6,6 +6,7 @@ import com.bc.calvalus.commons.shared.BundleFilter;
 import com.bc.calvalus.processing.BundleDescriptor;
 import com.bc.calvalus.processing.JobIdFormat;
 import com.bc.calvalus.processing.MaskDescriptor;
+import com.bc.calvalus.processing.ProcessingScheduler;
 import com.bc.calvalus.processing.ProcessingService;
 
 import java.io.IOException;
@@ -23,7 +24,7 @@ class LocalProcessingService implements ProcessingService<String> {
     private final BundleDescriptor[] bundleDescriptors;
     private final Map<String, Job> jobs;
     private final Map<String, ProcessStatus> jobStatuses;
-    private Timer timer = null;
+    private ProcessingScheduler scheduler = null;
 
     static long jobNum = System.nanoTime();
 
@@ -87,10 +88,10 @@ class LocalProcessingService implements ProcessingService<String> {
     }
 
     @Override
-    public void close() throws IOException {
-        if (timer != null) {
-            timer.cancel();
-            timer = null;
+    public synchronized void close() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
         }
     }
 
@@ -168,10 +169,10 @@ class LocalProcessingService implements ProcessingService<String> {
     public void invalidateBundleCache() {}
 
     @Override
-    public Timer getTimer() {
-        if (timer == null) {
-            timer = new Timer("localprocessingservicetimer", true);
+    public synchronized ProcessingScheduler getScheduler() {
+        if (scheduler == null) {
+            scheduler = new ProcessingScheduler();
         }
-        return timer;
+        return scheduler;
     }
 }
@@ -6,12 +6,12 @@ import com.bc.calvalus.commons.shared.BundleFilter;
 import com.bc.calvalus.processing.BundleDescriptor;
 import com.bc.calvalus.processing.JobIdFormat;
 import com.bc.calvalus.processing.MaskDescriptor;
+import com.bc.calvalus.processing.ProcessingScheduler;
 import com.bc.calvalus.processing.ProcessingService;
 import org.junit.Ignore;
 
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.Timer;
 
 /**
  * Test implementation of ProductionStore.
@@ -84,7 +84,7 @@ public class TestProcessingService implements ProcessingService<String> {
     public void invalidateBundleCache() {}
 
     @Override
-    public Timer getTimer() {
+    public ProcessingScheduler getScheduler() {
         return null;
     }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2020 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.calvalus.production.hadoop;
+
+import com.bc.calvalus.commons.ProcessState;
+import com.bc.calvalus.production.Production;
+import com.bc.calvalus.production.ProductionRequest;
+import com.bc.calvalus.production.ProductionStaging;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.*;
+
+public class StreamingZipTest {
+
+    private File testDir;
+    private Production production;
+    private FileSystem localFs;
+
+    @Before
+    public void setUp() throws Exception {
+        testDir = Files.createTempDirectory("StreamingZipTest").toFile();
+        production = new Production("P1", "Streamed", testDir.getPath(), "staging", false,
+                                    new ProductionRequest("test", "ewa"), null);
+        localFs = FileSystem.getLocal(new Configuration());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.fullyDelete(testDir);
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        byte[] small = createContent(1000, 1);
+        byte[] large = createContent(3 * 1024 * 1024 + 17, 2);
+        byte[] compressed = createContent(100000, 3);
+        writeFile("a.txt", small);
+        writeFile("b.nc", large);
+        writeFile("c.tar.gz", compressed);
+        writeFile("d.txt", new byte[0]);
+
+        StreamingZip streamingZip = new StreamingZip(new ProductionStaging(production) {}, 2);
+        streamingZip.add(localFs, localFs.getFileStatus(path("a.txt")), localFs.getFileStatus(path("b.nc")));
+        streamingZip.add(localFs, localFs.getFileStatus(path("c.tar.gz")), localFs.getFileStatus(path("d.txt")));
+        File zipFile = new File(testDir, "out.zip");
+        long bytesWritten = streamingZip.write(zipFile);
+
+        assertEquals(small.length + large.length + compressed.length, bytesWritten);
+        assertEquals(ProcessState.RUNNING, production.getStagingStatus().getState());
+        assertEquals(1.0F, production.getStagingStatus().getProgress(), 1.0E-6F);
+        assertTrue(production.getStagingStatus().getMessage().contains("MB/s"));
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            assertEquals(4, zip.size());
+            assertArrayEquals(small, readEntry(zip, "a.txt"));
+            assertArrayEquals(large, readEntry(zip, "b.nc"));
+            assertArrayEquals(compressed, readEntry(zip, "c.tar.gz"));
+            assertArrayEquals(new byte[0], readEntry(zip, "d.txt"));
+            ZipEntry compressedEntry = zip.getEntry("c.tar.gz");
+            assertTrue(compressedEntry.getCompressedSize() >= compressed.length);
+        }
+    }
+
+    @Test
+    public void testWriteMissingFileFails() throws Exception {
+        writeFile("a.txt", createContent(10, 1));
+        StreamingZip streamingZip = new StreamingZip(new ProductionStaging(production) {}, 2);
+        streamingZip.add(localFs, localFs.getFileStatus(path("a.txt")));
+        assertTrue(new File(testDir, "a.txt").delete());
+        try {
+            streamingZip.write(new File(testDir, "out.zip"));
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("a.txt"));
+        }
+    }
+
+    @Test
+    public void testIsCompressed() {
+        assertTrue(StreamingZip.isCompressed("L3.tar.GZ"));
+        assertTrue(StreamingZip.isCompressed("quicklook.png"));
+        assertFalse(StreamingZip.isCompressed("L2_of_MER_RR.nc"));
+        assertFalse(StreamingZip.isCompressed("README"));
+    }
+
+    private Path path(String name) {
+        return new Path(new File(testDir, name).toURI());
+    }
+
+    private void writeFile(String name, byte[] content) throws IOException {
+        Files.write(new File(testDir, name).toPath(), content);
+    }
+
+    private static byte[] createContent(int length, long seed) {
+        byte[] content = new byte[length];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    private static byte[] readEntry(ZipFile zip, String name) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        assertNotNull(name, entry);
+        byte[] content = new byte[(int) entry.getSize()];
+        try (InputStream in = zip.getInputStream(entry)) {
+            int length = 0;
+            while (length < content.length) {
+                int n = in.read(content, length, content.length - length);
+                assertTrue(n > 0);
+                length += n;
+            }
+            assertEquals(-1, in.read());
+        }
+        return content;
+    }
+}
@@ -2,6 +2,7 @@ package com.bc.calvalus.wps;
 
 import com.bc.calvalus.production.ProductionException;
 import com.bc.calvalus.wps.calvalusfacade.CalvalusProductionService;
+import com.bc.calvalus.wps.calvalusfacade.StatusObserver;
 import com.bc.calvalus.wps.exceptions.InvalidProcessorIdException;
 import com.bc.calvalus.wps.exceptions.SqlStoreException;
 import com.bc.calvalus.wps.exceptions.WpsProcessorNotFoundException;
@@ -24,7 +25,6 @@ import com.bc.wps.utilities.WpsLogger;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.List;
-import java.util.Timer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -83,7 +83,7 @@ public class CalvalusWpsProvider implements WpsServiceInstance {
 
     @Override
     public void dispose() {
-        Timer statusObserver = CalvalusProductionService.getStatusObserverSingleton();
+        StatusObserver statusObserver = CalvalusProductionService.getStatusObserverSingleton();
         statusObserver.cancel();
         System.out.println("********************************************");
         System.out.println("****** Stopping Calvalus WPS intance  ******");
@@ -30,8 +30,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -100,18 +98,15 @@ class CalvalusProduction {
         Production production = productionResponse.getProduction();
         logInfo("Production successfully ordered. The production ID is: " + production.getId());
 
-        Timer statusObserver = CalvalusProductionService.getStatusObserverSingleton();
+        StatusObserver statusObserver = CalvalusProductionService.getStatusObserverSingleton();
         synchronized (CalvalusProductionService.getUserProductionMap()) {
             if (!CalvalusProductionService.getUserProductionMap().containsKey(userName)) {
                 CalvalusProductionService.getUserProductionMap().put(userName, 1);
-                statusObserver.scheduleAtFixedRate(new TimerTask() {
-                    @Override
-                    public void run() {
-                        try {
-                            updateProductionStatuses(userName);
-                        } catch (IOException | ProductionException e) {
-                            LOG.log(Level.SEVERE, "Unable to update production status.", e);
-                        }
+                statusObserver.scheduleAtFixedRate("updateProductionStatuses-" + userName, () -> {
+                    try {
+                        updateProductionStatuses(userName);
+                    } catch (IOException | ProductionException e) {
+                        LOG.log(Level.SEVERE, "Unable to update production status.", e);
                     }
                 }, PRODUCTION_STATUS_OBSERVATION_PERIOD, PRODUCTION_STATUS_OBSERVATION_PERIOD);
             }
@@ -181,7 +176,7 @@ class CalvalusProduction {
                     productionService.updateStatuses(userName);
                 } catch (IllegalStateException exception) {
                     System.out.println("Trying to stop thread " + Thread.currentThread().getName());
-                    Timer statusObserver = CalvalusProductionService.getStatusObserverSingleton();
+                    StatusObserver statusObserver = CalvalusProductionService.getStatusObserverSingleton();
                     statusObserver.cancel();
                 }
             }
@@ -17,7 +17,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 
@@ -31,7 +30,7 @@ public class CalvalusProductionService implements ServletContextListener {
 
     private static ServiceContainer serviceContainer = null;
     private static ReportingHandler reportingHandler = null;
-    private static Timer statusObserver;
+    private static StatusObserver statusObserver;
     private static Map<String, Integer> userProductionMap;
     private static Set<String> remoteUserSet;
 
@@ -46,11 +45,10 @@ public class CalvalusProductionService implements ServletContextListener {
     private CalvalusProductionService() {
     }
 
-    public synchronized static Timer getStatusObserverSingleton() {
+    public synchronized static StatusObserver getStatusObserverSingleton() {
         if (statusObserver == null) {
             WpsServletContainer.addServletContextListener(new CalvalusProductionService());
-            //statusObserver = new Timer("StatusObserver" + new Date().toString(), true);
-            statusObserver = serviceContainer.getProductionService().getProcessingService().getTimer();
+            statusObserver = new StatusObserver(serviceContainer.getProductionService().getProcessingService().getScheduler());
         }
         return statusObserver;
     }
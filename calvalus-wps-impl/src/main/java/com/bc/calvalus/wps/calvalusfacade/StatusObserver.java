@@ -0,0 +1,35 @@
+package com.bc.calvalus.wps.calvalusfacade;
+
+import com.bc.calvalus.processing.ProcessingScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The status polling tasks of the WPS. They run on the status polling threads of the processing service,
+ * cancelling them leaves the other tasks of the processing service running.
+ */
+public class StatusObserver {
+
+    private final ProcessingScheduler scheduler;
+    private final List<ScheduledFuture<?>> tasks;
+
+    StatusObserver(ProcessingScheduler scheduler) {
+        this.scheduler = scheduler;
+        this.tasks = new ArrayList<>();
+    }
+
+    public synchronized void scheduleAtFixedRate(String name, Runnable task, long delayMillis, long periodMillis) {
+        tasks.add(scheduler.scheduleAtFixedRate(ProcessingScheduler.TaskType.STATUS_POLLING, name, task,
+                                                delayMillis, periodMillis, TimeUnit.MILLISECONDS));
+    }
+
+    public synchronized void cancel() {
+        for (ScheduledFuture<?> task : tasks) {
+            task.cancel(false);
+        }
+        tasks.clear();
+    }
+}
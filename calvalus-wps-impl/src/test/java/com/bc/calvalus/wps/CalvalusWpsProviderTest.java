@@ -5,6 +5,7 @@ import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 import com.bc.calvalus.wps.calvalusfacade.CalvalusProductionService;
+import com.bc.calvalus.wps.calvalusfacade.StatusObserver;
 import com.bc.calvalus.wps.exceptions.WpsProcessorNotFoundException;
 import com.bc.calvalus.wps.wpsoperations.CalvalusDescribeProcessOperation;
 import com.bc.calvalus.wps.wpsoperations.CalvalusExecuteOperation;
@@ -23,7 +24,6 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.IOException;
-import java.util.Timer;
 
 /**
  * @author hans
@@ -140,12 +140,12 @@ public class CalvalusWpsProviderTest {
     public void canDispose() throws Exception {
         PowerMockito.mockStatic(PropertiesWrapper.class);
         PowerMockito.mockStatic(CalvalusProductionService.class);
-        Timer mockTimer = mock(Timer.class);
-        PowerMockito.when(CalvalusProductionService.getStatusObserverSingleton()).thenReturn(mockTimer);
+        StatusObserver mockStatusObserver = mock(StatusObserver.class);
+        PowerMockito.when(CalvalusProductionService.getStatusObserverSingleton()).thenReturn(mockStatusObserver);
 
         calvalusProvider.dispose();
 
-        verify(mockTimer, times(1)).cancel();
+        verify(mockStatusObserver, times(1)).cancel();
     }
 
 }
\ No newline at end of file